@@ -36,6 +36,7 @@ public class MainBacktester {
 
 //        String strategyName = "DoubleTapStrategy";
 //        String strategyName = "VortexStrategy";
+//        String strategyName = "NnfxStrategy";
         String strategyName = "DivergenceStrategy";
 //        String strategyName = "PullbackStrategy";
 //        String strategyName = "VwapStrategy";
@@ -52,6 +53,8 @@ public class MainBacktester {
 
         TradingParameters parameters = TradingParameters.builder()
                 .minNumberOfTrades(getMinTradesForTimeframe(timeframe, quotes.size()))
+                .pruneGridCombinations(true)
+                .tradeHopping(true)
                 .build();
 
         MarketPhaseClassifier classifier = getMarketPhaseClassifier();
@@ -127,18 +130,11 @@ public class MainBacktester {
                             false)
                     .subscribe(results -> {
 
+                        // Combinations breaching the drawdown or trades constraints were pruned during the grid
                         log.info("");
-                        log.info("Top results before filtering");
+                        log.info("Top results");
                         logGridResults(phase, metricType, results.subList(0, Math.min(results.size(), numberOfResultsToKeep - 1)));
 
-//                        log.info("");
-//                        log.info("Top results after filtering");
-//                        results = results.stream()
-//                                .filter(result -> result.getResult().getTotalTrades() > parameters.getMinNumberOfTrades())
-//                                .filter(result -> result.getResult().getMaxDrawdown() * 100 < parameters.getMaxDrawdown())
-//                                .toList();
-//                        logGridResults(phase, metricType, results.subList(0, Math.min(results.size(), numberOfResultsToKeep - 1)));
-
                         // Validate if we have results and validation data for this phase
                         if (!results.isEmpty()) {
                             // Extract all top parameter sets
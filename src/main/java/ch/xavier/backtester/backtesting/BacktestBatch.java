@@ -0,0 +1,816 @@
+package ch.xavier.backtester.backtesting;
+
+import ch.xavier.backtester.backtesting.model.BacktestResult;
+import ch.xavier.backtester.backtesting.model.Position;
+import ch.xavier.backtester.backtesting.model.TradeLog;
+import ch.xavier.backtester.indicator.series.IndicatorCache;
+import ch.xavier.backtester.indicator.series.SparseTable;
+import ch.xavier.backtester.marketphase.MarketPhaseClassifier;
+import ch.xavier.backtester.quote.Quote;
+import ch.xavier.backtester.strategy.SignalVector;
+import ch.xavier.backtester.strategy.StrategyState;
+import ch.xavier.backtester.strategy.TradingStrategy;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Backtests of several strategies on the same quotes, advanced together bar by bar: every bar is read once, its day
+ * resolved once, then each run, a lane, takes its step. The lanes' positions and funds are held column by column, so
+ * a step only touches the lane's slot of a few arrays, all staying in cache for the whole pass.
+ * A lane stops when its funds are depleted or, when pruned, as soon as it can't satisfy the grid's constraints.
+ * Lanes whose strategy holds several positions at once keep them in an {@link OrderBook}, each bar only filling the
+ * exit orders it reaches.
+ * With trade hopping, the lanes with precomputed signals and fixed exits don't take steps: they jump from each entry
+ * straight to its exit, found on sparse tables of the highs and lows, so their cost scales with their trades.
+ * {@link BacktesterService} runs every backtest as a batch of one lane, grid combinations included, as advancing
+ * several of them together hasn't been measured faster than running them in parallel.
+ */
+@Slf4j
+final class BacktestBatch {
+    // Longest quotes lanes hop on, each table of their extremes takes about 4 n log2(n) bytes, 80 MB at this length
+    private static final int MAX_HOPPING_BARS = 1 << 20;
+
+    private final List<Quote> quotes;
+    private final int start; // First bar of the run, the bars before it only warm the strategies up
+    private final TradingStrategy[] strategies;
+    private final ExitScan.Cache[] exitScans; // Null slots check exits bar per bar
+    private final MarketPhaseClassifier.MarketPhase phase;
+    private final TradingParameters params;
+
+    // Per-lane state, the strategies themselves only hold their parameters and can be shared between lanes
+    private final StrategyState[] states;
+    private final SignalVector[] signalVectors; // Null slots generate their signals bar per bar
+    private final int[] firstBars;
+    private final MetricsAccumulator[] metrics;
+    private final TradeLog[] completedTrades; // Null unless trades are stored
+    private final GridPruning.Run[] constraints; // Null unless pruned
+    private final int[] entriesLeft; // Entries a pruned lane can still take
+    private final double[] availableFunds;
+    private final double[] dayStartAvailableFunds;
+
+    // Position of each lane, at most one is open at a time unless the lane has a book, whose positions are loaded
+    // here when handled
+    private final OrderBook[] books; // Null slots hold at most one position
+    private final boolean[] positionOpen;
+    private final boolean[] isLong;
+    private final double[] entryPrices;
+    private final double[] sizes;
+    private final double[] stopLossPrices;
+    private final double[] takeProfitPrices;
+    private final int[] entryIndices;
+    private final double[] maxAdverseExcursions;
+    private final double[] maxFavorableExcursions;
+    private final boolean[] exitScanned;
+    private final int[] exitIndices;
+    private final double[] exitPrices;
+    private final List<List<Double>> priceHistories; // Null unless tracing
+
+    // Position of a lane as its strategy sees it when updating the stop loss
+    private final Position position;
+
+    // Range extremes of the quotes hopping lanes find their exits & excursions on, loaded by the first of them, the
+    // closes' only once excursions on them are recorded
+    private SparseTable highs;
+    private SparseTable lows;
+    private SparseTable closeHighs;
+    private SparseTable closeLows;
+
+    private final BacktestResult[] results;
+
+    /**
+     * @param start        First bar of the run, the bars before it only warm the strategies up and their days aren't
+     *                     part of the run
+     * @param entrySignals Entries generated by a run only differing by exit parameters for each lane, null slots
+     *                     generate them
+     * @param exitScans    Exit scans shared with runs on the same quotes for each lane, null slots check exits bar
+     *                     per bar
+     * @param pruning      Constraints of the grid the lanes are part of, null when they aren't pruned
+     */
+    BacktestBatch(List<Quote> quotes, int start, TradingStrategy[] strategies, byte[][] entrySignals,
+                  ExitScan.Cache[] exitScans, MarketPhaseClassifier.MarketPhase phase, TradingParameters params,
+                  boolean storeTradeDetails, GridPruning pruning) {
+        int lanes = strategies.length;
+        this.quotes = quotes;
+        this.start = Math.min(start, quotes.size());
+        this.strategies = strategies;
+        this.exitScans = exitScans;
+        this.phase = phase;
+        this.params = params;
+
+        states = new StrategyState[lanes];
+        signalVectors = new SignalVector[lanes];
+        firstBars = new int[lanes];
+        metrics = new MetricsAccumulator[lanes];
+        completedTrades = new TradeLog[lanes];
+        constraints = new GridPruning.Run[lanes];
+        entriesLeft = new int[lanes];
+        availableFunds = new double[lanes];
+        dayStartAvailableFunds = new double[lanes];
+
+        books = new OrderBook[lanes];
+        positionOpen = new boolean[lanes];
+        isLong = new boolean[lanes];
+        entryPrices = new double[lanes];
+        sizes = new double[lanes];
+        stopLossPrices = new double[lanes];
+        takeProfitPrices = new double[lanes];
+        entryIndices = new int[lanes];
+        maxAdverseExcursions = new double[lanes];
+        maxFavorableExcursions = new double[lanes];
+        exitScanned = new boolean[lanes];
+        exitIndices = new int[lanes];
+        exitPrices = new double[lanes];
+        priceHistories = params.isTracePriceHistory() ? new ArrayList<>(lanes) : null;
+
+        position = Position.builder().marketPhase(phase).build();
+        results = new BacktestResult[lanes];
+
+        for (int lane = 0; lane < lanes; lane++) {
+            TradingStrategy strategy = strategies[lane];
+            states[lane] = strategy.createState();
+
+            // Signals that don't depend on the trades taken are generated for the whole series in one pass
+            signalVectors[lane] = !strategy.hasPathIndependentSignals() ? null :
+                    entrySignals[lane] != null ? strategy.generateSignals(quotes, states[lane], entrySignals[lane]) :
+                            strategy.generateSignals(quotes, states[lane]);
+
+            books[lane] = strategy.getMaxOpenPositions() > 1 ? new OrderBook(strategy.getMaxOpenPositions()) : null;
+
+            // Nothing can happen before the strategy's warm-up, no position is open and funds don't move
+            firstBars[lane] = Math.min(Math.max(strategy.getWarmUp(), this.start), quotes.size());
+
+            // Metrics are accounted for as trades close and days end, trades are only recorded to be reported
+            metrics[lane] = new MetricsAccumulator(params.getInitialCapital());
+            completedTrades[lane] = storeTradeDetails ? new TradeLog() : null;
+
+            // A pruned lane stops as soon as it can't satisfy the grid's constraints, the trades it can still take
+            // being bounded by the entry signals left, or by the bars left when signals are generated bar per bar
+            constraints[lane] = pruning != null ? pruning.newRun() : null;
+            entriesLeft[lane] = pruning != null ? countEntries(signalVectors[lane], firstBars[lane], quotes.size()) : 0;
+
+            availableFunds[lane] = params.getInitialCapital();
+            dayStartAvailableFunds[lane] = params.getInitialCapital();
+            if (priceHistories != null) {
+                priceHistories.add(null);
+            }
+        }
+    }
+
+    /**
+     * @return result of each lane, null for the lanes that were pruned
+     */
+    BacktestResult[] run() {
+        int[] running = new int[strategies.length];
+        int runningCount = 0;
+        int firstBar = quotes.size();
+        int[] dayOrdinals = dayOrdinals(quotes);
+        for (int lane = 0; lane < strategies.length; lane++) {
+            if (firstBars[lane] == quotes.size()) {
+                // Warming up through every bar, the lane goes through all the days without trading
+                passWarmUpDays(lane, dayOrdinals);
+                finish(lane, start < quotes.size() && dayOrdinals.length == quotes.size());
+            } else if (canHop(lane, dayOrdinals)) {
+                hop(lane, dayOrdinals);
+            } else {
+                passWarmUpDays(lane, dayOrdinals);
+                running[runningCount++] = lane;
+                firstBar = Math.min(firstBar, firstBars[lane]);
+            }
+        }
+
+        QuoteDays quoteDays = new QuoteDays();
+        long currentDay = QuoteDays.NO_DAY; // Day of the previous bar
+
+        for (int i = firstBar; i < quotes.size() && runningCount > 0; i++) {
+            Quote quote = quotes.get(i);
+
+            long quoteDay = quote.getTimestamp() != null ? quoteDays.epochDay(quote.getTimestamp().getTime()) :
+                    QuoteDays.NO_DAY;
+            boolean newDay = quoteDay != currentDay;
+
+            for (int r = 0; r < runningCount; r++) {
+                int lane = running[r];
+                if (i < firstBars[lane]) continue;
+
+                if (newDay) {
+                    // The lane's previous day is only over when the lane was running on it
+                    if (i > firstBars[lane] && currentDay != QuoteDays.NO_DAY && dayStartAvailableFunds[lane] > 0) {
+                        metrics[lane].addDailyReturn((availableFunds[lane] - dayStartAvailableFunds[lane]) /
+                                dayStartAvailableFunds[lane]);
+                    }
+                    dayStartAvailableFunds[lane] = availableFunds[lane];
+                }
+
+                if (step(lane, quote, i, quoteDay)) {
+                    running[r--] = running[--runningCount];
+                }
+            }
+
+            currentDay = quoteDay;
+        }
+
+        // Lanes still running went through the last bar
+        for (int r = 0; r < runningCount; r++) {
+            finish(running[r], currentDay != QuoteDays.NO_DAY);
+        }
+
+        return results;
+    }
+
+    /**
+     * Advance a lane by one bar, finishing it when its funds are depleted
+     *
+     * @return whether the lane stopped on this bar
+     */
+    private boolean step(int lane, Quote quote, int index, long quoteDay) {
+        TradingStrategy strategy = strategies[lane];
+        SignalVector signalVector = signalVectors[lane];
+
+        // Update the positions & check for their exits
+        if (books[lane] != null) {
+            updateBook(lane, quote, index);
+        } else if (positionOpen[lane]) {
+            positionOpen[lane] = !updatePosition(lane, quote, index);
+        }
+
+        // An exit signal closes every position left at the bar's close
+        if (signalVector == null && openPositions(lane) > 0) {
+            strategy.syncOpenPositions(netPositions(lane), states[lane]);
+            if (strategy.shouldExit(quotes, index, states[lane])) {
+                exitPositions(lane, quote);
+            }
+        }
+
+        if (constraints[lane] != null && constraints[lane].isHopeless(metrics[lane].getTrades(),
+                metrics[lane].getTrades() + openPositions(lane) + entriesLeft[lane],
+                metrics[lane].getMaxDrawdown())) {
+            return true;
+        }
+
+        if (availableFunds[lane] < params.getInitialCapital() * 0.01) {
+            log.debug("Stopping backtest - funds depleted to less than 1% of initial capital");
+            finish(lane, quoteDay != QuoteDays.NO_DAY);
+            return true;
+        }
+
+        // Check if we can open a new position when we have room for one
+        if ((books[lane] != null ? !books[lane].isFull() : !positionOpen[lane]) && index > 0) {
+            if (signalVector == null) {
+                strategy.syncOpenPositions(netPositions(lane), states[lane]);
+            }
+            int signal = signalVector != null ? signalVector.getSignals()[index] :
+                    strategy.generateSignal(quotes, index, states[lane]);
+
+            if (signal != 0) {
+                openPosition(lane, quote, index, signal > 0);
+
+                // The lane's position only staged it, the book holds it
+                if (books[lane] != null) {
+                    positionOpen[lane] = false;
+                    books[lane].open(isLong[lane], entryPrices[lane], sizes[lane], stopLossPrices[lane],
+                            takeProfitPrices[lane], index);
+                }
+            }
+        }
+
+        if (constraints[lane] != null && (signalVector == null || signalVector.getSignals()[index] != 0)) {
+            entriesLeft[lane]--;
+        }
+
+        return false;
+    }
+
+    private int openPositions(int lane) {
+        return books[lane] != null ? books[lane].size() : positionOpen[lane] ? 1 : 0;
+    }
+
+    // Open long positions minus open short ones
+    private int netPositions(int lane) {
+        return books[lane] != null ? books[lane].netSize() : positionOpen[lane] ? (isLong[lane] ? 1 : -1) : 0;
+    }
+
+    /**
+     * Fill the exit orders of the lane's book the bar reaches, take profits first so a position reaching both exits
+     * at its target like a lone one, then trail the stops of the positions left
+     */
+    private void updateBook(int lane, Quote quote, int index) {
+        OrderBook book = books[lane];
+        double highPrice = quote.getHigh();
+        double lowPrice = quote.getLow();
+        book.addBar(index, params.isIntrabarExcursions() ? lowPrice : quote.getClose(),
+                params.isIntrabarExcursions() ? highPrice : quote.getClose());
+
+        for (int slot; (slot = book.reachedTakeProfit(highPrice, lowPrice)) >= 0; ) {
+            exitBookPosition(lane, slot, quote, book.getTakeProfitPrice(slot));
+        }
+        for (int slot; (slot = book.reachedStopLoss(highPrice, lowPrice)) >= 0; ) {
+            exitBookPosition(lane, slot, quote, book.getStopLossPrice(slot));
+        }
+
+        // Every open position is asked for its stop unless stops never move
+        if (strategies[lane].hasFixedExits()) return;
+
+        for (int i = 0; i < book.size(); i++) {
+            int slot = book.slot(i);
+            loadPosition(lane, slot);
+            double newStopPrice = strategies[lane].updateStopLoss(positionOf(lane), quotes, index, states[lane]);
+
+            // Only update if the stop price improves position
+            if ((isLong[lane] && newStopPrice > stopLossPrices[lane]) ||
+                    (!isLong[lane] && newStopPrice < stopLossPrices[lane])) {
+                book.moveStopLoss(slot, newStopPrice);
+            }
+        }
+    }
+
+    private void exitBookPosition(int lane, int slot, Quote quote, double exitPrice) {
+        loadPosition(lane, slot);
+        recordTrade(lane, quote, exitPrice, exitPrice * sizes[lane] * params.getMakerFee());
+        books[lane].close(slot);
+    }
+
+    // Load a position of the lane's book in the lane's position, with its excursions up to the last bar of the book
+    private void loadPosition(int lane, int slot) {
+        OrderBook book = books[lane];
+        boolean isLong = book.isLong(slot);
+        this.isLong[lane] = isLong;
+        entryPrices[lane] = book.getEntryPrice(slot);
+        sizes[lane] = book.getSize(slot);
+        stopLossPrices[lane] = book.getStopLossPrice(slot);
+        takeProfitPrices[lane] = book.getTakeProfitPrice(slot);
+        entryIndices[lane] = book.getEntryIndex(slot);
+
+        maxAdverseExcursions[lane] = 0;
+        maxFavorableExcursions[lane] = 0;
+        double lowPrice = book.lowestSince(entryIndices[lane] + 1);
+        double highPrice = book.highestSince(entryIndices[lane] + 1);
+        if (!Double.isNaN(lowPrice)) {
+            addExcursions(lane, isLong ? lowPrice : highPrice, isLong ? highPrice : lowPrice);
+        }
+    }
+
+    // Only bars of entries & exits need visiting when neither the signals nor the stop depend on the bars in between
+    private boolean canHop(int lane, int[] dayOrdinals) {
+        return params.isTradeHopping() && quotes.size() <= MAX_HOPPING_BARS && dayOrdinals.length == quotes.size() &&
+                signalVectors[lane] != null && strategies[lane].hasFixedExits() && books[lane] == null &&
+                priceHistories == null;
+    }
+
+    /**
+     * Run a lane from event to event: from an entry signal to the first bar reaching the position's take profit or
+     * stop loss, then to the next signal. The lane ends exactly as if it had stepped through every bar: the days it
+     * jumps over have a return of zero, its funds are checked on the bar after each entry, the only time they drop,
+     * and a pruned lane is checked before each entry, on the trades it can still take then.
+     */
+    private void hop(int lane, int[] dayOrdinals) {
+        loadRangeExtremes();
+        exitScans[lane] = null;
+
+        int size = quotes.size();
+        int firstBar = firstBars[lane];
+        byte[] signals = signalVectors[lane].getSignals();
+        int[] signalIndices = signalVectors[lane].signalIndices();
+        int nextSignal = 0;
+        int from = Math.max(firstBar, 1); // First bar the next position can be opened on
+        int day = passWarmUpDays(lane, dayOrdinals);
+        int lastBar = size - 1; // Last bar the lane goes through
+
+        while (true) {
+            while (nextSignal < signalIndices.length && signalIndices[nextSignal] < from) nextSignal++;
+            if (nextSignal == signalIndices.length) break;
+
+            int entryIndex = signalIndices[nextSignal];
+            day = passDays(lane, day, dayOrdinals[entryIndex]);
+            if (constraints[lane] != null && constraints[lane].isHopeless(metrics[lane].getTrades(),
+                    metrics[lane].getTrades() + signalIndices.length - nextSignal, metrics[lane].getMaxDrawdown())) {
+                return;
+            }
+
+            openPosition(lane, quotes.get(entryIndex), entryIndex, signals[entryIndex] > 0);
+            findExit(lane, entryIndex + 1);
+
+            if (availableFunds[lane] < params.getInitialCapital() * 0.01 && entryIndex < lastBar) {
+                log.debug("Stopping backtest - funds depleted to less than 1% of initial capital");
+                lastBar = entryIndex + 1;
+                day = passDays(lane, day, dayOrdinals[lastBar]);
+                if (exitIndices[lane] == lastBar) {
+                    exitPosition(lane);
+                }
+                break;
+            }
+
+            if (exitIndices[lane] < 0) break;
+
+            day = passDays(lane, day, dayOrdinals[exitIndices[lane]]);
+            exitPosition(lane);
+            from = exitIndices[lane];
+        }
+
+        // Held to the end, the position went through every bar left up to the lane's last
+        if (positionOpen[lane]) {
+            trackExcursions(lane, entryIndices[lane] + 1, lastBar);
+        }
+        passDays(lane, day, dayOrdinals[lastBar]);
+        finish(lane, true);
+    }
+
+    private void loadRangeExtremes() {
+        if (highs != null) return;
+
+        highs = IndicatorCache.get(quotes, "hops:highs",
+                q -> SparseTable.max(q.stream().mapToDouble(Quote::getHigh).toArray()));
+        lows = IndicatorCache.get(quotes, "hops:lows",
+                q -> SparseTable.min(q.stream().mapToDouble(Quote::getLow).toArray()));
+    }
+
+    private void loadCloseExtremes() {
+        if (closeHighs != null) return;
+
+        closeHighs = IndicatorCache.get(quotes, "hops:closeHighs",
+                q -> SparseTable.max(q.stream().mapToDouble(Quote::getClose).toArray()));
+        closeLows = IndicatorCache.get(quotes, "hops:closeLows",
+                q -> SparseTable.min(q.stream().mapToDouble(Quote::getClose).toArray()));
+    }
+
+    /**
+     * Account for the days of the run ending before the lane's first bar, with a return of zero: nothing can happen
+     * before the warm-up, but they still are days of the run, as they are for a strategy without any. Days before
+     * the run's start aren't, the bars there only warm the strategy up.
+     *
+     * @return the day of the lane's first bar, its current day, or 0 when quotes have no days
+     */
+    private int passWarmUpDays(int lane, int[] dayOrdinals) {
+        if (dayOrdinals.length != quotes.size() || start == quotes.size()) return 0;
+
+        return passDays(lane, dayOrdinals[start], dayOrdinals[Math.min(firstBars[lane], quotes.size() - 1)]);
+    }
+
+    /**
+     * Account for the ends of the days between the lane's current day and the day given, funds not moving in
+     * between
+     *
+     * @return the day given, the lane's new current day
+     */
+    private int passDays(int lane, int day, int toDay) {
+        for (; day < toDay; day++) {
+            if (dayStartAvailableFunds[lane] > 0) {
+                metrics[lane].addDailyReturn((availableFunds[lane] - dayStartAvailableFunds[lane]) /
+                        dayStartAvailableFunds[lane]);
+            }
+            dayStartAvailableFunds[lane] = availableFunds[lane];
+        }
+        return day;
+    }
+
+    // First bar from the index reaching the take profit or the stop loss, which the take profit wins ties of
+    private void findExit(int lane, int from) {
+        boolean isLong = this.isLong[lane];
+        int takeProfitIndex = isLong ? highs.firstReaching(from, takeProfitPrices[lane]) :
+                lows.firstReaching(from, takeProfitPrices[lane]);
+        int stopLossIndex = isLong ? lows.firstReaching(from, stopLossPrices[lane]) :
+                highs.firstReaching(from, stopLossPrices[lane]);
+
+        exitScanned[lane] = true;
+        if (takeProfitIndex >= 0 && (stopLossIndex < 0 || takeProfitIndex <= stopLossIndex)) {
+            exitIndices[lane] = takeProfitIndex;
+            exitPrices[lane] = takeProfitPrices[lane];
+        } else {
+            exitIndices[lane] = stopLossIndex;
+            exitPrices[lane] = stopLossPrices[lane];
+        }
+    }
+
+    private void exitPosition(int lane) {
+        trackExcursions(lane, entryIndices[lane] + 1, exitIndices[lane]);
+        recordTrade(lane, quotes.get(exitIndices[lane]), exitPrices[lane],
+                exitPrices[lane] * sizes[lane] * params.getMakerFee());
+        positionOpen[lane] = false;
+    }
+
+    private void openPosition(int lane, Quote quote, int index, boolean isLong) {
+        TradingStrategy strategy = strategies[lane];
+        SignalVector signalVector = signalVectors[lane];
+
+        double stopLossPrice = signalVector != null ? signalVector.getStopLossPrices()[index] :
+                strategy.calculateStopLossPrice(isLong, quotes, index, states[lane]);
+
+        double entryPrice = quote.getClose();
+        double positionSize = strategy.calculatePositionSize(availableFunds[lane], quote, stopLossPrice);
+
+        double takeProfitPrice = signalVector != null ? signalVector.getTakeProfitPrices()[index] :
+                strategy.calculateTakeProfitPrice(isLong, quotes, index, states[lane]);
+
+        // Open the position
+        entryPrices[lane] = entryPrice;
+        sizes[lane] = positionSize;
+        stopLossPrices[lane] = stopLossPrice;
+        takeProfitPrices[lane] = takeProfitPrice;
+        this.isLong[lane] = isLong;
+        entryIndices[lane] = index;
+        exitScanned[lane] = false;
+        maxAdverseExcursions[lane] = 0;
+        maxFavorableExcursions[lane] = 0;
+        if (priceHistories != null) {
+            priceHistories.set(lane, new ArrayList<>());
+        }
+
+        if (exitScans[lane] != null && strategy.hasFixedExits() && books[lane] == null) {
+            scanExit(lane, exitScans[lane].get(index, isLong, stopLossPrice));
+        }
+
+        // Account for fees
+        double entryFee = entryPrice * positionSize * params.getTakerFee();
+        availableFunds[lane] -= entryFee;
+
+        positionOpen[lane] = true;
+    }
+
+    /**
+     * @return whether the position exited on this bar
+     */
+    private boolean updatePosition(int lane, Quote quote, int index) {
+        double highPrice = quote.getHigh();
+        double lowPrice = quote.getLow();
+        double closePrice = quote.getClose();
+        boolean isLong = this.isLong[lane];
+
+        trackExcursions(lane, quote);
+
+        boolean exitPosition = false;
+        double exitPrice = closePrice;
+
+        // Exit already found when the position was opened
+        if (exitScanned[lane]) {
+            exitPosition = index == exitIndices[lane];
+            exitPrice = exitPrices[lane];
+        }
+
+        // Check for take profit hit
+        else if ((isLong && highPrice >= takeProfitPrices[lane]) ||
+                (!isLong && lowPrice <= takeProfitPrices[lane])) {
+            exitPosition = true;
+            exitPrice = takeProfitPrices[lane];
+        }
+
+        // Check for stop loss hit
+        else if ((isLong && lowPrice <= stopLossPrices[lane]) ||
+                (!isLong && highPrice >= stopLossPrices[lane])) {
+            exitPosition = true;
+            exitPrice = stopLossPrices[lane];
+        }
+
+        if (exitPosition) {
+            // Account for fees
+            double exitFee = exitPrice * sizes[lane] * params.getMakerFee();
+
+            recordTrade(lane, quote, exitPrice, exitFee);
+        } else if (!exitScanned[lane]) {
+            // Update trailing stop using strategy
+            double newStopPrice = strategies[lane].updateStopLoss(positionOf(lane), quotes, index, states[lane]);
+
+            // Only update if the stop price improves position
+            if ((isLong && newStopPrice > stopLossPrices[lane]) ||
+                    (!isLong && newStopPrice < stopLossPrices[lane])) {
+                stopLossPrices[lane] = newStopPrice;
+            }
+        }
+
+        return exitPosition;
+    }
+
+    private void scanExit(int lane, ExitScan scan) {
+        int takeProfitIndex = scan.takeProfitIndex(takeProfitPrices[lane]);
+
+        exitScanned[lane] = true;
+        if (takeProfitIndex >= 0) {
+            exitIndices[lane] = takeProfitIndex;
+            exitPrices[lane] = takeProfitPrices[lane];
+        } else {
+            exitIndices[lane] = scan.getStopLossIndex();
+            exitPrices[lane] = stopLossPrices[lane];
+        }
+    }
+
+    // Running excursions of every bar the position is held through, its exit bar included
+    private void trackExcursions(int lane, Quote quote) {
+        boolean isLong = this.isLong[lane];
+        double adversePrice = quote.getClose();
+        double favorablePrice = quote.getClose();
+        if (params.isIntrabarExcursions()) {
+            adversePrice = isLong ? quote.getLow() : quote.getHigh();
+            favorablePrice = isLong ? quote.getHigh() : quote.getLow();
+        }
+
+        addExcursions(lane, adversePrice, favorablePrice);
+
+        if (priceHistories != null) {
+            priceHistories.get(lane).add(quote.getClose());
+        }
+    }
+
+    private void addExcursions(int lane, double adversePrice, double favorablePrice) {
+        double entryPrice = entryPrices[lane];
+        boolean isLong = this.isLong[lane];
+        double adverse = isLong ?
+                (adversePrice - entryPrice) / entryPrice :
+                (entryPrice - adversePrice) / entryPrice;
+        double favorable = isLong ?
+                (favorablePrice - entryPrice) / entryPrice :
+                (entryPrice - favorablePrice) / entryPrice;
+        maxAdverseExcursions[lane] = Math.min(maxAdverseExcursions[lane], adverse);
+        maxFavorableExcursions[lane] = Math.max(maxFavorableExcursions[lane], favorable);
+    }
+
+    // Excursions of the bars between the indices, included, taken at once on the range extremes. They only end up in
+    // the trade details, so runs not storing them skip them
+    private void trackExcursions(int lane, int from, int to) {
+        if (from > to || completedTrades[lane] == null) return;
+
+        if (!params.isIntrabarExcursions()) {
+            loadCloseExtremes();
+        }
+        boolean isLong = this.isLong[lane];
+        SparseTable adverseExtremes = params.isIntrabarExcursions() ? (isLong ? lows : highs) :
+                (isLong ? closeLows : closeHighs);
+        SparseTable favorableExtremes = params.isIntrabarExcursions() ? (isLong ? highs : lows) :
+                (isLong ? closeHighs : closeLows);
+        addExcursions(lane, adverseExtremes.get(from, to), favorableExtremes.get(from, to));
+    }
+
+    /**
+     * Close every open position of the lane at the bar's close, the last opened first in a book
+     */
+    private void exitPositions(int lane, Quote quote) {
+        double exitPrice = quote.getClose();
+        if (books[lane] == null) {
+            recordTrade(lane, quote, exitPrice, exitPrice * sizes[lane] * params.getTakerFee());
+            positionOpen[lane] = false;
+            return;
+        }
+
+        while (books[lane].size() > 0) {
+            int slot = books[lane].slot(books[lane].size() - 1);
+            loadPosition(lane, slot);
+            recordTrade(lane, quote, exitPrice, exitPrice * sizes[lane] * params.getTakerFee());
+            books[lane].close(slot);
+        }
+    }
+
+    /**
+     * Close the position on the last quote
+     */
+    private void closePosition(int lane, Quote quote) {
+        double closePrice = quote.getClose();
+        double highPrice = quote.getHigh();
+        double lowPrice = quote.getLow();
+        boolean isLong = this.isLong[lane];
+
+        // Determine a more realistic exit price
+        double exitPrice = closePrice;
+
+        // Check if target would have been hit during the candle
+        if ((isLong && highPrice >= takeProfitPrices[lane]) ||
+                (!isLong && lowPrice <= takeProfitPrices[lane])) {
+            exitPrice = takeProfitPrices[lane];
+        }
+        // Check if stop would have been hit during the candle
+        else if ((isLong && lowPrice <= stopLossPrices[lane]) ||
+                (!isLong && highPrice >= stopLossPrices[lane])) {
+            exitPrice = stopLossPrices[lane];
+        }
+
+        double exitFee = exitPrice * sizes[lane] * params.getTakerFee();
+
+        recordTrade(lane, quote, exitPrice, exitFee);
+    }
+
+    /**
+     * Account for the trade of the lane's position exiting at the price, recording it when the trades are stored
+     */
+    private void recordTrade(int lane, Quote exitQuote, double exitPrice, double exitFee) {
+        Quote entryQuote = quotes.get(entryIndices[lane]);
+        double entryPrice = entryPrices[lane];
+        double profit = isLong[lane] ?
+                (exitPrice - entryPrice) / entryPrice :
+                (entryPrice - exitPrice) / entryPrice;
+        double profitAmount = entryPrice * sizes[lane] * profit - exitFee;
+
+        metrics[lane].addTrade(profit, profitAmount,
+                entryQuote.getTimestamp() != null ? entryQuote.getTimestamp().getTime() : TradeLog.NO_TIME,
+                exitQuote.getTimestamp() != null ? exitQuote.getTimestamp().getTime() : TradeLog.NO_TIME);
+
+        if (completedTrades[lane] != null) {
+            completedTrades[lane].add(
+                    entryQuote.getTimestamp(),
+                    exitQuote.getTimestamp(),
+                    entryPrice,
+                    exitPrice,
+                    sizes[lane],
+                    profit,
+                    profitAmount,
+                    isLong[lane],
+                    maxAdverseExcursions[lane],
+                    maxFavorableExcursions[lane],
+                    phase
+            );
+        }
+    }
+
+    private Position positionOf(int lane) {
+        position.setEntryPrice(entryPrices[lane]);
+        position.setSize(sizes[lane]);
+        position.setCurrentStopLossPrice(stopLossPrices[lane]);
+        position.setTakeProfitPrice(takeProfitPrices[lane]);
+        position.setLong(isLong[lane]);
+        position.setEntryIndex(entryIndices[lane]);
+        position.setPriceHistory(priceHistories != null ? priceHistories.get(lane) : null);
+        position.setMaxAdverseExcursion(maxAdverseExcursions[lane]);
+        position.setMaxFavorableExcursion(maxFavorableExcursions[lane]);
+        position.setExitScanned(exitScanned[lane]);
+        position.setExitIndex(exitIndices[lane]);
+        position.setExitPrice(exitPrices[lane]);
+        return position;
+    }
+
+    /**
+     * Close the lane's position and set its result
+     *
+     * @param dayRunning Whether the lane went through a day, the last one, whose return isn't accounted for yet
+     */
+    private void finish(int lane, boolean dayRunning) {
+        // Close the remaining open positions, the last opened first in a book
+        if (positionOpen[lane] && !quotes.isEmpty()) {
+            closePosition(lane, quotes.get(quotes.size() - 1));
+        }
+        while (books[lane] != null && books[lane].size() > 0) {
+            int slot = books[lane].slot(books[lane].size() - 1);
+            loadPosition(lane, slot);
+            closePosition(lane, quotes.get(quotes.size() - 1));
+            books[lane].close(slot);
+        }
+
+        // Calculate final day's return
+        if (dayRunning) {
+            metrics[lane].addDailyReturn((availableFunds[lane] - dayStartAvailableFunds[lane]) /
+                    dayStartAvailableFunds[lane]);
+        }
+
+        if (constraints[lane] != null && constraints[lane].isHopeless(metrics[lane].getTrades(),
+                metrics[lane].getTrades(), metrics[lane].getMaxDrawdown())) {
+            return;
+        }
+
+        BacktestResult result = metrics[lane].toResult(availableFunds[lane]);
+
+        // Track trades by phase for reporting
+        Map<MarketPhaseClassifier.MarketPhase, BacktestResult> phaseResults = new HashMap<>();
+        phaseResults.put(phase, result);
+        result.setPhaseResults(phaseResults);
+        result.setStrategyName(strategies[lane].getClass().getSimpleName());
+
+        // Trade objects are only created for the runs keeping their details
+        if (completedTrades[lane] != null && completedTrades[lane].size() > 0) {
+            result.setTrades(completedTrades[lane].asList());
+        }
+
+        results[lane] = result;
+    }
+
+    /**
+     * Ordinal of the day of each quote, counted from the first quote's, empty when a quote has no timestamp
+     */
+    private static int[] dayOrdinals(List<Quote> quotes) {
+        return IndicatorCache.get(quotes, "hops:days", q -> {
+            QuoteDays quoteDays = new QuoteDays();
+            int[] ordinals = new int[q.size()];
+            long currentDay = QuoteDays.NO_DAY;
+            int ordinal = -1;
+            for (int i = 0; i < q.size(); i++) {
+                if (q.get(i).getTimestamp() == null) return new int[0];
+
+                long day = quoteDays.epochDay(q.get(i).getTimestamp().getTime());
+                if (day != currentDay) ordinal++;
+                currentDay = day;
+                ordinals[i] = ordinal;
+            }
+            return ordinals;
+        });
+    }
+
+    private static int countEntries(SignalVector signalVector, int from, int to) {
+        if (signalVector == null) {
+            return to - from;
+        }
+
+        int entries = 0;
+        byte[] signals = signalVector.getSignals();
+        for (int i = from; i < to; i++) {
+            if (signals[i] != 0) entries++;
+        }
+        return entries;
+    }
+}
@@ -1,8 +1,10 @@
 package ch.xavier.backtester.backtesting;
 
 import ch.xavier.backtester.backtesting.model.*;
+import ch.xavier.backtester.indicator.series.IndicatorCache;
 import ch.xavier.backtester.marketphase.MarketPhaseClassifier;
 import ch.xavier.backtester.quote.Quote;
+import ch.xavier.backtester.strategy.ParameterGrid;
 import ch.xavier.backtester.strategy.StrategiesFactory;
 import ch.xavier.backtester.strategy.TradingStrategy;
 import lombok.extern.slf4j.Slf4j;
@@ -11,19 +13,17 @@ import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Schedulers;
 
-import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.ToIntFunction;
 import java.util.stream.Collectors;
 
 @Service
 @Slf4j
 public class BacktesterService {
 
-
-    private static final ThreadLocal<SimpleDateFormat> QUOTE_DAY_FORMAT =
-            ThreadLocal.withInitial(() -> new SimpleDateFormat("yyyy-MM-dd"));
-
     /**
      * Performs grid search backtesting across all parameter combinations
      *
@@ -41,24 +41,16 @@ public class BacktesterService {
             PerformanceMetricType metricType,
             boolean storeTradeDetails) {
 
-        AtomicInteger counter = new AtomicInteger(0);
-
-        return Flux.fromIterable(StrategiesFactory.generateAllStrategyParameters(parametersGrid))
-                .flatMap(combination -> {
-                    int currentTimer = counter.incrementAndGet();
-                    if (currentTimer % 1000 == 0) {
-                        log.info("Counter:{}", currentTimer);
-                    }
+        ParameterGrid<?> grid = StrategiesFactory.compileParametersGrid(strategyName, parametersGrid);
 
-                    TradingStrategy strategy = StrategiesFactory.getStrategy(strategyName, params, combination);
-                    return backtest(quotes, strategy, MarketPhaseClassifier.MarketPhase.UNKNOWN, params,
-                            storeTradeDetails)
-                            .map(result -> new ParameterPerformance(
-                                    combination,
-                                    result,
-                                    calculateMetricValue(result, metricType)
-                            ));
-                })
+        return backtestGrid(grid, combination -> StrategiesFactory.getStrategy(strategyName, params, grid,
+                        grid.indices(combination)), strategy -> quotes, strategy -> 0, params, storeTradeDetails,
+                        params.isPruneGridCombinations() ? GridPruning.of(params) : null)
+                .map(run -> new ParameterPerformance(
+                        grid.parameters(run.combination()),
+                        run.result(),
+                        calculateMetricValue(run.result(), metricType)
+                ))
                 .collectSortedList(Comparator.comparing(ParameterPerformance::getPerformanceMetric).reversed());
     }
 
@@ -134,430 +126,131 @@ public class BacktesterService {
 
 
     /**
-     * Performs backtest for a specific strategy in a specific market phase
+     * Backtests every combination of a grid, in no particular order. Combinations only differing by exit parameters
+     * share the entry signals of path independent strategies, generated once for all of them, so only their stops,
+     * targets and fills are simulated again. They also share the exit scans of their entries, so take profits only
+     * differing by the risk/reward ratio are found in one pass.
      *
-     * @param quotes   List of quotes for backtesting
-     * @param strategy Trading strategy to test
-     * @param phase    Market phase classification
-     * @param params   Trading parameters
-     * @return Backtest result
+     * @param strategies Strategy of each combination
+     * @param quotes     Quotes each strategy is backtested on, entries are only shared on the same list
+     * @param starts     First bar of each strategy's run on its quotes, the bars before it only warm it up
+     * @param pruning    Constraints the runs are abandoned on, pruned runs have no result, null to run them all
      */
-    public Mono<BacktestResult> backtest(List<Quote> quotes, TradingStrategy strategy,
-                                         MarketPhaseClassifier.MarketPhase phase, TradingParameters params,
-                                         boolean storeTradeDetails) {
-        return Mono.fromCallable(() -> executeBacktest(quotes, strategy, phase, params, storeTradeDetails))
-                .subscribeOn(Schedulers.parallel());
-    }
-
-    /**
-     * Core backtesting logic - synchronous method called from reactive wrappers
-     */
-    private BacktestResult executeBacktest(List<Quote> quotes, TradingStrategy strategy,
-                                           MarketPhaseClassifier.MarketPhase phase, TradingParameters params,
-                                           boolean storeTradeDetails) {
-        double availableFunds = params.getInitialCapital();
-        double maxAccumulatedFunds = availableFunds;
-
-        List<Position> openPositions = new ArrayList<>();
-        List<Trade> completedTrades = new ArrayList<>();
-
-        Map<String, Double> dailyReturns = new HashMap<>();
-        String currentDay = "";
-        double dayStartAvailableFunds = availableFunds;
-
-        for (int i = 0; i < quotes.size(); i++) {
-            Quote quote = quotes.get(i);
-
-            String quoteDay = "";
-            if (quote.getTimestamp() != null) {
-                try {
-                    quoteDay = QUOTE_DAY_FORMAT.get().format(quote.getTimestamp());
-                } catch (Exception e) {
-                    log.error("Invalid timestamp for quote at index {}: {}", i, quote);
-                    continue; // Skip processing this quote
-                }
-            }
-
-            if (!quoteDay.equals(currentDay)) {
-                if (!currentDay.isEmpty() && dayStartAvailableFunds > 0) {
-                    dailyReturns.put(currentDay, (availableFunds - dayStartAvailableFunds) / dayStartAvailableFunds);
-                }
-                currentDay = quoteDay;
-                dayStartAvailableFunds = availableFunds;
-            }
-
-            // Update positions & check for exits
-            updatePositions(strategy, openPositions, quote, quotes, i, completedTrades, params);
-
-            if (availableFunds < params.getInitialCapital() * 0.01) {
-                log.debug("Stopping backtest - funds depleted to less than 1% of initial capital");
-                break; // Exit the loop
-            }
-
-            // Check if we can open a new position when we have none open
-            if (openPositions.isEmpty() && i > 0) {
-                int signal = strategy.generateSignal(quotes, i);
-
-                if (signal != 0) {
-                    boolean isLong = signal > 0;
-
-                    double stopLossPrice = strategy.calculateStopLossPrice(isLong, quotes, i);
-
-                    double entryPrice = quote.getClose();
-                    double positionSize = strategy.calculatePositionSize(availableFunds, quote, stopLossPrice);
-
-                    double takeProfitPrice = strategy.calculateTakeProfitPrice(isLong, quotes, i);
-
-                    // Create position
-                    Position position = Position.builder()
-                            .entryPrice(entryPrice)
-                            .size(positionSize)
-                            .currentStopLossPrice(stopLossPrice)
-                            .takeProfitPrice(takeProfitPrice)
-                            .isLong(isLong)
-                            .entryIndex(i)
-                            .marketPhase(phase)
-                            .priceHistory(new ArrayList<>())
-                            .build();
-
-                    // Account for fees
-                    double entryFee = entryPrice * positionSize * params.getTakerFee();
-                    availableFunds -= entryFee;
-
-                    openPositions.add(position);
-                }
-            }
-
-            // Update equity peak for drawdown calculation
-            if (availableFunds > maxAccumulatedFunds) {
-                maxAccumulatedFunds = availableFunds;
-            }
-        }
-
-        // Close remaining open positions
-        if (!openPositions.isEmpty() && !quotes.isEmpty()) {
-            Quote lastQuote = quotes.get(quotes.size() - 1);
-            closeAllPositions(openPositions, lastQuote, quotes, completedTrades, params);
-        }
-
-        // Calculate final day's return
-        if (!currentDay.isEmpty()) {
-            dailyReturns.put(currentDay, (availableFunds - dayStartAvailableFunds) / dayStartAvailableFunds);
-        }
-
-        // Calculate metrics
-        BacktestResult result = calculateResults(completedTrades, availableFunds, params.getInitialCapital());
-
-        // Calculate Sharpe & Sortino using daily returns
-        if (!dailyReturns.isEmpty()) {
-            double[] sharpeSortino = calculateSharpeAndSortino(dailyReturns);
-            result.setSharpeRatio(sharpeSortino[0]);
-            result.setSortinoRatio(sharpeSortino[1]);
-        }
-
-        // Track trades by phase for reporting
-        Map<MarketPhaseClassifier.MarketPhase, BacktestResult> phaseResults = new HashMap<>();
-        phaseResults.put(phase, result);
-        result.setPhaseResults(phaseResults);
-        result.setStrategyName(strategy.getClass().getSimpleName());
+    public Flux<CombinationResult> backtestGrid(ParameterGrid<?> grid, IntFunction<TradingStrategy> strategies,
+                                                Function<TradingStrategy, List<Quote>> quotes,
+                                                ToIntFunction<TradingStrategy> starts,
+                                                TradingParameters params, boolean storeTradeDetails,
+                                                GridPruning pruning) {
+        AtomicInteger counter = new AtomicInteger(0);
 
-        if (!storeTradeDetails) {
-            result.setTrades(null); // Don't store trade details
-        }
+        // Few entry combinations are in flight at once, so few entry signals are held, their exits run in parallel
+        return Flux.range(0, grid.entrySize())
+                .flatMap(entry -> {
+                    if (grid.exitSize() == 1) {
+                        return backtestCombination(grid.combination(entry, 0), strategies, quotes, starts, null, null,
+                                null, params, storeTradeDetails, pruning, counter);
+                    }
 
-        if (!currentDay.isEmpty() && dayStartAvailableFunds > 0) {
-            dailyReturns.put(currentDay, (availableFunds - dayStartAvailableFunds) / dayStartAvailableFunds);
-        }
+                    TradingStrategy first = strategies.apply(grid.combination(entry, 0));
+                    List<Quote> entryQuotes = quotes.apply(first);
+                    ExitScan.Cache exitScans = new ExitScan.Cache(entryQuotes);
+                    if (!first.hasPathIndependentSignals()) {
+                        return Flux.range(0, grid.exitSize()).flatMap(exit -> backtestCombination(
+                                grid.combination(entry, exit), strategies, quotes, starts, entryQuotes, null,
+                                exitScans, params, storeTradeDetails, pruning, counter));
+                    }
 
-        return result;
+                    return Mono.fromCallable(() -> IndicatorCache.withPrecision(params.getColumnPrecision(),
+                                    () -> first.generateSignals(entryQuotes, first.createState()).getSignals()))
+                            .subscribeOn(Schedulers.parallel())
+                            .flatMapMany(entrySignals -> Flux.range(0, grid.exitSize()).flatMap(exit ->
+                                    backtestCombination(grid.combination(entry, exit), strategies, quotes,
+                                            starts, entryQuotes, entrySignals, exitScans, params, storeTradeDetails,
+                                            pruning, counter)));
+                }, Schedulers.DEFAULT_POOL_SIZE)
+                .doOnComplete(() -> {
+                    if (pruning != null) {
+                        log.info("Pruned {} of {} combinations: {} on drawdown, {} on trades, {} out of the top",
+                                pruning.getPruned(), grid.size(), pruning.getPruned(GridPruning.Reason.DRAWDOWN),
+                                pruning.getPruned(GridPruning.Reason.TRADES),
+                                pruning.getPruned(GridPruning.Reason.SCORE));
+                    }
+                });
     }
 
-    private void updatePositions(TradingStrategy strategy, List<Position> positions, Quote quote,
-                                 List<Quote> quotes, int index, List<Trade> completedTrades, TradingParameters params) {
-        double highPrice = quote.getHigh();
-        double lowPrice = quote.getLow();
-        double closePrice = quote.getClose();
-
-        Iterator<Position> iterator = positions.iterator();
-
-        while (iterator.hasNext()) {
-            Position position = iterator.next();
-            position.getPriceHistory().add(closePrice);
-
-            boolean exitPosition = false;
-            double exitPrice = closePrice;
-
-            // Check for take profit hit
-            if ((position.isLong() && highPrice >= position.getTakeProfitPrice()) ||
-                    (!position.isLong() && lowPrice <= position.getTakeProfitPrice())) {
-                exitPosition = true;
-                exitPrice = position.getTakeProfitPrice();
-            }
-
-            // Check for stop loss hit
-            else if ((position.isLong() && lowPrice <= position.getCurrentStopLossPrice()) ||
-                    (!position.isLong() && highPrice >= position.getCurrentStopLossPrice())) {
-                exitPosition = true;
-                exitPrice = position.getCurrentStopLossPrice();
-            }
-
-            if (exitPosition) {
-                double profit = position.isLong() ?
-                        (exitPrice - position.getEntryPrice()) / position.getEntryPrice() :
-                        (position.getEntryPrice() - exitPrice) / position.getEntryPrice();
-
-                // Account for fees
-                double exitFee = exitPrice * position.getSize() * params.getMakerFee();
-
-                // Add trade
-                completedTrades.add(new Trade(
-                        quotes.get(position.getEntryIndex()).getTimestamp(),
-                        quote.getTimestamp(),
-                        position.getEntryPrice(),
-                        exitPrice,
-                        position.getSize(),
-                        profit,
-                        position.getEntryPrice() * position.getSize() * profit - exitFee,
-                        position.isLong(),
-                        calculateMAE(position.getPriceHistory(), position.isLong(), position.getEntryPrice()),
-                        calculateMFE(position.getPriceHistory(), position.isLong(), position.getEntryPrice()),
-                        position.getMarketPhase()
-                ));
-
-                // Remove position
-                iterator.remove();
-            } else {
-                // Update trailing stop using strategy
-                double newStopPrice = strategy.updateStopLoss(position, quotes, index);
-
-                // Only update if the stop price improves position
-                if ((position.isLong() && newStopPrice > position.getCurrentStopLossPrice()) ||
-                        (!position.isLong() && newStopPrice < position.getCurrentStopLossPrice())) {
-                    position.setCurrentStopLossPrice(newStopPrice);
-                }
-            }
+    private Mono<CombinationResult> backtestCombination(int combination, IntFunction<TradingStrategy> strategies,
+                                                        Function<TradingStrategy, List<Quote>> quotes,
+                                                        ToIntFunction<TradingStrategy> starts,
+                                                        List<Quote> entryQuotes, byte[] entrySignals,
+                                                        ExitScan.Cache exitScans, TradingParameters params,
+                                                        boolean storeTradeDetails, GridPruning pruning,
+                                                        AtomicInteger counter) {
+        int currentTimer = counter.incrementAndGet();
+        if (currentTimer % 1000 == 0) {
+            log.info("Counter:{}", currentTimer);
         }
-    }
 
-    private void closeAllPositions(List<Position> positions, Quote quote, List<Quote> allQuotes,
-                                   List<Trade> completedTrades, TradingParameters params) {
-        double closePrice = quote.getClose();
-        double highPrice = quote.getHigh();
-        double lowPrice = quote.getLow();
-
-        for (Position position : positions) {
-            // Determine a more realistic exit price
-            double exitPrice = closePrice;
-
-            // Check if target would have been hit during the candle
-            if ((position.isLong() && highPrice >= position.getTakeProfitPrice()) ||
-                    (!position.isLong() && lowPrice <= position.getTakeProfitPrice())) {
-                exitPrice = position.getTakeProfitPrice();
-            }
-            // Check if stop would have been hit during the candle
-            else if ((position.isLong() && lowPrice <= position.getCurrentStopLossPrice()) ||
-                    (!position.isLong() && highPrice >= position.getCurrentStopLossPrice())) {
-                exitPrice = position.getCurrentStopLossPrice();
-            }
-
-            double profit = position.isLong() ?
-                    (exitPrice - position.getEntryPrice()) / position.getEntryPrice() :
-                    (position.getEntryPrice() - exitPrice) / position.getEntryPrice();
-
-            double exitFee = exitPrice * position.getSize() * params.getTakerFee();
-
-            completedTrades.add(new Trade(
-                    allQuotes.get(position.getEntryIndex()).getTimestamp(),
-                    quote.getTimestamp(),
-                    position.getEntryPrice(),
-                    exitPrice,
-                    position.getSize(),
-                    profit,
-                    position.getEntryPrice() * position.getSize() * profit - exitFee,
-                    position.isLong(),
-                    calculateMAE(position.getPriceHistory(), position.isLong(), position.getEntryPrice()),
-                    calculateMFE(position.getPriceHistory(), position.isLong(), position.getEntryPrice()),
-                    position.getMarketPhase()
-            ));
-        }
+        TradingStrategy strategy = strategies.apply(combination);
+        List<Quote> strategyQuotes = quotes.apply(strategy);
+        boolean shared = strategyQuotes == entryQuotes;
 
-        positions.clear();
+        return Mono.fromCallable(() -> executeBacktest(strategyQuotes, starts.applyAsInt(strategy), strategy,
+                        MarketPhaseClassifier.MarketPhase.UNKNOWN, params, storeTradeDetails,
+                        shared ? entrySignals : null, shared ? exitScans : null, pruning))
+                .subscribeOn(Schedulers.parallel())
+                .doOnNext(result -> {
+                    if (pruning != null) pruning.offer(result);
+                })
+                .map(result -> new CombinationResult(combination, result));
     }
 
-    private double calculateMAE(List<Double> priceHistory, boolean isLong, double entryPrice) {
-        // Same implementation as before
-        double mae = 0;
-        for (double price : priceHistory) {
-            double excursion = isLong ?
-                    (price - entryPrice) / entryPrice :
-                    (entryPrice - price) / entryPrice;
-            mae = Math.min(mae, excursion);
-        }
-        return mae;
+    public record CombinationResult(int combination, BacktestResult result) {
     }
 
-    private double calculateMFE(List<Double> priceHistory, boolean isLong, double entryPrice) {
-        // Same implementation as before
-        double mfe = 0;
-        for (double price : priceHistory) {
-            double excursion = isLong ?
-                    (price - entryPrice) / entryPrice :
-                    (entryPrice - price) / entryPrice;
-            mfe = Math.max(mfe, excursion);
-        }
-        return mfe;
+    /**
+     * Performs backtest for a specific strategy in a specific market phase
+     *
+     * @param quotes   List of quotes for backtesting
+     * @param strategy Trading strategy to test
+     * @param phase    Market phase classification
+     * @param params   Trading parameters
+     * @return Backtest result
+     */
+    public Mono<BacktestResult> backtest(List<Quote> quotes, TradingStrategy strategy,
+                                         MarketPhaseClassifier.MarketPhase phase, TradingParameters params,
+                                         boolean storeTradeDetails) {
+        return backtest(quotes, 0, strategy, phase, params, storeTradeDetails);
     }
 
-    private double[] calculateSharpeAndSortino(Map<String, Double> dailyReturns) {
-        if (dailyReturns == null || dailyReturns.isEmpty()) {
-            return new double[]{0.0, 0.0};
-        }
-
-        // Calculate mean return
-        double sum = 0.0;
-        for (Double ret : dailyReturns.values()) {
-            if (!Double.isNaN(ret) && !Double.isInfinite(ret)) {
-                sum += ret;
-            }
-        }
-        double mean = dailyReturns.size() > 0 ? sum / dailyReturns.size() : 0.0;
-
-        // Calculate standard deviation
-        double squaredSum = 0.0;
-        for (Double ret : dailyReturns.values()) {
-            if (!Double.isNaN(ret) && !Double.isInfinite(ret)) {
-                squaredSum += Math.pow(ret - mean, 2);
-            }
-        }
-        double variance = dailyReturns.size() > 0 ? squaredSum / dailyReturns.size() : 0.0;
-        double stdDev = Math.sqrt(variance);
-
-        // Calculate downside deviation
-        double downsideSquaredSum = 0.0;
-        int negativeReturnsCount = 0;
-        for (Double ret : dailyReturns.values()) {
-            if (!Double.isNaN(ret) && !Double.isInfinite(ret) && ret < 0) {
-                downsideSquaredSum += Math.pow(ret, 2);
-                negativeReturnsCount++;
-            }
-        }
-
-        // Prevent division by zero
-        double downsideDeviation = negativeReturnsCount > 0 ?
-                Math.sqrt(downsideSquaredSum / dailyReturns.size()) : 0.00001;
-
-        double dailyRiskFree = 0.02 / 365; // Annualized 2% risk-free rate converted to daily
-
-        // Calculate ratios with safety checks
-        double sharpeRatio = stdDev > 0 ?
-                (mean - dailyRiskFree) / stdDev * Math.sqrt(252) : 0;
-        double sortinoRatio = downsideDeviation > 0 ?
-                (mean - dailyRiskFree) / downsideDeviation * Math.sqrt(252) : 0;
-
-        // Guard against NaN/Infinity
-        sharpeRatio = Double.isNaN(sharpeRatio) || Double.isInfinite(sharpeRatio) ? 0 : sharpeRatio;
-        sortinoRatio = Double.isNaN(sortinoRatio) || Double.isInfinite(sortinoRatio) ? 0 : sortinoRatio;
-
-        return new double[]{sharpeRatio, sortinoRatio};
+    /**
+     * Performs backtest for a specific strategy from a bar of the quotes on, the bars before it only warming the
+     * strategy up: no position is opened on them and their days aren't part of the returns
+     *
+     * @param start First bar of the backtest
+     */
+    public Mono<BacktestResult> backtest(List<Quote> quotes, int start, TradingStrategy strategy,
+                                         MarketPhaseClassifier.MarketPhase phase, TradingParameters params,
+                                         boolean storeTradeDetails) {
+        return Mono.fromCallable(() -> executeBacktest(quotes, start, strategy, phase, params, storeTradeDetails,
+                        null, null, null))
+                .subscribeOn(Schedulers.parallel());
     }
 
-    private BacktestResult calculateResults(List<Trade> trades, double finalEquity, double initialCapital) {
-        if (trades == null || trades.isEmpty()) {
-            return BacktestResult.builder()
-                    .finalFunds(finalEquity)
-                    .totalReturn(0)
-                    .winRate(0)
-                    .profitFactor(0)
-                    .totalTrades(0)
-                    .maxDrawdown(0)
-                    .sharpeRatio(0)
-                    .sortinoRatio(0)
-                    .build();
-        }
-
-        int winningCount = 0;
-        int losingCount = 0;
-        double totalProfit = 0;
-        double totalLoss = 0;
-        double maxDrawdown = 0;
-        double peak = Math.max(initialCapital, 0.00001); // Ensure non-zero peak
-        double equity = initialCapital;
-        double sumWinAmount = 0;
-        double sumLossAmount = 0;
-        long totalDays = 0;
-
-        for (Trade trade : trades) {
-            if (trade == null || Double.isNaN(trade.getProfitAmount())) continue;
-
-            equity += trade.getProfitAmount();
-
-            if (equity > peak) {
-                peak = equity;
-            }
-
-            // Prevent division by zero in drawdown calculation
-            double drawdown = peak > 0 ? Math.min((peak - equity) / peak, 1.0) : 0;
-            if (!Double.isNaN(drawdown) && !Double.isInfinite(drawdown)) {
-                maxDrawdown = Math.max(maxDrawdown, drawdown);
-            }
-
-            if (trade.getProfit() > 0) {
-                winningCount++;
-                totalProfit += trade.getProfitAmount();
-                sumWinAmount += trade.getProfitAmount();
-            } else {
-                losingCount++;
-                totalLoss -= trade.getProfitAmount();
-                sumLossAmount -= trade.getProfitAmount();
-            }
-
-            if (trade.getEntryTime() != null && trade.getExitTime() != null) {
-                long tradeDays = (trade.getExitTime().getTime() - trade.getEntryTime().getTime())
-                        / (1000 * 60 * 60 * 24);
-                totalDays += Math.max(0, tradeDays);
-            }
-        }
-
-        double winRate = trades.size() > 0 ? (double) winningCount / trades.size() : 0;
-        double profitFactor = totalLoss > 0.00001 ? totalProfit / totalLoss : (totalProfit > 0 ? 10 : 0);
-        double avgWinAmount = winningCount > 0 ? sumWinAmount / winningCount : 0;
-        double avgLossAmount = losingCount > 0 ? sumLossAmount / losingCount : 0;
-        double avgTradeAmount = trades.size() > 0 ? (sumWinAmount - sumLossAmount) / trades.size() : 0;
-        double avgTradeLength = trades.size() > 0 ? (double) totalDays / trades.size() : 0;
-
-        // Safely calculate return values
-        double totalReturn = initialCapital > 0.00001 ? (finalEquity - initialCapital) / initialCapital : 0;
-        double annualized = 0.0;
-        if (totalDays > 0 && initialCapital > 0.00001 && finalEquity > 0) {
-            try {
-                annualized = Math.pow((finalEquity / initialCapital), (252.0 / totalDays)) - 1.0;
-            } catch (Exception e) {
-                annualized = 0.0;
-            }
-        }
-
-        // Guard against NaN/Infinity
-        if (Double.isNaN(totalReturn) || Double.isInfinite(totalReturn)) totalReturn = 0;
-        if (Double.isNaN(annualized) || Double.isInfinite(annualized)) annualized = 0;
-        if (Double.isNaN(profitFactor) || Double.isInfinite(profitFactor)) profitFactor = 0;
-        if (Double.isNaN(maxDrawdown) || Double.isInfinite(maxDrawdown)) maxDrawdown = 0;
-
-        return BacktestResult.builder()
-                .finalFunds(finalEquity)
-                .totalReturn(totalReturn)
-                .annualizedReturn(annualized)
-                .profitFactor(profitFactor)
-                .winRate(winRate)
-                .maxDrawdown(maxDrawdown)
-                .totalTrades(trades.size())
-                .winningTrades(winningCount)
-                .losingTrades(losingCount)
-                .avgWinAmount(avgWinAmount)
-                .avgLossAmount(avgLossAmount)
-                .avgTradeAmount(avgTradeAmount)
-                .avgTradeLength(avgTradeLength)
-                .trades(trades)
-                .build();
+    /**
+     * Core backtesting logic - synchronous method called from reactive wrappers
+     *
+     * @param entrySignals Entries generated by a run only differing by exit parameters, null to generate them
+     * @param exitScans    Exit scans shared with runs on the same quotes, null to check exits bar per bar
+     * @param pruning      Constraints of the grid the run is part of, null when it isn't pruned
+     * @return result of the run, null when it was pruned
+     */
+    private BacktestResult executeBacktest(List<Quote> quotes, int start, TradingStrategy strategy,
+                                           MarketPhaseClassifier.MarketPhase phase, TradingParameters params,
+                                           boolean storeTradeDetails, byte[] entrySignals,
+                                           ExitScan.Cache exitScans, GridPruning pruning) {
+        return IndicatorCache.withPrecision(params.getColumnPrecision(), () -> new BacktestBatch(quotes, start,
+                new TradingStrategy[]{strategy}, new byte[][]{entrySignals}, new ExitScan.Cache[]{exitScans}, phase,
+                params, storeTradeDetails, pruning).run()[0]);
     }
 
     /**
@@ -572,20 +265,12 @@ public class BacktesterService {
             int topResultsCount,
             boolean storeTradeDetails) {
 
-        AtomicInteger counter = new AtomicInteger(0);
+        ParameterGrid<?> grid = StrategiesFactory.compileParametersGrid(strategyName, parametersGrid);
 
-        return Flux.fromIterable(StrategiesFactory.generateAllStrategyParameters(parametersGrid))
-                .flatMap(combination -> {
-                    int currentTimer = counter.incrementAndGet();
-                    if (currentTimer % 1000 == 0) {
-                        log.info("Counter:{}", currentTimer);
-                    }
-
-                    TradingStrategy strategy = StrategiesFactory.getStrategy(strategyName, params, combination);
-                    return backtest(quotes, strategy, MarketPhaseClassifier.MarketPhase.UNKNOWN, params,
-                            storeTradeDetails)
-                            .map(result -> new ParameterCombinationResult(combination, result));
-                })
+        return backtestGrid(grid, combination -> StrategiesFactory.getStrategy(strategyName, params, grid,
+                        grid.indices(combination)), strategy -> quotes, strategy -> 0, params, storeTradeDetails,
+                        params.isPruneGridCombinations() ? GridPruning.of(params) : null)
+                .map(run -> new ParameterCombinationResult(grid.parameters(run.combination()), run.result()))
                 .collectList()
                 .map(allResults -> {
                     Map<PerformanceMetricType, List<ParameterPerformance>> resultsByMetric = new EnumMap<>(PerformanceMetricType.class);
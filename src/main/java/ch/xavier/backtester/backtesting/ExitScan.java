@@ -0,0 +1,102 @@
+package ch.xavier.backtester.backtesting;
+
+import ch.xavier.backtester.quote.Quote;
+import lombok.Getter;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Exits of a position opened at a bar with a stop loss that never moves, for every take profit at once. One forward
+ * scan up to the stop records the bars where the price reaches a new extreme in the position's favour, the first bar
+ * reaching any take profit is then the first of those records beyond it.
+ * Like the engine, a take profit hit on the bar of the stop wins over the stop.
+ */
+public final class ExitScan {
+    @Getter
+    private final int stopLossIndex; // -1 when the stop is never hit
+    private final int[] recordIndices;
+    private final double[] recordPrices; // Increasing highs of a long position, decreasing lows of a short one
+    private final boolean isLong;
+
+    private ExitScan(int stopLossIndex, int[] recordIndices, double[] recordPrices, boolean isLong) {
+        this.stopLossIndex = stopLossIndex;
+        this.recordIndices = recordIndices;
+        this.recordPrices = recordPrices;
+        this.isLong = isLong;
+    }
+
+    /**
+     * Scan the bars after the entry until the stop loss is hit or the quotes end
+     */
+    public static ExitScan of(List<Quote> quotes, int entryIndex, boolean isLong, double stopLossPrice) {
+        int[] indices = new int[16];
+        double[] prices = new double[16];
+        int records = 0;
+        int stopLossIndex = -1;
+        double extreme = isLong ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+
+        for (int i = entryIndex + 1; i < quotes.size(); i++) {
+            Quote quote = quotes.get(i);
+            double favourable = isLong ? quote.getHigh() : quote.getLow();
+
+            if (isLong ? favourable > extreme : favourable < extreme) {
+                if (records == indices.length) {
+                    indices = Arrays.copyOf(indices, records * 2);
+                    prices = Arrays.copyOf(prices, records * 2);
+                }
+                indices[records] = i;
+                prices[records++] = favourable;
+                extreme = favourable;
+            }
+
+            if (isLong ? quote.getLow() <= stopLossPrice : quote.getHigh() >= stopLossPrice) {
+                stopLossIndex = i;
+                break;
+            }
+        }
+
+        return new ExitScan(stopLossIndex, Arrays.copyOf(indices, records), Arrays.copyOf(prices, records), isLong);
+    }
+
+    /**
+     * @return first bar reaching the take profit before the stop loss is hit, -1 when there is none
+     */
+    public int takeProfitIndex(double takeProfitPrice) {
+        // Records are monotonic, so whether one reaches the take profit is too. A NaN take profit is never reached.
+        int low = 0;
+        int high = recordPrices.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            boolean reached = isLong ? recordPrices[mid] >= takeProfitPrice : recordPrices[mid] <= takeProfitPrice;
+            if (reached) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low < recordIndices.length ? recordIndices[low] : -1;
+    }
+
+    /**
+     * Scans of the entries of one quotes list, shared by the runs only differing by their take profits
+     */
+    public static final class Cache {
+        private final List<Quote> quotes;
+        private final Map<Key, ExitScan> scans = new ConcurrentHashMap<>();
+
+        public Cache(List<Quote> quotes) {
+            this.quotes = quotes;
+        }
+
+        public ExitScan get(int entryIndex, boolean isLong, double stopLossPrice) {
+            return scans.computeIfAbsent(new Key(entryIndex, isLong, stopLossPrice),
+                    key -> of(quotes, entryIndex, isLong, stopLossPrice));
+        }
+
+        private record Key(int entryIndex, boolean isLong, double stopLossPrice) {
+        }
+    }
+}
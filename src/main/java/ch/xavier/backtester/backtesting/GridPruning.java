@@ -0,0 +1,131 @@
+package ch.xavier.backtester.backtesting;
+
+import ch.xavier.backtester.backtesting.model.BacktestResult;
+
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Constraints the runs of a grid search must satisfy to be part of its results. A run is abandoned as soon as it
+ * can't satisfy them anymore: its drawdown reached the maximum, it can't end with more than the minimum number of
+ * trades, or, when only the top K runs are kept, even its best possible score is below the K-th best score of the
+ * completed runs. Abandoned runs are counted per reason.
+ */
+public final class GridPruning {
+
+    public enum Reason {
+        DRAWDOWN, TRADES, SCORE
+    }
+
+    private final double maxDrawdown; // Fraction of the peak equity
+    private final int minNumberOfTrades;
+    private final ToDoubleFunction<BacktestResult> score; // Null without top K
+    private final DoubleUnaryOperator bestScore; // Best score a run can end with given its drawdown so far
+    private final int topK;
+    private final PriorityQueue<Double> topScores = new PriorityQueue<>();
+    private volatile double scoreBound = Double.NEGATIVE_INFINITY; // K-th best score once K runs completed
+    private final AtomicIntegerArray pruned = new AtomicIntegerArray(Reason.values().length);
+
+    private GridPruning(TradingParameters params, ToDoubleFunction<BacktestResult> score,
+                        DoubleUnaryOperator bestScore, int topK) {
+        this.maxDrawdown = params.getMaxDrawdown() / 100;
+        this.minNumberOfTrades = params.getMinNumberOfTrades();
+        this.score = score;
+        this.bestScore = bestScore;
+        this.topK = topK;
+    }
+
+    /**
+     * Pruning on the drawdown and number of trades constraints of the parameters
+     */
+    public static GridPruning of(TradingParameters params) {
+        return new GridPruning(params, null, null, 0);
+    }
+
+    /**
+     * Pruning on the constraints of the parameters and on the runs' scores, when only the best K runs are kept
+     *
+     * @param score     Score runs are ranked by, higher is better
+     * @param bestScore Best score a run can still end with given its maximum drawdown so far, positive infinity
+     *                  when the drawdown doesn't bound it
+     */
+    public static GridPruning of(TradingParameters params, ToDoubleFunction<BacktestResult> score,
+                                 DoubleUnaryOperator bestScore, int topK) {
+        return new GridPruning(params, score, bestScore, topK);
+    }
+
+    public int getPruned(Reason reason) {
+        return pruned.get(reason.ordinal());
+    }
+
+    public int getPruned() {
+        int total = 0;
+        for (Reason reason : Reason.values()) {
+            total += getPruned(reason);
+        }
+        return total;
+    }
+
+    /**
+     * Account for the score of a completed run
+     */
+    void offer(BacktestResult result) {
+        if (score == null) return;
+
+        double runScore = score.applyAsDouble(result);
+        synchronized (topScores) {
+            if (topScores.size() < topK) {
+                topScores.add(runScore);
+            } else if (runScore > topScores.peek()) {
+                topScores.poll();
+                topScores.add(runScore);
+            }
+
+            if (topScores.size() == topK) {
+                scoreBound = topScores.peek();
+            }
+        }
+    }
+
+    /**
+     * Constraints checked along one run
+     */
+    Run newRun() {
+        return new Run();
+    }
+
+    final class Run {
+        private int checkedTrades = -1;
+
+        private Run() {
+        }
+
+        /**
+         * @param closedTrades    Trades closed so far
+         * @param reachableTrades Most trades the run can still end with, the closed ones included
+         * @param drawdown        Maximum drawdown so far
+         * @return whether the run can no longer satisfy the constraints, in which case it's counted as pruned
+         */
+        boolean isHopeless(int closedTrades, int reachableTrades, double drawdown) {
+            Reason reason = drawdown >= maxDrawdown ? Reason.DRAWDOWN :
+                    reachableTrades <= minNumberOfTrades ? Reason.TRADES :
+                            isOutOfTop(closedTrades, drawdown) ? Reason.SCORE : null;
+
+            if (reason != null) {
+                pruned.incrementAndGet(reason.ordinal());
+            }
+            return reason != null;
+        }
+
+        // The drawdown only changes when a trade closes, so the score is only bounded again then
+        private boolean isOutOfTop(int closedTrades, double drawdown) {
+            double bound = scoreBound;
+            if (score == null || bound == Double.NEGATIVE_INFINITY || closedTrades == checkedTrades) return false;
+
+            checkedTrades = closedTrades;
+            return bestScore.applyAsDouble(drawdown) < bound;
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package ch.xavier.backtester.backtesting;
+
+import ch.xavier.backtester.backtesting.model.BacktestResult;
+import ch.xavier.backtester.backtesting.model.TradeLog;
+import lombok.Getter;
+
+/**
+ * Performance metrics of a run updated trade by trade and day by day, in constant time and space, so neither the
+ * trades nor the daily returns have to be kept to compute them.
+ * Drawdown is measured on the equity of the closed trades, Sharpe & Sortino ratios on the daily returns, whose mean
+ * and variance are maintained with Welford's algorithm.
+ */
+final class MetricsAccumulator {
+    private static final long MILLIS_PER_DAY = 1000 * 60 * 60 * 24;
+    private static final double DAILY_RISK_FREE = 0.02 / 365; // Annualized 2% risk-free rate converted to daily
+
+    private final double initialCapital;
+
+    // Trades
+    @Getter
+    private int trades;
+    private int winningTrades;
+    private int losingTrades;
+    private double sumWinAmount;
+    private double sumLossAmount;
+    private long totalDays;
+    @Getter
+    private double equity;
+    private double peak;
+    @Getter
+    private double maxDrawdown;
+
+    // Daily returns
+    private int days;
+    private int nonFiniteDays; // Days whose return isn't finite, only counted in the number of days
+    private double meanReturn;
+    private double squaredDeviations; // Sum of the squared deviations from the running mean
+    private int negativeDays;
+    private double downsideSquaredSum;
+
+    MetricsAccumulator(double initialCapital) {
+        this.initialCapital = initialCapital;
+        this.equity = initialCapital;
+        this.peak = Math.max(initialCapital, 0.00001); // Ensure non-zero peak
+    }
+
+    /**
+     * Account for a closed trade
+     *
+     * @param entryTime Entry epoch millis, {@link TradeLog#NO_TIME} when unknown
+     * @param exitTime  Exit epoch millis, {@link TradeLog#NO_TIME} when unknown
+     */
+    void addTrade(double profit, double profitAmount, long entryTime, long exitTime) {
+        trades++;
+        if (Double.isNaN(profitAmount)) return;
+
+        equity += profitAmount;
+        if (equity > peak) {
+            peak = equity;
+        }
+
+        // Prevent division by zero in drawdown calculation
+        double drawdown = peak > 0 ? Math.min((peak - equity) / peak, 1.0) : 0;
+        if (!Double.isNaN(drawdown) && !Double.isInfinite(drawdown)) {
+            maxDrawdown = Math.max(maxDrawdown, drawdown);
+        }
+
+        if (profit > 0) {
+            winningTrades++;
+            sumWinAmount += profitAmount;
+        } else {
+            losingTrades++;
+            sumLossAmount -= profitAmount;
+        }
+
+        if (entryTime != TradeLog.NO_TIME && exitTime != TradeLog.NO_TIME) {
+            totalDays += Math.max(0, (exitTime - entryTime) / MILLIS_PER_DAY);
+        }
+    }
+
+    /**
+     * Account for the return of a day, a non-finite return only adds to the number of days the sums are averaged over
+     */
+    void addDailyReturn(double dailyReturn) {
+        if (Double.isNaN(dailyReturn) || Double.isInfinite(dailyReturn)) {
+            nonFiniteDays++;
+            return;
+        }
+
+        days++;
+        double delta = dailyReturn - meanReturn;
+        meanReturn += delta / days;
+        squaredDeviations += delta * (dailyReturn - meanReturn);
+
+        if (dailyReturn < 0) {
+            negativeDays++;
+            downsideSquaredSum += dailyReturn * dailyReturn;
+        }
+    }
+
+    /**
+     * Metrics of the trades and days accounted for so far
+     *
+     * @param finalFunds Funds at the end of the run
+     */
+    BacktestResult toResult(double finalFunds) {
+        BacktestResult result = trades == 0 ?
+                BacktestResult.builder()
+                        .finalFunds(finalFunds)
+                        .build() :
+                tradeResults(finalFunds);
+
+        int allDays = days + nonFiniteDays;
+        if (allDays > 0) {
+            // The sums only hold the finite returns but are averaged over every day
+            double mean = meanReturn * days / allDays;
+            double stdDev = Math.sqrt((squaredDeviations + days * (meanReturn - mean) * (meanReturn - mean)) / allDays);
+            // Prevent division by zero
+            double downsideDeviation = negativeDays > 0 ? Math.sqrt(downsideSquaredSum / allDays) : 0.00001;
+
+            double sharpeRatio = stdDev > 0 ? (mean - DAILY_RISK_FREE) / stdDev * Math.sqrt(252) : 0;
+            double sortinoRatio = downsideDeviation > 0 ?
+                    (mean - DAILY_RISK_FREE) / downsideDeviation * Math.sqrt(252) : 0;
+
+            // Guard against NaN/Infinity
+            result.setSharpeRatio(Double.isNaN(sharpeRatio) || Double.isInfinite(sharpeRatio) ? 0 : sharpeRatio);
+            result.setSortinoRatio(Double.isNaN(sortinoRatio) || Double.isInfinite(sortinoRatio) ? 0 : sortinoRatio);
+        }
+
+        return result;
+    }
+
+    private BacktestResult tradeResults(double finalFunds) {
+        double winRate = (double) winningTrades / trades;
+        double profitFactor = sumLossAmount > 0.00001 ? sumWinAmount / sumLossAmount : (sumWinAmount > 0 ? 10 : 0);
+        double avgWinAmount = winningTrades > 0 ? sumWinAmount / winningTrades : 0;
+        double avgLossAmount = losingTrades > 0 ? sumLossAmount / losingTrades : 0;
+        double avgTradeAmount = (sumWinAmount - sumLossAmount) / trades;
+        double avgTradeLength = (double) totalDays / trades;
+
+        // Safely calculate return values
+        double totalReturn = initialCapital > 0.00001 ? (finalFunds - initialCapital) / initialCapital : 0;
+        double annualized = 0.0;
+        if (totalDays > 0 && initialCapital > 0.00001 && finalFunds > 0) {
+            annualized = Math.pow((finalFunds / initialCapital), (252.0 / totalDays)) - 1.0;
+        }
+
+        // Guard against NaN/Infinity
+        if (Double.isNaN(totalReturn) || Double.isInfinite(totalReturn)) totalReturn = 0;
+        if (Double.isNaN(annualized) || Double.isInfinite(annualized)) annualized = 0;
+        if (Double.isNaN(profitFactor) || Double.isInfinite(profitFactor)) profitFactor = 0;
+
+        return BacktestResult.builder()
+                .finalFunds(finalFunds)
+                .totalReturn(totalReturn)
+                .annualizedReturn(annualized)
+                .profitFactor(profitFactor)
+                .winRate(winRate)
+                .maxDrawdown(maxDrawdown)
+                .totalTrades(trades)
+                .winningTrades(winningTrades)
+                .losingTrades(losingTrades)
+                .avgWinAmount(avgWinAmount)
+                .avgLossAmount(avgLossAmount)
+                .avgTradeAmount(avgTradeAmount)
+                .avgTradeLength(avgTradeLength)
+                .build();
+    }
+}
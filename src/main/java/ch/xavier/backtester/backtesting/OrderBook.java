@@ -0,0 +1,343 @@
+package ch.xavier.backtester.backtesting;
+
+import java.util.Arrays;
+
+/**
+ * Open positions of a run holding several at once, e.g. pyramiding into a trade, held column by column in slots
+ * reused once their position closes. The stop loss and take profit of each position rest as orders in heaps indexed
+ * by price, one per side and kind: the order at the top of each heap is the first a bar reaches, so a bar only
+ * touches the orders it fills and finding, filling or moving an order is O(log n) in the number of open positions.
+ * The excursions of a position are only needed at its exit, they're taken then from the extremes of the bars since
+ * its entry, kept in monotonic stacks.
+ */
+final class OrderBook {
+    private final int maxOpenPositions;
+
+    // Positions by slot
+    private double[] entryPrices = new double[8];
+    private double[] sizes = new double[8];
+    private double[] stopLossPrices = new double[8];
+    private double[] takeProfitPrices = new double[8];
+    private boolean[] longs = new boolean[8];
+    private int[] entryIndices = new int[8];
+
+    // Slots of the open positions in their opening order, and the index of each slot in it
+    private int[] openSlots = new int[8];
+    private int[] openIndices = new int[8];
+    private int size;
+    private int longCount;
+    private int[] freeSlots = new int[8];
+    private int freeCount;
+    private int capacity;
+
+    // Resting exit orders, each heap's top is the first reached as the price moves towards it
+    private final PriceHeap longTakeProfits = new PriceHeap(false);
+    private final PriceHeap longStopLosses = new PriceHeap(true);
+    private final PriceHeap shortTakeProfits = new PriceHeap(true);
+    private final PriceHeap shortStopLosses = new PriceHeap(false);
+
+    // Extremes of the bars since the entry of the oldest open position
+    private final Extremes lowest = new Extremes(false);
+    private final Extremes highest = new Extremes(true);
+
+    OrderBook(int maxOpenPositions) {
+        this.maxOpenPositions = maxOpenPositions;
+    }
+
+    /**
+     * Number of open positions
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Number of open long positions minus the number of open short ones
+     */
+    int netSize() {
+        return 2 * longCount - size;
+    }
+
+    boolean isFull() {
+        return size >= maxOpenPositions;
+    }
+
+    /**
+     * Slot of the open position at the index, in their opening order
+     */
+    int slot(int index) {
+        return openSlots[index];
+    }
+
+    /**
+     * Account for the extremes of a bar the open positions go through, before their orders are checked on it
+     *
+     * @param lowPrice  Adverse price of a long position on the bar, favorable price of a short one
+     * @param highPrice Favorable price of a long position on the bar, adverse price of a short one
+     */
+    void addBar(int index, double lowPrice, double highPrice) {
+        // No position can look back before its entry
+        if (size == 0) {
+            lowest.clear();
+            highest.clear();
+        }
+
+        lowest.add(index, lowPrice);
+        highest.add(index, highPrice);
+    }
+
+    /**
+     * Open a position, its stop loss and take profit resting in the book until one of them is reached
+     *
+     * @return the position's slot
+     */
+    int open(boolean isLong, double entryPrice, double size, double stopLossPrice, double takeProfitPrice,
+             int entryIndex) {
+        int slot = freeCount > 0 ? freeSlots[--freeCount] : newSlot();
+        longs[slot] = isLong;
+        entryPrices[slot] = entryPrice;
+        sizes[slot] = size;
+        stopLossPrices[slot] = stopLossPrice;
+        takeProfitPrices[slot] = takeProfitPrice;
+        entryIndices[slot] = entryIndex;
+
+        openIndices[slot] = this.size;
+        openSlots[this.size++] = slot;
+        if (isLong) longCount++;
+        (isLong ? longStopLosses : shortStopLosses).add(slot, stopLossPrice);
+        (isLong ? longTakeProfits : shortTakeProfits).add(slot, takeProfitPrice);
+        return slot;
+    }
+
+    /**
+     * Close the position, cancelling its orders
+     */
+    void close(int slot) {
+        (longs[slot] ? longStopLosses : shortStopLosses).remove(slot);
+        (longs[slot] ? longTakeProfits : shortTakeProfits).remove(slot);
+
+        // The last open position takes the closed one's place
+        int last = openSlots[--size];
+        openSlots[openIndices[slot]] = last;
+        openIndices[last] = openIndices[slot];
+        freeSlots[freeCount++] = slot;
+        if (longs[slot]) longCount--;
+    }
+
+    /**
+     * Slot of a position whose take profit the bar reaches, -1 when there is none left
+     */
+    int reachedTakeProfit(double highPrice, double lowPrice) {
+        if (!longTakeProfits.isEmpty() && longTakeProfits.topPrice() <= highPrice) return longTakeProfits.top();
+        if (!shortTakeProfits.isEmpty() && shortTakeProfits.topPrice() >= lowPrice) return shortTakeProfits.top();
+        return -1;
+    }
+
+    /**
+     * Slot of a position whose stop loss the bar reaches, -1 when there is none left
+     */
+    int reachedStopLoss(double highPrice, double lowPrice) {
+        if (!longStopLosses.isEmpty() && longStopLosses.topPrice() >= lowPrice) return longStopLosses.top();
+        if (!shortStopLosses.isEmpty() && shortStopLosses.topPrice() <= highPrice) return shortStopLosses.top();
+        return -1;
+    }
+
+    void moveStopLoss(int slot, double stopLossPrice) {
+        stopLossPrices[slot] = stopLossPrice;
+        (longs[slot] ? longStopLosses : shortStopLosses).update(slot, stopLossPrice);
+    }
+
+    /**
+     * Lowest adverse or favorable price of the bars added from the index on, NaN when none was
+     */
+    double lowestSince(int index) {
+        return lowest.since(index);
+    }
+
+    /**
+     * Highest adverse or favorable price of the bars added from the index on, NaN when none was
+     */
+    double highestSince(int index) {
+        return highest.since(index);
+    }
+
+    boolean isLong(int slot) {
+        return longs[slot];
+    }
+
+    double getEntryPrice(int slot) {
+        return entryPrices[slot];
+    }
+
+    double getSize(int slot) {
+        return sizes[slot];
+    }
+
+    double getStopLossPrice(int slot) {
+        return stopLossPrices[slot];
+    }
+
+    double getTakeProfitPrice(int slot) {
+        return takeProfitPrices[slot];
+    }
+
+    int getEntryIndex(int slot) {
+        return entryIndices[slot];
+    }
+
+    private int newSlot() {
+        if (capacity == entryPrices.length) {
+            int grown = capacity * 2;
+            entryPrices = Arrays.copyOf(entryPrices, grown);
+            sizes = Arrays.copyOf(sizes, grown);
+            stopLossPrices = Arrays.copyOf(stopLossPrices, grown);
+            takeProfitPrices = Arrays.copyOf(takeProfitPrices, grown);
+            longs = Arrays.copyOf(longs, grown);
+            entryIndices = Arrays.copyOf(entryIndices, grown);
+            openSlots = Arrays.copyOf(openSlots, grown);
+            openIndices = Arrays.copyOf(openIndices, grown);
+            freeSlots = Arrays.copyOf(freeSlots, grown);
+        }
+        return capacity++;
+    }
+
+    /**
+     * Binary heap of slots ordered by a price, the highest or lowest on top, each slot knowing its index in the heap
+     * so its order can be removed or moved without searching it. Orders at a NaN price can never be reached and
+     * aren't added.
+     */
+    private static final class PriceHeap {
+        private final boolean max;
+        private int[] heap = new int[8]; // Slots
+        private double[] prices = new double[8]; // By slot
+        private int[] heapIndices = new int[8]; // By slot, -1 when the slot isn't in the heap
+        private int size;
+
+        private PriceHeap(boolean max) {
+            this.max = max;
+            Arrays.fill(heapIndices, -1);
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        int top() {
+            return heap[0];
+        }
+
+        double topPrice() {
+            return prices[heap[0]];
+        }
+
+        void add(int slot, double price) {
+            if (Double.isNaN(price)) return;
+
+            if (slot >= prices.length) {
+                int grown = Math.max(prices.length * 2, slot + 1);
+                prices = Arrays.copyOf(prices, grown);
+                int previous = heapIndices.length;
+                heapIndices = Arrays.copyOf(heapIndices, grown);
+                Arrays.fill(heapIndices, previous, grown, -1);
+            }
+            if (size == heap.length) {
+                heap = Arrays.copyOf(heap, size * 2);
+            }
+
+            prices[slot] = price;
+            heap[size] = slot;
+            heapIndices[slot] = size;
+            siftUp(size++);
+        }
+
+        void remove(int slot) {
+            if (slot >= heapIndices.length || heapIndices[slot] < 0) return;
+
+            int index = heapIndices[slot];
+            heapIndices[slot] = -1;
+            int last = heap[--size];
+            if (index == size) return;
+
+            heap[index] = last;
+            heapIndices[last] = index;
+            siftDown(index);
+            siftUp(heapIndices[last]);
+        }
+
+        void update(int slot, double price) {
+            remove(slot);
+            add(slot, price);
+        }
+
+        private void siftUp(int index) {
+            int slot = heap[index];
+            while (index > 0) {
+                int parent = (index - 1) >>> 1;
+                if (!before(slot, heap[parent])) break;
+
+                move(heap[parent], index);
+                index = parent;
+            }
+            move(slot, index);
+        }
+
+        private void siftDown(int index) {
+            int slot = heap[index];
+            while (true) {
+                int child = 2 * index + 1;
+                if (child >= size) break;
+                if (child + 1 < size && before(heap[child + 1], heap[child])) child++;
+                if (!before(heap[child], slot)) break;
+
+                move(heap[child], index);
+                index = child;
+            }
+            move(slot, index);
+        }
+
+        private void move(int slot, int index) {
+            heap[index] = slot;
+            heapIndices[slot] = index;
+        }
+
+        private boolean before(int slot, int other) {
+            return max ? prices[slot] > prices[other] : prices[slot] < prices[other];
+        }
+    }
+
+    /**
+     * Prices of the bars added, popping the ones a later bar equals or beats: what's left is monotonic, and the
+     * extreme since an index is the first price left from it, found by binary search.
+     */
+    private static final class Extremes {
+        private final boolean max;
+        private int[] indices = new int[16];
+        private double[] prices = new double[16];
+        private int size;
+
+        private Extremes(boolean max) {
+            this.max = max;
+        }
+
+        void clear() {
+            size = 0;
+        }
+
+        void add(int index, double price) {
+            while (size > 0 && (max ? prices[size - 1] <= price : prices[size - 1] >= price)) size--;
+
+            if (size == indices.length) {
+                indices = Arrays.copyOf(indices, size * 2);
+                prices = Arrays.copyOf(prices, size * 2);
+            }
+            indices[size] = index;
+            prices[size++] = price;
+        }
+
+        double since(int index) {
+            int first = Arrays.binarySearch(indices, 0, size, index);
+            if (first < 0) first = -first - 1;
+            return first < size ? prices[first] : Double.NaN;
+        }
+    }
+}
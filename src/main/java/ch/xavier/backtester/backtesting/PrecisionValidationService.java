@@ -0,0 +1,117 @@
+package ch.xavier.backtester.backtesting;
+
+import ch.xavier.backtester.backtesting.model.BacktestResult;
+import ch.xavier.backtester.backtesting.model.PrecisionReport;
+import ch.xavier.backtester.indicator.series.IndicatorCache;
+import ch.xavier.backtester.indicator.series.Precision;
+import ch.xavier.backtester.marketphase.MarketPhaseClassifier;
+import ch.xavier.backtester.quote.Quote;
+import ch.xavier.backtester.strategy.StrategiesFactory;
+import ch.xavier.backtester.strategy.StrategyState;
+import ch.xavier.backtester.strategy.TradingStrategy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToDoubleFunction;
+
+@Service
+@Slf4j
+public class PrecisionValidationService {
+
+    @Autowired
+    private BacktesterService backtesterService;
+
+    /**
+     * Backtests a strategy once with double and once with float indicator columns and reports how far the
+     * float run diverges, to check a strategy can safely be optimized with float columns.
+     *
+     * @param quotes             Quotes to backtest on
+     * @param strategyName       Name of the strategy to validate
+     * @param strategyParameters Parameters of the strategy
+     * @param params             Trading parameters
+     * @return Differences in signals and metrics between both runs
+     */
+    public Mono<PrecisionReport> validate(List<Quote> quotes, String strategyName,
+                                          Map<String, Object> strategyParameters, TradingParameters params) {
+        return run(quotes, strategyName, strategyParameters, params, Precision.DOUBLE)
+                .zipWhen(_ -> run(quotes, strategyName, strategyParameters, params, Precision.FLOAT))
+                .map(runs -> compare(strategyName, strategyParameters, runs.getT1(), runs.getT2()))
+                .doOnNext(report -> log.info("{} float columns: {} signal mismatches, largest difference in {}: {}",
+                        strategyName, report.getSignalMismatches(), report.getLargestMetricDifference(),
+                        report.getMetricDifferences().get(report.getLargestMetricDifference())));
+    }
+
+    private Mono<PrecisionRun> run(List<Quote> quotes, String strategyName, Map<String, Object> strategyParameters,
+                                   TradingParameters params, Precision precision) {
+        TradingParameters runParams = params.toBuilder().columnPrecision(precision).build();
+
+        return Mono.defer(() -> {
+            TradingStrategy strategy = StrategiesFactory.getStrategy(strategyName, runParams, strategyParameters);
+            int[] signals = IndicatorCache.withPrecision(precision, () -> generateSignals(quotes, strategy));
+
+            return backtesterService.backtest(quotes, strategy, MarketPhaseClassifier.MarketPhase.UNKNOWN, runParams,
+                            false)
+                    .map(result -> new PrecisionRun(signals, result));
+        });
+    }
+
+    // Entry signal of every bar as if flat, independently of the trades actually taken
+    private int[] generateSignals(List<Quote> quotes, TradingStrategy strategy) {
+        StrategyState state = strategy.createState();
+        int[] signals = new int[quotes.size()];
+        for (int i = Math.max(1, strategy.getWarmUp()); i < quotes.size(); i++) {
+            signals[i] = strategy.generateSignal(quotes, i, state);
+        }
+        return signals;
+    }
+
+    private PrecisionReport compare(String strategyName, Map<String, Object> strategyParameters,
+                                    PrecisionRun doubleRun, PrecisionRun floatRun) {
+        int signalMismatches = 0;
+        int firstSignalMismatchIndex = -1;
+        for (int i = 0; i < doubleRun.signals().length; i++) {
+            if (doubleRun.signals()[i] != floatRun.signals()[i]) {
+                signalMismatches++;
+                if (firstSignalMismatchIndex == -1) {
+                    firstSignalMismatchIndex = i;
+                }
+            }
+        }
+
+        Map<String, ToDoubleFunction<BacktestResult>> metrics = new LinkedHashMap<>();
+        metrics.put("totalTrades", BacktestResult::getTotalTrades);
+        metrics.put("totalReturn", BacktestResult::getTotalReturn);
+        metrics.put("winRate", BacktestResult::getWinRate);
+        metrics.put("profitFactor", BacktestResult::getProfitFactor);
+        metrics.put("maxDrawdown", BacktestResult::getMaxDrawdown);
+        metrics.put("sharpeRatio", BacktestResult::getSharpeRatio);
+        metrics.put("sortinoRatio", BacktestResult::getSortinoRatio);
+
+        Map<String, Double> metricDifferences = new LinkedHashMap<>();
+        String largestMetricDifference = null;
+        double largestRelativeDifference = -1;
+        for (Map.Entry<String, ToDoubleFunction<BacktestResult>> metric : metrics.entrySet()) {
+            double doubleValue = metric.getValue().applyAsDouble(doubleRun.result());
+            double floatValue = metric.getValue().applyAsDouble(floatRun.result());
+            double difference = floatValue - doubleValue;
+            metricDifferences.put(metric.getKey(), difference);
+
+            double relativeDifference = Math.abs(difference) / Math.max(Math.abs(doubleValue), 1e-9);
+            if (relativeDifference > largestRelativeDifference) {
+                largestRelativeDifference = relativeDifference;
+                largestMetricDifference = metric.getKey();
+            }
+        }
+
+        return new PrecisionReport(strategyName, strategyParameters, signalMismatches, firstSignalMismatchIndex,
+                metricDifferences, largestMetricDifference);
+    }
+
+    private record PrecisionRun(int[] signals, BacktestResult result) {
+    }
+}
@@ -0,0 +1,29 @@
+package ch.xavier.backtester.backtesting;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+
+/**
+ * Day of quote timestamps in the system time zone, as epoch days. The bounds of the last day found are kept, so
+ * consecutive quotes of the same day are resolved by two comparisons, without formatting or allocating anything.
+ */
+final class QuoteDays {
+    static final long NO_DAY = Long.MIN_VALUE;
+
+    private final ZoneId zone = ZoneId.systemDefault();
+    private long dayStart = Long.MAX_VALUE;
+    private long dayEnd = Long.MIN_VALUE;
+    private long epochDay = NO_DAY;
+
+    long epochDay(long epochMilli) {
+        if (epochMilli < dayStart || epochMilli >= dayEnd) {
+            // Days don't all last 24 hours, the bounds come from the zone's rules
+            LocalDate day = Instant.ofEpochMilli(epochMilli).atZone(zone).toLocalDate();
+            dayStart = day.atStartOfDay(zone).toInstant().toEpochMilli();
+            dayEnd = day.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli();
+            epochDay = day.toEpochDay();
+        }
+        return epochDay;
+    }
+}
@@ -1,10 +1,12 @@
 package ch.xavier.backtester.backtesting;
 
+import ch.xavier.backtester.indicator.series.Precision;
+import ch.xavier.backtester.indicator.volatility.ATR;
 import lombok.*;
 
 @Getter
 @Setter
-@Builder
+@Builder(toBuilder = true)
 public class TradingParameters {
     // Exchange
     private final double makerFee = 0.02; // from Bybit
@@ -24,10 +26,23 @@ public class TradingParameters {
     private final double dailyLossLimit = 0.05; // No more trades after 5% daily loss
     private final double riskRewardRatio = 2.0; // Target 2:1 reward to risk
     private final int atrLength = 14; // Period for ATR stop loss
+    @Builder.Default
+    private ATR.Smoothing atrSmoothing = ATR.Smoothing.SMA; // SMA or Wilder's RMA for the ATR stop
     private final double atrMultiplier = 3.0; // Multiplier for ATR stop
 
-    private final double maxDrawdown = 20; // Maximum 20% drawdown
-    private int minNumberOfTrades = 200; // Minimum number of trades to consider strategy
+    @Builder.Default
+    private double maxDrawdown = 20; // Maximum 20% drawdown
+    private int minNumberOfTrades = 200; // Strategies need more trades than this to be considered
+    private boolean pruneGridCombinations; // Stop the grid runs as soon as they can't satisfy the two above
+
+    // Execution
+    private boolean tradeHopping; // Jump from entry to exit on sparse tables, pays off when many runs share the quotes
+    @Builder.Default
+    private Precision columnPrecision = Precision.DOUBLE; // Storage of the indicator columns the runs compute
+
+    // Trade reporting
+    private boolean intrabarExcursions; // MAE/MFE from the highs and lows instead of the closes
+    private boolean tracePriceHistory; // Keep the closes of every position, for debugging only
 
     // Walk-forward parameters
     private final int walkForwardWindow = 60; // Days for training
@@ -40,7 +55,7 @@ public class TradingParameters {
     // - Separate RR for long and short? Same with SL?
     // - Dynamic position size? Based on ATR?
     // - Maximum losing trades per side?
-    // - Additional attunements like RSI big extended, Hurst exponent, etc?
+    // - Additional attunements like RSI big extended, etc?
 }
 
 
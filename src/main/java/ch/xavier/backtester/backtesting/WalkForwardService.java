@@ -3,6 +3,8 @@ package ch.xavier.backtester.backtesting;
 import ch.xavier.backtester.backtesting.model.*;
 import ch.xavier.backtester.marketphase.MarketPhaseClassifier;
 import ch.xavier.backtester.quote.Quote;
+import ch.xavier.backtester.quote.QuoteWindow;
+import ch.xavier.backtester.strategy.ParameterGrid;
 import ch.xavier.backtester.strategy.StrategiesFactory;
 import ch.xavier.backtester.strategy.TradingStrategy;
 import lombok.extern.slf4j.Slf4j;
@@ -15,6 +17,7 @@ import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 @Service
@@ -52,8 +55,14 @@ public class WalkForwardService {
         Map<MarketPhaseClassifier.MarketPhase, List<ParameterPerformance>> topParametersByPhase = new ConcurrentHashMap<>();
         List<BacktestResult> outOfSampleResults = new ArrayList<>();
 
-        // Generate all possible parameter combinations
-        List<Map<String, Object>> allCombinations = StrategiesFactory.generateAllStrategyParameters(parameterGrid);
+        // Compile all possible parameter combinations
+        ParameterGrid<?> grid = StrategiesFactory.compileParametersGrid(strategyName, parameterGrid);
+
+        // Strategies only hold their parameters, so they are built once and reused by every window
+        List<TradingStrategy> allStrategies = IntStream.range(0, grid.size())
+                .mapToObj(combination -> StrategiesFactory.getStrategy(strategyName, params, grid,
+                        grid.indices(combination)))
+                .toList();
 
         return Flux.range(0, (quotes.size() - trainCandles - testCandles) / stepCandles + 1)
                 .flatMap(window -> {
@@ -66,8 +75,8 @@ public class WalkForwardService {
                         return Mono.empty();
                     }
 
-                    List<Quote> trainData = quotes.subList(trainStart, trainEnd);
-                    List<Quote> testData = quotes.subList(testStart, testEnd);
+                    // Windows share the indicator chunks computed on the full quotes list
+                    List<Quote> trainData = QuoteWindow.of(quotes, trainStart, trainEnd);
 
                     String trainStartDate = formatDate(quotes.get(trainStart).getTimestamp());
                     String trainEndDate = formatDate(quotes.get(trainEnd - 1).getTimestamp());
@@ -79,9 +88,14 @@ public class WalkForwardService {
                             testStartDate, testEndDate, testStart, testEnd);
 
                     // Find top parameter sets on training data
-                    return findTopParameters(trainData, strategyName, params, allCombinations, numberOfResultsToKeep,
-                            metricType)
+                    return findTopParameters(quotes, trainStart, trainEnd, params, grid, allStrategies,
+                            numberOfResultsToKeep, metricType)
                             .flatMap(topParams -> {
+                                if (topParams.isEmpty()) {
+                                    log.info("Window {}: Every parameter set was pruned", window);
+                                    return Mono.empty();
+                                }
+
                                 // Create strategy with the best parameters
                                 Map<String, Object> bestParams = topParams.getFirst().getParameters();
                                 TradingStrategy optimizedStrategy = StrategiesFactory.getStrategy(strategyName, params,
@@ -111,9 +125,11 @@ public class WalkForwardService {
                                     });
                                 }
 
-                                // Run backtest on test data with optimal parameters
-                                return backtesterService.backtest(testData, optimizedStrategy,
-                                                MarketPhaseClassifier.MarketPhase.UNKNOWN, params, false)
+                                // Run backtest on test data with optimal parameters, trading from its first bar on
+                                int testWarmUp = warmUpBars(testStart, optimizedStrategy);
+                                List<Quote> testData = QuoteWindow.of(quotes, testStart - testWarmUp, testEnd);
+                                return backtesterService.backtest(testData, testWarmUp, optimizedStrategy,
+                                                MarketPhaseClassifier.MarketPhase.UNKNOWN, params, true)
                                         .map(result -> {
                                             // Store results
                                             log.info("Window {}: Test results - Win rate: {}%, Return: {}%, Sharpe: {}",
@@ -156,26 +172,42 @@ public class WalkForwardService {
         return new java.text.SimpleDateFormat("dd-MM-yyyy HH:mm").format(date);
     }
 
+    /**
+     * Bars of the warm-up of a strategy the quotes before a window allow, preceding the window so its backtest starts
+     * on the window's first bar. They are only passed to the backtest to warm the strategy up, the returns only
+     * count the days from the window's start.
+     */
+    private static int warmUpBars(int start, TradingStrategy strategy) {
+        return Math.min(start, strategy.getWarmUp());
+    }
+
     private Mono<List<ParameterPerformance>> findTopParameters(
-            List<Quote> trainData,
-            String strategyName,
+            List<Quote> quotes,
+            int trainStart,
+            int trainEnd,
             TradingParameters params,
-            List<Map<String, Object>> allCombinations,
+            ParameterGrid<?> grid,
+            List<TradingStrategy> allStrategies,
             int numberOfResultsToKeep,
             PerformanceMetricType metricType) {
 
+        // Combinations with the same warm-up share one window, and so the series cached for it
+        Map<Integer, List<Quote>> trainWindows = new ConcurrentHashMap<>();
+
         // Run backtest for each parameter combination
-        return Flux.fromIterable(allCombinations)
-                .flatMap(combination -> {
-                    TradingStrategy strategy = StrategiesFactory.getStrategy(strategyName, params, combination);
-                    return backtesterService.backtest(trainData, strategy, MarketPhaseClassifier.MarketPhase.UNKNOWN,
-                                    params, true)
-                            .map(result -> new ParameterPerformance(
-                                    combination,
-                                    result,
-                                    getPerformanceMetric(result, metricType)
-                            ));
-                })
+        return backtesterService.backtestGrid(grid, allStrategies::get,
+                        strategy -> trainWindows.computeIfAbsent(warmUpBars(trainStart, strategy),
+                                warmUp -> QuoteWindow.of(quotes, trainStart - warmUp, trainEnd)),
+                        strategy -> warmUpBars(trainStart, strategy), params, true,
+                        params.isPruneGridCombinations() ? GridPruning.of(params,
+                                result -> getPerformanceMetric(result, metricType),
+                                drawdown -> getBestPerformanceMetric(drawdown, metricType), numberOfResultsToKeep) :
+                                null)
+                .map(run -> new ParameterPerformance(
+                        grid.parameters(run.combination()),
+                        run.result(),
+                        getPerformanceMetric(run.result(), metricType)
+                ))
                 .collectList()
                 .map(results -> {
                     // Sort by performance metric (sharpe ratio) descending
@@ -204,126 +236,37 @@ public class WalkForwardService {
     }
 
     private BacktestResult aggregateResults(List<Trade> allTrades, TradingParameters params) {
-        if (allTrades.isEmpty()) {
-            return BacktestResult.builder()
-                    .finalFunds(params.getInitialCapital())
-                    .totalReturn(0)
-                    .winRate(0)
-                    .profitFactor(0)
-                    .totalTrades(0)
-                    .build();
-        }
-
-        int winningCount = 0;
-        int losingCount = 0;
-        double totalProfit = 0;
-        double totalLoss = 0;
-        double maxDrawdown = 0;
-        double peak = params.getInitialCapital();
-        double equity = params.getInitialCapital();
-        double sumWinAmount = 0;
-        double sumLossAmount = 0;
-        long totalDays = 0;
+        MetricsAccumulator metrics = new MetricsAccumulator(params.getInitialCapital());
+        QuoteDays exitDays = new QuoteDays();
+        long currentDay = QuoteDays.NO_DAY;
+        double dayReturn = 0;
 
         // Sort trades by exit time to process them chronologically
         allTrades.sort(Comparator.comparing(Trade::getExitTime));
 
         for (Trade trade : allTrades) {
-            equity += trade.getProfitAmount();
-
-            if (equity > peak) {
-                peak = equity;
+            metrics.addTrade(trade.getProfit(), trade.getProfitAmount(), trade.getEntryTime().getTime(),
+                    trade.getExitTime().getTime());
+
+            // The return of a day sums the returns of the trades exiting on it
+            long exitDay = exitDays.epochDay(trade.getExitTime().getTime());
+            if (exitDay != currentDay) {
+                if (currentDay != QuoteDays.NO_DAY) {
+                    metrics.addDailyReturn(dayReturn);
+                }
+                currentDay = exitDay;
+                dayReturn = 0;
             }
-            double drawdown = (peak - equity) / peak;
-            maxDrawdown = Math.max(maxDrawdown, drawdown);
-
-            if (trade.getProfit() > 0) {
-                winningCount++;
-                totalProfit += trade.getProfitAmount();
-                sumWinAmount += trade.getProfitAmount();
-            } else {
-                losingCount++;
-                totalLoss -= trade.getProfitAmount();
-                sumLossAmount -= trade.getProfitAmount();
-            }
-
-            long tradeDays = (trade.getExitTime().getTime() - trade.getEntryTime().getTime())
-                    / (1000 * 60 * 60 * 24);
-            totalDays += tradeDays;
+            dayReturn += trade.getProfitAmount() / metrics.getEquity();
         }
-
-        double winRate = (double) winningCount / allTrades.size();
-        double profitFactor = totalLoss > 0 ? totalProfit / totalLoss : totalProfit > 0 ? Double.MAX_VALUE : 0;
-        double avgWinAmount = winningCount > 0 ? sumWinAmount / winningCount : 0;
-        double avgLossAmount = losingCount > 0 ? sumLossAmount / losingCount : 0;
-        double avgTradeAmount = (sumWinAmount - sumLossAmount) / allTrades.size();
-        double avgTradeLength = (double) totalDays / allTrades.size();
-
-        double totalDaysDouble = (double) totalDays;
-        double annualized = totalDaysDouble > 0 ?
-                Math.pow((equity / params.getInitialCapital()), (252.0 / totalDaysDouble)) - 1.0 : 0;
-
-        // Calculate daily returns for Sharpe/Sortino
-        Map<String, Double> dailyReturns = new HashMap<>();
-        double currentEquity = params.getInitialCapital();
-
-        for (Trade trade : allTrades) {
-            String day = new java.text.SimpleDateFormat("yyyy-MM-dd").format(trade.getExitTime());
-            currentEquity += trade.getProfitAmount();
-            dailyReturns.merge(day, trade.getProfitAmount() / currentEquity, Double::sum);
-        }
-
-        double[] sharpeSortino = calculateSharpeAndSortino(dailyReturns);
-
-        return BacktestResult.builder()
-                .finalFunds(equity)
-                .totalReturn((equity - params.getInitialCapital()) / params.getInitialCapital())
-                .annualizedReturn(annualized)
-                .sharpeRatio(sharpeSortino[0])
-                .sortinoRatio(sharpeSortino[1])
-                .profitFactor(profitFactor)
-                .winRate(winRate)
-                .maxDrawdown(maxDrawdown)
-                .totalTrades(allTrades.size())
-                .winningTrades(winningCount)
-                .losingTrades(losingCount)
-                .avgWinAmount(avgWinAmount)
-                .avgLossAmount(avgLossAmount)
-                .avgTradeAmount(avgTradeAmount)
-                .avgTradeLength(avgTradeLength)
-                .trades(allTrades)
-                .strategyName("Walk-Forward Optimized")
-                .build();
-    }
-
-    // Reusing the same method from BacktesterService
-    private double[] calculateSharpeAndSortino(Map<String, Double> dailyReturns) {
-        if (dailyReturns.isEmpty()) {
-            return new double[]{0, 0};
+        if (currentDay != QuoteDays.NO_DAY) {
+            metrics.addDailyReturn(dayReturn);
         }
 
-        double sum = dailyReturns.values().stream().mapToDouble(Double::doubleValue).sum();
-        double mean = sum / dailyReturns.size();
-
-        double squaredSum = dailyReturns.values().stream()
-                .mapToDouble(r -> Math.pow(r - mean, 2)).sum();
-        double variance = squaredSum / dailyReturns.size();
-        double stdDev = Math.sqrt(variance);
-
-        double downsideSquaredSum = dailyReturns.values().stream()
-                .filter(r -> r < 0)
-                .mapToDouble(r -> Math.pow(r, 2))
-                .sum();
-        double downsideDeviation = Math.sqrt(downsideSquaredSum / dailyReturns.size());
-
-        double dailyRiskFree = 0.02 / 365;
-
-        double sharpeRatio = stdDev > 0 ?
-                (mean - dailyRiskFree) / stdDev * Math.sqrt(252) : 0;
-        double sortinoRatio = downsideDeviation > 0 ?
-                (mean - dailyRiskFree) / downsideDeviation * Math.sqrt(252) : 0;
-
-        return new double[]{sharpeRatio, sortinoRatio};
+        BacktestResult result = metrics.toResult(metrics.getEquity());
+        result.setTrades(allTrades);
+        result.setStrategyName("Walk-Forward Optimized");
+        return result;
     }
 
     private int estimateMillisecondsPerCandles(List<Quote> quotes) {
@@ -353,4 +296,9 @@ public class WalkForwardService {
             default -> result.getSortinoRatio();
         };
     }
+
+    // Best metric a run can still end with given its maximum drawdown so far, the others aren't bounded before the end
+    private double getBestPerformanceMetric(double drawdown, PerformanceMetricType metricType) {
+        return metricType == PerformanceMetricType.MAXIMUM_DRAWDOWN ? -drawdown : Double.POSITIVE_INFINITY;
+    }
 }
\ No newline at end of file
@@ -18,5 +18,14 @@ public class Position {
     private boolean isLong;
     private int entryIndex;
     private MarketPhaseClassifier.MarketPhase marketPhase;
-    private List<Double> priceHistory;
+    private List<Double> priceHistory; // Only recorded when tracing, see TradingParameters
+
+    // Running excursions since the entry, as fractions of the entry price
+    private double maxAdverseExcursion;
+    private double maxFavorableExcursion;
+
+    // Exit found when the position was opened, for stops that never move
+    private boolean exitScanned;
+    private int exitIndex; // -1 when neither the stop nor the target is hit before the end of the quotes
+    private double exitPrice;
 }
@@ -0,0 +1,17 @@
+package ch.xavier.backtester.backtesting.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.Map;
+
+@Data
+@AllArgsConstructor
+public class PrecisionReport {
+    private final String strategyName;
+    private final Map<String, Object> parameters;
+    private final int signalMismatches;
+    private final int firstSignalMismatchIndex; // -1 if all signals match
+    private final Map<String, Double> metricDifferences; // Absolute difference of each metric, float - double
+    private final String largestMetricDifference; // Metric with the largest relative difference
+}
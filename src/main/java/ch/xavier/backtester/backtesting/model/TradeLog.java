@@ -0,0 +1,131 @@
+package ch.xavier.backtester.backtesting.model;
+
+import ch.xavier.backtester.marketphase.MarketPhaseClassifier;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Trades of a run recorded column by column in primitive arrays, so recording a trade allocates nothing once the
+ * columns have grown. {@link Trade} objects are only created when the trades are read through {@link #asList()}.
+ */
+public final class TradeLog {
+    public static final long NO_TIME = Long.MIN_VALUE; // Time of a trade on a quote without timestamp
+
+    private static final MarketPhaseClassifier.MarketPhase[] PHASES = MarketPhaseClassifier.MarketPhase.values();
+
+    private int size;
+    private long[] entryTimes = new long[16];
+    private long[] exitTimes = new long[16];
+    private double[] entryPrices = new double[16];
+    private double[] exitPrices = new double[16];
+    private double[] sizes = new double[16];
+    private double[] profits = new double[16];
+    private double[] profitAmounts = new double[16];
+    private double[] maxAdverseExcursions = new double[16];
+    private double[] maxFavorableExcursions = new double[16];
+    private boolean[] longs = new boolean[16];
+    private byte[] marketPhases = new byte[16]; // Ordinal of the phase, -1 for none
+
+    public void add(Date entryTime, Date exitTime, double entryPrice, double exitPrice, double size, double profit,
+                    double profitAmount, boolean isLong, double maxAdverseExcursion, double maxFavorableExcursion,
+                    MarketPhaseClassifier.MarketPhase marketPhase) {
+        if (this.size == entryTimes.length) {
+            grow();
+        }
+
+        int i = this.size++;
+        entryTimes[i] = entryTime != null ? entryTime.getTime() : NO_TIME;
+        exitTimes[i] = exitTime != null ? exitTime.getTime() : NO_TIME;
+        entryPrices[i] = entryPrice;
+        exitPrices[i] = exitPrice;
+        sizes[i] = size;
+        profits[i] = profit;
+        profitAmounts[i] = profitAmount;
+        longs[i] = isLong;
+        maxAdverseExcursions[i] = maxAdverseExcursion;
+        maxFavorableExcursions[i] = maxFavorableExcursion;
+        marketPhases[i] = (byte) (marketPhase != null ? marketPhase.ordinal() : -1);
+    }
+
+    private void grow() {
+        int capacity = entryTimes.length * 2;
+        entryTimes = Arrays.copyOf(entryTimes, capacity);
+        exitTimes = Arrays.copyOf(exitTimes, capacity);
+        entryPrices = Arrays.copyOf(entryPrices, capacity);
+        exitPrices = Arrays.copyOf(exitPrices, capacity);
+        sizes = Arrays.copyOf(sizes, capacity);
+        profits = Arrays.copyOf(profits, capacity);
+        profitAmounts = Arrays.copyOf(profitAmounts, capacity);
+        maxAdverseExcursions = Arrays.copyOf(maxAdverseExcursions, capacity);
+        maxFavorableExcursions = Arrays.copyOf(maxFavorableExcursions, capacity);
+        longs = Arrays.copyOf(longs, capacity);
+        marketPhases = Arrays.copyOf(marketPhases, capacity);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Forget every trade, keeping the columns to record the trades of another run
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    public long getEntryTime(int index) {
+        return entryTimes[index];
+    }
+
+    public long getExitTime(int index) {
+        return exitTimes[index];
+    }
+
+    public double getProfit(int index) {
+        return profits[index];
+    }
+
+    public double getProfitAmount(int index) {
+        return profitAmounts[index];
+    }
+
+    /**
+     * New trade object of the trade at the index
+     */
+    public Trade get(int index) {
+        return new Trade(
+                entryTimes[index] != NO_TIME ? new Date(entryTimes[index]) : null,
+                exitTimes[index] != NO_TIME ? new Date(exitTimes[index]) : null,
+                entryPrices[index],
+                exitPrices[index],
+                sizes[index],
+                profits[index],
+                profitAmounts[index],
+                longs[index],
+                maxAdverseExcursions[index],
+                maxFavorableExcursions[index],
+                marketPhases[index] >= 0 ? PHASES[marketPhases[index]] : null
+        );
+    }
+
+    /**
+     * Read-only view of the trades, each created when it is read
+     */
+    public List<Trade> asList() {
+        return new AbstractList<>() {
+            @Override
+            public Trade get(int index) {
+                if (index < 0 || index >= size) throw new IndexOutOfBoundsException(index);
+                return TradeLog.this.get(index);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+}
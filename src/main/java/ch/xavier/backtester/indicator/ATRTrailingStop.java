@@ -1,5 +1,6 @@
 package ch.xavier.backtester.indicator;
 
+import ch.xavier.backtester.indicator.volatility.ATR;
 import ch.xavier.backtester.quote.Quote;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
@@ -18,7 +19,7 @@ public class ATRTrailingStop {
             return new TrailingStopResult(0, 0, false, false);
         }
 
-        double atr = calculateATR(quotes, index);
+        double atr = ATR.series(quotes, length, ATR.Smoothing.SMA).get(index);
         double stopDistance = atr * multiplier;
         double sourcePrice = getPriceSource(quotes.get(index));
 
@@ -59,23 +60,6 @@ public class ATRTrailingStop {
         return quote.getClose() >= shortStop;
     }
 
-    private double calculateATR(List<Quote> quotes, int index) {
-        double sum = 0;
-        for (int i = Math.max(1, index - length + 1); i <= index; i++) {
-            sum += calculateTR(quotes, i);
-        }
-        return sum / length;
-    }
-
-    private double calculateTR(List<Quote> quotes, int index) {
-        double high = quotes.get(index).getHigh();
-        double low = quotes.get(index).getLow();
-        double prevClose = quotes.get(index - 1).getClose();
-
-        return Math.max(high - low,
-                Math.max(Math.abs(high - prevClose), Math.abs(low - prevClose)));
-    }
-
     private double getPriceSource(Quote quote) {
         switch (priceSource) {
             case "close":
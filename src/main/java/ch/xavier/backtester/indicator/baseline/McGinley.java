@@ -1,6 +1,8 @@
 package ch.xavier.backtester.indicator.baseline;
 
 import ch.xavier.backtester.indicator.Indicator;
+import ch.xavier.backtester.indicator.series.Column;
+import ch.xavier.backtester.indicator.series.IndicatorCache;
 import ch.xavier.backtester.quote.Quote;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
@@ -14,6 +16,37 @@ import java.util.List;
 public class McGinley implements Indicator {
     private int length;
 
+    /**
+     * Returns the McGinley Dynamic of every bar for these quotes in one pass, computed once per (quotes, length)
+     * and shared. Seeded from the first bar like {@link #calculate}, so it is computed on the quotes given.
+     */
+    public static Column series(List<Quote> quotes, int length) {
+        return IndicatorCache.column(quotes, "mcGinley:" + length, q -> calculateSeries(q, length));
+    }
+
+    private static double[] calculateSeries(List<Quote> quotes, int length) {
+        int size = quotes.size();
+        double[] values = new double[size];
+        if (length <= 0) {
+            return values;
+        }
+
+        // Simple average of the closes so far until the first full length
+        double sum = 0;
+        for (int i = 0; i < Math.min(length, size); i++) {
+            sum += quotes.get(i).getClose();
+            values[i] = sum / (i + 1);
+        }
+
+        for (int i = length; i < size; i++) {
+            double mg = values[i - 1];
+            double close = quotes.get(i).getClose();
+            values[i] = mg + (close - mg) / (length * Math.pow(close / mg, 4));
+        }
+
+        return values;
+    }
+
     @Override
     public double calculate(int index, List<Quote> quotes) {
         if (index < 0) return 0;
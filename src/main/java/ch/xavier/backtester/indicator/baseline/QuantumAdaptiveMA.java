@@ -1,6 +1,8 @@
 package ch.xavier.backtester.indicator.baseline;
 
 import ch.xavier.backtester.indicator.Indicator;
+import ch.xavier.backtester.indicator.series.Column;
+import ch.xavier.backtester.indicator.series.IndicatorCache;
 import ch.xavier.backtester.quote.Quote;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
@@ -16,6 +18,93 @@ public class QuantumAdaptiveMA implements Indicator {
     private double weightFactor = 10.0;
     private int maLength = 6;
 
+    /**
+     * Returns the moving average of every bar for these quotes in one pass, computed once per (quotes, parameters)
+     * and shared. Seeded from the first bar like {@link #calculate}, so it is computed on the quotes given.
+     */
+    public static Column series(List<Quote> quotes, int adxLength, double weightFactor, int maLength) {
+        QuantumAdaptiveMA ma = new QuantumAdaptiveMA();
+        ma.setAdxLength(adxLength);
+        ma.setWeightFactor(weightFactor);
+        ma.setMaLength(maLength);
+        return IndicatorCache.column(quotes, "quantumAdaptiveMA:" + adxLength + ":" + weightFactor + ":" + maLength,
+                ma::calculateSeries);
+    }
+
+    private double[] calculateSeries(List<Quote> quotes) {
+        int size = quotes.size();
+        double[] values = new double[size];
+        if (size == 0) {
+            return values;
+        }
+
+        // Only the ADX range and the final average look further back than the previous bar
+        double[] varMA = new double[size];
+        Quote first = quotes.getFirst();
+        double powerBulls = 0.0;
+        double powerBears = 0.0;
+        double strRange = first.getHigh() - first.getLow();
+        double[] diagX = new double[size];
+        varMA[0] = first.getClose();
+
+        for (int i = 1; i < size; i++) {
+            Quote current = quotes.get(i);
+            Quote previous = quotes.get(i - 1);
+
+            double hi = current.getHigh();
+            double hi1 = previous.getHigh();
+            double lo = current.getLow();
+            double lo1 = previous.getLow();
+            double close = current.getClose();
+            double close1 = previous.getClose();
+
+            double bulls1 = 0.5 * (Math.abs(hi - hi1) + (hi - hi1));
+            double bears1 = 0.5 * (Math.abs(lo1 - lo) + (lo1 - lo));
+
+            double bears = bulls1 > bears1 ? 0 : bulls1 == bears1 ? 0 : bears1;
+            double bulls = bulls1 < bears1 ? 0 : bulls1 == bears1 ? 0 : bulls1;
+
+            powerBulls = (weightFactor * powerBulls + bulls) / (weightFactor + 1);
+            powerBears = (weightFactor * powerBears + bears) / (weightFactor + 1);
+
+            double trueRange = Math.max(hi - lo, Math.max(Math.abs(hi - close1), Math.abs(lo - close1)));
+            strRange = (weightFactor * strRange + trueRange) / (weightFactor + 1);
+
+            double posDI = strRange > 0 ? powerBulls / strRange : 0;
+            double negDI = strRange > 0 ? powerBears / strRange : 0;
+            double diDiff = posDI + negDI > 0 ? Math.abs(posDI - negDI) / (posDI + negDI) : 0;
+
+            diagX[i] = (weightFactor * diagX[i - 1] + diDiff) / (weightFactor + 1);
+
+            double adxLow = Double.MAX_VALUE;
+            double adxHigh = Double.MIN_VALUE;
+            for (int j = Math.max(0, i - adxLength + 1); j <= i; j++) {
+                adxLow = Math.min(adxLow, diagX[j]);
+                adxHigh = Math.max(adxHigh, diagX[j]);
+            }
+
+            double adxMin = Math.min(1000000.0, adxLow);
+            double adxMax = Math.max(-1.0, adxHigh);
+            double adxDiff = adxMax - adxMin;
+
+            double adxConstant = adxDiff > 0 ? (diagX[i] - adxMin) / adxDiff : 0;
+
+            varMA[i] = ((2 - adxConstant) * varMA[i - 1] + adxConstant * close) / 2;
+        }
+
+        for (int index = 0; index < size; index++) {
+            double sum = 0;
+            int count = 0;
+            for (int i = Math.max(0, index - maLength + 1); i <= index; i++) {
+                sum += varMA[i];
+                count++;
+            }
+            values[index] = sum / count;
+        }
+
+        return values;
+    }
+
     @Override
     public double calculate(int index, List<Quote> quotes) {
         if (index <= 0) {
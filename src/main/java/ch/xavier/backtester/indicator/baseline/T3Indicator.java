@@ -1,6 +1,8 @@
 package ch.xavier.backtester.indicator.baseline;
 
 import ch.xavier.backtester.indicator.Indicator;
+import ch.xavier.backtester.indicator.series.Column;
+import ch.xavier.backtester.indicator.series.IndicatorCache;
 import ch.xavier.backtester.quote.Quote;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
@@ -16,6 +18,42 @@ public class T3Indicator implements Indicator {
     private int slowLength;
     private double factor;
 
+    /**
+     * Returns the T3 of every bar for these quotes, computed once per (quotes, length, factor) and shared.
+     * The EMAs are chained over the whole series once instead of over every prefix, seeded from the first bar
+     * like {@link #calculateT3} so it is computed on the quotes given.
+     */
+    public static Column series(List<Quote> quotes, int length, double factor) {
+        T3Indicator t3 = new T3Indicator();
+        t3.setFactor(factor);
+        return IndicatorCache.column(quotes, "t3:" + length + ":" + factor, q -> t3.calculateSeries(q, length));
+    }
+
+    private double[] calculateSeries(List<Quote> quotes, int length) {
+        int size = quotes.size();
+        double[] values = new double[size];
+        if (length <= 0 || size <= length) {
+            return values;
+        }
+
+        double[] prices = quotes.stream().mapToDouble(Quote::getClose).toArray();
+        double[] ema3 = calculateEMA(calculateEMA(calculateEMA(prices, length), length), length);
+        double[] ema4 = calculateEMA(ema3, length);
+        double[] ema5 = calculateEMA(ema4, length);
+        double[] ema6 = calculateEMA(ema5, length);
+
+        double c1 = -factor * factor * factor;
+        double c2 = 3 * factor * factor + 3 * factor * factor * factor;
+        double c3 = -6 * factor * factor - 3 * factor - 3 * factor * factor * factor;
+        double c4 = 1 + 3 * factor + factor * factor * factor + 3 * factor * factor;
+
+        for (int i = length; i < size; i++) {
+            values[i] = c1 * ema6[i] + c2 * ema5[i] + c3 * ema4[i] + c4 * ema3[i];
+        }
+
+        return values;
+    }
+
     @Override
     public double calculate(int index, List<Quote> quotes) {
         // Use fast T3 as the default calculation
@@ -1,12 +1,15 @@
 package ch.xavier.backtester.indicator.baseline;
 
 import ch.xavier.backtester.indicator.Indicator;
+import ch.xavier.backtester.indicator.series.Column;
+import ch.xavier.backtester.indicator.series.IndicatorCache;
 import ch.xavier.backtester.quote.Quote;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
 
 import java.util.List;
+import java.util.stream.IntStream;
 
 @NoArgsConstructor
 @Setter
@@ -14,6 +17,16 @@ import java.util.List;
 public class WhiteLine implements Indicator {
     private int length;
 
+    /**
+     * Returns the white line of every bar for these quotes, computed once per (quotes, length) and shared
+     */
+    public static Column series(List<Quote> quotes, int length) {
+        WhiteLine whiteLine = new WhiteLine();
+        whiteLine.setLength(length);
+        return IndicatorCache.column(quotes, "whiteLine:" + length, Math.max(0, length - 1),
+                q -> IntStream.range(0, q.size()).mapToDouble(i -> whiteLine.calculate(i, q)).toArray());
+    }
+
     @Override
     public double calculate(int index, List<Quote> quotes) {
         if (index < length - 1) {
@@ -1,12 +1,15 @@
 package ch.xavier.backtester.indicator.confirmation;
 
 import ch.xavier.backtester.indicator.Indicator;
+import ch.xavier.backtester.indicator.series.Column;
+import ch.xavier.backtester.indicator.series.IndicatorCache;
 import ch.xavier.backtester.quote.Quote;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
 
 import java.util.List;
+import java.util.stream.IntStream;
 
 @NoArgsConstructor
 @Setter
@@ -22,6 +25,29 @@ public class TTMSqueeze implements Indicator {
 
     private TTMSqueezeResult previousResult;
 
+    /**
+     * Returns the momentum of every bar for these quotes, computed once per (quotes, length) and shared
+     */
+    public static Column momentumSeries(List<Quote> quotes, int length) {
+        TTMSqueeze squeeze = new TTMSqueeze();
+        squeeze.setLength(length);
+        return IndicatorCache.column(quotes, "ttmSqueeze:momentum:" + length, length,
+                q -> IntStream.range(0, q.size()).mapToDouble(i -> squeeze.calculateResult(i, q).getMomentum()).toArray());
+    }
+
+    /**
+     * Returns 1 for every bar whose Bollinger Bands are out of the Keltner Channel and 0 for every bar in a squeeze,
+     * computed once per (quotes, length, multipliers) and shared
+     */
+    public static Column noSqueezeSeries(List<Quote> quotes, int length, double bbMult, double kcMult) {
+        TTMSqueeze squeeze = new TTMSqueeze();
+        squeeze.setLength(length);
+        squeeze.setBbMult(bbMult);
+        squeeze.setKcMult(kcMult);
+        return IndicatorCache.column(quotes, "ttmSqueeze:noSqueeze:" + length + ":" + bbMult + ":" + kcMult, length,
+                q -> IntStream.range(0, q.size()).mapToDouble(i -> squeeze.calculateResult(i, q).isNoSqueeze() ? 1 : 0).toArray());
+    }
+
     @Override
     public double calculate(int index, List<Quote> quotes) {
         TTMSqueezeResult result = calculateResult(index, quotes);
@@ -1,12 +1,15 @@
 package ch.xavier.backtester.indicator.confirmation;
 
 import ch.xavier.backtester.indicator.Indicator;
+import ch.xavier.backtester.indicator.series.Column;
+import ch.xavier.backtester.indicator.series.IndicatorCache;
 import ch.xavier.backtester.quote.Quote;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
 
 import java.util.List;
+import java.util.stream.IntStream;
 
 @NoArgsConstructor
 @Setter
@@ -15,6 +18,19 @@ public class TetherLines implements Indicator {
     private int fastLength;
     private int slowLength;
 
+    /**
+     * Returns the fast minus the slow tether line of every bar for these quotes, computed once per
+     * (quotes, lengths) and shared
+     */
+    public static Column series(List<Quote> quotes, int fastLength, int slowLength) {
+        TetherLines tetherLines = new TetherLines();
+        tetherLines.setFastLength(fastLength);
+        tetherLines.setSlowLength(slowLength);
+        return IndicatorCache.column(quotes, "tetherLines:" + fastLength + ":" + slowLength,
+                Math.max(0, Math.max(fastLength, slowLength) - 1),
+                q -> IntStream.range(0, q.size()).mapToDouble(i -> tetherLines.calculate(i, q)).toArray());
+    }
+
     @Override
     public double calculate(int index, List<Quote> quotes) {
         // Return the difference between fast and slow lines
@@ -1,6 +1,8 @@
 package ch.xavier.backtester.indicator.confirmation;
 
 import ch.xavier.backtester.indicator.Indicator;
+import ch.xavier.backtester.indicator.series.Column;
+import ch.xavier.backtester.indicator.series.IndicatorCache;
 import ch.xavier.backtester.quote.Quote;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
@@ -19,6 +21,56 @@ public class WavePulseIndicator implements Indicator {
     private boolean inverseSignals = false;
     private boolean useColorSignals = true;
 
+    /**
+     * Returns the wave of every bar for these quotes in one pass, computed once per (quotes, parameters) and shared.
+     * Seeded from the first bar like {@link #calculate}, so it is computed on the quotes given.
+     */
+    public static Column series(List<Quote> quotes, int smoothingPeriod, double constantFactor) {
+        WavePulseIndicator wavePulse = new WavePulseIndicator();
+        wavePulse.setSmoothingPeriod(smoothingPeriod);
+        wavePulse.setConstantFactor(constantFactor);
+        return IndicatorCache.column(quotes, "wavePulse:" + smoothingPeriod + ":" + constantFactor,
+                wavePulse::calculateSeries);
+    }
+
+    private double[] calculateSeries(List<Quote> quotes) {
+        int size = quotes.size();
+        double[] values = new double[size];
+        if (size == 0) {
+            return values;
+        }
+
+        double diVal = (smoothingPeriod - 1.0) / 2.0 + 1.0;
+        double c1Val = 2.0 / (diVal + 1.0);
+        double c2Val = 1.0 - c1Val;
+        double c3Val = 3.0 * (constantFactor * constantFactor + constantFactor * constantFactor * constantFactor);
+        double c4Val = -3.0 * (2.0 * constantFactor * constantFactor + constantFactor + constantFactor * constantFactor * constantFactor);
+        double c5Val = 3.0 * constantFactor + 1.0 + constantFactor * constantFactor * constantFactor + 3.0 * constantFactor * constantFactor;
+
+        // Each smoothing step only needs its own previous value
+        double i1 = quotes.getFirst().getClose();
+        double i2 = i1, i3 = i1, i4 = i1, i5 = i1, i6 = i1;
+        values[0] = i1;
+
+        for (int i = 1; i < size; i++) {
+            double close = quotes.get(i).getClose();
+
+            i1 = c1Val * close + c2Val * i1;
+            i2 = c1Val * i1 + c2Val * i2;
+            i3 = c1Val * i2 + c2Val * i3;
+            i4 = c1Val * i3 + c2Val * i4;
+            i5 = c1Val * i4 + c2Val * i5;
+            i6 = c1Val * i5 + c2Val * i6;
+
+            values[i] = -constantFactor * constantFactor * constantFactor * i6 +
+                    c3Val * i5 +
+                    c4Val * i4 +
+                    c5Val * i3;
+        }
+
+        return values;
+    }
+
     @Override
     public double calculate(int index, List<Quote> quotes) {
         if (index <= 0) {
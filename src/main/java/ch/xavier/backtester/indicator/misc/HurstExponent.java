@@ -0,0 +1,137 @@
+package ch.xavier.backtester.indicator.misc;
+
+import ch.xavier.backtester.indicator.series.Column;
+import ch.xavier.backtester.indicator.series.IndicatorCache;
+import ch.xavier.backtester.quote.Quote;
+
+import java.util.List;
+
+/**
+ * Rolling Hurst exponent of the log close over a window of {@code length} bars.
+ * <p>
+ * Estimated from how the dispersion of log returns scales with their lag (generalized Hurst exponent with q = 2):
+ * {@code std(ln p[t + lag] - ln p[t]) ~ lag^H} for lags 1, 2, 4, ... up to a quarter of the window. Sums and
+ * sums of squares of the returns of each lag are updated incrementally and recentred on their mean once per window,
+ * so each bar costs O(log length) amortized instead of the O(length log length) of a rescaled range recomputed per
+ * bar.
+ * <p>
+ * Around 0.5 prices are a random walk, above they trend and below they mean revert. Values before a full window
+ * is available are 0.
+ */
+public final class HurstExponent {
+
+    private HurstExponent() {
+    }
+
+    public static Column series(List<Quote> quotes, int length) {
+        return IndicatorCache.column(quotes, "hurst:" + length, length - 1, q -> calculateSeries(q, length));
+    }
+
+    private static double[] calculateSeries(List<Quote> quotes, int length) {
+        int size = quotes.size();
+        double[] hurst = new double[size];
+
+        int lagCount = Math.max(2, 31 - Integer.numberOfLeadingZeros(Math.max(1, length / 4)) + 1);
+        int[] lags = new int[lagCount];
+        double[] logLags = new double[lagCount];
+        for (int k = 0; k < lagCount; k++) {
+            lags[k] = 1 << k;
+            logLags[k] = Math.log(lags[k]);
+        }
+        if (lags[lagCount - 1] >= length) {
+            return hurst; // Window too short to compare several lags
+        }
+
+        // Regression of the log dispersion on the log lag only depends on the lags
+        double meanLogLag = 0;
+        for (double logLag : logLags) {
+            meanLogLag += logLag / lagCount;
+        }
+        double lagVariance = 0;
+        for (double logLag : logLags) {
+            lagVariance += (logLag - meanLogLag) * (logLag - meanLogLag);
+        }
+
+        double[] logCloses = new double[size];
+        for (int i = 0; i < size; i++) {
+            logCloses[i] = Math.log(quotes.get(i).getClose());
+        }
+
+        // Sums of the returns of each lag minus a shift close to their mean, so the variance doesn't cancel out on
+        // steady trends where the squared mean dwarfs it
+        double[] shifts = new double[lagCount];
+        double[] sums = new double[lagCount];
+        double[] sumsOfSquares = new double[lagCount];
+
+        for (int i = length - 1; i < size; i++) {
+            if ((i - length + 1) % length == 0) {
+                // Recentred once per window, which also drops the rounding the rolling sums accumulated
+                center(logCloses, i, length, lags, shifts, sums, sumsOfSquares);
+            } else {
+                for (int k = 0; k < lagCount; k++) {
+                    int lag = lags[k];
+
+                    // The window holds the returns of this lag starting and ending within its last length bars
+                    double added = logCloses[i] - logCloses[i - lag] - shifts[k];
+                    sums[k] += added;
+                    sumsOfSquares[k] += added * added;
+
+                    int removedEnd = i - length + lag;
+                    double removed = logCloses[removedEnd] - logCloses[removedEnd - lag] - shifts[k];
+                    sums[k] -= removed;
+                    sumsOfSquares[k] -= removed * removed;
+                }
+            }
+
+            hurst[i] = estimate(sums, sumsOfSquares, lags, logLags, meanLogLag, lagVariance, length);
+        }
+
+        return hurst;
+    }
+
+    private static void center(double[] logCloses, int index, int length, int[] lags, double[] shifts, double[] sums,
+                               double[] sumsOfSquares) {
+        for (int k = 0; k < lags.length; k++) {
+            int lag = lags[k];
+            int firstEnd = index - length + 1 + lag;
+
+            double mean = 0;
+            for (int end = firstEnd; end <= index; end++) {
+                mean += logCloses[end] - logCloses[end - lag];
+            }
+            shifts[k] = mean / (length - lag);
+
+            sums[k] = 0;
+            sumsOfSquares[k] = 0;
+            for (int end = firstEnd; end <= index; end++) {
+                double centered = logCloses[end] - logCloses[end - lag] - shifts[k];
+                sums[k] += centered;
+                sumsOfSquares[k] += centered * centered;
+            }
+        }
+    }
+
+    private static double estimate(double[] sums, double[] sumsOfSquares, int[] lags, double[] logLags,
+                                   double meanLogLag, double lagVariance, int length) {
+        double[] logDispersions = new double[lags.length];
+        double meanLogDispersion = 0;
+
+        for (int k = 0; k < lags.length; k++) {
+            int count = length - lags[k];
+            double shiftedMean = sums[k] / count;
+            double variance = sumsOfSquares[k] / count - shiftedMean * shiftedMean;
+            if (variance <= 0) {
+                return 0; // Flat window
+            }
+
+            logDispersions[k] = 0.5 * Math.log(variance);
+            meanLogDispersion += logDispersions[k] / lags.length;
+        }
+
+        double covariance = 0;
+        for (int k = 0; k < lags.length; k++) {
+            covariance += (logLags[k] - meanLogLag) * (logDispersions[k] - meanLogDispersion);
+        }
+        return covariance / lagVariance;
+    }
+}
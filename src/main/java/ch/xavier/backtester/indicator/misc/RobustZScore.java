@@ -0,0 +1,51 @@
+package ch.xavier.backtester.indicator.misc;
+
+import ch.xavier.backtester.indicator.series.Column;
+import ch.xavier.backtester.indicator.series.IndicatorCache;
+import ch.xavier.backtester.indicator.series.RollingOrderStatistics;
+import ch.xavier.backtester.quote.Quote;
+
+import java.util.List;
+
+/**
+ * Z-score of the close using the rolling median and the median absolute deviation instead of the mean and the
+ * standard deviation, so single spikes don't distort it. The MAD is scaled by 1.4826 to be comparable to a standard
+ * deviation on normally distributed prices. Values are 0 before a full window or when the window is flat.
+ */
+public final class RobustZScore {
+    public static final double MAD_TO_STD_DEV = 1.4826;
+
+    private RobustZScore() {
+    }
+
+    public static Column series(List<Quote> quotes, int length) {
+        return IndicatorCache.column(quotes, "robustZScore:" + length, length - 1, source -> {
+            double[] closes = source.stream().mapToDouble(Quote::getClose).toArray();
+            double[] zScores = new double[closes.length];
+            RollingOrderStatistics window = new RollingOrderStatistics(closes);
+
+            for (int i = 0; i < closes.length; i++) {
+                window.add(i);
+                if (i >= length) {
+                    window.remove(i - length);
+                }
+                if (i >= length - 1) {
+                    double deviation = MAD_TO_STD_DEV * window.medianAbsoluteDeviation();
+                    if (deviation > 0) {
+                        zScores[i] = (closes[i] - window.median()) / deviation;
+                    }
+                }
+            }
+            return zScores;
+        });
+    }
+
+    /**
+     * @return Rolling median absolute deviation scaled to a standard deviation
+     */
+    public static Column standardDeviation(List<Quote> quotes, int length) {
+        return IndicatorCache.column(quotes, "robustStdDev:" + length, length - 1,
+                source -> RollingQuantile.calculateSeries(source, length,
+                        window -> MAD_TO_STD_DEV * window.medianAbsoluteDeviation()));
+    }
+}
@@ -0,0 +1,52 @@
+package ch.xavier.backtester.indicator.misc;
+
+import ch.xavier.backtester.indicator.series.Column;
+import ch.xavier.backtester.indicator.series.IndicatorCache;
+import ch.xavier.backtester.indicator.series.RollingOrderStatistics;
+import ch.xavier.backtester.quote.Quote;
+
+import java.util.List;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Rolling median, quantiles and median absolute deviation of the close over a window of {@code length} bars.
+ * Values before a full window is available are 0.
+ */
+public final class RollingQuantile {
+
+    private RollingQuantile() {
+    }
+
+    public static Column median(List<Quote> quotes, int length) {
+        return quantile(quotes, length, 0.5);
+    }
+
+    public static Column quantile(List<Quote> quotes, int length, double q) {
+        return IndicatorCache.column(quotes, "quantile:" + length + ":" + q, length - 1,
+                source -> calculateSeries(source, length, window -> window.quantile(q)));
+    }
+
+    public static Column medianAbsoluteDeviation(List<Quote> quotes, int length) {
+        return IndicatorCache.column(quotes, "mad:" + length, length - 1,
+                source -> calculateSeries(source, length, RollingOrderStatistics::medianAbsoluteDeviation));
+    }
+
+    static double[] calculateSeries(List<Quote> quotes, int length,
+                                    ToDoubleFunction<RollingOrderStatistics> statistic) {
+        double[] closes = quotes.stream().mapToDouble(Quote::getClose).toArray();
+        double[] values = new double[closes.length];
+        RollingOrderStatistics window = new RollingOrderStatistics(closes);
+
+        for (int i = 0; i < closes.length; i++) {
+            window.add(i);
+            if (i >= length) {
+                window.remove(i - length);
+            }
+            if (i >= length - 1) {
+                values[i] = statistic.applyAsDouble(window);
+            }
+        }
+
+        return values;
+    }
+}
@@ -1,5 +1,8 @@
 package ch.xavier.backtester.indicator.misc;
 
+import ch.xavier.backtester.indicator.series.Column;
+import ch.xavier.backtester.indicator.series.IndicatorCache;
+import ch.xavier.backtester.indicator.series.Precision;
 import ch.xavier.backtester.quote.Quote;
 import lombok.Getter;
 
@@ -7,9 +10,9 @@ import java.util.List;
 
 public class Stochastic {
     @Getter
-    private double[] k; // %K line (fast)
+    private Column k; // %K line (fast)
     @Getter
-    private double[] d; // %D line (slow)
+    private Column d; // %D line (slow)
 
     private final int kPeriod;
     private final int dPeriod;
@@ -38,10 +41,50 @@ public class Stochastic {
         this.isFull = isFull;
     }
 
+    /**
+     * Calculates %K and %D, shared with every other stochastic of the same settings on these quotes
+     */
     public void calculate(List<Quote> quotes) {
+        String key = "stoch:" + kPeriod + ":" + smoothK + ":" + isFull;
+        int kWarmUp = (kPeriod - 1) + (smoothK == 1 && !isFull ? 0 : smoothK - 1);
+        Precision precision = IndicatorCache.getPrecision();
+
+        k = precision == Precision.DOUBLE ? kValues(quotes, key, kWarmUp, precision)
+                : IndicatorCache.column(quotes, key + ":k", kWarmUp, q -> toArray(kValues(q, key, kWarmUp, precision)));
+        d = IndicatorCache.column(quotes, key + ":" + dPeriod + ":d", kWarmUp + dPeriod - 1, q -> {
+            // %D is accumulated from the double precision %K, whatever the storage precision of %K
+            double[] values = toArray(kValues(q, key, kWarmUp, precision));
+            double[] dValues = new double[values.length];
+            calculateSMA(values, dValues, dPeriod);
+            return dValues;
+        });
+    }
+
+    /**
+     * %K in double precision, scanned once per quotes list, or once per chunk of the root list on a window, so the
+     * %K and %D chunks of every window read the same scan. The scan reads the price columns of the run's precision,
+     * so it's shared between runs of the same precision only.
+     */
+    private Column kValues(List<Quote> quotes, String key, int kWarmUp, Precision precision) {
+        return IndicatorCache.withPrecision(Precision.DOUBLE, () -> IndicatorCache.column(quotes,
+                key + ":kValues@" + precision, kWarmUp,
+                q -> IndicatorCache.withPrecision(precision, () -> calculateK(q))));
+    }
+
+    private static double[] toArray(Column column) {
+        double[] values = new double[column.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = column.get(i);
+        }
+        return values;
+    }
+
+    private double[] calculateK(List<Quote> quotes) {
         int size = quotes.size();
-        k = new double[size];
-        d = new double[size];
+        double[] kValues = new double[size];
+        Column highs = Column.high(quotes);
+        Column lows = Column.low(quotes);
+        Column closes = Column.close(quotes);
 
         // Step 1: Calculate raw %K for each candle
         double[] rawK = new double[size];
@@ -52,15 +95,13 @@ public class Stochastic {
 
             // Find highest high and lowest low over kPeriod
             for (int j = i - (kPeriod - 1); j <= i; j++) {
-                Quote quote = quotes.get(j);
-                highestHigh = Math.max(highestHigh, quote.getHigh());
-                lowestLow = Math.min(lowestLow, quote.getLow());
+                highestHigh = Math.max(highestHigh, highs.get(j));
+                lowestLow = Math.min(lowestLow, lows.get(j));
             }
 
             // Calculate Raw %K = (Current Close - Lowest Low) / (Highest High - Lowest Low) * 100
             if (highestHigh != lowestLow) {
-                Quote current = quotes.get(i);
-                rawK[i] = ((current.getClose() - lowestLow) / (highestHigh - lowestLow)) * 100;
+                rawK[i] = ((closes.get(i) - lowestLow) / (highestHigh - lowestLow)) * 100;
             } else {
                 rawK[i] = 50; // If no range, use 50 as default
             }
@@ -69,14 +110,13 @@ public class Stochastic {
         // Step 2: Calculate %K (smoothed if needed)
         if (smoothK == 1 && !isFull) {
             // Fast Stochastic uses raw %K values directly
-            System.arraycopy(rawK, 0, k, 0, size);
+            System.arraycopy(rawK, 0, kValues, 0, size);
         } else {
             // Slow/Full Stochastic smooths the %K using SMA
-            calculateSMA(rawK, k, smoothK);
+            calculateSMA(rawK, kValues, smoothK);
         }
 
-        // Step 3: Calculate %D (SMA of %K)
-        calculateSMA(k, d, dPeriod);
+        return kValues;
     }
 
     private void calculateSMA(double[] source, double[] dest, int period) {
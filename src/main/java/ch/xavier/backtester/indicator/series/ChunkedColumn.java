@@ -0,0 +1,73 @@
+package ch.xavier.backtester.indicator.series;
+
+import ch.xavier.backtester.quote.Quote;
+import ch.xavier.backtester.quote.QuoteWindow;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+
+/**
+ * Column of a root quotes list materialised lazily, one chunk at a time.
+ * <p>
+ * Each chunk is computed over its own range extended backwards by the warm-up of the indicator, so indicators whose
+ * value only depends on a finite look-back, such as sums and extremes over a window, match the series computed over
+ * the whole list exactly. Recursive ones, such as Wilder's RMA, never forget their seed: they declare an
+ * {@link IndicatorCache#UNBOUNDED_WARM_UP} and are computed as a single chunk spanning the whole list.
+ * The root list and the loader are passed on every access instead of being held, since this column is cached
+ * against the root list.
+ */
+final class ChunkedColumn {
+    private static final int CHUNK_SIZE = 4096;
+
+    private final int size;
+    private final int warmUp;
+    private final int chunkSize;
+    private final Precision precision;
+    private final AtomicReferenceArray<Chunk> chunks;
+
+    ChunkedColumn(int size, int warmUp, Precision precision) {
+        this.size = size;
+        this.warmUp = warmUp;
+        this.chunkSize = warmUp == IndicatorCache.UNBOUNDED_WARM_UP ? Math.max(1, size) : CHUNK_SIZE;
+        this.precision = precision;
+        this.chunks = new AtomicReferenceArray<>((size + chunkSize - 1) / chunkSize);
+    }
+
+    /**
+     * Returns the chunk holding the value at this index of the root list, computing it on first use
+     */
+    Chunk chunkAt(List<Quote> root, int index, Function<List<Quote>, double[]> loader) {
+        int chunkIndex = index / chunkSize;
+        Chunk chunk = chunks.get(chunkIndex);
+        if (chunk == null) {
+            // Concurrent windows may compute the same chunk twice, both results are identical
+            chunk = computeChunk(root, chunkIndex, loader);
+            if (!chunks.compareAndSet(chunkIndex, null, chunk)) {
+                chunk = chunks.get(chunkIndex);
+            }
+        }
+        return chunk;
+    }
+
+    int size() {
+        return size;
+    }
+
+    private Chunk computeChunk(List<Quote> root, int chunkIndex, Function<List<Quote>, double[]> loader) {
+        int chunkStart = chunkIndex * chunkSize;
+        int chunkEnd = Math.min(chunkStart + chunkSize, size);
+        int from = Math.max(0, chunkStart - warmUp);
+
+        double[] values = loader.apply(QuoteWindow.of(root, from, chunkEnd));
+        double[] chunkValues = new double[chunkEnd - chunkStart];
+        System.arraycopy(values, chunkStart - from, chunkValues, 0, chunkValues.length);
+        return new Chunk(chunkStart, chunkEnd, Column.of(chunkValues, precision));
+    }
+
+    /**
+     * Values of the root list from start inclusive to end exclusive
+     */
+    record Chunk(int start, int end, Column values) {
+    }
+}
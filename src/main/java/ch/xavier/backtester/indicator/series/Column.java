@@ -0,0 +1,30 @@
+package ch.xavier.backtester.indicator.series;
+
+import ch.xavier.backtester.quote.Quote;
+
+import java.util.List;
+
+/**
+ * Read-only series of values aligned with the quotes they were computed on, stored as doubles or floats.
+ */
+public interface Column {
+    double get(int index);
+
+    int size();
+
+    static Column of(double[] values, Precision precision) {
+        return precision == Precision.FLOAT ? new FloatColumn(values) : new DoubleColumn(values);
+    }
+
+    static Column close(List<Quote> quotes) {
+        return IndicatorCache.column(quotes, "close", 0, q -> q.stream().mapToDouble(Quote::getClose).toArray());
+    }
+
+    static Column high(List<Quote> quotes) {
+        return IndicatorCache.column(quotes, "high", 0, q -> q.stream().mapToDouble(Quote::getHigh).toArray());
+    }
+
+    static Column low(List<Quote> quotes) {
+        return IndicatorCache.column(quotes, "low", 0, q -> q.stream().mapToDouble(Quote::getLow).toArray());
+    }
+}
@@ -0,0 +1,19 @@
+package ch.xavier.backtester.indicator.series;
+
+final class DoubleColumn implements Column {
+    private final double[] values;
+
+    DoubleColumn(double[] values) {
+        this.values = values;
+    }
+
+    @Override
+    public double get(int index) {
+        return values[index];
+    }
+
+    @Override
+    public int size() {
+        return values.length;
+    }
+}
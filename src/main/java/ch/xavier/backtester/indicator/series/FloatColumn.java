@@ -0,0 +1,22 @@
+package ch.xavier.backtester.indicator.series;
+
+final class FloatColumn implements Column {
+    private final float[] values;
+
+    FloatColumn(double[] values) {
+        this.values = new float[values.length];
+        for (int i = 0; i < values.length; i++) {
+            this.values[i] = (float) values[i];
+        }
+    }
+
+    @Override
+    public double get(int index) {
+        return values[index];
+    }
+
+    @Override
+    public int size() {
+        return values.length;
+    }
+}
@@ -0,0 +1,177 @@
+package ch.xavier.backtester.indicator.series;
+
+import ch.xavier.backtester.quote.Quote;
+import lombok.Getter;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Resamples quotes to a higher timeframe and projects indicators computed there back onto the base quotes.
+ * <p>
+ * The projection is lookahead-safe: base bar {@code i} only sees the last higher timeframe bar that was already
+ * completed at the close of bar {@code i}, known from its own timestamp and the interval its quote declares. A bar
+ * of an unknown interval is only known to have closed once a bar of the next higher timeframe bar opens. The mapping
+ * is precomputed once so every lookup is a single array read.
+ */
+public final class HigherTimeframe {
+    private final String timeframe;
+    @Getter
+    private final List<Quote> quotes;
+    private final int[] baseToHigherIndex;
+
+    private HigherTimeframe(String timeframe, List<Quote> quotes, int[] baseToHigherIndex) {
+        this.timeframe = timeframe;
+        this.quotes = quotes;
+        this.baseToHigherIndex = baseToHigherIndex;
+    }
+
+    /**
+     * Returns the resampling of the base quotes to the given timeframe (e.g. "1h", "4h", "1d"), computed once
+     * per base quotes list
+     */
+    public static HigherTimeframe of(List<Quote> baseQuotes, String timeframe) {
+        return IndicatorCache.get(baseQuotes, "htf:" + timeframe, q -> resample(q, timeframe));
+    }
+
+    /**
+     * Computes an indicator once on the higher timeframe quotes and projects it onto the base quotes.
+     * Base bars before the first completed higher timeframe bar get NaN, they have no value to see yet.
+     *
+     * @param baseQuotes Quotes the projected series is aligned with
+     * @param key        Descriptor of the indicator, must include all its parameters
+     * @param indicator  Computes the indicator series over the higher timeframe quotes
+     */
+    public double[] project(List<Quote> baseQuotes, String key, Function<List<Quote>, double[]> indicator) {
+        return IndicatorCache.get(baseQuotes, "htf:" + timeframe + ":" + key,
+                q -> project(IndicatorCache.get(quotes, key, indicator)));
+    }
+
+    public double[] project(double[] higherValues) {
+        double[] projected = new double[baseToHigherIndex.length];
+        for (int i = 0; i < projected.length; i++) {
+            int higherIndex = baseToHigherIndex[i];
+            projected[i] = higherIndex >= 0 ? higherValues[higherIndex] : Double.NaN;
+        }
+        return projected;
+    }
+
+    /**
+     * @return Index of the last higher timeframe bar completed at the close of the base bar, -1 if none yet
+     */
+    public int higherIndex(int baseIndex) {
+        return baseToHigherIndex[baseIndex];
+    }
+
+    private static HigherTimeframe resample(List<Quote> baseQuotes, String timeframe) {
+        long periodMillis = toMillis(timeframe);
+
+        List<Quote> higherQuotes = new ArrayList<>();
+        int[] baseToHigherIndex = new int[baseQuotes.size()];
+
+        long bucketStart = Long.MIN_VALUE;
+        double open = 0, high = 0, low = 0, close = 0, volume = 0;
+        Quote first = null;
+
+        for (int i = 0; i < baseQuotes.size(); i++) {
+            Quote quote = baseQuotes.get(i);
+            if (quote.getTimestamp() == null) {
+                // Outside of any higher timeframe bar, sees what the bar before saw
+                baseToHigherIndex[i] = i > 0 ? baseToHigherIndex[i - 1] : -1;
+                continue;
+            }
+
+            long time = quote.getTimestamp().getTime();
+            long quoteBucket = Math.floorDiv(time, periodMillis) * periodMillis;
+
+            if (quoteBucket != bucketStart) {
+                if (first != null) {
+                    higherQuotes.add(buildBar(first, bucketStart, timeframe, open, high, low, close, volume));
+                }
+                bucketStart = quoteBucket;
+                first = quote;
+                open = quote.getOpen();
+                high = quote.getHigh();
+                low = quote.getLow();
+                volume = 0;
+            }
+
+            high = Math.max(high, quote.getHigh());
+            low = Math.min(low, quote.getLow());
+            close = quote.getClose();
+            volume += quote.getVolume();
+
+            // The bar being built is only visible once this base bar closes at the end of its bucket
+            int currentIndex = higherQuotes.size();
+            long baseMillis = intervalMillis(quote.getMarketInterval());
+            boolean completed = baseMillis > 0 && time + baseMillis >= bucketStart + periodMillis;
+            baseToHigherIndex[i] = completed ? currentIndex : currentIndex - 1;
+        }
+
+        if (first != null) {
+            higherQuotes.add(buildBar(first, bucketStart, timeframe, open, high, low, close, volume));
+        }
+
+        return new HigherTimeframe(timeframe, higherQuotes, baseToHigherIndex);
+    }
+
+    private static Quote buildBar(Quote first, long bucketStart, String timeframe,
+                                  double open, double high, double low, double close, double volume) {
+        return Quote.builder()
+                .timestamp(new Timestamp(bucketStart))
+                .open(open)
+                .high(high)
+                .low(low)
+                .close(close)
+                .volume(volume)
+                .symbol(first.getSymbol())
+                .marketInterval(timeframe)
+                .build();
+    }
+
+    /**
+     * Length of the bars of a quote's interval, as the exchange names it or as a timeframe, -1 when unknown
+     */
+    static long intervalMillis(String marketInterval) {
+        if (marketInterval == null) return -1;
+
+        return switch (marketInterval) {
+            case "ONE_MINUTE" -> TimeUnit.MINUTES.toMillis(1);
+            case "THREE_MINUTES" -> TimeUnit.MINUTES.toMillis(3);
+            case "FIVE_MINUTES" -> TimeUnit.MINUTES.toMillis(5);
+            case "FIFTEEN_MINUTES" -> TimeUnit.MINUTES.toMillis(15);
+            case "HALF_HOURLY" -> TimeUnit.MINUTES.toMillis(30);
+            case "HOURLY" -> TimeUnit.HOURS.toMillis(1);
+            case "TWO_HOURLY" -> TimeUnit.HOURS.toMillis(2);
+            case "FOUR_HOURLY" -> TimeUnit.HOURS.toMillis(4);
+            case "SIX_HOURLY" -> TimeUnit.HOURS.toMillis(6);
+            case "TWELVE_HOURLY" -> TimeUnit.HOURS.toMillis(12);
+            case "DAILY" -> TimeUnit.DAYS.toMillis(1);
+            case "WEEKLY" -> TimeUnit.DAYS.toMillis(7);
+            default -> {
+                // Months have no fixed length, "1M" isn't a timeframe of toMillis
+                try {
+                    yield toMillis(marketInterval);
+                } catch (IllegalArgumentException e) {
+                    yield -1;
+                }
+            }
+        };
+    }
+
+    public static long toMillis(String timeframe) {
+        int value = Integer.parseInt(timeframe.replaceAll("[^0-9]", ""));
+        String unit = timeframe.replaceAll("[0-9]", "");
+
+        return switch (unit) {
+            case "m" -> TimeUnit.MINUTES.toMillis(value);
+            case "h" -> TimeUnit.HOURS.toMillis(value);
+            case "d" -> TimeUnit.DAYS.toMillis(value);
+            case "w" -> TimeUnit.DAYS.toMillis(7L * value);
+            default -> throw new IllegalArgumentException("Unsupported timeframe: " + timeframe);
+        };
+    }
+}
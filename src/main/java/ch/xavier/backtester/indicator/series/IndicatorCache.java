@@ -0,0 +1,153 @@
+package ch.xavier.backtester.indicator.series;
+
+import ch.xavier.backtester.quote.Quote;
+import ch.xavier.backtester.quote.QuoteWindow;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Shares precomputed indicator series between all strategies running on the same quotes.
+ * <p>
+ * Series are keyed by the identity of the quotes list plus a descriptor such as {@code "atr:14:RMA"}, so every
+ * grid combination backtested on one list reuses the same arrays. Entries are dropped once their quotes list is
+ * garbage collected. Cached values must therefore never hold a strong reference to the quotes list they belong to.
+ * <p>
+ * Columns are stored with the precision of the backtest computing them, set for the duration of the run on its
+ * thread, so runs of different precisions can share the cache at the same time.
+ */
+public final class IndicatorCache {
+    private static final ReferenceQueue<List<Quote>> STALE_KEYS = new ReferenceQueue<>();
+    private static final Map<QuotesKey, Map<String, Object>> SERIES = new ConcurrentHashMap<>();
+    private static final ThreadLocal<Precision> PRECISION = ThreadLocal.withInitial(() -> Precision.DOUBLE);
+
+    /**
+     * Warm-up of recursive indicators, whose value depends on every bar before it. On a {@link QuoteWindow}, their
+     * column is computed once over the whole root list instead of in chunks.
+     */
+    public static final int UNBOUNDED_WARM_UP = Integer.MAX_VALUE;
+
+    private IndicatorCache() {
+    }
+
+    /**
+     * Returns the series cached under the given key for these quotes, computing it with the loader on first use
+     *
+     * @param quotes Quotes the series is computed on
+     * @param key    Descriptor of the series, must include every parameter the loader depends on
+     * @param loader Computes the series, may itself read other cached series
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T get(List<Quote> quotes, String key, Function<List<Quote>, T> loader) {
+        expungeStaleEntries();
+
+        Map<String, Object> series = SERIES.get(new QuotesKey(quotes, null));
+        if (series == null) {
+            Map<String, Object> created = new ConcurrentHashMap<>();
+            series = SERIES.putIfAbsent(new QuotesKey(quotes, STALE_KEYS), created);
+            if (series == null) {
+                series = created;
+            }
+        }
+
+        Object value = series.get(key);
+        if (value == null) {
+            // Computed outside of computeIfAbsent so loaders can read other cached series of the same quotes
+            value = loader.apply(quotes);
+            Object existing = series.putIfAbsent(key, value);
+            if (existing != null) {
+                value = existing;
+            }
+        }
+
+        return (T) value;
+    }
+
+    /**
+     * Returns the column cached under the given key for these quotes, stored with the current precision.
+     * Columns of both precisions are cached separately so switching the precision never mixes them.
+     */
+    public static Column column(List<Quote> quotes, String key, Function<List<Quote>, double[]> loader) {
+        Precision columnPrecision = PRECISION.get();
+        return get(quotes, key + "@" + columnPrecision, q -> Column.of(loader.apply(q), columnPrecision));
+    }
+
+    /**
+     * Returns the column of an indicator declaring its warm-up, the number of bars before an index its value
+     * depends on. On a {@link QuoteWindow}, the column is computed lazily in chunks over the root quotes list,
+     * each extended backwards by the warm-up, and the chunks are shared by every window of that list. Either way,
+     * the values of a window are those of the same bars in its root list.
+     */
+    public static Column column(List<Quote> quotes, String key, int warmUp, Function<List<Quote>, double[]> loader) {
+        if (!(quotes instanceof QuoteWindow window)) {
+            return column(quotes, key, loader);
+        }
+
+        Precision columnPrecision = PRECISION.get();
+        List<Quote> root = window.getRoot();
+        ChunkedColumn chunked = get(root, key + "@" + columnPrecision + ":chunked",
+                q -> new ChunkedColumn(q.size(), warmUp, columnPrecision));
+        return new WindowColumn(chunked, window, loader);
+    }
+
+    /**
+     * Storage precision of the columns of the run on the current thread
+     */
+    public static Precision getPrecision() {
+        return PRECISION.get();
+    }
+
+    /**
+     * Runs a backtest, or any part of one, with its columns stored with the given precision. Only the current
+     * thread is affected, other runs keep their own precision.
+     */
+    public static <T> T withPrecision(Precision precision, Supplier<T> run) {
+        Precision previous = PRECISION.get();
+        PRECISION.set(precision);
+        try {
+            return run.get();
+        } finally {
+            PRECISION.set(previous);
+        }
+    }
+
+    public static void clear() {
+        SERIES.clear();
+    }
+
+    private static void expungeStaleEntries() {
+        Reference<? extends List<Quote>> staleKey;
+        while ((staleKey = STALE_KEYS.poll()) != null) {
+            SERIES.remove(staleKey);
+        }
+    }
+
+    private static final class QuotesKey extends WeakReference<List<Quote>> {
+        private final int hash;
+
+        QuotesKey(List<Quote> quotes, ReferenceQueue<List<Quote>> queue) {
+            super(quotes, queue);
+            this.hash = System.identityHashCode(quotes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) return true;
+            if (!(other instanceof QuotesKey otherKey)) return false;
+
+            List<Quote> quotes = get();
+            return quotes != null && quotes == otherKey.get();
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package ch.xavier.backtester.indicator.series;
+
+/**
+ * Storage precision of cached columns. Indicators always accumulate in double, FLOAT only narrows the stored
+ * values, halving the memory bandwidth of large grids.
+ */
+public enum Precision {
+    DOUBLE, FLOAT
+}
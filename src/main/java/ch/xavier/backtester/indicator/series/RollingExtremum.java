@@ -0,0 +1,73 @@
+package ch.xavier.backtester.indicator.series;
+
+/**
+ * Highest or lowest value of the last {@code length} indices added, streamed through a monotonic deque.
+ * <p>
+ * The deque is a fixed-capacity ring buffer of primitives, adding a value is O(1) amortised and allocation free.
+ * Indices must be added in increasing order but may skip some, only the indices of the window are compared.
+ */
+public final class RollingExtremum {
+    private final int length;
+    private final boolean max;
+    private final int[] indices;
+    private final double[] values;
+    private int head;
+    private int size;
+
+    private RollingExtremum(int length, boolean max) {
+        if (length < 1) {
+            throw new IllegalArgumentException("Length must be positive: " + length);
+        }
+        this.length = length;
+        this.max = max;
+        this.indices = new int[length];
+        this.values = new double[length];
+    }
+
+    public static RollingExtremum max(int length) {
+        return new RollingExtremum(length, true);
+    }
+
+    public static RollingExtremum min(int length) {
+        return new RollingExtremum(length, false);
+    }
+
+    public void add(int index, double value) {
+        // Drop what left the window, then what can no longer be the extremum
+        while (size > 0 && indices[head] <= index - length) {
+            head = (head + 1) % length;
+            size--;
+        }
+        while (size > 0 && dominates(value, values[(head + size - 1) % length])) {
+            size--;
+        }
+
+        int tail = (head + size) % length;
+        indices[tail] = index;
+        values[tail] = value;
+        size++;
+    }
+
+    /**
+     * Extremum of the window ending at the last index added, NaN before anything was added
+     */
+    public double get() {
+        return size == 0 ? Double.NaN : values[head];
+    }
+
+    /**
+     * Index of the extremum, the most recent one on ties, -1 before anything was added
+     */
+    public int getIndex() {
+        return size == 0 ? -1 : indices[head];
+    }
+
+    public void clear() {
+        head = 0;
+        size = 0;
+    }
+
+    private boolean dominates(double value, double other) {
+        return max ? value >= other : value <= other;
+    }
+}
@@ -0,0 +1,148 @@
+package ch.xavier.backtester.indicator.series;
+
+import java.util.Arrays;
+
+/**
+ * Order statistics of a sliding window over a series known in advance.
+ * <p>
+ * Values are compressed to their rank in the whole series and counted in a Fenwick tree, so adding or removing a
+ * value and selecting the k-th smallest value of the window are O(log n).
+ */
+public final class RollingOrderStatistics {
+    private final double[] sortedValues;
+    private final int[] ranks;
+    private final int[] tree;
+    private final int highestPowerOfTwo;
+    private int count;
+
+    public RollingOrderStatistics(double[] series) {
+        double[] sorted = series.clone();
+        Arrays.sort(sorted);
+        int distinct = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[distinct - 1]) {
+                sorted[distinct++] = sorted[i];
+            }
+        }
+        this.sortedValues = Arrays.copyOf(sorted, distinct);
+
+        this.ranks = new int[series.length];
+        for (int i = 0; i < series.length; i++) {
+            ranks[i] = Arrays.binarySearch(sortedValues, series[i]);
+        }
+
+        this.tree = new int[distinct + 1];
+        this.highestPowerOfTwo = distinct == 0 ? 0 : Integer.highestOneBit(distinct);
+    }
+
+    /**
+     * Adds the value at this index of the series to the window
+     */
+    public void add(int index) {
+        update(ranks[index] + 1, 1);
+        count++;
+    }
+
+    /**
+     * Removes the value at this index of the series from the window
+     */
+    public void remove(int index) {
+        update(ranks[index] + 1, -1);
+        count--;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * @return The k-th smallest value of the window, k starting at 0
+     */
+    public double kth(int k) {
+        // Descends the Fenwick tree to the first rank whose prefix count exceeds k
+        int position = 0;
+        int remaining = k + 1;
+        for (int step = highestPowerOfTwo; step > 0; step >>= 1) {
+            int next = position + step;
+            if (next < tree.length && tree[next] < remaining) {
+                position = next;
+                remaining -= tree[next];
+            }
+        }
+        return sortedValues[position];
+    }
+
+    /**
+     * @return Quantile of the window, linearly interpolated between the closest ranks
+     */
+    public double quantile(double q) {
+        double h = (count - 1) * q;
+        int lower = (int) Math.floor(h);
+        double lowerValue = kth(lower);
+        if (lower + 1 >= count) {
+            return lowerValue;
+        }
+        return lowerValue + (h - lower) * (kth(lower + 1) - lowerValue);
+    }
+
+    public double median() {
+        return quantile(0.5);
+    }
+
+    /**
+     * Median absolute deviation from the median of the window.
+     * <p>
+     * The deviations of the values below and above the median form two sorted sequences, so the median deviation
+     * is selected from them in O(log² n) without materialising the deviations.
+     */
+    public double medianAbsoluteDeviation() {
+        if (count == 0) {
+            return 0;
+        }
+
+        double median = median();
+        if (count % 2 == 1) {
+            return kthDeviation(median, count / 2);
+        }
+        return (kthDeviation(median, count / 2 - 1) + kthDeviation(median, count / 2)) / 2;
+    }
+
+    private double kthDeviation(double median, int k) {
+        int belowCount = (count + 1) / 2;
+        int aboveCount = count - belowCount;
+
+        // Binary search on how many of the k + 1 smallest deviations come from the values below the median
+        int low = Math.max(0, k + 1 - aboveCount);
+        int high = Math.min(k + 1, belowCount);
+        while (low < high) {
+            int fromBelow = (low + high) / 2;
+            int fromAbove = k + 1 - fromBelow;
+            if (deviationBelow(median, fromBelow) < deviationAbove(median, belowCount, fromAbove - 1)) {
+                low = fromBelow + 1;
+            } else {
+                high = fromBelow;
+            }
+        }
+
+        int fromAbove = k + 1 - low;
+        double lastBelow = low > 0 ? deviationBelow(median, low - 1) : Double.NEGATIVE_INFINITY;
+        double lastAbove = fromAbove > 0 ? deviationAbove(median, belowCount, fromAbove - 1) : Double.NEGATIVE_INFINITY;
+        return Math.max(lastBelow, lastAbove);
+    }
+
+    // t-th smallest deviation among the values at or below the median
+    private double deviationBelow(double median, int t) {
+        return median - kth((count + 1) / 2 - 1 - t);
+    }
+
+    // t-th smallest deviation among the values above the median
+    private double deviationAbove(double median, int belowCount, int t) {
+        return kth(belowCount + t) - median;
+    }
+
+    private void update(int position, int delta) {
+        for (; position < tree.length; position += position & -position) {
+            tree[position] += delta;
+        }
+    }
+}
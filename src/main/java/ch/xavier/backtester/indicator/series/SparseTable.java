@@ -0,0 +1,88 @@
+package ch.xavier.backtester.indicator.series;
+
+/**
+ * Position of the lowest or highest value of any range of a series.
+ * <p>
+ * Level k holds the extremum of every range of 2^k values, so built once in O(n log n) a range is answered in O(1)
+ * from the two ranges of the same level covering it.
+ */
+public final class SparseTable {
+    private final double[] series;
+    private final boolean max;
+    private final int[][] levels;
+
+    private SparseTable(double[] series, boolean max) {
+        this.series = series;
+        this.max = max;
+
+        int levelCount = series.length == 0 ? 0 : 32 - Integer.numberOfLeadingZeros(series.length);
+        this.levels = new int[levelCount][];
+        if (levelCount == 0) return;
+
+        levels[0] = new int[series.length];
+        for (int i = 0; i < series.length; i++) {
+            levels[0][i] = i;
+        }
+        for (int k = 1; k < levelCount; k++) {
+            int half = 1 << (k - 1);
+            int[] previous = levels[k - 1];
+            int[] level = new int[series.length - (1 << k) + 1];
+            for (int i = 0; i < level.length; i++) {
+                level[i] = best(previous[i], previous[i + half]);
+            }
+            levels[k] = level;
+        }
+    }
+
+    public static SparseTable min(double[] series) {
+        return new SparseTable(series, false);
+    }
+
+    public static SparseTable max(double[] series) {
+        return new SparseTable(series, true);
+    }
+
+    /**
+     * Index of the extremum between both indices included, the first one on ties
+     */
+    public int indexOf(int from, int to) {
+        int k = 31 - Integer.numberOfLeadingZeros(to - from + 1);
+        return best(levels[k][from], levels[k][to - (1 << k) + 1]);
+    }
+
+    public double get(int from, int to) {
+        return series[indexOf(from, to)];
+    }
+
+    /**
+     * Index of the first value from the index on reaching the threshold, at least equal to it in a table of maxima,
+     * at most in a table of minima. The ranges of 2^k values not reaching it are skipped from the largest down, so
+     * it is found in O(log n).
+     *
+     * @return the index, -1 when no value reaches the threshold, as a NaN threshold
+     */
+    public int firstReaching(int from, double threshold) {
+        int index = from;
+        for (int k = levels.length - 1; k >= 0; k--) {
+            if (index + (1 << k) <= series.length && !reaches(series[levels[k][index]], threshold)) {
+                index += 1 << k;
+            }
+        }
+        return index < series.length ? index : -1;
+    }
+
+    public int size() {
+        return series.length;
+    }
+
+    private boolean reaches(double value, double threshold) {
+        return max ? value >= threshold : value <= threshold;
+    }
+
+    // The earlier index wins ties
+    private int best(int earlier, int later) {
+        double laterValue = series[later];
+        double earlierValue = series[earlier];
+        return (max ? laterValue > earlierValue : laterValue < earlierValue) ? later : earlier;
+    }
+}
@@ -0,0 +1,44 @@
+package ch.xavier.backtester.indicator.series;
+
+import ch.xavier.backtester.quote.Quote;
+import ch.xavier.backtester.quote.QuoteWindow;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Column of a quotes window, reading the chunked column of its root list
+ */
+final class WindowColumn implements Column {
+    private final ChunkedColumn chunked;
+    private final List<Quote> root;
+    private final int offset;
+    private final int size;
+    private final Function<List<Quote>, double[]> loader;
+    // Backtests read bar after bar, so nearly every read falls in the chunk of the read before
+    private ChunkedColumn.Chunk current;
+
+    WindowColumn(ChunkedColumn chunked, QuoteWindow window, Function<List<Quote>, double[]> loader) {
+        this.chunked = chunked;
+        this.root = window.getRoot();
+        this.offset = window.getOffset();
+        this.size = window.size();
+        this.loader = loader;
+    }
+
+    @Override
+    public double get(int index) {
+        int rootIndex = offset + index;
+        ChunkedColumn.Chunk chunk = current;
+        if (chunk == null || rootIndex < chunk.start() || rootIndex >= chunk.end()) {
+            chunk = chunked.chunkAt(root, rootIndex, loader);
+            current = chunk;
+        }
+        return chunk.values().get(rootIndex - chunk.start());
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+}
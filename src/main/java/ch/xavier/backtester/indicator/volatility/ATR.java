@@ -0,0 +1,108 @@
+package ch.xavier.backtester.indicator.volatility;
+
+import ch.xavier.backtester.indicator.Indicator;
+import ch.xavier.backtester.indicator.series.Column;
+import ch.xavier.backtester.indicator.series.IndicatorCache;
+import ch.xavier.backtester.quote.Quote;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * Average True Range, either as a simple moving average of the true range or with Wilder's smoothing (RMA).
+ * Values before {@code length} bars are available are 0.
+ */
+@Getter
+public class ATR implements Indicator {
+    public enum Smoothing {
+        SMA, RMA
+    }
+
+    private final int length;
+    private final Smoothing smoothing;
+    private Column values;
+
+    public ATR(int length) {
+        this(length, Smoothing.SMA);
+    }
+
+    public ATR(int length, Smoothing smoothing) {
+        this.length = length;
+        this.smoothing = smoothing;
+    }
+
+    /**
+     * Returns the ATR series for these quotes, computed once per (quotes, length, smoothing) and shared
+     */
+    public static Column series(List<Quote> quotes, int length, Smoothing smoothing) {
+        return IndicatorCache.column(quotes, "atr:" + length + ":" + smoothing, warmUp(length, smoothing),
+                q -> calculateSeries(q, length, smoothing));
+    }
+
+    // Wilder's smoothing never forgets its seed, so it's computed over the whole list of a quotes window
+    private static int warmUp(int length, Smoothing smoothing) {
+        return smoothing == Smoothing.RMA ? IndicatorCache.UNBOUNDED_WARM_UP : length;
+    }
+
+    public void calculate(List<Quote> quotes) {
+        if (quotes == null || quotes.isEmpty()) {
+            return;
+        }
+
+        values = series(quotes, length, smoothing);
+    }
+
+    @Override
+    public double calculate(int index, List<Quote> quotes) {
+        if (values == null || index >= values.size()) {
+            calculate(quotes);
+        }
+
+        return values.get(index);
+    }
+
+    public double getValue(int index) {
+        if (values != null && index < values.size() && index >= 0) {
+            return values.get(index);
+        }
+        return 0;
+    }
+
+    private static double[] calculateSeries(List<Quote> quotes, int length, Smoothing smoothing) {
+        int size = quotes.size();
+        double[] atr = new double[size];
+        if (length <= 0 || size <= length) {
+            return atr;
+        }
+
+        double[] trueRanges = new double[size];
+        for (int i = 1; i < size; i++) {
+            Quote current = quotes.get(i);
+            Quote previous = quotes.get(i - 1);
+
+            double tr1 = current.getHigh() - current.getLow();
+            double tr2 = Math.abs(current.getHigh() - previous.getClose());
+            double tr3 = Math.abs(current.getLow() - previous.getClose());
+
+            trueRanges[i] = Math.max(Math.max(tr1, tr2), tr3);
+        }
+
+        // Both smoothings are seeded with the simple average of the first full window
+        double sum = 0;
+        for (int i = 1; i <= length; i++) {
+            sum += trueRanges[i];
+        }
+        atr[length] = sum / length;
+
+        for (int i = length + 1; i < size; i++) {
+            if (smoothing == Smoothing.RMA) {
+                atr[i] = (atr[i - 1] * (length - 1) + trueRanges[i]) / length;
+            } else {
+                sum += trueRanges[i] - trueRanges[i - length];
+                atr[i] = sum / length;
+            }
+        }
+
+        return atr;
+    }
+}
@@ -1,6 +1,8 @@
 package ch.xavier.backtester.indicator.volatility;
 
 import ch.xavier.backtester.indicator.Indicator;
+import ch.xavier.backtester.indicator.series.Column;
+import ch.xavier.backtester.indicator.series.IndicatorCache;
 import ch.xavier.backtester.quote.Quote;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
@@ -8,6 +10,7 @@ import lombok.NoArgsConstructor;
 import lombok.Setter;
 
 import java.util.List;
+import java.util.stream.IntStream;
 
 @NoArgsConstructor
 @Setter
@@ -15,6 +18,16 @@ public class VortexIndicator implements Indicator {
     private int length;
     private double threshold;
 
+    /**
+     * Returns VI+ minus VI- of every bar for these quotes, computed once per (quotes, length) and shared
+     */
+    public static Column series(List<Quote> quotes, int length) {
+        VortexIndicator vortex = new VortexIndicator();
+        vortex.setLength(length);
+        return IndicatorCache.column(quotes, "vortex:" + length, length,
+                q -> IntStream.range(0, q.size()).mapToDouble(i -> vortex.calculate(i, q)).toArray());
+    }
+
     @Override
     public double calculate(int index, List<Quote> quotes) {
         VortexResult result = calculateResult(index, quotes);
@@ -0,0 +1,50 @@
+package ch.xavier.backtester.marketphase;
+
+import ch.xavier.backtester.indicator.misc.HurstExponent;
+import ch.xavier.backtester.indicator.series.Column;
+import ch.xavier.backtester.quote.Quote;
+
+import java.util.List;
+
+/**
+ * Classifies trending windows (Hurst exponent above the threshold) as bullish or bearish depending on the price
+ * change over the window, and the random or mean reverting ones as sideways
+ */
+public class HurstClassifier implements MarketPhaseClassifier {
+    private final int period;
+    private final double trendThreshold;
+
+    // Hurst series of the last quotes classified, classifiers are called once per bar
+    private volatile SeriesOfQuotes lastSeries;
+
+    public HurstClassifier(int period, double trendThreshold) {
+        this.period = period;
+        this.trendThreshold = trendThreshold;
+    }
+
+    @Override
+    public MarketPhase classify(List<Quote> quotes, int index) {
+        if (index < period) return MarketPhase.UNKNOWN;
+
+        double hurst = hurstSeries(quotes).get(index);
+        if (hurst < trendThreshold) {
+            return MarketPhase.SIDEWAYS;
+        }
+
+        double startPrice = quotes.get(index - period).getClose();
+        double endPrice = quotes.get(index).getClose();
+        return endPrice >= startPrice ? MarketPhase.BULLISH : MarketPhase.BEARISH;
+    }
+
+    private Column hurstSeries(List<Quote> quotes) {
+        SeriesOfQuotes series = lastSeries;
+        if (series == null || series.quotes() != quotes) {
+            series = new SeriesOfQuotes(quotes, HurstExponent.series(quotes, period));
+            lastSeries = series;
+        }
+        return series.hurst();
+    }
+
+    private record SeriesOfQuotes(List<Quote> quotes, Column hurst) {
+    }
+}
@@ -0,0 +1,55 @@
+package ch.xavier.backtester.quote;
+
+import lombok.Getter;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Read-only window over a range of a larger quotes list.
+ * <p>
+ * Unlike {@link List#subList(int, int)}, the window knows its root list and offset, so indicators with a declared
+ * warm-up are computed in chunks on the root list and shared by every overlapping window.
+ */
+@Getter
+public final class QuoteWindow extends AbstractList<Quote> implements RandomAccess {
+    private final List<Quote> root;
+    private final int offset;
+    private final int size;
+
+    private QuoteWindow(List<Quote> root, int offset, int size) {
+        this.root = root;
+        this.offset = offset;
+        this.size = size;
+    }
+
+    public static QuoteWindow of(List<Quote> quotes, int fromIndex, int toIndex) {
+        if (fromIndex < 0 || toIndex > quotes.size() || fromIndex > toIndex) {
+            throw new IndexOutOfBoundsException("Window " + fromIndex + "-" + toIndex + " out of " + quotes.size());
+        }
+
+        if (quotes instanceof QuoteWindow window) {
+            return new QuoteWindow(window.root, window.offset + fromIndex, toIndex - fromIndex);
+        }
+        return new QuoteWindow(quotes, fromIndex, toIndex - fromIndex);
+    }
+
+    @Override
+    public Quote get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of window of " + size);
+        }
+        return root.get(offset + index);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public List<Quote> subList(int fromIndex, int toIndex) {
+        return of(this, fromIndex, toIndex);
+    }
+}
@@ -2,6 +2,10 @@ package ch.xavier.backtester.strategy;
 
 import ch.xavier.backtester.backtesting.TradingParameters;
 import ch.xavier.backtester.backtesting.model.Position;
+import ch.xavier.backtester.indicator.misc.EMA;
+import ch.xavier.backtester.indicator.series.Column;
+import ch.xavier.backtester.indicator.series.HigherTimeframe;
+import ch.xavier.backtester.indicator.volatility.ATR;
 import ch.xavier.backtester.quote.Quote;
 
 import java.util.List;
@@ -9,19 +13,53 @@ import java.util.Map;
 
 public abstract class BaseStrategy implements TradingStrategy {
     protected int atrLength;
+    protected ATR.Smoothing atrSmoothing;
     protected final TradingParameters parameters;
     protected double riskRewardRatio;
     protected boolean useRiskBasedPositionSizing = false;
     protected boolean useTrailingSL = false;
 
+    // Parameters shared by every strategy, included in the schema of the concrete ones
+    public static final ParameterSchema<BaseStrategy> PARAMETERS = ParameterSchema.of(BaseStrategy.class)
+            .booleanParameter("useTrailingSL", (s, v) -> s.useTrailingSL = v)
+            .doubleParameter("riskRewardRatio", (s, v) -> s.riskRewardRatio = v)
+            .intParameter("atrLength", (s, v) -> s.atrLength = v)
+            .parameter("atrSmoothing", ATR.Smoothing.class, (s, v) -> s.atrSmoothing = v)
+            .booleanParameter("useRiskBasedPositionSizing", (s, v) -> s.useRiskBasedPositionSizing = v)
+            .affectingExitsOnly("useTrailingSL", "riskRewardRatio", "atrLength", "atrSmoothing",
+                    "useRiskBasedPositionSizing");
+
     public BaseStrategy(TradingParameters parameters) {
         this.parameters = parameters != null ? parameters : TradingParameters.builder().build();
 
         this.riskRewardRatio = this.parameters.getRiskRewardRatio();
         this.atrLength = this.parameters.getAtrLength();
+        this.atrSmoothing = this.parameters.getAtrSmoothing();
         this.useRiskBasedPositionSizing = this.parameters.isUseRiskedBasedPositionSizing();
     }
 
+    /**
+     * Run state of every strategy, concrete strategies with their own state extend it
+     */
+    protected static class State implements StrategyState {
+        // Shared ATR series of the quotes currently backtested, looked up once per run instead of once per bar
+        private List<Quote> atrQuotes;
+        private int atrSeriesLength;
+        private ATR.Smoothing atrSeriesSmoothing;
+        private Column atrSeries;
+
+        @Override
+        public void reset() {
+            atrQuotes = null;
+            atrSeries = null;
+        }
+    }
+
+    @Override
+    public StrategyState createState() {
+        return new State();
+    }
+
     @Override
     public double calculatePositionSize(double availableFunds, Quote quote, double stopLossPrice) {
         if (availableFunds < 10) {
@@ -54,9 +92,9 @@ public abstract class BaseStrategy implements TradingStrategy {
     }
 
     @Override
-    public double calculateStopLossPrice(boolean isLong, List<Quote> quotes, int index) {
+    public double calculateStopLossPrice(boolean isLong, List<Quote> quotes, int index, StrategyState state) {
         double price = quotes.get(index).getClose();
-        double atr = calculateATR(quotes, index, this.atrLength);
+        double atr = calculateATR(quotes, index, this.atrLength, state);
         double atrStop = isLong ?
                 price - (atr * parameters.getAtrMultiplier()) :
                 price + (atr * parameters.getAtrMultiplier());
@@ -68,9 +106,9 @@ public abstract class BaseStrategy implements TradingStrategy {
     }
 
     @Override
-    public double calculateTakeProfitPrice(boolean isLong, List<Quote> quotes, int index) {
+    public double calculateTakeProfitPrice(boolean isLong, List<Quote> quotes, int index, StrategyState state) {
         double price = quotes.get(index).getClose();
-        double riskAmount = Math.abs(price - calculateStopLossPrice(isLong, quotes, index));
+        double riskAmount = Math.abs(price - calculateStopLossPrice(isLong, quotes, index, state));
 
         double defaultTP = isLong ?
                 price + (riskAmount * this.riskRewardRatio) :
@@ -85,9 +123,9 @@ public abstract class BaseStrategy implements TradingStrategy {
     }
 
     @Override
-    public double updateStopLoss(Position position, List<Quote> quotes, int index) {
+    public double updateStopLoss(Position position, List<Quote> quotes, int index, StrategyState state) {
         if (useTrailingSL) {
-            double atr = calculateATR(quotes, index, parameters.getAtrLength());
+            double atr = calculateATR(quotes, index, parameters.getAtrLength(), state);
             double price = quotes.get(index).getClose();
             double newStopLoss = position.isLong() ?
                     price - (atr * parameters.getAtrMultiplier()) :
@@ -104,39 +142,53 @@ public abstract class BaseStrategy implements TradingStrategy {
         }
     }
 
+    @Override
+    public boolean hasFixedExits() {
+        return !useTrailingSL;
+    }
+
+    @Override
+    public ParameterSchema<?> getParameterSchema() {
+        return PARAMETERS;
+    }
+
     @Override
     public void setParameters(Map<String, Object> parameters) {
-        if (parameters.containsKey("useTrailingSL")) {
-            this.useTrailingSL = parameters.get("useTrailingSL").equals("true");
-        }
-        if (parameters.containsKey("riskRewardRatio")) {
-            this.riskRewardRatio = (double) parameters.get("riskRewardRatio");
-        }
-        if (parameters.containsKey("atrLength")) {
-            this.atrLength = (int) parameters.get("atrLength");
-        }
-        if (parameters.containsKey("useRiskBasedPositionSizing")) {
-            this.useRiskBasedPositionSizing = parameters.get("useRiskBasedPositionSizing").equals("true");
-        }
+        getParameterSchema().bind(this, parameters);
     }
 
     // The ATR measures the average range between the high and low prices of an asset over a given period.
     // A higher ATR indicates more volatility, while a lower ATR indicates less volatility.
-    protected double calculateATR(List<Quote> quotes, int index, int length) {
+    protected double calculateATR(List<Quote> quotes, int index, int length, StrategyState state) {
         if (index < length) return 0;
 
-        double sum = 0;
-        for (int i = index - length + 1; i <= index; i++) {
-            Quote current = quotes.get(i);
-            Quote previous = quotes.get(i - 1);
+        return atrSeries(quotes, length, (State) state).get(index);
+    }
 
-            double tr1 = current.getHigh() - current.getLow();
-            double tr2 = Math.abs(current.getHigh() - previous.getClose());
-            double tr3 = Math.abs(current.getLow() - previous.getClose());
+    private Column atrSeries(List<Quote> quotes, int length, State state) {
+        if (state.atrSeries == null || state.atrQuotes != quotes || state.atrSeriesLength != length
+                || state.atrSeriesSmoothing != atrSmoothing) {
+            state.atrSeries = ATR.series(quotes, length, atrSmoothing);
+            state.atrQuotes = quotes;
+            state.atrSeriesLength = length;
+            state.atrSeriesSmoothing = atrSmoothing;
+        }
+        return state.atrSeries;
+    }
 
-            sum += Math.max(Math.max(tr1, tr2), tr3);
+    // Trend EMA on the quotes themselves, or on a higher timeframe (e.g. "1h") projected back onto them
+    protected EMA calculateTrendEma(List<Quote> quotes, int period, String timeframe) {
+        EMA ema = new EMA(period);
+        if (timeframe == null) {
+            ema.calculate(quotes);
+            return ema;
         }
 
-        return sum / length;
+        ema.setValues(HigherTimeframe.of(quotes, timeframe).project(quotes, "ema:" + period, higherQuotes -> {
+            EMA higherEma = new EMA(period);
+            higherEma.calculate(higherQuotes);
+            return higherEma.getValues();
+        }));
+        return ema;
     }
 }
@@ -35,12 +35,13 @@ public class ExitStrategy {
     // State tracking
     private boolean partialProfitTaken = false;
 
+    // Indicators already calculated by the strategy (e.g. projected from a higher timeframe) are kept as they are
     public void initialize(List<Quote> quotes) {
-        if (ema200 != null) ema200.calculate(quotes);
-        if (ema20 != null) ema20.calculate(quotes);
-        if (ema50 != null) ema50.calculate(quotes);
-        if (fastStoch != null) fastStoch.calculate(quotes);
-        if (fullStoch != null) fullStoch.calculate(quotes);
+        if (ema200 != null && ema200.getValues() == null) ema200.calculate(quotes);
+        if (ema20 != null && ema20.getValues() == null) ema20.calculate(quotes);
+        if (ema50 != null && ema50.getValues() == null) ema50.calculate(quotes);
+        if (fastStoch != null && fastStoch.getD() == null) fastStoch.calculate(quotes);
+        if (fullStoch != null && fullStoch.getD() == null) fullStoch.calculate(quotes);
     }
 
     public boolean shouldTakePartialProfit(Position position, List<Quote> quotes, int index) {
@@ -48,7 +49,7 @@ public class ExitStrategy {
 
         // Take partial profits when 9-3 Stochastics reach overbought level
         return position.isLong() &&
-                fastStoch.getD()[index] >= fastStochOverboughtLevel;
+                fastStoch.getD().get(index) >= fastStochOverboughtLevel;
     }
 
     public boolean shouldExitPosition(Position position, List<Quote> quotes, int index) {
@@ -81,7 +82,7 @@ public class ExitStrategy {
 
         // Exit long positions in downtrend when:
         // 1. 9-3 Stochastics move back to 80 quickly
-        boolean fastStochHigh = fastStoch.getD()[index] >= fastStochOverboughtLevel;
+        boolean fastStochHigh = fastStoch.getD().get(index) >= fastStochOverboughtLevel;
 
         // 2. 60-10 Stochastics heading down
         boolean fullStochHeadingDown = isStochasticTurningDown(fullStoch, index);
@@ -128,8 +129,8 @@ public class ExitStrategy {
 
     private boolean isStochasticTurningDown(Stochastic stoch, int index) {
         if (index < 2 || stoch == null) return false;
-        return stoch.getD()[index] < stoch.getD()[index - 1] &&
-                stoch.getD()[index - 1] < stoch.getD()[index - 2];
+        return stoch.getD().get(index) < stoch.getD().get(index - 1) &&
+                stoch.getD().get(index - 1) < stoch.getD().get(index - 2);
     }
 
     public void resetState() {
@@ -0,0 +1,168 @@
+package ch.xavier.backtester.strategy;
+
+import java.util.*;
+import java.util.stream.IntStream;
+
+/**
+ * Every combination of a parameters grid, compiled against the schema of a strategy. A combination is a number
+ * decoded into one value index per parameter, bound through precomputed setters without building a map.
+ */
+public final class ParameterGrid<S extends TradingStrategy> {
+    private final ParameterSchema<S> schema;
+    private final String[] names;
+    private final List<List<Object>> values = new ArrayList<>();
+    private final List<ParameterSchema.ValueBinder<? super S>> binders = new ArrayList<>();
+    private final int size;
+
+    // Positions of the parameters affecting entries and of the ones only affecting exits, with their strides
+    private final int[] entryParameters;
+    private final int[] exitParameters;
+    private final int[] strides;
+    private final int entrySize;
+
+    private ParameterGrid(ParameterSchema<S> schema, Map<String, List<Object>> grid) {
+        this.schema = schema;
+
+        for (Map.Entry<String, List<Object>> entry : grid.entrySet()) {
+            ParameterSchema.Parameter<?> parameter = schema.get(entry.getKey());
+            if (entry.getValue().isEmpty()) {
+                throw new IllegalArgumentException("No value for parameter " + entry.getKey());
+            }
+            for (Object value : entry.getValue()) {
+                schema.check(parameter, value);
+            }
+        }
+
+        // Parameters follow the schema's declaration order so combinations don't depend on the grid's map
+        List<String> gridNames = new ArrayList<>();
+        int combinations = 1;
+        for (String name : schema.getNames()) {
+            List<Object> parameterValues = grid.get(name);
+            if (parameterValues == null) continue;
+
+            gridNames.add(name);
+            values.add(new ArrayList<>(parameterValues));
+            binders.add(schema.get(name).compile(parameterValues));
+            try {
+                combinations = Math.multiplyExact(combinations, parameterValues.size());
+            } catch (ArithmeticException e) {
+                throw new IllegalArgumentException("Too many parameter combinations for " +
+                        schema.getType().getSimpleName());
+            }
+        }
+        this.names = gridNames.toArray(String[]::new);
+        this.size = combinations;
+
+        this.strides = new int[names.length];
+        int stride = 1;
+        for (int i = names.length - 1; i >= 0; i--) {
+            strides[i] = stride;
+            stride *= values.get(i).size();
+        }
+
+        this.entryParameters = IntStream.range(0, names.length)
+                .filter(i -> !schema.isExitParameter(names[i])).toArray();
+        this.exitParameters = IntStream.range(0, names.length)
+                .filter(i -> schema.isExitParameter(names[i])).toArray();
+        this.entrySize = Arrays.stream(entryParameters).map(i -> values.get(i).size()).reduce(1, (a, b) -> a * b);
+    }
+
+    /**
+     * @throws IllegalArgumentException for an unknown parameter or a value of the wrong type
+     */
+    public static <S extends TradingStrategy> ParameterGrid<S> compile(ParameterSchema<S> schema,
+                                                                       Map<String, List<Object>> grid) {
+        return new ParameterGrid<>(schema, grid);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Number of distinct combinations of the parameters affecting entries, each shared by {@link #exitSize()}
+     * combinations of the grid only differing by exit parameters
+     */
+    public int entrySize() {
+        return entrySize;
+    }
+
+    public int exitSize() {
+        return size / entrySize;
+    }
+
+    /**
+     * Combination of the grid made of the given combinations of its entry and of its exit parameters
+     */
+    public int combination(int entry, int exit) {
+        return encode(entryParameters, entry) + encode(exitParameters, exit);
+    }
+
+    private int encode(int[] parameters, int subset) {
+        int combination = 0;
+        for (int i = parameters.length - 1; i >= 0; i--) {
+            int count = values.get(parameters[i]).size();
+            combination += (subset % count) * strides[parameters[i]];
+            subset /= count;
+        }
+        return combination;
+    }
+
+    /**
+     * Value index of every parameter of a combination, the last parameter varying the fastest
+     */
+    public int[] indices(int combination) {
+        int[] indices = new int[names.length];
+        for (int i = names.length - 1; i >= 0; i--) {
+            int count = values.get(i).size();
+            indices[i] = combination % count;
+            combination /= count;
+        }
+        return indices;
+    }
+
+    public void bind(TradingStrategy strategy, int[] indices) {
+        S target = schema.getType().cast(strategy);
+        for (int i = 0; i < names.length; i++) {
+            binders.get(i).bind(target, indices[i]);
+        }
+    }
+
+    /**
+     * Read-only map view of a combination, for reporting
+     */
+    public Map<String, Object> parameters(int combination) {
+        int[] indices = indices(combination);
+
+        return new AbstractMap<>() {
+            @Override
+            public Set<Entry<String, Object>> entrySet() {
+                return new AbstractSet<>() {
+                    @Override
+                    public Iterator<Entry<String, Object>> iterator() {
+                        return new Iterator<>() {
+                            private int next = 0;
+
+                            @Override
+                            public boolean hasNext() {
+                                return next < names.length;
+                            }
+
+                            @Override
+                            public Entry<String, Object> next() {
+                                if (!hasNext()) throw new NoSuchElementException();
+                                int i = next++;
+                                return new SimpleImmutableEntry<>(names[i], values.get(i).get(indices[i]));
+                            }
+                        };
+                    }
+
+                    @Override
+                    public int size() {
+                        return names.length;
+                    }
+                };
+            }
+        };
+    }
+}
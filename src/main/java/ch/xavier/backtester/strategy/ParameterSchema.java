@@ -0,0 +1,221 @@
+package ch.xavier.backtester.strategy;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.ObjDoubleConsumer;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Typed parameters a strategy accepts, each bound through a setter declared once per strategy class.
+ * Values are checked against the declared types before they are bound, so a mistyped grid fails before it runs.
+ */
+public final class ParameterSchema<S extends TradingStrategy> {
+    private final Class<S> type;
+    private final Map<String, Parameter<? super S>> parameters = new LinkedHashMap<>();
+    private final Set<String> exitParameters = new HashSet<>();
+
+    private ParameterSchema(Class<S> type) {
+        this.type = type;
+    }
+
+    public static <S extends TradingStrategy> ParameterSchema<S> of(Class<S> type) {
+        return new ParameterSchema<>(type);
+    }
+
+    /**
+     * Declare every parameter of the parent schema, a parameter declared again afterwards replaces the parent's one
+     */
+    @SuppressWarnings("unchecked")
+    public ParameterSchema<S> including(ParameterSchema<? super S> parent) {
+        for (Parameter<?> parameter : parent.parameters.values()) {
+            parameters.put(parameter.name(), (Parameter<? super S>) parameter);
+        }
+        exitParameters.addAll(parent.exitParameters);
+        return this;
+    }
+
+    public ParameterSchema<S> intParameter(String name, ObjIntConsumer<S> setter) {
+        return declare(new IntParameter<>(name, setter));
+    }
+
+    public ParameterSchema<S> doubleParameter(String name, ObjDoubleConsumer<S> setter) {
+        return declare(new DoubleParameter<>(name, setter));
+    }
+
+    public ParameterSchema<S> booleanParameter(String name, BooleanSetter<S> setter) {
+        return declare(new BooleanParameter<>(name, setter));
+    }
+
+    public <V> ParameterSchema<S> parameter(String name, Class<V> valueType, BiConsumer<S, V> setter) {
+        return declare(new ObjectParameter<>(name, valueType, setter));
+    }
+
+    /**
+     * Mark declared parameters as only affecting how positions are sized and exited, never which bars signal an
+     * entry. Combinations of a grid only differing by them share their entry signals.
+     * A parameter declared again afterwards is no longer marked.
+     */
+    public ParameterSchema<S> affectingExitsOnly(String... names) {
+        for (String name : names) {
+            get(name);
+            exitParameters.add(name);
+        }
+        return this;
+    }
+
+    public boolean isExitParameter(String name) {
+        return exitParameters.contains(name);
+    }
+
+    public Class<S> getType() {
+        return type;
+    }
+
+    public Set<String> getNames() {
+        return parameters.keySet();
+    }
+
+    /**
+     * Bind every parameter of the map, failing on unknown names and on values of the wrong type
+     */
+    public void bind(TradingStrategy strategy, Map<String, Object> values) {
+        S target = type.cast(strategy);
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            Parameter<? super S> parameter = get(entry.getKey());
+            check(parameter, entry.getValue());
+            parameter.bind(target, entry.getValue());
+        }
+    }
+
+    private ParameterSchema<S> declare(Parameter<? super S> parameter) {
+        parameters.put(parameter.name(), parameter);
+        exitParameters.remove(parameter.name());
+        return this;
+    }
+
+    Parameter<? super S> get(String name) {
+        Parameter<? super S> parameter = parameters.get(name);
+        if (parameter == null) {
+            throw new IllegalArgumentException("Unknown parameter " + name + " for " + type.getSimpleName());
+        }
+        return parameter;
+    }
+
+    void check(Parameter<?> parameter, Object value) {
+        if (value == null ? !parameter.nullable() : !parameter.valueType().isInstance(value)) {
+            throw new IllegalArgumentException("Parameter " + parameter.name() + " of " + type.getSimpleName() +
+                    " expects a " + parameter.valueType().getSimpleName() + " but got " +
+                    (value == null ? "null" : value.getClass().getSimpleName() + " " + value));
+        }
+    }
+
+    @FunctionalInterface
+    public interface BooleanSetter<S> {
+        void set(S strategy, boolean value);
+    }
+
+    /**
+     * Binds the value at an index of the list a parameter was compiled with
+     */
+    @FunctionalInterface
+    interface ValueBinder<S> {
+        void bind(S strategy, int valueIndex);
+    }
+
+    interface Parameter<S> {
+        String name();
+
+        Class<?> valueType();
+
+        default boolean nullable() {
+            return false;
+        }
+
+        void bind(S strategy, Object value);
+
+        /**
+         * Unbox the checked values once, so binding one of them later doesn't allocate
+         */
+        ValueBinder<S> compile(List<Object> values);
+    }
+
+    private record IntParameter<S>(String name, ObjIntConsumer<S> setter) implements Parameter<S> {
+        @Override
+        public Class<?> valueType() {
+            return Integer.class;
+        }
+
+        @Override
+        public void bind(S strategy, Object value) {
+            setter.accept(strategy, (Integer) value);
+        }
+
+        @Override
+        public ValueBinder<S> compile(List<Object> values) {
+            int[] ints = values.stream().mapToInt(value -> (Integer) value).toArray();
+            return (strategy, valueIndex) -> setter.accept(strategy, ints[valueIndex]);
+        }
+    }
+
+    private record DoubleParameter<S>(String name, ObjDoubleConsumer<S> setter) implements Parameter<S> {
+        @Override
+        public Class<?> valueType() {
+            return Double.class;
+        }
+
+        @Override
+        public void bind(S strategy, Object value) {
+            setter.accept(strategy, (Double) value);
+        }
+
+        @Override
+        public ValueBinder<S> compile(List<Object> values) {
+            double[] doubles = values.stream().mapToDouble(value -> (Double) value).toArray();
+            return (strategy, valueIndex) -> setter.accept(strategy, doubles[valueIndex]);
+        }
+    }
+
+    private record BooleanParameter<S>(String name, BooleanSetter<S> setter) implements Parameter<S> {
+        @Override
+        public Class<?> valueType() {
+            return Boolean.class;
+        }
+
+        @Override
+        public void bind(S strategy, Object value) {
+            setter.set(strategy, (Boolean) value);
+        }
+
+        @Override
+        public ValueBinder<S> compile(List<Object> values) {
+            boolean[] booleans = new boolean[values.size()];
+            for (int i = 0; i < booleans.length; i++) {
+                booleans[i] = (Boolean) values.get(i);
+            }
+            return (strategy, valueIndex) -> setter.set(strategy, booleans[valueIndex]);
+        }
+    }
+
+    private record ObjectParameter<S, V>(String name, Class<V> valueType, BiConsumer<S, V> setter)
+            implements Parameter<S> {
+        @Override
+        public boolean nullable() {
+            return true;
+        }
+
+        @Override
+        public void bind(S strategy, Object value) {
+            setter.accept(strategy, valueType.cast(value));
+        }
+
+        @Override
+        public ValueBinder<S> compile(List<Object> values) {
+            Object[] objects = values.toArray();
+            return (strategy, valueIndex) -> setter.accept(strategy, valueType.cast(objects[valueIndex]));
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package ch.xavier.backtester.strategy;
+
+import ch.xavier.backtester.quote.Quote;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * Entry signals of a whole quotes series with the stop loss and take profit of each entry, as consumed by the
+ * backtesting engine instead of calling the strategy on every bar
+ */
+@Getter
+public class SignalVector {
+    private final byte[] signals; // 1 for long, -1 for short, 0 for no signal
+    private final double[] stopLossPrices;
+    private final double[] takeProfitPrices;
+
+    public SignalVector(int size) {
+        this.signals = new byte[size];
+        this.stopLossPrices = new double[size];
+        this.takeProfitPrices = new double[size];
+    }
+
+    public void set(int index, int signal, double stopLossPrice, double takeProfitPrice) {
+        signals[index] = (byte) Integer.signum(signal);
+        stopLossPrices[index] = stopLossPrice;
+        takeProfitPrices[index] = takeProfitPrice;
+    }
+
+    public int size() {
+        return signals.length;
+    }
+
+    /**
+     * Indices of the bars with a signal, in order
+     */
+    public int[] signalIndices() {
+        int count = 0;
+        for (byte signal : signals) {
+            if (signal != 0) count++;
+        }
+
+        int[] indices = new int[count];
+        for (int i = 0, j = 0; j < count; i++) {
+            if (signals[i] != 0) indices[j++] = i;
+        }
+        return indices;
+    }
+
+    /**
+     * Adapts a per-bar strategy, asking it for the signal of every bar and, on a signal, for its stop loss and take
+     * profit right away like the engine does
+     */
+    public static SignalVector of(TradingStrategy strategy, List<Quote> quotes, StrategyState state) {
+        SignalVector vector = new SignalVector(quotes.size());
+
+        for (int i = Math.max(1, strategy.getWarmUp()); i < quotes.size(); i++) {
+            int signal = strategy.generateSignal(quotes, i, state);
+            if (signal != 0) {
+                boolean isLong = signal > 0;
+                double stopLossPrice = strategy.calculateStopLossPrice(isLong, quotes, i, state);
+                double takeProfitPrice = strategy.calculateTakeProfitPrice(isLong, quotes, i, state);
+                vector.set(i, signal, stopLossPrice, takeProfitPrice);
+            }
+        }
+
+        return vector;
+    }
+
+    /**
+     * Entries generated by another run, with the stop loss and take profit this strategy gives them
+     */
+    public static SignalVector of(TradingStrategy strategy, List<Quote> quotes, StrategyState state,
+                                  byte[] entrySignals) {
+        SignalVector vector = new SignalVector(quotes.size());
+
+        for (int i = 0; i < entrySignals.length; i++) {
+            if (entrySignals[i] != 0) {
+                boolean isLong = entrySignals[i] > 0;
+                vector.set(i, entrySignals[i], strategy.calculateStopLossPrice(isLong, quotes, i, state),
+                        strategy.calculateTakeProfitPrice(isLong, quotes, i, state));
+            }
+        }
+
+        return vector;
+    }
+
+    /**
+     * Entries generated by another run, asking this strategy for their signal again before their stop loss and
+     * take profit, for strategies setting them up while signaling. Bars without entry are never asked for.
+     */
+    public static SignalVector replay(TradingStrategy strategy, List<Quote> quotes, StrategyState state,
+                                      byte[] entrySignals) {
+        SignalVector vector = new SignalVector(quotes.size());
+
+        for (int i = 0; i < entrySignals.length; i++) {
+            if (entrySignals[i] != 0) {
+                int signal = strategy.generateSignal(quotes, i, state);
+                boolean isLong = signal > 0;
+                vector.set(i, signal, strategy.calculateStopLossPrice(isLong, quotes, i, state),
+                        strategy.calculateTakeProfitPrice(isLong, quotes, i, state));
+            }
+        }
+
+        return vector;
+    }
+}
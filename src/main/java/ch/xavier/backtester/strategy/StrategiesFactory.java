@@ -5,8 +5,6 @@ import ch.xavier.backtester.strategy.concrete.*;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.DoubleStream;
@@ -23,29 +21,41 @@ public class StrategiesFactory {
         return strategy;
     }
 
-    public static List<Map<String, Object>> generateAllStrategyParameters(Map<String, List<Object>> strategyParameters) {
-        List<Map<String, Object>> result = new ArrayList<>();
-        result.add(new HashMap<>());
-
-        for (Map.Entry<String, List<Object>> entry : strategyParameters.entrySet()) {
-            String paramName = entry.getKey();
-            List<Object> paramValues = entry.getValue();
+    public static TradingStrategy getStrategy(String strategyName, TradingParameters tradingParameters,
+                                              ParameterGrid<?> parametersGrid, int[] combinationIndices) {
+        TradingStrategy strategy = getStrategy(strategyName, tradingParameters);
+        parametersGrid.bind(strategy, combinationIndices);
+        return strategy;
+    }
 
-            List<Map<String, Object>> newCombinations = new ArrayList<>();
+    /**
+     * Validate the grid against the parameters the strategy declares, before any of its combinations is run
+     */
+    public static ParameterGrid<?> compileParametersGrid(String strategyName,
+                                                         Map<String, List<Object>> strategyParameters) {
+        ParameterGrid<?> parametersGrid = ParameterGrid.compile(getParameterSchema(strategyName), strategyParameters);
 
-            for (Map<String, Object> combination : result) {
-                for (Object value : paramValues) {
-                    Map<String, Object> newCombination = new HashMap<>(combination);
-                    newCombination.put(paramName, value);
-                    newCombinations.add(newCombination);
-                }
-            }
+        log.info("Backtesting {} strategy parameter combinations.", parametersGrid.size());
+        return parametersGrid;
+    }
 
-            result = newCombinations;
-        }
+    public static ParameterSchema<?> getParameterSchema(String strategyName) {
+        return switch (strategyName) {
+            case "SMACrossover" -> SMACrossoverStrategy.PARAMETERS;
+            case "VortexStrategy" -> VortexStrategy.PARAMETERS;
+            case "ZScoreStrategy" -> ZScoreStrategy.PARAMETERS;
+            case "DoubleTapStrategy" -> DoubleTapStrategy.PARAMETERS;
+            case "DivergenceStrategy" -> DivergenceStrategy.PARAMETERS;
+            case "PullbackStrategy" -> PullbackStrategy.PARAMETERS;
+            case "MacdDivergenceStrategy" -> MacdDivergenceStrategy.PARAMETERS;
+            case "VwapStrategy" -> VwapStrategy.PARAMETERS;
+            case "NnfxStrategy" -> NnfxStrategy.PARAMETERS;
 
-        log.info("Backtesting {} strategy parameter combinations.", result.size());
-        return result;
+            default -> {
+                log.error("Unknown strategy name: {}", strategyName);
+                throw new RuntimeException("Unknown strategy name: " + strategyName);
+            }
+        };
     }
 
     private static TradingStrategy getStrategy(String strategyName, TradingParameters tradingParameters) {
@@ -58,6 +68,7 @@ public class StrategiesFactory {
             case "PullbackStrategy" -> new PullbackStrategy(tradingParameters);
             case "MacdDivergenceStrategy" -> new MacdDivergenceStrategy(tradingParameters);
             case "VwapStrategy" -> new VwapStrategy(tradingParameters);
+            case "NnfxStrategy" -> new NnfxStrategy(tradingParameters);
 
             default -> {
                 log.error("Unknown strategy name: {}", strategyName);
@@ -93,6 +104,7 @@ public class StrategiesFactory {
                     // EMA parameters
 //                    "ema20Period", generateIntRange(10, 30, 5),
 //                    "ema50Period", generateIntRange(40, 60, 5),
+//                    "trendTimeframe", List.of("1h", "4h"),
 
                     // Stochastic parameters - using key values from strategy
                     "stochLowThreshold", generateDoubleRange(15.0, 25.0, 5.0),
@@ -119,6 +131,7 @@ public class StrategiesFactory {
 //                    "fullStochK", List.of(60),
 //                    "fullStochD", List.of(10),
 //                    "fullStochSmooth", List.of(1),
+//                    "trendTimeframe", List.of("1h", "4h"),
                     "tradeLongOnly", List.of(true, false),
 
                     // Divergence parameters
@@ -164,10 +177,22 @@ public class StrategiesFactory {
 //                "vortexThreshold", generateDoubleRange(0.03, 0.07, 0.01),
                     "riskRewardRatio", generateDoubleRange(1.0, 4.0, 0.5),
                     "atrLength", generateIntRange(7, 14, 1),
-                    "useRiskBasedPositionSizing", List.of("false"),
-//                "useRiskBasedPositionSizing", List.of("true", "false"),
-                    "useTrailingSL", List.of("false")
-//                "useTrailingSL", List.of("true", "false")
+                    "useRiskBasedPositionSizing", List.of(false),
+//                "useRiskBasedPositionSizing", List.of(true, false),
+                    "useTrailingSL", List.of(false)
+//                "useTrailingSL", List.of(true, false)
+            );
+
+            case "NnfxStrategy" -> Map.ofEntries(
+                    // Every baseline with every subset of the confirmations, each at its default settings
+                    Map.entry("baseline", List.of((Object[]) NnfxStrategy.Baseline.values())),
+                    Map.entry("useTtmSqueeze", List.of(false, true)),
+                    Map.entry("useTetherLines", List.of(false, true)),
+                    Map.entry("useWavePulse", List.of(false, true)),
+                    Map.entry("useVortex", List.of(false, true)),
+                    Map.entry("requireCrossing", List.of(false, true)),
+                    Map.entry("riskRewardRatio", generateDoubleRange(1.5, 3.0, 0.5)),
+                    Map.entry("useTrailingSL", List.of(false, true))
             );
 
             default -> throw new IllegalStateException("Unexpected value: " + strategyName);
@@ -0,0 +1,12 @@
+package ch.xavier.backtester.strategy;
+
+/**
+ * Everything a strategy learns from the quotes during one backtest run. Strategies only hold their parameters so
+ * one instance can serve concurrent runs, each with its own state.
+ */
+public interface StrategyState {
+    /**
+     * Forget the previous run so this state can be reused for another one
+     */
+    void reset();
+}
@@ -7,11 +7,83 @@ import java.util.List;
 import java.util.Map;
 
 public interface TradingStrategy {
+    /**
+     * Create the state of a new backtest run, passed to every other method during that run
+     */
+    StrategyState createState();
+
     /**
      * Generate trading signal
      * @return 1 for long, -1 for short, 0 for no signal
      */
-    int generateSignal(List<Quote> quotes, int index);
+    int generateSignal(List<Quote> quotes, int index, StrategyState state);
+
+    /**
+     * Generate the signals of the whole series in one pass, with the stop loss and take profit of each entry.
+     * Adapts {@link #generateSignal} by default, override with a bulk implementation when there is one.
+     */
+    default SignalVector generateSignals(List<Quote> quotes, StrategyState state) {
+        return SignalVector.of(this, quotes, state);
+    }
+
+    /**
+     * Complete the entry signals generated by a run of this strategy only differing by exit parameters, see
+     * {@link ParameterSchema#affectingExitsOnly}, with the stop loss and take profit of this run. Only asks for the
+     * stop loss and take profit of the entries by default, without generating any signal.
+     */
+    default SignalVector generateSignals(List<Quote> quotes, StrategyState state, byte[] entrySignals) {
+        return SignalVector.of(this, quotes, state, entrySignals);
+    }
+
+    /**
+     * Number of leading bars the strategy needs before it can signal, derived from its parameters. No signal is
+     * generated before it, so the engine starts there and walk-forward windows are preceded by that many bars.
+     */
+    default int getWarmUp() {
+        return 0;
+    }
+
+    /**
+     * Whether the signal of a bar only depends on the quotes, not on the bars previously asked for a signal or
+     * traded. Only then can the engine backtest from {@link #generateSignals} instead of bar per bar.
+     */
+    default boolean hasPathIndependentSignals() {
+        return false;
+    }
+
+    /**
+     * Whether positions only exit at their initial stop loss or take profit, or all together on {@link #shouldExit},
+     * {@link #updateStopLoss} never moving the stop. The engine can then find the exits of an entry for every take
+     * profit at once.
+     */
+    default boolean hasFixedExits() {
+        return false;
+    }
+
+    /**
+     * Number of positions the strategy can hold at once, e.g. to pyramid into a trade. The engine keeps asking for a
+     * signal while fewer are open, only once all are closed by default.
+     */
+    default int getMaxOpenPositions() {
+        return 1;
+    }
+
+    /**
+     * Positions of the run open as the engine asks for a signal, positive when long and negative when short. They
+     * close at their stop loss or take profit without the strategy being asked, so a strategy counting its
+     * positions in its state takes the count from here.
+     */
+    default void syncOpenPositions(int openPositions, StrategyState state) {
+    }
+
+    /**
+     * Whether every open position of the run closes on the bar, at its close. Asked on each bar positions are held
+     * through, after their stop losses and take profits and before a new signal, with the positions left synced just
+     * before. Only strategies without path-independent signals are asked, the others only exit at their orders.
+     */
+    default boolean shouldExit(List<Quote> quotes, int index, StrategyState state) {
+        return false;
+    }
 
     /**
      * Calculate position size based on risk parameters
@@ -23,18 +95,26 @@ public interface TradingStrategy {
     /**
      * Calculate initial stop loss price
      */
-    double calculateStopLossPrice(boolean isLong, List<Quote> quotes, int index);
+    double calculateStopLossPrice(boolean isLong, List<Quote> quotes, int index, StrategyState state);
 
     /**
      * Calculate take profit target price
      */
-    double calculateTakeProfitPrice(boolean isLong, List<Quote> quotes, int index);
+    double calculateTakeProfitPrice(boolean isLong, List<Quote> quotes, int index, StrategyState state);
 
     /**
      * Update trailing stop or returns initial stop loss
      * @return new stop price
      */
-    double updateStopLoss(Position position, List<Quote> quotes, int index);
+    double updateStopLoss(Position position, List<Quote> quotes, int index, StrategyState state);
 
+    /**
+     * Parameters accepted by {@link #setParameters} and by the parameter grids of this strategy
+     */
+    ParameterSchema<?> getParameterSchema();
+
+    /**
+     * Configure the strategy, only before it is shared between runs
+     */
     void setParameters(Map<String, Object> parameters);
 }
\ No newline at end of file
@@ -4,15 +4,23 @@ import ch.xavier.backtester.backtesting.TradingParameters;
 import ch.xavier.backtester.backtesting.model.Position;
 import ch.xavier.backtester.indicator.misc.EMA;
 import ch.xavier.backtester.indicator.misc.Stochastic;
+import ch.xavier.backtester.indicator.series.Column;
+import ch.xavier.backtester.indicator.series.IndicatorCache;
+import ch.xavier.backtester.indicator.series.RollingExtremum;
+import ch.xavier.backtester.indicator.series.SparseTable;
 import ch.xavier.backtester.quote.Quote;
 import ch.xavier.backtester.strategy.BaseStrategy;
+import ch.xavier.backtester.strategy.ParameterSchema;
+import ch.xavier.backtester.strategy.SignalVector;
+import ch.xavier.backtester.strategy.StrategyState;
 import ch.xavier.backtester.strategy.ExitStrategy;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.BitSet;
 import java.util.List;
-import java.util.Map;
+import java.util.function.IntToDoubleFunction;
 
 @Slf4j
 @Getter
@@ -38,240 +46,302 @@ public class DivergenceStrategy extends BaseStrategy {
     private boolean requireReversalCandle = true;
     private boolean tradeLongOnly = true;
 
-    // Indicators
-    private Stochastic fastStoch1; // 9,3 - Primary indicator
-    private Stochastic fastStoch2; // 14,3
-    private Stochastic fastStoch3; // 40,4
-    private Stochastic fullStoch;  // 60,10,1
-
-    // Tracking variables
-    private double currentStopLoss;
-    private double currentTarget;
-    private boolean initialized = false;
-
-    private ExitStrategy exitStrategy;
-    private EMA ema200;
-    private EMA ema20;
-    private EMA ema50;
     private int ema200Period = 200;
+    private String trendTimeframe; // Timeframe of the 200 EMA, e.g. "1h", null to use the quotes timeframe
+
+    public static final ParameterSchema<DivergenceStrategy> PARAMETERS = ParameterSchema.of(DivergenceStrategy.class)
+            .including(BaseStrategy.PARAMETERS)
+            .doubleParameter("oversoldThreshold", (s, v) -> s.oversoldThreshold = v)
+            .doubleParameter("overboughtThreshold", (s, v) -> s.overboughtThreshold = v)
+            .intParameter("lookbackPeriod", (s, v) -> s.lookbackPeriod = v)
+            .doubleParameter("minPriceChange", (s, v) -> s.minPriceChange = v)
+            .booleanParameter("requireReversalCandle", (s, v) -> s.requireReversalCandle = v)
+            .booleanParameter("tradeLongOnly", (s, v) -> s.tradeLongOnly = v)
+            .booleanParameter("requireAllStochastics", (s, v) -> s.requireAllStochastics = v)
+            .intParameter("ema200Period", (s, v) -> s.ema200Period = v)
+            .parameter("trendTimeframe", String.class, (s, v) -> s.trendTimeframe = v);
+
+    private static class DivergenceState extends State {
+        // Indicators
+        private Stochastic fastStoch1; // 9,3 - Primary indicator
+        private Stochastic fastStoch2; // 14,3
+        private Stochastic fastStoch3; // 40,4
+        private Stochastic fullStoch;  // 60,10,1
+
+        // Stage masks and rolling extremes, shared through the cache by runs with the same thresholds and lookback
+        private BitSet oversold;
+        private BitSet overbought;
+        private SparseTable lows;
+        private SparseTable highs;
+        private double[] previousLows;
+        private double[] previousHighs;
+        private double[] previousStochLows;
+        private double[] previousStochHighs;
+
+        // Tracking variables
+        private double currentStopLoss;
+        private double currentTarget;
+        private boolean initialized = false;
+
+        private ExitStrategy exitStrategy;
+        private EMA ema200;
+        private EMA ema20;
+        private EMA ema50;
+
+        @Override
+        public void reset() {
+            super.reset();
+            initialized = false;
+            exitStrategy = null;
+        }
+    }
+
+    @Override
+    public StrategyState createState() {
+        return new DivergenceState();
+    }
 
     public DivergenceStrategy(TradingParameters parameters) {
         super(parameters);
     }
 
+    // Longest stochastic plus the window divergences are searched in
     @Override
-    public void setParameters(Map<String, Object> parameters) {
-        super.setParameters(parameters);
-
-        // Only allow customization of thresholds and risk parameters
-        this.oversoldThreshold = (double) parameters.getOrDefault("oversoldThreshold", 20.0);
-        this.overboughtThreshold = (double) parameters.getOrDefault("overboughtThreshold", 80.0);
-        this.lookbackPeriod = (int) parameters.getOrDefault("lookbackPeriod", 20);
-        this.minPriceChange = (double) parameters.getOrDefault("minPriceChange", 0.5);
-        this.requireReversalCandle = (boolean) parameters.getOrDefault("requireReversalCandle", true);
-        this.tradeLongOnly = (boolean) parameters.getOrDefault("tradeLongOnly", true);
-        this.requireAllStochastics = (boolean) parameters.getOrDefault("requireAllStochastics", true);
-        this.ema200Period = (int) parameters.getOrDefault("ema200Period", 200);
-
-        // Create indicator objects
-        try {
-            fastStoch1 = new Stochastic(fastStoch1K, fastStoch1D);
-            fastStoch2 = new Stochastic(fastStoch2K, fastStoch2D);
-            fastStoch3 = new Stochastic(fastStoch3K, fastStoch3D);
-            fullStoch = new Stochastic(fullStochK, fullStochD, fullStochSmooth, true);
+    public int getWarmUp() {
+        return Math.max(Math.max(fastStoch1K, fastStoch2K), Math.max(fastStoch3K, fullStochK)) + lookbackPeriod;
+    }
 
-            initialized = false; // Will be initialized with quotes later
-        } catch (Exception e) {
-            log.error("Failed to create stochastic indicators: {}", e.getMessage());
-        }
+    @Override
+    public boolean hasPathIndependentSignals() {
+        return true;
+    }
+
+    // The exit strategy moves the stop whether trailing stops are used or not
+    @Override
+    public boolean hasFixedExits() {
+        return false;
     }
 
-    public void initialize(List<Quote> quotes) {
+    // The stop loss and target are set by the pattern found while signaling, found again at the entries only
+    @Override
+    public SignalVector generateSignals(List<Quote> quotes, StrategyState state, byte[] entrySignals) {
+        return SignalVector.replay(this, quotes, state, entrySignals);
+    }
+
+    @Override
+    public ParameterSchema<?> getParameterSchema() {
+        return PARAMETERS;
+    }
+
+    private void initialize(DivergenceState s, List<Quote> quotes) {
         if (quotes == null || quotes.isEmpty()) {
             log.warn("Cannot initialize DivergenceStrategy: quotes list is empty");
             return;
         }
 
         try {
+            s.fastStoch1 = new Stochastic(fastStoch1K, fastStoch1D);
+            s.fastStoch2 = new Stochastic(fastStoch2K, fastStoch2D);
+            s.fastStoch3 = new Stochastic(fastStoch3K, fastStoch3D);
+            s.fullStoch = new Stochastic(fullStochK, fullStochD, fullStochSmooth, true);
+
             // Calculate all stochastic indicators
-            fastStoch1.calculate(quotes);
-            fastStoch2.calculate(quotes);
-            fastStoch3.calculate(quotes);
-            fullStoch.calculate(quotes);
-
-            ema200 = new EMA(ema200Period);
-            ema20 = new EMA(20);
-            ema50 = new EMA(50);
-            exitStrategy = ExitStrategy.builder()
-                    .ema200(ema200)
-                    .ema20(ema20)
-                    .ema50(ema50)
-                    .fastStoch(fastStoch1)
-                    .fullStoch(fullStoch)
+            s.fastStoch1.calculate(quotes);
+            s.fastStoch2.calculate(quotes);
+            s.fastStoch3.calculate(quotes);
+            s.fullStoch.calculate(quotes);
+
+            precomputeStages(s, quotes);
+
+            s.ema200 = calculateTrendEma(quotes, ema200Period, trendTimeframe);
+            s.ema20 = new EMA(20);
+            s.ema50 = new EMA(50);
+            s.exitStrategy = ExitStrategy.builder()
+                    .ema200(s.ema200)
+                    .ema20(s.ema20)
+                    .ema50(s.ema50)
+                    .fastStoch(s.fastStoch1)
+                    .fullStoch(s.fullStoch)
                     .build();
-            exitStrategy.initialize(quotes);
+            s.exitStrategy.initialize(quotes);
 
-            initialized = true;
+            s.initialized = true;
             log.debug("DivergenceStrategy initialized successfully");
         } catch (Exception e) {
             log.error("Error initializing stochastic indicators: {}", e.getMessage());
-            initialized = false;
+            s.initialized = false;
         }
     }
 
+    private void precomputeStages(DivergenceState s, List<Quote> quotes) {
+        Column[] stochastics = {s.fastStoch1.getD(), s.fastStoch2.getD(), s.fastStoch3.getD(), s.fullStoch.getD()};
+        Column stochD = s.fastStoch1.getD();
+        int window = Math.max(1, lookbackPeriod);
+        String precision = "@" + IndicatorCache.getPrecision();
+
+        s.oversold = IndicatorCache.get(quotes, "divergence:oversold:" + oversoldThreshold + precision,
+                q -> allBeyond(stochastics, oversoldThreshold, false));
+        s.overbought = IndicatorCache.get(quotes, "divergence:overbought:" + overboughtThreshold + precision,
+                q -> allBeyond(stochastics, overboughtThreshold, true));
+
+        s.lows = IndicatorCache.get(quotes, "divergence:lows",
+                q -> SparseTable.min(q.stream().mapToDouble(Quote::getLow).toArray()));
+        s.highs = IndicatorCache.get(quotes, "divergence:highs",
+                q -> SparseTable.max(q.stream().mapToDouble(Quote::getHigh).toArray()));
+
+        s.previousLows = IndicatorCache.get(quotes, "divergence:previousLows:" + window,
+                q -> previousExtremes(q.size(), i -> q.get(i).getLow(), window, false, Double.MAX_VALUE));
+        s.previousHighs = IndicatorCache.get(quotes, "divergence:previousHighs:" + window,
+                q -> previousExtremes(q.size(), i -> q.get(i).getHigh(), window, true, Double.MIN_VALUE));
+        s.previousStochLows = IndicatorCache.get(quotes, "divergence:previousStochLows:" + window + precision,
+                q -> previousExtremes(stochD.size(), stochD::get, window, false, 100.0));
+        s.previousStochHighs = IndicatorCache.get(quotes, "divergence:previousStochHighs:" + window + precision,
+                q -> previousExtremes(stochD.size(), stochD::get, window, true, 0.0));
+    }
+
+    // Bars where all the stochastics are below (or above) the threshold
+    private static BitSet allBeyond(Column[] stochastics, double threshold, boolean above) {
+        int size = Integer.MAX_VALUE;
+        for (Column stochastic : stochastics) {
+            size = Math.min(size, stochastic.size());
+        }
+
+        BitSet bars = new BitSet(size);
+        for (int i = 0; i < size; i++) {
+            boolean all = true;
+            for (int j = 0; j < stochastics.length && all; j++) {
+                double value = stochastics[j].get(i);
+                all = above ? value > threshold : value < threshold;
+            }
+            bars.set(i, all);
+        }
+        return bars;
+    }
+
+    // Lowest (or highest) value of the lookback bars before each bar, never beyond the initial value
+    private static double[] previousExtremes(int size, IntToDoubleFunction series, int lookback, boolean highest,
+                                             double initial) {
+        double[] previous = new double[size];
+        RollingExtremum window = highest ? RollingExtremum.max(lookback) : RollingExtremum.min(lookback);
+
+        for (int i = 0; i < size; i++) {
+            if (i == 0) {
+                previous[i] = initial;
+            } else {
+                previous[i] = highest ? Math.max(initial, window.get()) : Math.min(initial, window.get());
+            }
+            window.add(i, series.applyAsDouble(i));
+        }
+        return previous;
+    }
+
     @Override
-    public int generateSignal(List<Quote> quotes, int currentIndex) {
-        if (!initialized) {
-            initialize(quotes);
-            if (!initialized) return 0;
+    public int generateSignal(List<Quote> quotes, int currentIndex, StrategyState state) {
+        DivergenceState s = (DivergenceState) state;
+
+        if (!s.initialized) {
+            initialize(s, quotes);
+            if (!s.initialized) return 0;
         }
 
         // Ensure we have enough data
-        int minDataRequired = Math.max(Math.max(fastStoch1K, fastStoch2K),
-                Math.max(fastStoch3K, fullStochK)) + lookbackPeriod;
-
-        if (currentIndex < minDataRequired) return 0;
+        if (currentIndex < getWarmUp()) return 0;
 
         // Check for bullish divergence based on specified conditions
-        if (isValidBullishDivergence(quotes, currentIndex)) {
+        if (isValidBullishDivergence(s, quotes, currentIndex)) {
             return 1; // Buy signal
         }
 
         // Check for bearish divergence if not trading long only
-        if (!tradeLongOnly && isValidBearishDivergence(quotes, currentIndex)) {
+        if (!tradeLongOnly && isValidBearishDivergence(s, quotes, currentIndex)) {
             return -1; // Sell signal
         }
 
         return 0; // No signal
     }
 
-    private boolean isValidBullishDivergence(List<Quote> quotes, int currentIndex) {
-        if (!initialized || currentIndex < lookbackPeriod) return false;
+    private boolean isValidBullishDivergence(DivergenceState s, List<Quote> quotes, int currentIndex) {
+        if (!s.initialized || currentIndex < lookbackPeriod) return false;
 
         // First stage: Find where all four Stochastics were below 20
-        int stageOneIndex = findStageOneIndex(quotes, currentIndex);
+        int stageOneIndex = findStageOneIndex(s, currentIndex);
         if (stageOneIndex == -1) return false;
 
         // Second stage: Check if price made lower low but 9-3 Stoch made higher low
-        int stageTwoIndex = findStageTwoIndex(quotes, currentIndex, stageOneIndex);
+        int stageTwoIndex = findStageTwoIndex(s, quotes, currentIndex, stageOneIndex);
         if (stageTwoIndex == -1) return false;
 
         // Entry confirmation: 9-3 Stochastic turned back up and is above 20
-        if (!isStochasticTurningUp(fastStoch1, currentIndex)) return false;
-        if (fastStoch1.getD()[currentIndex] <= oversoldThreshold) return false;
+        if (!isStochasticTurningUp(s, s.fastStoch1, currentIndex)) return false;
+        if (s.fastStoch1.getD().get(currentIndex) <= oversoldThreshold) return false;
 
         // Set stop loss just below the pattern's lowest candle
         Quote lowestCandle = quotes.get(stageTwoIndex);
-        currentStopLoss = lowestCandle.getLow() - (lowestCandle.getHigh() - lowestCandle.getLow()) * 0.1;
+        s.currentStopLoss = lowestCandle.getLow() - (lowestCandle.getHigh() - lowestCandle.getLow()) * 0.1;
 
         // Set target based on risk/reward ratio
         double entryPrice = quotes.get(currentIndex).getClose();
-        double risk = entryPrice - currentStopLoss;
-        currentTarget = entryPrice + (risk * riskRewardRatio);
+        double risk = entryPrice - s.currentStopLoss;
+        s.currentTarget = entryPrice + (risk * riskRewardRatio);
 
         return true;
     }
 
-    private boolean isValidBearishDivergence(List<Quote> quotes, int currentIndex) {
-        if (!initialized || currentIndex < lookbackPeriod) return false;
+    private boolean isValidBearishDivergence(DivergenceState s, List<Quote> quotes, int currentIndex) {
+        if (!s.initialized || currentIndex < lookbackPeriod) return false;
 
         // First stage: Find where all four Stochastics were above 80
-        int stageOneIndex = findBearishStageOneIndex(quotes, currentIndex);
+        int stageOneIndex = findBearishStageOneIndex(s, currentIndex);
         if (stageOneIndex == -1) return false;
 
         // Second stage: Check if price made higher high but 9-3 Stoch made lower high
-        int stageTwoIndex = findBearishStageTwoIndex(quotes, currentIndex, stageOneIndex);
+        int stageTwoIndex = findBearishStageTwoIndex(s, quotes, currentIndex, stageOneIndex);
         if (stageTwoIndex == -1) return false;
 
         // Entry confirmation: 9-3 Stochastic turned back down and is below 80
-        if (!isStochasticTurningDown(fastStoch1, currentIndex)) return false;
-        if (fastStoch1.getD()[currentIndex] >= overboughtThreshold) return false;
+        if (!isStochasticTurningDown(s, s.fastStoch1, currentIndex)) return false;
+        if (s.fastStoch1.getD().get(currentIndex) >= overboughtThreshold) return false;
 
         // Set stop loss just above the pattern's highest candle
         Quote highestCandle = quotes.get(stageTwoIndex);
-        currentStopLoss = highestCandle.getHigh() + (highestCandle.getHigh() - highestCandle.getLow()) * 0.1;
+        s.currentStopLoss = highestCandle.getHigh() + (highestCandle.getHigh() - highestCandle.getLow()) * 0.1;
 
         // Set target based on risk/reward ratio
         double entryPrice = quotes.get(currentIndex).getClose();
-        double risk = currentStopLoss - entryPrice;
-        currentTarget = entryPrice - (risk * riskRewardRatio);
+        double risk = s.currentStopLoss - entryPrice;
+        s.currentTarget = entryPrice - (risk * riskRewardRatio);
 
         return true;
     }
 
-    private int findStageOneIndex(List<Quote> quotes, int currentIndex) {
+    private int findStageOneIndex(DivergenceState s, int currentIndex) {
         // Look back to find where all stochastics went below oversold threshold
-        for (int i = currentIndex - 1; i >= currentIndex - lookbackPeriod && i >= 0; i--) {
-            if (allStochasticsOversold(i)) {
-                return i;
-            }
-        }
-        return -1;
+        int index = s.oversold.previousSetBit(currentIndex - 1);
+        return index >= currentIndex - lookbackPeriod ? index : -1;
     }
 
-    private int findBearishStageOneIndex(List<Quote> quotes, int currentIndex) {
+    private int findBearishStageOneIndex(DivergenceState s, int currentIndex) {
         // Look back to find where all stochastics went above overbought threshold
-        for (int i = currentIndex - 1; i >= currentIndex - lookbackPeriod && i >= 0; i--) {
-            if (allStochasticsOverbought(i)) {
-                return i;
-            }
-        }
-        return -1;
-    }
-
-    private boolean allStochasticsOversold(int index) {
-        if (!initialized || index < 0 ||
-                index >= fastStoch1.getD().length ||
-                index >= fastStoch2.getD().length ||
-                index >= fastStoch3.getD().length ||
-                index >= fullStoch.getD().length) return false;
-
-        // Check if all four Stochastic D lines are below oversold threshold
-        return fastStoch1.getD()[index] < oversoldThreshold &&
-                fastStoch2.getD()[index] < oversoldThreshold &&
-                fastStoch3.getD()[index] < oversoldThreshold &&
-                fullStoch.getD()[index] < oversoldThreshold;
-    }
-
-    private boolean allStochasticsOverbought(int index) {
-        if (!initialized || index < 0 ||
-                index >= fastStoch1.getD().length ||
-                index >= fastStoch2.getD().length ||
-                index >= fastStoch3.getD().length ||
-                index >= fullStoch.getD().length) return false;
-
-        // Check if all four Stochastic D lines are above overbought threshold
-        return fastStoch1.getD()[index] > overboughtThreshold &&
-                fastStoch2.getD()[index] > overboughtThreshold &&
-                fastStoch3.getD()[index] > overboughtThreshold &&
-                fullStoch.getD()[index] > overboughtThreshold;
+        int index = s.overbought.previousSetBit(currentIndex - 1);
+        return index >= currentIndex - lookbackPeriod ? index : -1;
     }
 
-    private int findStageTwoIndex(List<Quote> quotes, int currentIndex, int stageOneIndex) {
-        if (!initialized || stageOneIndex == -1) return -1;
+    private int findStageTwoIndex(DivergenceState s, List<Quote> quotes, int currentIndex, int stageOneIndex) {
+        if (!s.initialized || stageOneIndex == -1) return -1;
 
         // Find the lowest price point after stage one
-        int lowestIndex = -1;
-        double lowestPrice = Double.MAX_VALUE;
-
-        for (int i = stageOneIndex; i <= currentIndex; i++) {
-            double currentLow = quotes.get(i).getLow();
-            if (currentLow < lowestPrice) {
-                lowestPrice = currentLow;
-                lowestIndex = i;
-            }
-        }
+        int lowestIndex = s.lows.indexOf(stageOneIndex, currentIndex);
 
         // Ensure this is a valid low point (price lower, stochastic higher)
-        if (lowestIndex > 0 && lowestIndex < fastStoch1.getD().length) {
+        if (lowestIndex > 0 && lowestIndex < s.fastStoch1.getD().size()) {
             double newLowPrice = quotes.get(lowestIndex).getLow();
-            double previousLowPrice = findPreviousLowPrice(quotes, lowestIndex);
+            double previousLowPrice = s.previousLows[lowestIndex];
 
             // Price made lower low
             if (newLowPrice < previousLowPrice) {
                 // Check if stochastic made higher low (bullish divergence)
-                double newStochLow = fastStoch1.getD()[lowestIndex];
-                double previousStochLow = findPreviousStochLow(fastStoch1, lowestIndex);
+                double newStochLow = s.fastStoch1.getD().get(lowestIndex);
+                double previousStochLow = s.previousStochLows[lowestIndex];
 
                 if (newStochLow > previousStochLow) {
                     return lowestIndex;
@@ -282,31 +352,22 @@ public class DivergenceStrategy extends BaseStrategy {
         return -1;
     }
 
-    private int findBearishStageTwoIndex(List<Quote> quotes, int currentIndex, int stageOneIndex) {
-        if (!initialized || stageOneIndex == -1) return -1;
+    private int findBearishStageTwoIndex(DivergenceState s, List<Quote> quotes, int currentIndex, int stageOneIndex) {
+        if (!s.initialized || stageOneIndex == -1) return -1;
 
         // Find the highest price point after stage one
-        int highestIndex = -1;
-        double highestPrice = Double.MIN_VALUE;
-
-        for (int i = stageOneIndex; i <= currentIndex; i++) {
-            double currentHigh = quotes.get(i).getHigh();
-            if (currentHigh > highestPrice) {
-                highestPrice = currentHigh;
-                highestIndex = i;
-            }
-        }
+        int highestIndex = s.highs.indexOf(stageOneIndex, currentIndex);
 
         // Ensure this is a valid high point (price higher, stochastic lower)
-        if (highestIndex > 0 && highestIndex < fastStoch1.getD().length) {
+        if (highestIndex > 0 && highestIndex < s.fastStoch1.getD().size()) {
             double newHighPrice = quotes.get(highestIndex).getHigh();
-            double previousHighPrice = findPreviousHighPrice(quotes, highestIndex);
+            double previousHighPrice = s.previousHighs[highestIndex];
 
             // Price made higher high
             if (newHighPrice > previousHighPrice) {
                 // Check if stochastic made lower high (bearish divergence)
-                double newStochHigh = fastStoch1.getD()[highestIndex];
-                double previousStochHigh = findPreviousStochHigh(fastStoch1, highestIndex);
+                double newStochHigh = s.fastStoch1.getD().get(highestIndex);
+                double previousStochHigh = s.previousStochHighs[highestIndex];
 
                 if (newStochHigh < previousStochHigh) {
                     return highestIndex;
@@ -317,111 +378,65 @@ public class DivergenceStrategy extends BaseStrategy {
         return -1;
     }
 
-    private double findPreviousLowPrice(List<Quote> quotes, int currentIndex) {
-        if (currentIndex <= 0) return Double.MAX_VALUE;
-
-        double lowestPrice = Double.MAX_VALUE;
-        int lookbackStart = Math.max(0, currentIndex - lookbackPeriod);
-
-        for (int i = lookbackStart; i < currentIndex; i++) {
-            lowestPrice = Math.min(lowestPrice, quotes.get(i).getLow());
-        }
-
-        return lowestPrice;
-    }
-
-    private double findPreviousHighPrice(List<Quote> quotes, int currentIndex) {
-        if (currentIndex <= 0) return Double.MIN_VALUE;
-
-        double highestPrice = Double.MIN_VALUE;
-        int lookbackStart = Math.max(0, currentIndex - lookbackPeriod);
-
-        for (int i = lookbackStart; i < currentIndex; i++) {
-            highestPrice = Math.max(highestPrice, quotes.get(i).getHigh());
-        }
-
-        return highestPrice;
-    }
-
-    private double findPreviousStochLow(Stochastic stoch, int currentIndex) {
-        if (!initialized || currentIndex <= 0 || stoch == null || stoch.getD() == null) return 100.0;
-
-        double lowestValue = 100.0;
-        int lookbackStart = Math.max(0, currentIndex - lookbackPeriod);
-
-        for (int i = lookbackStart; i < currentIndex && i < stoch.getD().length; i++) {
-            lowestValue = Math.min(lowestValue, stoch.getD()[i]);
-        }
-
-        return lowestValue;
-    }
-
-    private double findPreviousStochHigh(Stochastic stoch, int currentIndex) {
-        if (!initialized || currentIndex <= 0 || stoch == null || stoch.getD() == null) return 0.0;
-
-        double highestValue = 0.0;
-        int lookbackStart = Math.max(0, currentIndex - lookbackPeriod);
-
-        for (int i = lookbackStart; i < currentIndex && i < stoch.getD().length; i++) {
-            highestValue = Math.max(highestValue, stoch.getD()[i]);
-        }
-
-        return highestValue;
-    }
-
-    private boolean isStochasticTurningUp(Stochastic stoch, int index) {
-        if (!initialized || index < 2 || stoch == null || stoch.getD() == null ||
-                index >= stoch.getD().length) return false;
+    private boolean isStochasticTurningUp(DivergenceState s, Stochastic stoch, int index) {
+        if (!s.initialized || index < 2 || stoch == null || stoch.getD() == null ||
+                index >= stoch.getD().size()) return false;
 
         // D-line is moving upward for at least 2 consecutive bars
-        return stoch.getD()[index] > stoch.getD()[index - 1] &&
-                stoch.getD()[index - 1] > stoch.getD()[index - 2];
+        return stoch.getD().get(index) > stoch.getD().get(index - 1) &&
+                stoch.getD().get(index - 1) > stoch.getD().get(index - 2);
     }
 
-    private boolean isStochasticTurningDown(Stochastic stoch, int index) {
-        if (!initialized || index < 2 || stoch == null || stoch.getD() == null ||
-                index >= stoch.getD().length) return false;
+    private boolean isStochasticTurningDown(DivergenceState s, Stochastic stoch, int index) {
+        if (!s.initialized || index < 2 || stoch == null || stoch.getD() == null ||
+                index >= stoch.getD().size()) return false;
 
         // D-line is moving downward for at least 2 consecutive bars
-        return stoch.getD()[index] < stoch.getD()[index - 1] &&
-                stoch.getD()[index - 1] < stoch.getD()[index - 2];
+        return stoch.getD().get(index) < stoch.getD().get(index - 1) &&
+                stoch.getD().get(index - 1) < stoch.getD().get(index - 2);
     }
 
     // Override methods from BaseStrategy with proper signatures
     @Override
-    public double calculateStopLossPrice(boolean isLong, List<Quote> quotes, int index) {
-        return currentStopLoss;
+    public double calculateStopLossPrice(boolean isLong, List<Quote> quotes, int index, StrategyState state) {
+        DivergenceState s = (DivergenceState) state;
+
+        return s.currentStopLoss;
     }
 
     @Override
-    public double calculateTakeProfitPrice(boolean isLong, List<Quote> quotes, int index) {
-        return currentTarget;
+    public double calculateTakeProfitPrice(boolean isLong, List<Quote> quotes, int index, StrategyState state) {
+        DivergenceState s = (DivergenceState) state;
+
+        return s.currentTarget;
     }
 
     @Override
-    public double updateStopLoss(Position position, List<Quote> quotes, int index) {
-        if (!initialized || index < 0 || index >= quotes.size()) {
+    public double updateStopLoss(Position position, List<Quote> quotes, int index, StrategyState state) {
+        DivergenceState s = (DivergenceState) state;
+
+        if (!s.initialized || index < 0 || index >= quotes.size()) {
             return position.getCurrentStopLossPrice();
         }
 
         // Check if we should take partial profits
-        if (exitStrategy.shouldTakePartialProfit(position, quotes, index)) {
+        if (s.exitStrategy.shouldTakePartialProfit(position, quotes, index)) {
             // Logic to handle partial profit taking would go here
             // This would require extending your backtester to support partial closes
             log.debug("Taking partial profit at index {}", index);
-            exitStrategy.setPartialProfitTaken(true);
+            s.exitStrategy.setPartialProfitTaken(true);
         }
 
         // Check if we should exit the position
-        if (exitStrategy.shouldExitPosition(position, quotes, index)) {
+        if (s.exitStrategy.shouldExitPosition(position, quotes, index)) {
             // Force exit by returning very tight stop
             return position.isLong() ? quotes.get(index).getClose() * 0.999 :
                     quotes.get(index).getClose() * 1.001;
         }
 
         // Use exit strategy to update stop loss
-        double atr = calculateATR(quotes, index, atrLength);
-        return exitStrategy.updateStopLoss(position, quotes, index, atr,
+        double atr = calculateATR(quotes, index, atrLength, s);
+        return s.exitStrategy.updateStopLoss(position, quotes, index, atr,
                 position.getCurrentStopLossPrice());
     }
 }
\ No newline at end of file
@@ -1,49 +1,101 @@
 package ch.xavier.backtester.strategy.concrete;
 
 import ch.xavier.backtester.backtesting.TradingParameters;
+import ch.xavier.backtester.indicator.series.RollingExtremum;
 import ch.xavier.backtester.quote.Quote;
 import ch.xavier.backtester.strategy.BaseStrategy;
+import ch.xavier.backtester.strategy.ParameterSchema;
+import ch.xavier.backtester.strategy.StrategyState;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 
 import java.time.LocalTime;
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 @Slf4j
 @Getter
 @Setter
 public class DoubleTapStrategy extends BaseStrategy {
     private TradingParameters parameters;
-    private int pivotLength;
-    private double pivotTolerance;
-    private double targetFib;
-    private double stopFib;
-    private boolean detectBottoms;
-    private boolean detectTops;
-    private boolean useTimeFilter;
-    private LocalTime startTime;
-    private LocalTime endTime;
-    private boolean useTrailStop;
-    private int atrLength;
-    private double atrMultiplier;
-    private int swingLookback;
-
-    // Track pivots and patterns
-    private final List<Pivot> topPivots = new ArrayList<>();
-    private final List<Pivot> bottomPivots = new ArrayList<>();
-    private final Map<Integer, DoubleTapPattern> patterns = new HashMap<>();
+    private int pivotLength = 50;
+    private double pivotTolerance = 15.0;
+    private double targetFib = 100.0;
+    private double stopFib = 0.0;
+    private boolean detectBottoms = true;
+    private boolean detectTops = true;
+    private boolean useTimeFilter = false;
+    private LocalTime startTime = LocalTime.of(0, 0);
+    private LocalTime endTime = LocalTime.of(23, 59);
+    private boolean useTrailStop = false;
+    private int atrLength = 14; // Hides the base ATR length, only used by the trailing stops
+    private double atrMultiplier = 1.0;
+    private int swingLookback = 5;
+
+    public static final ParameterSchema<DoubleTapStrategy> PARAMETERS = ParameterSchema.of(DoubleTapStrategy.class)
+            .including(BaseStrategy.PARAMETERS)
+            .intParameter("pivotLength", (s, v) -> s.pivotLength = v)
+            .doubleParameter("pivotTolerance", (s, v) -> s.pivotTolerance = v)
+            .doubleParameter("targetFib", (s, v) -> s.targetFib = v)
+            .doubleParameter("stopFib", (s, v) -> s.stopFib = v)
+            .booleanParameter("detectBottoms", (s, v) -> s.detectBottoms = v)
+            .booleanParameter("detectTops", (s, v) -> s.detectTops = v)
+            .booleanParameter("useTimeFilter", (s, v) -> s.useTimeFilter = v)
+            .parameter("startTime", LocalTime.class, (s, v) -> s.startTime = v)
+            .parameter("endTime", LocalTime.class, (s, v) -> s.endTime = v)
+            .booleanParameter("useTrailStop", (s, v) -> s.useTrailStop = v)
+            .intParameter("atrLength", (s, v) -> s.atrLength = v)
+            .doubleParameter("atrMultiplier", (s, v) -> s.atrMultiplier = v)
+            .intParameter("swingLookback", (s, v) -> s.swingLookback = v);
+
+    private static final int MAX_PIVOTS = 5; // Pivots kept to match W/M patterns
+
+    private static class DoubleTapState extends State {
+        // Highs and lows of the pivot window, fed up to the bar before the one asked for a signal
+        private final RollingExtremum highs;
+        private final RollingExtremum lows;
+        private int nextBar = 0;
+
+        // Track pivots
+        private final PivotBuffer topPivots = new PivotBuffer();
+        private final PivotBuffer bottomPivots = new PivotBuffer();
+
+        // Current stop/target values
+        private double currentStopLoss;
+        private double currentTarget;
+
+        private DoubleTapState(int pivotLength) {
+            highs = RollingExtremum.max(Math.max(1, pivotLength));
+            lows = RollingExtremum.min(Math.max(1, pivotLength));
+        }
+
+        @Override
+        public void reset() {
+            super.reset();
+            highs.clear();
+            lows.clear();
+            nextBar = 0;
+            topPivots.clear();
+            bottomPivots.clear();
+            currentStopLoss = 0;
+            currentTarget = 0;
+        }
+    }
+
+    @Override
+    public StrategyState createState() {
+        return new DoubleTapState(pivotLength);
+    }
 
     public DoubleTapStrategy(TradingParameters parameters) {
         super(parameters);
     }
 
     @Override
-    public int generateSignal(List<Quote> quotes, int index) {
-        if (index < pivotLength) {
+    public int generateSignal(List<Quote> quotes, int index, StrategyState state) {
+        DoubleTapState s = (DoubleTapState) state;
+
+        if (index < getWarmUp()) {
             return 0; // Not enough data
         }
 
@@ -58,159 +110,125 @@ public class DoubleTapStrategy extends BaseStrategy {
         }
 
         // Detect pivots
-        detectPivots(quotes, index);
-
-        // Check for double tap patterns
-        DoubleTapPattern pattern = findDoubleTapPattern();
-        if (pattern != null) {
-            patterns.put(index, pattern);
-
-            // Generate signal based on pattern
-            if (pattern.isBottomPattern() && detectBottoms) {
-                // Set stopLoss and target for risk management (can be accessed elsewhere)
-                this.currentStopLoss = pattern.stopPrice();
-                this.currentTarget = pattern.targetPrice();
-                return 1; // Long signal
-            } else if (pattern.isTopPattern() && detectTops) {
-                // Set stopLoss and target for risk management (can be accessed elsewhere)
-                this.currentStopLoss = pattern.stopPrice();
-                this.currentTarget = pattern.targetPrice();
-                return -1; // Short signal
-            }
+        detectPivots(s, quotes, index);
+
+        // Check for double tap patterns, 1 for a W pattern (long), -1 for an M pattern (short)
+        int signal = findDoubleTapPattern(s);
+        if (signal != 0) {
+            return signal;
         }
 
         // Update trailing stops if needed
         if (useTrailStop) {
-            updateTrailingStops(quotes, index);
+            updateTrailingStops(s, quotes, index);
         }
 
         return 0; // No signal
     }
 
-    // Add these fields to store current stop/target values
-    private double currentStopLoss;
-    private double currentTarget;
+    @Override
+    public int getWarmUp() {
+        return pivotLength;
+    }
 
     @Override
-    public void setParameters(Map<String, Object> parameters) {
-        this.pivotLength = (int) parameters.getOrDefault("pivotLength", 50);
-        this.pivotTolerance = (double) parameters.getOrDefault("pivotTolerance", 15.0);
-        this.targetFib = (double) parameters.getOrDefault("targetFib", 100.0);
-        this.stopFib = (double) parameters.getOrDefault("stopFib", 0.0);
-        this.detectBottoms = (boolean) parameters.getOrDefault("detectBottoms", true);
-        this.detectTops = (boolean) parameters.getOrDefault("detectTops", true);
-        this.useTimeFilter = (boolean) parameters.getOrDefault("useTimeFilter", false);
-        this.startTime = (LocalTime) parameters.getOrDefault("startTime", LocalTime.of(0, 0));
-        this.endTime = (LocalTime) parameters.getOrDefault("endTime", LocalTime.of(23, 59));
-        this.useTrailStop = (boolean) parameters.getOrDefault("useTrailStop", false);
-        this.atrLength = (int) parameters.getOrDefault("atrLength", 14);
-        this.atrMultiplier = (double) parameters.getOrDefault("atrMultiplier", 1.0);
-        this.swingLookback = (int) parameters.getOrDefault("swingLookback", 5);
+    public ParameterSchema<?> getParameterSchema() {
+        return PARAMETERS;
     }
 
-    private void detectPivots(List<Quote> quotes, int currentIndex) {
+    // The bar before currentIndex is a pivot when no bar of the pivotLength window it ends beats it
+    private void detectPivots(DoubleTapState s, List<Quote> quotes, int currentIndex) {
         if (currentIndex < pivotLength + 1) return;
 
-        // Check if we have a new high pivot
-        boolean isHighPivot = true;
-        double highestValue = quotes.get(currentIndex - 1).getHigh();
-        for (int i = 2; i <= pivotLength; i++) {
-            if (currentIndex - i >= 0 && quotes.get(currentIndex - i).getHigh() > highestValue) {
-                isHighPivot = false;
-                break;
-            }
+        // Bars skipped while in a position are caught up, only the ones still in the window matter
+        int pivotIndex = currentIndex - 1;
+        for (int i = Math.max(s.nextBar, currentIndex - pivotLength); i <= pivotIndex; i++) {
+            Quote quote = quotes.get(i);
+            s.highs.add(i, quote.getHigh());
+            s.lows.add(i, quote.getLow());
         }
+        s.nextBar = currentIndex;
 
-        if (isHighPivot) {
-            topPivots.add(new Pivot(currentIndex - 1, highestValue));
-            // Keep only recent pivots
-            if (topPivots.size() > 5) {
-                topPivots.removeFirst();
-            }
+        // Check if we have a new high pivot
+        double highestValue = quotes.get(pivotIndex).getHigh();
+        if (highestValue >= s.highs.get()) {
+            s.topPivots.add(pivotIndex, highestValue);
         }
 
         // Check if we have a new low pivot
-        boolean isLowPivot = true;
-        double lowestValue = quotes.get(currentIndex - 1).getLow();
-        for (int i = 2; i <= pivotLength; i++) {
-            if (currentIndex - i >= 0 && quotes.get(currentIndex - i).getLow() < lowestValue) {
-                isLowPivot = false;
-                break;
-            }
-        }
-
-        if (isLowPivot) {
-            bottomPivots.add(new Pivot(currentIndex - 1, lowestValue));
-            // Keep only recent pivots
-            if (bottomPivots.size() > 5) {
-                bottomPivots.removeFirst();
-            }
+        double lowestValue = quotes.get(pivotIndex).getLow();
+        if (lowestValue <= s.lows.get()) {
+            s.bottomPivots.add(pivotIndex, lowestValue);
         }
     }
 
-    private DoubleTapPattern findDoubleTapPattern() {
+    // Sets the stop loss and target of the pattern found, if any
+    private int findDoubleTapPattern(DoubleTapState s) {
+        PivotBuffer tops = s.topPivots;
+        PivotBuffer bottoms = s.bottomPivots;
+
         // Check for double bottom (W pattern)
-        if (detectBottoms && bottomPivots.size() >= 4) {
+        if (detectBottoms && bottoms.size() >= 4) {
             // We need at least 4 points for a W pattern: low, high, second low, second high
-            Pivot firstLow = bottomPivots.get(bottomPivots.size() - 4);
-            Pivot firstHigh = topPivots.size() > 2 ? topPivots.get(topPivots.size() - 3) : null;
-            Pivot secondLow = bottomPivots.get(bottomPivots.size() - 2);
-            Pivot currentHigh = !topPivots.isEmpty() ? topPivots.getLast() : null;
+            int firstLow = bottoms.size() - 4;
+            int firstHigh = tops.size() - 3;
+            int secondLow = bottoms.size() - 2;
+            int currentHigh = tops.size() - 1;
 
-            if (firstHigh != null && currentHigh != null &&
-                    secondLow.getIndex() > firstHigh.getIndex() &&
-                    currentHigh.getIndex() > secondLow.getIndex()) {
+            if (firstHigh >= 0 &&
+                    bottoms.index(secondLow) > tops.index(firstHigh) &&
+                    tops.index(currentHigh) > bottoms.index(secondLow)) {
 
                 // Calculate tolerance band
-                double height = Math.abs(firstHigh.getValue() - firstLow.getValue());
-                double upperBand = firstLow.getValue() + height * (pivotTolerance / 100.0);
-                double lowerBand = firstLow.getValue() - height * (pivotTolerance / 100.0);
+                double height = Math.abs(tops.value(firstHigh) - bottoms.value(firstLow));
+                double upperBand = bottoms.value(firstLow) + height * (pivotTolerance / 100.0);
+                double lowerBand = bottoms.value(firstLow) - height * (pivotTolerance / 100.0);
 
                 // Check if second low is within tolerance
-                if (secondLow.getValue() >= lowerBand && secondLow.getValue() <= upperBand) {
-                    double targetPrice = secondLow.getValue() + height * (targetFib / 100.0);
-                    double stopPrice = secondLow.getValue() - (stopFib > 0 ? height * (stopFib / 100.0) : 0);
-
-                    return new DoubleTapPattern(false, targetPrice, stopPrice);
+                double secondLowValue = bottoms.value(secondLow);
+                if (secondLowValue >= lowerBand && secondLowValue <= upperBand) {
+                    s.currentTarget = secondLowValue + height * (targetFib / 100.0);
+                    s.currentStopLoss = secondLowValue - (stopFib > 0 ? height * (stopFib / 100.0) : 0);
+                    return 1;
                 }
             }
         }
 
         // Check for double top (M pattern)
-        if (detectTops && topPivots.size() >= 4) {
+        if (detectTops && tops.size() >= 4) {
             // We need at least 4 points for an M pattern: high, low, second high, second low
-            Pivot firstHigh = topPivots.get(topPivots.size() - 4);
-            Pivot firstLow = bottomPivots.size() > 2 ? bottomPivots.get(bottomPivots.size() - 3) : null;
-            Pivot secondHigh = topPivots.get(topPivots.size() - 2);
-            Pivot currentLow = !bottomPivots.isEmpty() ? bottomPivots.getLast() : null;
+            int firstHigh = tops.size() - 4;
+            int firstLow = bottoms.size() - 3;
+            int secondHigh = tops.size() - 2;
+            int currentLow = bottoms.size() - 1;
 
-            if (firstLow != null && currentLow != null &&
-                    secondHigh.getIndex() > firstLow.getIndex() &&
-                    currentLow.getIndex() > secondHigh.getIndex()) {
+            if (firstLow >= 0 &&
+                    tops.index(secondHigh) > bottoms.index(firstLow) &&
+                    bottoms.index(currentLow) > tops.index(secondHigh)) {
 
                 // Calculate tolerance band
-                double height = Math.abs(firstHigh.getValue() - firstLow.getValue());
-                double upperBand = firstHigh.getValue() + height * (pivotTolerance / 100.0);
-                double lowerBand = firstHigh.getValue() - height * (pivotTolerance / 100.0);
+                double height = Math.abs(tops.value(firstHigh) - bottoms.value(firstLow));
+                double upperBand = tops.value(firstHigh) + height * (pivotTolerance / 100.0);
+                double lowerBand = tops.value(firstHigh) - height * (pivotTolerance / 100.0);
 
                 // Check if second high is within tolerance
-                if (secondHigh.getValue() >= lowerBand && secondHigh.getValue() <= upperBand) {
-                    double targetPrice = secondHigh.getValue() - height * (targetFib / 100.0);
-                    double stopPrice = secondHigh.getValue() + (stopFib > 0 ? height * (stopFib / 100.0) : 0);
-
-                    return new DoubleTapPattern(true, targetPrice, stopPrice);
+                double secondHighValue = tops.value(secondHigh);
+                if (secondHighValue >= lowerBand && secondHighValue <= upperBand) {
+                    s.currentTarget = secondHighValue - height * (targetFib / 100.0);
+                    s.currentStopLoss = secondHighValue + (stopFib > 0 ? height * (stopFib / 100.0) : 0);
+                    return -1;
                 }
             }
         }
 
-        return null;
+        return 0;
     }
 
-    private void updateTrailingStops(List<Quote> quotes, int currentIndex) {
+    private void updateTrailingStops(DoubleTapState s, List<Quote> quotes, int currentIndex) {
         if (currentIndex < atrLength) return;
 
         // Calculate ATR
-        double atr = calculateATR(quotes, currentIndex, atrLength);
+        double atr = calculateATR(quotes, currentIndex, atrLength, s);
 
         // Calculate swing high/low for trailing stops
         double swingHigh = Double.MIN_VALUE;
@@ -231,26 +249,41 @@ public class DoubleTapStrategy extends BaseStrategy {
         // We'd update active position stops here if needed
     }
 
-    // Helper classes
-    @Getter
-    private static class Pivot {
-        private final int index;
-        private final double value;
+    /**
+     * The last pivots found, oldest first, in a ring buffer of primitives
+     */
+    private static class PivotBuffer {
+        private final int[] indices = new int[MAX_PIVOTS];
+        private final double[] values = new double[MAX_PIVOTS];
+        private int head = 0;
+        private int size = 0;
+
+        private void add(int index, double value) {
+            int slot = (head + size) % MAX_PIVOTS;
+            indices[slot] = index;
+            values[slot] = value;
+            if (size < MAX_PIVOTS) {
+                size++;
+            } else {
+                head = (head + 1) % MAX_PIVOTS; // Keep only recent pivots
+            }
+        }
 
-        public Pivot(int index, double value) {
-            this.index = index;
-            this.value = value;
+        private int size() {
+            return size;
         }
-    }
 
-    private record DoubleTapPattern(boolean isTop, @Getter double targetPrice, @Getter double stopPrice) {
+        private int index(int i) {
+            return indices[(head + i) % MAX_PIVOTS];
+        }
 
-        public boolean isTopPattern() {
-            return isTop;
+        private double value(int i) {
+            return values[(head + i) % MAX_PIVOTS];
         }
 
-        public boolean isBottomPattern() {
-            return !isTop;
+        private void clear() {
+            head = 0;
+            size = 0;
         }
     }
-}
\ No newline at end of file
+}
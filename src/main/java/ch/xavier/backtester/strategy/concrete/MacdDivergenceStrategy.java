@@ -2,22 +2,25 @@ package ch.xavier.backtester.strategy.concrete;
 
 import ch.xavier.backtester.backtesting.TradingParameters;
 import ch.xavier.backtester.indicator.misc.MACD;
+import ch.xavier.backtester.indicator.series.IndicatorCache;
+import ch.xavier.backtester.indicator.series.RollingExtremum;
+import ch.xavier.backtester.indicator.series.SparseTable;
 import ch.xavier.backtester.quote.Quote;
 import ch.xavier.backtester.strategy.BaseStrategy;
+import ch.xavier.backtester.strategy.ParameterSchema;
+import ch.xavier.backtester.strategy.StrategyState;
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
-import java.util.Map;
 
 @Slf4j
 public class MacdDivergenceStrategy extends BaseStrategy {
-    private boolean initialized = false;
-
     // MACD parameters
     private int fastLength = 12;
     private int slowLength = 26;
     private int signalLength = 9;
-    private MACD macd;
 
     // Divergence detection parameters
     private int pivotLookbackLeft = 5;
@@ -26,50 +29,112 @@ public class MacdDivergenceStrategy extends BaseStrategy {
     private int rangeUpper = 60;
     private boolean dontTouchZero = true;
 
+    public static final ParameterSchema<MacdDivergenceStrategy> PARAMETERS = ParameterSchema.of(MacdDivergenceStrategy.class)
+            .including(BaseStrategy.PARAMETERS)
+            .intParameter("fastLength", (s, v) -> s.fastLength = v)
+            .intParameter("slowLength", (s, v) -> s.slowLength = v)
+            .intParameter("signalLength", (s, v) -> s.signalLength = v)
+            .intParameter("pivotLookbackLeft", (s, v) -> s.pivotLookbackLeft = v)
+            .intParameter("pivotLookbackRight", (s, v) -> s.pivotLookbackRight = v)
+            .intParameter("rangeLower", (s, v) -> s.rangeLower = v)
+            .intParameter("rangeUpper", (s, v) -> s.rangeUpper = v)
+            .booleanParameter("dontTouchZero", (s, v) -> s.dontTouchZero = v);
+
+    private static class MacdDivergenceState extends State {
+        private boolean initialized = false;
+        private double[] histogram;
+        // Sorted positions of every pivot of the histogram, with a cursor past the last one confirmed at the bar
+        private int[] pivotLows;
+        private int[] pivotHighs;
+        private int lowCursor;
+        private int highCursor;
+        private SparseTable histogramHighs;
+        private SparseTable histogramLows;
+
+        @Override
+        public void reset() {
+            super.reset();
+            initialized = false;
+            histogram = null;
+            pivotLows = null;
+            pivotHighs = null;
+            lowCursor = 0;
+            highCursor = 0;
+            histogramHighs = null;
+            histogramLows = null;
+        }
+    }
+
+    @Override
+    public StrategyState createState() {
+        return new MacdDivergenceState();
+    }
+
     public MacdDivergenceStrategy(TradingParameters parameters) {
         super(parameters);
     }
 
     @Override
-    public int generateSignal(List<Quote> quotes, int index) {
-        if (!initialized && quotes != null && !quotes.isEmpty()) {
-            macd = new MACD(fastLength, slowLength, signalLength);
-            macd.calculate(quotes);
-            initialized = true;
+    public int generateSignal(List<Quote> quotes, int index, StrategyState state) {
+        MacdDivergenceState s = (MacdDivergenceState) state;
+
+        if (!s.initialized && quotes != null && !quotes.isEmpty()) {
+            initialize(s, quotes);
         }
 
-        if (!initialized ||
-                index < pivotLookbackLeft + pivotLookbackRight + slowLength ||
+        if (!s.initialized ||
+                index < getWarmUp() ||
                 index >= quotes.size()) {
             return 0;
         }
 
         // Check for bullish (long) signal
-        if (detectBullishDivergence(quotes, index)) {
+        if (detectBullishDivergence(s, quotes, index)) {
             return 1;
         }
 
         // Check for bearish (short) signal if we're not only doing long trades
-        if (detectBearishDivergence(quotes, index)) {
+        if (detectBearishDivergence(s, quotes, index)) {
             return -1;
         }
 
         return 0;
     }
 
-    // Private methods for divergence detection
-    private boolean detectBullishDivergence(List<Quote> quotes, int index) {
-        // Check for pivot low in oscillator
-        Integer pivotLowIndex = findPivotLow(macd.getHistogram(), index - pivotLookbackRight, pivotLookbackLeft, pivotLookbackRight);
-        if (pivotLowIndex == null) {
-            return false;
-        }
+    /**
+     * Everything but the cursors only depends on the quotes and the MACD and pivot lengths,
+     * so it is shared with every combination of the grid varying the ranges or the exits
+     */
+    private void initialize(MacdDivergenceState s, List<Quote> quotes) {
+        String macdKey = "macd:" + fastLength + ":" + slowLength + ":" + signalLength;
+        String pivotKey = macdKey + ":pivots:" + pivotLookbackLeft + ":" + pivotLookbackRight;
+
+        double[] histogram = IndicatorCache.get(quotes, macdKey + ":histogram", q -> {
+            MACD macd = new MACD(fastLength, slowLength, signalLength);
+            macd.calculate(q);
+            return macd.getHistogram();
+        });
+        s.histogram = histogram;
+        s.pivotLows = IndicatorCache.get(quotes, pivotKey + ":low",
+                _ -> findPivots(histogram, pivotLookbackLeft, pivotLookbackRight, false));
+        s.pivotHighs = IndicatorCache.get(quotes, pivotKey + ":high",
+                _ -> findPivots(histogram, pivotLookbackLeft, pivotLookbackRight, true));
+        s.histogramHighs = IndicatorCache.get(quotes, macdKey + ":histogramHighs", _ -> SparseTable.max(histogram));
+        s.histogramLows = IndicatorCache.get(quotes, macdKey + ":histogramLows", _ -> SparseTable.min(histogram));
+        s.lowCursor = 0;
+        s.highCursor = 0;
+        s.initialized = true;
+    }
 
-        // Find previous pivot low
-        Integer prevPivotLowIndex = findPivotLow(macd.getHistogram(), pivotLowIndex - 1, pivotLookbackLeft, pivotLookbackRight);
-        if (prevPivotLowIndex == null) {
+    // Private methods for divergence detection
+    private boolean detectBullishDivergence(MacdDivergenceState s, List<Quote> quotes, int index) {
+        // Pivot low in oscillator confirmed at this bar, and the one before it
+        s.lowCursor = advance(s.pivotLows, s.lowCursor, index - pivotLookbackRight);
+        if (s.lowCursor < 2) {
             return false;
         }
+        int pivotLowIndex = s.pivotLows[s.lowCursor - 1];
+        int prevPivotLowIndex = s.pivotLows[s.lowCursor - 2];
 
         // Check if we're in range
         int barsSince = pivotLowIndex - prevPivotLowIndex;
@@ -78,8 +143,8 @@ public class MacdDivergenceStrategy extends BaseStrategy {
         }
 
         // Oscillator: Higher Low
-        double currentOscLow = macd.getHistogram()[pivotLowIndex];
-        double prevOscLow = macd.getHistogram()[prevPivotLowIndex];
+        double currentOscLow = s.histogram[pivotLowIndex];
+        double prevOscLow = s.histogram[prevPivotLowIndex];
         boolean oscHigherLow = currentOscLow > prevOscLow && currentOscLow < 0;
 
         // Price: Lower Low
@@ -90,31 +155,20 @@ public class MacdDivergenceStrategy extends BaseStrategy {
         // Check zero line condition
         boolean belowZero = true;
         if (dontTouchZero) {
-            double highest = -Double.MAX_VALUE;
-            for (int i = Math.max(0, pivotLowIndex - (pivotLookbackLeft + pivotLookbackRight + 5));
-                 i <= pivotLowIndex + pivotLookbackRight; i++) {
-                if (i < macd.getHistogram().length) {
-                    highest = Math.max(highest, macd.getHistogram()[i]);
-                }
-            }
-            belowZero = highest < 0;
+            belowZero = s.histogramHighs.get(zeroLineFrom(pivotLowIndex), zeroLineTo(s, pivotLowIndex)) < 0;
         }
 
         return oscHigherLow && priceLowerLow && belowZero;
     }
 
-    private boolean detectBearishDivergence(List<Quote> quotes, int index) {
-        // Check for pivot high in oscillator
-        Integer pivotHighIndex = findPivotHigh(macd.getHistogram(), index - pivotLookbackRight, pivotLookbackLeft, pivotLookbackRight);
-        if (pivotHighIndex == null) {
-            return false;
-        }
-
-        // Find previous pivot high
-        Integer prevPivotHighIndex = findPivotHigh(macd.getHistogram(), pivotHighIndex - 1, pivotLookbackLeft, pivotLookbackRight);
-        if (prevPivotHighIndex == null) {
+    private boolean detectBearishDivergence(MacdDivergenceState s, List<Quote> quotes, int index) {
+        // Pivot high in oscillator confirmed at this bar, and the one before it
+        s.highCursor = advance(s.pivotHighs, s.highCursor, index - pivotLookbackRight);
+        if (s.highCursor < 2) {
             return false;
         }
+        int pivotHighIndex = s.pivotHighs[s.highCursor - 1];
+        int prevPivotHighIndex = s.pivotHighs[s.highCursor - 2];
 
         // Check if we're in range
         int barsSince = pivotHighIndex - prevPivotHighIndex;
@@ -123,8 +177,8 @@ public class MacdDivergenceStrategy extends BaseStrategy {
         }
 
         // Oscillator: Lower High
-        double currentOscHigh = macd.getHistogram()[pivotHighIndex];
-        double prevOscHigh = macd.getHistogram()[prevPivotHighIndex];
+        double currentOscHigh = s.histogram[pivotHighIndex];
+        double prevOscHigh = s.histogram[prevPivotHighIndex];
         boolean oscLowerHigh = currentOscHigh < prevOscHigh && currentOscHigh > 0;
 
         // Price: Higher High
@@ -135,119 +189,76 @@ public class MacdDivergenceStrategy extends BaseStrategy {
         // Check zero line condition
         boolean aboveZero = true;
         if (dontTouchZero) {
-            double lowest = Double.MAX_VALUE;
-            for (int i = Math.max(0, pivotHighIndex - (pivotLookbackLeft + pivotLookbackRight + 5));
-                 i <= pivotHighIndex + pivotLookbackRight; i++) {
-                if (i < macd.getHistogram().length) {
-                    lowest = Math.min(lowest, macd.getHistogram()[i]);
-                }
-            }
-            aboveZero = lowest > 0;
+            aboveZero = s.histogramLows.get(zeroLineFrom(pivotHighIndex), zeroLineTo(s, pivotHighIndex)) > 0;
         }
 
         return oscLowerHigh && priceHigherHigh && aboveZero;
     }
 
-    private Integer findPivotLow(double[] values, int startIndex, int lookbackLeft, int lookbackRight) {
-        if (startIndex < lookbackLeft || startIndex >= values.length - lookbackRight) {
-            return null;
-        }
-
-        for (int i = startIndex; i >= lookbackLeft; i--) {
-            boolean isPivotLow = true;
-            double currentValue = values[i];
-
-            // Check left side
-            for (int left = 1; left <= lookbackLeft; left++) {
-                if (i - left >= 0 && values[i - left] < currentValue) {
-                    isPivotLow = false;
-                    break;
-                }
-            }
-
-            // Check right side
-            if (isPivotLow) {
-                for (int right = 1; right <= lookbackRight; right++) {
-                    if (i + right < values.length && values[i + right] < currentValue) {
-                        isPivotLow = false;
-                        break;
-                    }
-                }
-            }
-
-            if (isPivotLow) {
-                return i;
-            }
-        }
+    private int zeroLineFrom(int pivotIndex) {
+        return Math.max(0, pivotIndex - (pivotLookbackLeft + pivotLookbackRight + 5));
+    }
 
-        return null;
+    private int zeroLineTo(MacdDivergenceState s, int pivotIndex) {
+        return Math.min(pivotIndex + pivotLookbackRight, s.histogram.length - 1);
     }
 
-    private Integer findPivotHigh(double[] values, int startIndex, int lookbackLeft, int lookbackRight) {
-        if (startIndex < lookbackLeft || startIndex >= values.length - lookbackRight) {
-            return null;
+    /**
+     * Number of pivots at or before the bound, moving the cursor forward from where the previous bar left it
+     */
+    private static int advance(int[] pivots, int cursor, int bound) {
+        if (cursor > 0 && pivots[cursor - 1] > bound) {
+            // Bars requested out of order, search from scratch
+            int position = Arrays.binarySearch(pivots, bound);
+            return position >= 0 ? position + 1 : -position - 1;
         }
+        while (cursor < pivots.length && pivots[cursor] <= bound) {
+            cursor++;
+        }
+        return cursor;
+    }
 
-        for (int i = startIndex; i >= lookbackLeft; i--) {
-            boolean isPivotHigh = true;
-            double currentValue = values[i];
-
-            // Check left side
-            for (int left = 1; left <= lookbackLeft; left++) {
-                if (i - left >= 0 && values[i - left] > currentValue) {
-                    isPivotHigh = false;
-                    break;
-                }
-            }
-
-            // Check right side
-            if (isPivotHigh) {
-                for (int right = 1; right <= lookbackRight; right++) {
-                    if (i + right < values.length && values[i + right] > currentValue) {
-                        isPivotHigh = false;
-                        break;
-                    }
-                }
+    /**
+     * Indices of every pivot in increasing order: a value no other value exceeds (for highs) or undercuts
+     * (for lows) within lookbackLeft bars before it and lookbackRight bars after it, ties included.
+     * Both windows are streamed once, so finding all of them is O(n) whatever the lookbacks.
+     */
+    private static int[] findPivots(double[] values, int lookbackLeft, int lookbackRight, boolean high) {
+        RollingExtremum left = high ? RollingExtremum.max(lookbackLeft + 1) : RollingExtremum.min(lookbackLeft + 1);
+        RollingExtremum right = high ? RollingExtremum.max(lookbackRight + 1) : RollingExtremum.min(lookbackRight + 1);
+        BitSet leftPivots = new BitSet(values.length);
+        int[] pivots = new int[values.length];
+        int count = 0;
+
+        for (int j = 0; j < values.length; j++) {
+            left.add(j, values[j]);
+            if (j >= lookbackLeft && values[j] == left.get()) {
+                leftPivots.set(j);
             }
 
-            if (isPivotHigh) {
-                return i;
+            // The right window of the value lookbackRight bars ago is complete
+            right.add(j, values[j]);
+            int i = j - lookbackRight;
+            if (i >= lookbackLeft && leftPivots.get(i) && values[i] == right.get()) {
+                pivots[count++] = i;
             }
         }
 
-        return null;
+        return Arrays.copyOf(pivots, count);
     }
 
     @Override
-    public void setParameters(Map<String, Object> parameters) {
-        super.setParameters(parameters);
+    public int getWarmUp() {
+        return pivotLookbackLeft + pivotLookbackRight + slowLength;
+    }
 
-        if (parameters.containsKey("fastLength")) {
-            this.fastLength = (int) parameters.get("fastLength");
-        }
-        if (parameters.containsKey("slowLength")) {
-            this.slowLength = (int) parameters.get("slowLength");
-        }
-        if (parameters.containsKey("signalLength")) {
-            this.signalLength = (int) parameters.get("signalLength");
-        }
-        if (parameters.containsKey("pivotLookbackLeft")) {
-            this.pivotLookbackLeft = (int) parameters.get("pivotLookbackLeft");
-        }
-        if (parameters.containsKey("pivotLookbackRight")) {
-            this.pivotLookbackRight = (int) parameters.get("pivotLookbackRight");
-        }
-        if (parameters.containsKey("rangeLower")) {
-            this.rangeLower = (int) parameters.get("rangeLower");
-        }
-        if (parameters.containsKey("rangeUpper")) {
-            this.rangeUpper = (int) parameters.get("rangeUpper");
-        }
-        if (parameters.containsKey("dontTouchZero")) {
-            this.dontTouchZero = (boolean) parameters.get("dontTouchZero");
-        }
+    @Override
+    public boolean hasPathIndependentSignals() {
+        return true;
+    }
 
-        // Reset initialization flag to force recalculation with new parameters
-        initialized = false;
+    @Override
+    public ParameterSchema<?> getParameterSchema() {
+        return PARAMETERS;
     }
 }
\ No newline at end of file
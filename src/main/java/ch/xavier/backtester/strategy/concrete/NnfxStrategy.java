@@ -0,0 +1,340 @@
+package ch.xavier.backtester.strategy.concrete;
+
+import ch.xavier.backtester.backtesting.TradingParameters;
+import ch.xavier.backtester.indicator.baseline.McGinley;
+import ch.xavier.backtester.indicator.baseline.QuantumAdaptiveMA;
+import ch.xavier.backtester.indicator.baseline.T3Indicator;
+import ch.xavier.backtester.indicator.baseline.WhiteLine;
+import ch.xavier.backtester.indicator.confirmation.TTMSqueeze;
+import ch.xavier.backtester.indicator.confirmation.TetherLines;
+import ch.xavier.backtester.indicator.confirmation.WavePulseIndicator;
+import ch.xavier.backtester.indicator.series.Column;
+import ch.xavier.backtester.indicator.series.IndicatorCache;
+import ch.xavier.backtester.indicator.volatility.VortexIndicator;
+import ch.xavier.backtester.quote.Quote;
+import ch.xavier.backtester.strategy.BaseStrategy;
+import ch.xavier.backtester.strategy.ParameterSchema;
+import ch.xavier.backtester.strategy.SignalVector;
+import ch.xavier.backtester.strategy.StrategyState;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * NNFX layout composed from the existing indicators: one baseline giving the trend, any of the confirmation
+ * indicators agreeing with it, and the ATR stop loss and take profit every strategy shares.
+ * <p>
+ * The direction of each component is computed once per quotes and component parameters into a vector shared by
+ * every composition using it. A composition then runs one fused loop over the vectors of its components, so
+ * sweeping the combinations costs about as much as running a single strategy.
+ */
+public class NnfxStrategy extends BaseStrategy {
+    public enum Baseline {
+        MCGINLEY, WHITE_LINE, T3, QUANTUM_ADAPTIVE_MA
+    }
+
+    // Baseline
+    private Baseline baseline = Baseline.MCGINLEY;
+    private int mcGinleyLength = 14;
+    private int whiteLineLength = 20;
+    private int t3Length = 5;
+    private double t3Factor = 0.7;
+    private int qamaAdxLength = 2;
+    private double qamaWeightFactor = 10.0;
+    private int qamaMaLength = 6;
+
+    // Confirmations
+    private boolean useTtmSqueeze = false;
+    private int ttmsLength = 20;
+    private double ttmsBbMult = 2.0;
+    private double ttmsKcMult = 2.0;
+    private boolean ttmsUseGreenRedConfirmation = true;
+    private boolean ttmsHighlightNoSqueeze = true;
+    private boolean ttmsInverseSignals = false;
+
+    private boolean useTetherLines = false;
+    private int tetherFastLength = 13;
+    private int tetherSlowLength = 55;
+
+    private boolean useWavePulse = false;
+    private int wavePulseSmoothingPeriod = 21;
+    private double wavePulseConstantFactor = 0.4;
+    private boolean wavePulseUseColorSignals = true;
+    private boolean wavePulseInverseSignals = false;
+    // Wave direction compares each value to the previous one
+    private static final int WAVE_PULSE_WARM_UP = 1;
+
+    private boolean useVortex = false;
+    private int vortexLength = 14;
+    private double vortexThreshold = 0.05;
+
+    // Only signal on the bar every component starts agreeing instead of on every bar they agree
+    private boolean requireCrossing = false;
+
+    public static final ParameterSchema<NnfxStrategy> PARAMETERS = ParameterSchema.of(NnfxStrategy.class)
+            .including(BaseStrategy.PARAMETERS)
+            .parameter("baseline", Baseline.class, (s, v) -> s.baseline = v)
+            .intParameter("mcGinleyLength", (s, v) -> s.mcGinleyLength = v)
+            .intParameter("whiteLineLength", (s, v) -> s.whiteLineLength = v)
+            .intParameter("t3Length", (s, v) -> s.t3Length = v)
+            .doubleParameter("t3Factor", (s, v) -> s.t3Factor = v)
+            .intParameter("qamaAdxLength", (s, v) -> s.qamaAdxLength = v)
+            .doubleParameter("qamaWeightFactor", (s, v) -> s.qamaWeightFactor = v)
+            .intParameter("qamaMaLength", (s, v) -> s.qamaMaLength = v)
+            .booleanParameter("useTtmSqueeze", (s, v) -> s.useTtmSqueeze = v)
+            .intParameter("ttmsLength", (s, v) -> s.ttmsLength = v)
+            .doubleParameter("ttmsBbMult", (s, v) -> s.ttmsBbMult = v)
+            .doubleParameter("ttmsKcMult", (s, v) -> s.ttmsKcMult = v)
+            .booleanParameter("ttmsUseGreenRedConfirmation", (s, v) -> s.ttmsUseGreenRedConfirmation = v)
+            .booleanParameter("ttmsHighlightNoSqueeze", (s, v) -> s.ttmsHighlightNoSqueeze = v)
+            .booleanParameter("ttmsInverseSignals", (s, v) -> s.ttmsInverseSignals = v)
+            .booleanParameter("useTetherLines", (s, v) -> s.useTetherLines = v)
+            .intParameter("tetherFastLength", (s, v) -> s.tetherFastLength = v)
+            .intParameter("tetherSlowLength", (s, v) -> s.tetherSlowLength = v)
+            .booleanParameter("useWavePulse", (s, v) -> s.useWavePulse = v)
+            .intParameter("wavePulseSmoothingPeriod", (s, v) -> s.wavePulseSmoothingPeriod = v)
+            .doubleParameter("wavePulseConstantFactor", (s, v) -> s.wavePulseConstantFactor = v)
+            .booleanParameter("wavePulseUseColorSignals", (s, v) -> s.wavePulseUseColorSignals = v)
+            .booleanParameter("wavePulseInverseSignals", (s, v) -> s.wavePulseInverseSignals = v)
+            .booleanParameter("useVortex", (s, v) -> s.useVortex = v)
+            .intParameter("vortexLength", (s, v) -> s.vortexLength = v)
+            .doubleParameter("vortexThreshold", (s, v) -> s.vortexThreshold = v)
+            .booleanParameter("requireCrossing", (s, v) -> s.requireCrossing = v);
+
+    private static class NnfxState extends State {
+        private boolean initialized = false;
+        // 1 for long, -1 for short and 0 for neither at every bar, per component
+        private byte[] baselineDirections;
+        private byte[][] confirmationDirections;
+
+        @Override
+        public void reset() {
+            super.reset();
+            initialized = false;
+            baselineDirections = null;
+            confirmationDirections = null;
+        }
+    }
+
+    @Override
+    public StrategyState createState() {
+        return new NnfxState();
+    }
+
+    public NnfxStrategy(TradingParameters tradingParameters) {
+        super(tradingParameters);
+    }
+
+    @Override
+    public int generateSignal(List<Quote> quotes, int index, StrategyState state) {
+        NnfxState s = (NnfxState) state;
+        if (index < getWarmUp() || index >= quotes.size()) return 0;
+
+        if (!s.initialized) {
+            initialize(s, quotes);
+        }
+
+        int direction = direction(s, index);
+        if (requireCrossing && direction(s, index - 1) == direction) {
+            return 0;
+        }
+        return direction;
+    }
+
+    @Override
+    public SignalVector generateSignals(List<Quote> quotes, StrategyState state) {
+        NnfxState s = (NnfxState) state;
+        SignalVector vector = new SignalVector(quotes.size());
+        if (quotes.isEmpty()) return vector;
+
+        initialize(s, quotes);
+
+        int previousDirection = direction(s, 0);
+        for (int i = 1; i < quotes.size(); i++) {
+            int direction = direction(s, i);
+            if (direction != 0 && !(requireCrossing && previousDirection == direction)) {
+                vector.set(i, direction, calculateStopLossPrice(direction > 0, quotes, i, state),
+                        calculateTakeProfitPrice(direction > 0, quotes, i, state));
+            }
+            previousDirection = direction;
+        }
+
+        return vector;
+    }
+
+    // Every component is neutral until its own warm-up, so the composition until the longest one
+    @Override
+    public int getWarmUp() {
+        int warmUp = Math.max(1, baselineWarmUp());
+        if (useTtmSqueeze) warmUp = Math.max(warmUp, ttmSqueezeWarmUp());
+        if (useTetherLines) warmUp = Math.max(warmUp, tetherLinesWarmUp());
+        if (useWavePulse) warmUp = Math.max(warmUp, WAVE_PULSE_WARM_UP);
+        if (useVortex) warmUp = Math.max(warmUp, vortexWarmUp());
+        return warmUp;
+    }
+
+    @Override
+    public boolean hasPathIndependentSignals() {
+        return true;
+    }
+
+    // The fused kernel, the baseline direction unless a confirmation disagrees
+    private static int direction(NnfxState s, int index) {
+        int direction = s.baselineDirections[index];
+        byte[][] confirmations = s.confirmationDirections;
+        for (int c = 0; direction != 0 && c < confirmations.length; c++) {
+            if (confirmations[c][index] != direction) {
+                direction = 0;
+            }
+        }
+        return direction;
+    }
+
+    /**
+     * Look up the direction vector of every component of the composition, computing the missing ones
+     */
+    private void initialize(NnfxState s, List<Quote> quotes) {
+        // Directions are compared on columns stored with the current precision
+        String precision = "@" + IndicatorCache.getPrecision();
+
+        s.baselineDirections = IndicatorCache.get(quotes, "nnfx:baseline:" + baselineKey() + precision,
+                this::baselineDirections);
+
+        List<byte[]> confirmations = new ArrayList<>();
+        if (useTtmSqueeze) {
+            confirmations.add(IndicatorCache.get(quotes, "nnfx:ttmSqueeze:" + ttmsLength + ":" + ttmsBbMult + ":" +
+                    ttmsKcMult + ":" + ttmsUseGreenRedConfirmation + ":" + ttmsHighlightNoSqueeze + ":" +
+                    ttmsInverseSignals + precision, this::ttmSqueezeDirections));
+        }
+        if (useTetherLines) {
+            confirmations.add(IndicatorCache.get(quotes, "nnfx:tetherLines:" + tetherFastLength + ":" +
+                    tetherSlowLength + precision, this::tetherLinesDirections));
+        }
+        if (useWavePulse) {
+            confirmations.add(IndicatorCache.get(quotes, "nnfx:wavePulse:" + wavePulseSmoothingPeriod + ":" +
+                    wavePulseConstantFactor + ":" + wavePulseUseColorSignals + ":" + wavePulseInverseSignals +
+                    precision, this::wavePulseDirections));
+        }
+        if (useVortex) {
+            confirmations.add(IndicatorCache.get(quotes, "nnfx:vortex:" + vortexLength + ":" + vortexThreshold +
+                    precision, this::vortexDirections));
+        }
+        s.confirmationDirections = confirmations.toArray(byte[][]::new);
+        s.initialized = true;
+    }
+
+    private String baselineKey() {
+        return switch (baseline) {
+            case MCGINLEY -> "mcGinley:" + mcGinleyLength;
+            case WHITE_LINE -> "whiteLine:" + whiteLineLength;
+            case T3 -> "t3:" + t3Length + ":" + t3Factor;
+            case QUANTUM_ADAPTIVE_MA -> "quantumAdaptiveMA:" + qamaAdxLength + ":" + qamaWeightFactor + ":" + qamaMaLength;
+        };
+    }
+
+    // Price above the baseline is long, below it short
+    private byte[] baselineDirections(List<Quote> quotes) {
+        Column closes = Column.close(quotes);
+        Column values = switch (baseline) {
+            case MCGINLEY -> McGinley.series(quotes, mcGinleyLength);
+            case WHITE_LINE -> WhiteLine.series(quotes, whiteLineLength);
+            case T3 -> T3Indicator.series(quotes, t3Length, t3Factor);
+            case QUANTUM_ADAPTIVE_MA -> QuantumAdaptiveMA.series(quotes, qamaAdxLength, qamaWeightFactor, qamaMaLength);
+        };
+
+        return directions(quotes.size(), baselineWarmUp(), i -> Double.compare(closes.get(i), values.get(i)));
+    }
+
+    private int baselineWarmUp() {
+        return switch (baseline) {
+            case MCGINLEY -> mcGinleyLength - 1;
+            case WHITE_LINE -> whiteLineLength - 1;
+            case T3 -> t3Length;
+            case QUANTUM_ADAPTIVE_MA -> qamaMaLength - 1;
+        };
+    }
+
+    // Momentum positive and rising out of a squeeze is long, negative and falling short
+    private byte[] ttmSqueezeDirections(List<Quote> quotes) {
+        Column momentum = TTMSqueeze.momentumSeries(quotes, ttmsLength);
+        Column noSqueeze = TTMSqueeze.noSqueezeSeries(quotes, ttmsLength, ttmsBbMult, ttmsKcMult);
+
+        return directions(quotes.size(), ttmSqueezeWarmUp(), i -> {
+            if (ttmsHighlightNoSqueeze && noSqueeze.get(i) == 0) return 0;
+
+            double current = momentum.get(i);
+            double previous = momentum.get(i - 1);
+            int direction = 0;
+            if (current > 0 && (!ttmsUseGreenRedConfirmation || current > previous)) {
+                direction = 1;
+            } else if (current < 0 && (!ttmsUseGreenRedConfirmation || current < previous)) {
+                direction = -1;
+            }
+            return ttmsInverseSignals ? -direction : direction;
+        });
+    }
+
+    // Fast line above the slow one is long, below it short
+    private byte[] tetherLinesDirections(List<Quote> quotes) {
+        Column difference = TetherLines.series(quotes, tetherFastLength, tetherSlowLength);
+
+        return directions(quotes.size(), tetherLinesWarmUp(), i -> (int) Math.signum(difference.get(i)));
+    }
+
+    // Price on the side the wave is heading to, or only on a side of it without color signals
+    private byte[] wavePulseDirections(List<Quote> quotes) {
+        Column closes = Column.close(quotes);
+        Column wave = WavePulseIndicator.series(quotes, wavePulseSmoothingPeriod, wavePulseConstantFactor);
+
+        return directions(quotes.size(), WAVE_PULSE_WARM_UP, i -> {
+            double value = wave.get(i);
+            double close = closes.get(i);
+            boolean rising = value > wave.get(i - 1);
+
+            int direction = 0;
+            if (close > value && (!wavePulseUseColorSignals || rising)) {
+                direction = 1;
+            } else if (close < value && (!wavePulseUseColorSignals || !rising)) {
+                direction = -1;
+            }
+            return wavePulseInverseSignals ? -direction : direction;
+        });
+    }
+
+    // VI+ above VI- by more than the threshold is long, the opposite short
+    private byte[] vortexDirections(List<Quote> quotes) {
+        Column difference = VortexIndicator.series(quotes, vortexLength);
+
+        return directions(quotes.size(), vortexWarmUp(), i -> {
+            double value = difference.get(i);
+            return value > vortexThreshold ? 1 : value < -vortexThreshold ? -1 : 0;
+        });
+    }
+
+    // Each momentum is compared to the previous one
+    private int ttmSqueezeWarmUp() {
+        return ttmsLength + 1;
+    }
+
+    private int tetherLinesWarmUp() {
+        return Math.max(tetherFastLength, tetherSlowLength) - 1;
+    }
+
+    private int vortexWarmUp() {
+        return vortexLength;
+    }
+
+    private static byte[] directions(int size, int warmUp, IntUnaryOperator direction) {
+        byte[] directions = new byte[size];
+        for (int i = Math.max(0, warmUp); i < size; i++) {
+            directions[i] = (byte) Integer.signum(direction.applyAsInt(i));
+        }
+        return directions;
+    }
+
+    @Override
+    public ParameterSchema<?> getParameterSchema() {
+        return PARAMETERS;
+    }
+}
@@ -6,13 +6,15 @@ import ch.xavier.backtester.indicator.misc.EMA;
 import ch.xavier.backtester.indicator.misc.Stochastic;
 import ch.xavier.backtester.quote.Quote;
 import ch.xavier.backtester.strategy.BaseStrategy;
+import ch.xavier.backtester.strategy.ParameterSchema;
+import ch.xavier.backtester.strategy.SignalVector;
+import ch.xavier.backtester.strategy.StrategyState;
 import ch.xavier.backtester.strategy.ExitStrategy;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 
 import java.util.List;
-import java.util.Map;
 
 @Slf4j
 @Getter
@@ -36,126 +38,159 @@ public class PullbackStrategy extends BaseStrategy {
     private double minPriceChangePercent = 0.5; // Minimum aggressive move up requirement
     private boolean onlyLongTrades = true;
 
-    // Indicators
-    private EMA ema20;
-    private EMA ema50;
-    private Stochastic fastStoch; // 9-3 Stochastic
-    private Stochastic fullStoch; // 60-10-1 Stochastic (full)
-
-    // Tracking variables
-    private double currentStopLoss;
-    private double currentTarget;
-    private boolean initialized = false;
-
-    private ExitStrategy exitStrategy;
-    private EMA ema200;
     private int ema200Period = 200;
+    private String trendTimeframe; // Timeframe of the 200 EMA, e.g. "1h", null to use the quotes timeframe
+
+    public static final ParameterSchema<PullbackStrategy> PARAMETERS = ParameterSchema.of(PullbackStrategy.class)
+            .including(BaseStrategy.PARAMETERS)
+            .doubleParameter("stochLowThreshold", (s, v) -> s.stochLowThreshold = v)
+            .doubleParameter("stochHighThreshold", (s, v) -> s.stochHighThreshold = v)
+            .intParameter("lookbackPeriod", (s, v) -> s.lookbackPeriod = v)
+            .doubleParameter("minPriceChangePercent", (s, v) -> s.minPriceChangePercent = v)
+            .booleanParameter("onlyLongTrades", (s, v) -> s.onlyLongTrades = v)
+            .intParameter("ema200Period", (s, v) -> s.ema200Period = v)
+            .parameter("trendTimeframe", String.class, (s, v) -> s.trendTimeframe = v);
+
+    private static class PullbackState extends State {
+        // Indicators
+        private EMA ema20;
+        private EMA ema50;
+        private Stochastic fastStoch; // 9-3 Stochastic
+        private Stochastic fullStoch; // 60-10-1 Stochastic (full)
+
+        // Tracking variables
+        private double currentStopLoss;
+        private double currentTarget;
+        private boolean initialized = false;
+
+        private ExitStrategy exitStrategy;
+        private EMA ema200;
+
+        @Override
+        public void reset() {
+            super.reset();
+            initialized = false;
+            exitStrategy = null;
+        }
+    }
+
+    @Override
+    public StrategyState createState() {
+        return new PullbackState();
+    }
 
     public PullbackStrategy(TradingParameters parameters) {
         super(parameters);
     }
 
+    // Longest EMA or stochastic plus the window pullbacks are searched in
     @Override
-    public void setParameters(Map<String, Object> parameters) {
-        super.setParameters(parameters);
+    public int getWarmUp() {
+        return Math.max(Math.max(ema20Period, ema50Period),
+                Math.max(fastStochK + fastStochD, fullStochK + fullStochD)) + lookbackPeriod;
+    }
 
-        // Strategy specific parameters
-        this.stochLowThreshold = (double) parameters.getOrDefault("stochLowThreshold", 20.0);
-        this.stochHighThreshold = (double) parameters.getOrDefault("stochHighThreshold", 85.0);
-        this.lookbackPeriod = (int) parameters.getOrDefault("lookbackPeriod", 10);
-        this.minPriceChangePercent = (double) parameters.getOrDefault("minPriceChangePercent", 0.5);
-        this.onlyLongTrades = (boolean) parameters.getOrDefault("onlyLongTrades", true);
-        this.ema200Period = (int) parameters.getOrDefault("ema200Period", 200);
+    @Override
+    public boolean hasPathIndependentSignals() {
+        return true;
+    }
 
+    // The exit strategy moves the stop whether trailing stops are used or not
+    @Override
+    public boolean hasFixedExits() {
+        return false;
+    }
 
-        // Create indicator objects
-        try {
-            ema20 = new EMA(ema20Period);
-            ema50 = new EMA(ema50Period);
-            fastStoch = new Stochastic(fastStochK, fastStochD);
-            fullStoch = new Stochastic(fullStochK, fullStochD, fullStochSmooth, true);
+    // The stop loss and target are set by the pattern found while signaling, found again at the entries only
+    @Override
+    public SignalVector generateSignals(List<Quote> quotes, StrategyState state, byte[] entrySignals) {
+        return SignalVector.replay(this, quotes, state, entrySignals);
+    }
 
-            initialized = false; // Will be initialized with quotes later
-        } catch (Exception e) {
-            log.error("Failed to create indicators: {}", e.getMessage());
-        }
+    @Override
+    public ParameterSchema<?> getParameterSchema() {
+        return PARAMETERS;
     }
 
-    public void initialize(List<Quote> quotes) {
+    private void initialize(PullbackState s, List<Quote> quotes) {
         if (quotes == null || quotes.isEmpty()) {
             log.warn("Cannot initialize PullbackStrategy: quotes list is empty");
             return;
         }
 
         try {
+            s.ema20 = new EMA(ema20Period);
+            s.ema50 = new EMA(ema50Period);
+            s.fastStoch = new Stochastic(fastStochK, fastStochD);
+            s.fullStoch = new Stochastic(fullStochK, fullStochD, fullStochSmooth, true);
+
             // Calculate all indicators
-            ema20.calculate(quotes);
-            ema50.calculate(quotes);
-            fastStoch.calculate(quotes);
-            fullStoch.calculate(quotes);
-
-            initialized = true;
-
-            ema200 = new EMA(ema200Period);
-            exitStrategy = ExitStrategy.builder()
-                    .ema200(ema200)
-                    .ema20(ema20)
-                    .ema50(ema50)
-                    .fastStoch(fastStoch)
-                    .fullStoch(fullStoch)
+            s.ema20.calculate(quotes);
+            s.ema50.calculate(quotes);
+            s.fastStoch.calculate(quotes);
+            s.fullStoch.calculate(quotes);
+
+            s.initialized = true;
+
+            s.ema200 = calculateTrendEma(quotes, ema200Period, trendTimeframe);
+            s.exitStrategy = ExitStrategy.builder()
+                    .ema200(s.ema200)
+                    .ema20(s.ema20)
+                    .ema50(s.ema50)
+                    .fastStoch(s.fastStoch)
+                    .fullStoch(s.fullStoch)
                     .build();
-            exitStrategy.initialize(quotes);
+            s.exitStrategy.initialize(quotes);
             log.debug("PullbackStrategy initialized successfully");
         } catch (Exception e) {
             log.error("Error initializing indicators: {}", e.getMessage());
-            initialized = false;
+            s.initialized = false;
         }
     }
 
     @Override
-    public int generateSignal(List<Quote> quotes, int currentIndex) {
-        if (!initialized) {
-            initialize(quotes);
-            if (!initialized) return 0;
+    public int generateSignal(List<Quote> quotes, int currentIndex, StrategyState state) {
+        PullbackState s = (PullbackState) state;
+
+        if (!s.initialized) {
+            initialize(s, quotes);
+            if (!s.initialized) return 0;
         }
 
         // Ensure we have enough data
-        int minDataRequired = Math.max(Math.max(ema20Period, ema50Period),
-                Math.max(fastStochK + fastStochD, fullStochK + fullStochD)) + lookbackPeriod;
-
-        if (currentIndex < minDataRequired) return 0;
+        if (currentIndex < getWarmUp()) return 0;
 
         // Check for valid long entry based on specified conditions
-        if (isValidLongEntry(quotes, currentIndex)) {
+        if (isValidLongEntry(s, quotes, currentIndex)) {
             return 1; // Long signal
         }
 
         return 0; // No signal
     }
 
-    private boolean isValidLongEntry(List<Quote> quotes, int currentIndex) {
-        if (!initialized || currentIndex < lookbackPeriod) return false;
+    private boolean isValidLongEntry(PullbackState s, List<Quote> quotes, int currentIndex) {
+        if (!s.initialized || currentIndex < lookbackPeriod) return false;
 
         Quote currentQuote = quotes.get(currentIndex);
         double currentPrice = currentQuote.getClose();
 
         // 1. Check if market is in uptrend (price above 50 EMA)
-        if (currentPrice <= ema50.getValue(currentIndex)) {
+        if (currentPrice <= s.ema50.getValue(currentIndex)) {
             return false;
         }
 
         // 2. Check if 60-10 Stochastic is above threshold (KEY INDICATOR)
-        if (fullStoch.getD()[currentIndex] < stochHighThreshold) {
+        if (s.fullStoch.getD().get(currentIndex) < stochHighThreshold) {
             return false;
         }
 
         // 3. Check for aggressive move up followed by pullback
-        if (!hasAggressiveMoveUpAndPullback(quotes, currentIndex)) {
+        if (!hasAggressiveMoveUpAndPullback(s, quotes, currentIndex)) {
             return false;
         }
 
         // 4. Check if 9-3 Stochastics are near 20 line
-        if (fastStoch.getD()[currentIndex] > stochLowThreshold + 5) { // Allow small buffer
+        if (s.fastStoch.getD().get(currentIndex) > stochLowThreshold + 5) { // Allow small buffer
             return false;
         }
 
@@ -165,12 +200,12 @@ public class PullbackStrategy extends BaseStrategy {
         }
 
         // Setup stop loss and target prices
-        setupStopLossAndTarget(quotes, currentIndex);
+        setupStopLossAndTarget(s, quotes, currentIndex);
 
         return true;
     }
 
-    private boolean hasAggressiveMoveUpAndPullback(List<Quote> quotes, int currentIndex) {
+    private boolean hasAggressiveMoveUpAndPullback(PullbackState s, List<Quote> quotes, int currentIndex) {
         if (currentIndex < lookbackPeriod) return false;
 
         // Find recent peak (aggressive move up)
@@ -185,8 +220,8 @@ public class PullbackStrategy extends BaseStrategy {
         if (percentMove < minPriceChangePercent) return false;
 
         // Check for pullback to EMA zone
-        double ema20Value = ema20.getValue(currentIndex);
-        double ema50Value = ema50.getValue(currentIndex);
+        double ema20Value = s.ema20.getValue(currentIndex);
+        double ema50Value = s.ema50.getValue(currentIndex);
         double currentLow = quotes.get(currentIndex).getLow();
 
         // Price has pulled back to 20 EMA or 50 EMA zone
@@ -231,16 +266,16 @@ public class PullbackStrategy extends BaseStrategy {
                 currentQuote.getHigh() > previousQuote.getHigh();
     }
 
-    private void setupStopLossAndTarget(List<Quote> quotes, int currentIndex) {
+    private void setupStopLossAndTarget(PullbackState s, List<Quote> quotes, int currentIndex) {
         // Set stop loss below recent swing low or below the 50 EMA
         double swingLow = findRecentSwingLow(quotes, currentIndex);
-        double ema50Value = ema50.getValue(currentIndex);
-        currentStopLoss = Math.min(swingLow, ema50Value) * 0.99; // 1% buffer
+        double ema50Value = s.ema50.getValue(currentIndex);
+        s.currentStopLoss = Math.min(swingLow, ema50Value) * 0.99; // 1% buffer
 
         // Set target based on risk/reward ratio
         double entryPrice = quotes.get(currentIndex).getClose();
-        double risk = entryPrice - currentStopLoss;
-        currentTarget = entryPrice + (risk * riskRewardRatio);
+        double risk = entryPrice - s.currentStopLoss;
+        s.currentTarget = entryPrice + (risk * riskRewardRatio);
     }
 
     private double findRecentSwingLow(List<Quote> quotes, int currentIndex) {
@@ -274,39 +309,45 @@ public class PullbackStrategy extends BaseStrategy {
 
     // Override methods from BaseStrategy with proper strategy-specific implementations
     @Override
-    public double calculateStopLossPrice(boolean isLong, List<Quote> quotes, int index) {
-        return currentStopLoss;
+    public double calculateStopLossPrice(boolean isLong, List<Quote> quotes, int index, StrategyState state) {
+        PullbackState s = (PullbackState) state;
+
+        return s.currentStopLoss;
     }
 
     @Override
-    public double calculateTakeProfitPrice(boolean isLong, List<Quote> quotes, int index) {
-        return currentTarget;
+    public double calculateTakeProfitPrice(boolean isLong, List<Quote> quotes, int index, StrategyState state) {
+        PullbackState s = (PullbackState) state;
+
+        return s.currentTarget;
     }
 
     @Override
-    public double updateStopLoss(Position position, List<Quote> quotes, int index) {
-        if (!initialized || index < 0 || index >= quotes.size()) {
+    public double updateStopLoss(Position position, List<Quote> quotes, int index, StrategyState state) {
+        PullbackState s = (PullbackState) state;
+
+        if (!s.initialized || index < 0 || index >= quotes.size()) {
             return position.getCurrentStopLossPrice();
         }
 
         // Check if we should take partial profits
-        if (exitStrategy.shouldTakePartialProfit(position, quotes, index)) {
+        if (s.exitStrategy.shouldTakePartialProfit(position, quotes, index)) {
             // Logic to handle partial profit taking would go here
             // This would require extending your backtester to support partial closes
             log.debug("Taking partial profit at index {}", index);
-            exitStrategy.setPartialProfitTaken(true);
+            s.exitStrategy.setPartialProfitTaken(true);
         }
 
         // Check if we should exit the position
-        if (exitStrategy.shouldExitPosition(position, quotes, index)) {
+        if (s.exitStrategy.shouldExitPosition(position, quotes, index)) {
             // Force exit by returning very tight stop
             return position.isLong() ? quotes.get(index).getClose() * 0.999 :
                     quotes.get(index).getClose() * 1.001;
         }
 
         // Use exit strategy to update stop loss
-        double atr = calculateATR(quotes, index, atrLength);
-        return exitStrategy.updateStopLoss(position, quotes, index, atr,
+        double atr = calculateATR(quotes, index, atrLength, s);
+        return s.exitStrategy.updateStopLoss(position, quotes, index, atr,
                 position.getCurrentStopLossPrice());
     }
 }
\ No newline at end of file
@@ -3,11 +3,14 @@ package ch.xavier.backtester.strategy.concrete;
 import ch.xavier.backtester.backtesting.TradingParameters;
 import ch.xavier.backtester.quote.Quote;
 import ch.xavier.backtester.strategy.BaseStrategy;
+import ch.xavier.backtester.strategy.ParameterSchema;
+import ch.xavier.backtester.strategy.SignalVector;
+import ch.xavier.backtester.strategy.StrategyState;
 import lombok.Getter;
 import lombok.Setter;
 
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 
 @Getter
 @Setter
@@ -15,13 +18,18 @@ public class SMACrossoverStrategy extends BaseStrategy {
     private int fastPeriod;
     private int slowPeriod;
 
+    public static final ParameterSchema<SMACrossoverStrategy> PARAMETERS = ParameterSchema.of(SMACrossoverStrategy.class)
+            .including(BaseStrategy.PARAMETERS)
+            .intParameter("fastPeriod", (s, v) -> s.fastPeriod = v)
+            .intParameter("slowPeriod", (s, v) -> s.slowPeriod = v);
+
     public SMACrossoverStrategy(TradingParameters tradingParameters) {
         super(tradingParameters);
     }
 
     @Override
-    public int generateSignal(List<Quote> quotes, int index) {
-        if (index < slowPeriod) return 0; // Not enough data
+    public int generateSignal(List<Quote> quotes, int index, StrategyState state) {
+        if (index < getWarmUp()) return 0; // Not enough data
 
         double fastSMA = calculateSMA(quotes, index, fastPeriod);
         double slowSMA = calculateSMA(quotes, index, slowPeriod);
@@ -40,6 +48,59 @@ public class SMACrossoverStrategy extends BaseStrategy {
         return 0; // No signal
     }
 
+    @Override
+    public SignalVector generateSignals(List<Quote> quotes, StrategyState state) {
+        SignalVector vector = new SignalVector(quotes.size());
+        double[] closes = quotes.stream().mapToDouble(Quote::getClose).toArray();
+        double[] fastSMAs = calculateSMAs(closes, fastPeriod);
+        double[] slowSMAs = calculateSMAs(closes, slowPeriod);
+
+        for (int i = Math.max(1, getWarmUp()); i < closes.length; i++) {
+            int signal = 0;
+            if (fastSMAs[i - 1] <= slowSMAs[i - 1] && fastSMAs[i] > slowSMAs[i]) {
+                signal = 1;
+            } else if (fastSMAs[i - 1] >= slowSMAs[i - 1] && fastSMAs[i] < slowSMAs[i]) {
+                signal = -1;
+            }
+
+            if (signal != 0) {
+                vector.set(i, signal, calculateStopLossPrice(signal > 0, quotes, i, state),
+                        calculateTakeProfitPrice(signal > 0, quotes, i, state));
+            }
+        }
+
+        return vector;
+    }
+
+    @Override
+    public int getWarmUp() {
+        return slowPeriod;
+    }
+
+    @Override
+    public boolean hasPathIndependentSignals() {
+        return true;
+    }
+
+    // Same summation order as calculateSMA so both paths give identical crossovers
+    private double[] calculateSMAs(double[] closes, int period) {
+        double[] smas = new double[closes.length];
+        if (period <= 0) {
+            // No average over no closes, as calculateSMA's 0 / 0: never crosses
+            Arrays.fill(smas, Double.NaN);
+            return smas;
+        }
+
+        for (int index = period - 1; index < closes.length; index++) {
+            double sum = 0;
+            for (int i = 0; i < period; i++) {
+                sum += closes[index - i];
+            }
+            smas[index] = sum / period;
+        }
+        return smas;
+    }
+
     private double calculateSMA(List<Quote> quotes, int index, int period) {
         if (index < period - 1) return 0;
 
@@ -52,14 +113,7 @@ public class SMACrossoverStrategy extends BaseStrategy {
     }
 
     @Override
-    public void setParameters(Map<String, Object> parameters) {
-        super.setParameters(parameters);
-
-        if (parameters.containsKey("fastPeriod")) {
-            this.fastPeriod = (int) parameters.get("fastPeriod");
-        }
-        if (parameters.containsKey("slowPeriod")) {
-            this.slowPeriod = (int) parameters.get("slowPeriod");
-        }
+    public ParameterSchema<?> getParameterSchema() {
+        return PARAMETERS;
     }
 }
\ No newline at end of file
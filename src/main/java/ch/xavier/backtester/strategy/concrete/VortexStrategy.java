@@ -8,11 +8,12 @@ import ch.xavier.backtester.indicator.confirmation.TetherLines;
 import ch.xavier.backtester.indicator.volatility.VortexIndicator;
 import ch.xavier.backtester.quote.Quote;
 import ch.xavier.backtester.strategy.BaseStrategy;
+import ch.xavier.backtester.strategy.ParameterSchema;
+import ch.xavier.backtester.strategy.StrategyState;
 import lombok.Getter;
 import lombok.Setter;
 
 import java.util.List;
-import java.util.Map;
 
 @Getter
 @Setter
@@ -23,6 +24,22 @@ public class VortexStrategy extends BaseStrategy {
     private TetherLines tetherLinesIndicator = new TetherLines();
     private VortexIndicator vortexIndicator = new VortexIndicator();
 
+    public static final ParameterSchema<VortexStrategy> PARAMETERS = ParameterSchema.of(VortexStrategy.class)
+            .including(BaseStrategy.PARAMETERS)
+            .intParameter("mcGinleyLength", (s, v) -> s.macGinleyIndicator.setLength(v))
+            .intParameter("whiteLineLength", (s, v) -> s.whiteLineIndicator.setLength(v))
+            .intParameter("ttmsLength", (s, v) -> s.ttmSqueezeIndicator.setLength(v))
+            .doubleParameter("ttmsBbMult", (s, v) -> s.ttmSqueezeIndicator.setBbMult(v))
+            .doubleParameter("ttmsKcMult", (s, v) -> s.ttmSqueezeIndicator.setKcMult(v))
+            .booleanParameter("ttmsUseGreenRedConfirmation", (s, v) -> s.ttmSqueezeIndicator.setUseGreenRedConfirmation(v))
+            .booleanParameter("ttmsRequireCrossing", (s, v) -> s.ttmSqueezeIndicator.setRequireCrossing(v))
+            .booleanParameter("ttmsHighlightNoSqueeze", (s, v) -> s.ttmSqueezeIndicator.setHighlightNoSqueeze(v))
+            .booleanParameter("ttmsInverseSignals", (s, v) -> s.ttmSqueezeIndicator.setInverseSignals(v))
+            .intParameter("tetherFastLength", (s, v) -> s.tetherLinesIndicator.setFastLength(v))
+            .intParameter("tetherSlowLength", (s, v) -> s.tetherLinesIndicator.setSlowLength(v))
+            .intParameter("vortexLength", (s, v) -> s.vortexIndicator.setLength(v))
+            .doubleParameter("vortexThreshold", (s, v) -> s.vortexIndicator.setThreshold(v));
+
     public VortexStrategy(TradingParameters tradingParameters) {
         super(tradingParameters);
 
@@ -45,8 +62,8 @@ public class VortexStrategy extends BaseStrategy {
     }
 
     @Override
-    public int generateSignal(List<Quote> quotes, int index) {
-        if (index <= 0) return 0;
+    public int generateSignal(List<Quote> quotes, int index, StrategyState state) {
+        if (index < getWarmUp()) return 0;
 
         // Calculate baseline signals
         double mcGinleyValue = macGinleyIndicator.calculate(index, quotes);
@@ -88,55 +105,17 @@ public class VortexStrategy extends BaseStrategy {
     }
 
     @Override
-    public void setParameters(Map<String, Object> parameters) {
-        super.setParameters(parameters);
-        // McGinley parameters
-        if (parameters.containsKey("mcGinleyLength")) {
-            macGinleyIndicator.setLength((int) parameters.get("mcGinleyLength"));
-        }
-
-        // White Line parameters
-        if (parameters.containsKey("whiteLineLength")) {
-            whiteLineIndicator.setLength((int) parameters.get("whiteLineLength"));
-        }
-
-        // TTM Squeeze parameters
-        if (parameters.containsKey("ttmsLength")) {
-            ttmSqueezeIndicator.setLength((int) parameters.get("ttmsLength"));
-        }
-        if (parameters.containsKey("ttmsBbMult")) {
-            ttmSqueezeIndicator.setBbMult((double) parameters.get("ttmsBbMult"));
-        }
-        if (parameters.containsKey("ttmsKcMult")) {
-            ttmSqueezeIndicator.setKcMult((double) parameters.get("ttmsKcMult"));
-        }
-        if (parameters.containsKey("ttmsUseGreenRedConfirmation")) {
-            ttmSqueezeIndicator.setUseGreenRedConfirmation((boolean) parameters.get("ttmsUseGreenRedConfirmation"));
-        }
-        if (parameters.containsKey("ttmsRequireCrossing")) {
-            ttmSqueezeIndicator.setRequireCrossing((boolean) parameters.get("ttmsRequireCrossing"));
-        }
-        if (parameters.containsKey("ttmsHighlightNoSqueeze")) {
-            ttmSqueezeIndicator.setHighlightNoSqueeze((boolean) parameters.get("ttmsHighlightNoSqueeze"));
-        }
-        if (parameters.containsKey("ttmsInverseSignals")) {
-            ttmSqueezeIndicator.setInverseSignals((boolean) parameters.get("ttmsInverseSignals"));
-        }
+    public int getWarmUp() {
+        return 1;
+    }
 
-        // Tether Lines parameters
-        if (parameters.containsKey("tetherFastLength")) {
-            tetherLinesIndicator.setFastLength((int) parameters.get("tetherFastLength"));
-        }
-        if (parameters.containsKey("tetherSlowLength")) {
-            tetherLinesIndicator.setSlowLength((int) parameters.get("tetherSlowLength"));
-        }
+    @Override
+    public boolean hasPathIndependentSignals() {
+        return true;
+    }
 
-        // Vortex parameters
-        if (parameters.containsKey("vortexLength")) {
-            vortexIndicator.setLength((int) parameters.get("vortexLength"));
-        }
-        if (parameters.containsKey("vortexThreshold")) {
-            vortexIndicator.setThreshold((double) parameters.get("vortexThreshold"));
-        }
+    @Override
+    public ParameterSchema<?> getParameterSchema() {
+        return PARAMETERS;
     }
 }
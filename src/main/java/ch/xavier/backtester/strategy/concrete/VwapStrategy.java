@@ -2,75 +2,137 @@ package ch.xavier.backtester.strategy.concrete;
 
 import ch.xavier.backtester.backtesting.TradingParameters;
 import ch.xavier.backtester.indicator.misc.VWAP;
+import ch.xavier.backtester.indicator.series.IndicatorCache;
 import ch.xavier.backtester.quote.Quote;
 import ch.xavier.backtester.strategy.BaseStrategy;
+import ch.xavier.backtester.strategy.ParameterSchema;
+import ch.xavier.backtester.strategy.SignalVector;
+import ch.xavier.backtester.strategy.StrategyState;
+import ch.xavier.backtester.strategy.rule.Condition;
+import ch.xavier.backtester.strategy.rule.RuleKernel;
+import ch.xavier.backtester.strategy.rule.RuleSet;
+import ch.xavier.backtester.strategy.rule.Value;
 import lombok.extern.slf4j.Slf4j;
 
 import java.util.List;
-import java.util.Map;
 
 @Slf4j
 public class VwapStrategy extends BaseStrategy {
-    private VWAP vwap;
-    private boolean initialized = false;
-
     // Strategy parameters
     private int lookbackPeriod = 3;
     private double distanceThreshold = 0.002; // 0.2% minimum distance from VWAP
 
+    // Columns the entry rules read
+    private static final String CLOSE = "close";
+    private static final String VWAP_COLUMN = "vwap";
+
+    public static final ParameterSchema<VwapStrategy> PARAMETERS = ParameterSchema.of(VwapStrategy.class)
+            .including(BaseStrategy.PARAMETERS)
+            .intParameter("lookbackPeriod", (s, v) -> s.lookbackPeriod = v)
+            .doubleParameter("distanceThreshold", (s, v) -> s.distanceThreshold = v);
+
+    private static class VwapState extends State {
+        private VWAP vwap = new VWAP();
+        private boolean initialized = false;
+        private RuleKernel rules;
+        private double[][] columns;
+
+        @Override
+        public void reset() {
+            super.reset();
+            vwap = new VWAP();
+            initialized = false;
+            rules = null;
+            columns = null;
+        }
+    }
+
+    @Override
+    public StrategyState createState() {
+        return new VwapState();
+    }
+
     public VwapStrategy(TradingParameters parameters) {
         super(parameters);
-        vwap = new VWAP();
+    }
+
+    /**
+     * Price crossing the VWAP with a minimum distance from it, above for longs and below for shorts
+     */
+    private RuleSet rules() {
+        Value close = Value.column(CLOSE);
+        Value vwap = Value.column(VWAP_COLUMN);
+
+        // Price relative to VWAP
+        Condition farEnough = close.minus(vwap).dividedBy(vwap).abs().greaterThan(distanceThreshold);
+
+        Condition crossedAbove = close.previous(1).lessThan(vwap.previous(1)).and(close.greaterThan(vwap));
+        Condition crossedBelow = close.previous(1).greaterThan(vwap.previous(1)).and(close.lessThan(vwap));
+
+        return RuleSet.of(crossedAbove.and(farEnough), crossedBelow.and(farEnough));
     }
 
     @Override
-    public int generateSignal(List<Quote> quotes, int index) {
-        if (!initialized && quotes != null && !quotes.isEmpty()) {
-            vwap.calculate(quotes);
-            initialized = true;
+    public int generateSignal(List<Quote> quotes, int index, StrategyState state) {
+        VwapState s = (VwapState) state;
+
+        if (!s.initialized && quotes != null && !quotes.isEmpty()) {
+            initialize(s, quotes);
         }
 
-        if (!initialized || index < lookbackPeriod || index >= quotes.size()) {
+        if (!s.initialized || index < getWarmUp() || index >= quotes.size()) {
             return 0;
         }
 
-        Quote currentQuote = quotes.get(index);
-        Quote previousQuote = quotes.get(index - 1);
-        double currentVwap = vwap.getValues()[index];
-        double previousVwap = vwap.getValues()[index - 1];
-
-        // Calculate price relative to VWAP
-        double currentPriceDistance = (currentQuote.getClose() - currentVwap) / currentVwap;
+        return s.rules.signal(s.columns, index);
+    }
 
-        // Check for VWAP crossovers
-        boolean crossedAbove = previousQuote.getClose() < previousVwap &&
-                currentQuote.getClose() > currentVwap;
+    @Override
+    public SignalVector generateSignals(List<Quote> quotes, StrategyState state) {
+        VwapState s = (VwapState) state;
+        SignalVector vector = new SignalVector(quotes.size());
+        if (quotes.isEmpty()) return vector;
+
+        initialize(s, quotes);
+
+        byte[] signals = new byte[quotes.size()];
+        s.rules.evaluate(s.columns, Math.min(getWarmUp(), quotes.size()), quotes.size(), signals);
+
+        for (int i = 1; i < signals.length; i++) {
+            if (signals[i] != 0) {
+                boolean isLong = signals[i] > 0;
+                vector.set(i, signals[i], calculateStopLossPrice(isLong, quotes, i, state),
+                        calculateTakeProfitPrice(isLong, quotes, i, state));
+            }
+        }
 
-        boolean crossedBelow = previousQuote.getClose() > previousVwap &&
-                currentQuote.getClose() < currentVwap;
+        return vector;
+    }
 
-        // Long signal: price crosses above VWAP with minimum distance
-        if (crossedAbove && Math.abs(currentPriceDistance) > distanceThreshold) {
-            return 1;
-        }
+    private void initialize(VwapState s, List<Quote> quotes) {
+        s.vwap.calculate(quotes);
 
-        // Short signal: price crosses below VWAP with minimum distance (if shorts enabled)
-        if (crossedBelow && Math.abs(currentPriceDistance) > distanceThreshold) {
-            return -1;
-        }
+        RuleSet rules = rules();
+        double[] closes = IndicatorCache.get(quotes, "closes", q -> q.stream().mapToDouble(Quote::getClose).toArray());
+        s.columns = rules.columns().stream()
+                .map(name -> name.equals(CLOSE) ? closes : s.vwap.getValues())
+                .toArray(double[][]::new);
+        s.rules = rules.compile();
+        s.initialized = true;
+    }
 
-        return 0;
+    @Override
+    public int getWarmUp() {
+        return Math.max(1, lookbackPeriod);
     }
 
     @Override
-    public void setParameters(Map<String, Object> parameters) {
-        super.setParameters(parameters);
+    public boolean hasPathIndependentSignals() {
+        return true;
+    }
 
-        if (parameters.containsKey("lookbackPeriod")) {
-            this.lookbackPeriod = (int) parameters.get("lookbackPeriod");
-        }
-        if (parameters.containsKey("distanceThreshold")) {
-            this.distanceThreshold = (double) parameters.get("distanceThreshold");
-        }
+    @Override
+    public ParameterSchema<?> getParameterSchema() {
+        return PARAMETERS;
     }
 }
\ No newline at end of file
@@ -1,15 +1,19 @@
 package ch.xavier.backtester.strategy.concrete;
 
 import ch.xavier.backtester.backtesting.TradingParameters;
+import ch.xavier.backtester.indicator.misc.HurstExponent;
+import ch.xavier.backtester.indicator.misc.RobustZScore;
+import ch.xavier.backtester.indicator.series.Column;
 import ch.xavier.backtester.quote.Quote;
 import ch.xavier.backtester.strategy.BaseStrategy;
+import ch.xavier.backtester.strategy.ParameterSchema;
+import ch.xavier.backtester.strategy.StrategyState;
 import lombok.Getter;
 import lombok.Setter;
 
 import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.util.List;
-import java.util.Map;
 
 @Getter
 @Setter
@@ -18,6 +22,7 @@ public class ZScoreStrategy extends BaseStrategy {
     private int maLength = 100;
     private int atrPeriod = 100;
     private double stdDevPercent = 0.3;
+    private boolean useRobustZScore = false; // Median and MAD over maLength instead of the SMA and stdDevPercent
 
     // Entry settings
     private double entryThreshold = 1.5;
@@ -26,6 +31,11 @@ public class ZScoreStrategy extends BaseStrategy {
     private int maxInventory = 1;
     private boolean shortAllowed = true;
 
+    // Regime filter, only enter when prices mean revert
+    private boolean useHurstFilter = false;
+    private int hurstLength = 256;
+    private double maxHurst = 0.5;
+
     // Session settings
     private boolean useTimeFilter = true;
     private String sessionType = "Regular";
@@ -34,82 +44,104 @@ public class ZScoreStrategy extends BaseStrategy {
     private LocalTime extendedSessionStart = LocalTime.of(4, 0);
     private LocalTime extendedSessionEnd = LocalTime.of(20, 0);
 
-    // Strategy state variables
-    private double lastEntry = 0.0;
-    private double zscoreReentry = 0.0;
-    private int inventory = 0;
+    public static final ParameterSchema<ZScoreStrategy> PARAMETERS = ParameterSchema.of(ZScoreStrategy.class)
+            .including(BaseStrategy.PARAMETERS)
+            .intParameter("maLength", (s, v) -> s.maLength = v)
+            .intParameter("atrPeriod", (s, v) -> s.atrPeriod = v)
+            .doubleParameter("stdDevPercent", (s, v) -> s.stdDevPercent = v)
+            .booleanParameter("useRobustZScore", (s, v) -> s.useRobustZScore = v)
+            .doubleParameter("entryThreshold", (s, v) -> s.entryThreshold = v)
+            .doubleParameter("exitThreshold", (s, v) -> s.exitThreshold = v)
+            .doubleParameter("reentryThreshold", (s, v) -> s.reentryThreshold = v)
+            .intParameter("maxInventory", (s, v) -> s.maxInventory = v)
+            .booleanParameter("shortAllowed", (s, v) -> s.shortAllowed = v)
+            .booleanParameter("useHurstFilter", (s, v) -> s.useHurstFilter = v)
+            .intParameter("hurstLength", (s, v) -> s.hurstLength = v)
+            .doubleParameter("maxHurst", (s, v) -> s.maxHurst = v)
+            .booleanParameter("useTimeFilter", (s, v) -> s.useTimeFilter = v);
+
+    private static class ZScoreState extends State {
+        private double lastEntry = 0.0;
+        private double zscoreReentry = 0.0;
+        private int inventory = 0;
+        private double stdDev; // Standard deviation of the last z-score measured
+
+        // Robust z-score and Hurst series of the quotes currently backtested
+        private List<Quote> robustQuotes;
+        private Column robustZScores;
+        private Column robustStdDevs;
+        private List<Quote> hurstQuotes;
+        private Column hurstSeries;
+
+        @Override
+        public void reset() {
+            super.reset();
+            lastEntry = 0.0;
+            zscoreReentry = 0.0;
+            inventory = 0;
+            robustQuotes = null;
+            hurstQuotes = null;
+        }
+    }
+
+    @Override
+    public StrategyState createState() {
+        return new ZScoreState();
+    }
 
     public ZScoreStrategy(TradingParameters tradingParameters) {
         super(tradingParameters);
     }
 
     @Override
-    public int generateSignal(List<Quote> quotes, int index) {
-        if (index < maLength) return 0; // Not enough data
-
-        // Calculate SMA
-        double sum = 0;
-        for (int i = index - maLength + 1; i <= index; i++) {
-            sum += quotes.get(i).getClose();
-        }
-        double sma = sum / maLength;
+    public int generateSignal(List<Quote> quotes, int index, StrategyState state) {
+        ZScoreState s = (ZScoreState) state;
 
-        // Calculate Standard Deviation
-        double stdDev = (stdDevPercent * sma / 100);
+        if (index < getWarmUp()) return 0; // Not enough data
 
-        // Calculate Z-Score
         double currentClose = quotes.get(index).getClose();
-        double zScore = (currentClose - sma) / stdDev;
+        double zScore = zScore(quotes, index, s);
+        double stdDev = s.stdDev;
+        if (stdDev == 0) return 0; // Flat window, no dispersion to measure
 
         // Check if current time is within trading session
-        boolean canTrade = !useTimeFilter || isWithinSession(quotes.get(index).getTimestamp().toLocalDateTime());
+        boolean canTrade = canTrade(quotes, index);
 
-        // Generate trading signals
-        if (inventory > 0) {
+        // Generate trading signals, the positions were closed once back beyond the exit threshold, see shouldExit
+        if (s.inventory > 0) {
             // Update reentry z-score for long position
-            zscoreReentry = (currentClose - lastEntry) / stdDev;
-
-            // Check for exit condition
-            if (zScore > exitThreshold && canTrade) {
-                inventory = 0;
-                return 0; // Exit long position
-            }
+            s.zscoreReentry = (currentClose - s.lastEntry) / stdDev;
 
             // Check for re-entry condition
-            if (zscoreReentry < -reentryThreshold && inventory < maxInventory && canTrade) {
-                inventory++;
-                lastEntry = currentClose;
+            if (s.zscoreReentry < -reentryThreshold && s.inventory < maxInventory && canTrade) {
+                s.inventory++;
+                s.lastEntry = currentClose;
                 return 1; // Add to long position
             }
-        } else if (inventory < 0) {
+        } else if (s.inventory < 0) {
             // Update reentry z-score for short position
-            zscoreReentry = (lastEntry - currentClose) / stdDev;
-
-            // Check for exit condition
-            if (zScore < -exitThreshold && canTrade) {
-                inventory = 0;
-                return 0; // Exit short position
-            }
+            s.zscoreReentry = (s.lastEntry - currentClose) / stdDev;
 
             // Check for re-entry condition
-            if (zscoreReentry < -reentryThreshold && inventory > -maxInventory && canTrade) {
-                inventory--;
-                lastEntry = currentClose;
+            if (s.zscoreReentry < -reentryThreshold && s.inventory > -maxInventory && canTrade) {
+                s.inventory--;
+                s.lastEntry = currentClose;
                 return -1; // Add to short position
             }
         } else {
             // No position, check for new entry
-            zscoreReentry = 0;
+            s.zscoreReentry = 0;
+            canTrade = canTrade && isMeanReverting(s, quotes, index);
 
             if (zScore < -entryThreshold && canTrade) {
-                inventory = 1;
-                lastEntry = currentClose;
+                s.inventory = 1;
+                s.lastEntry = currentClose;
                 return 1; // Enter long position
             }
 
             if (zScore > entryThreshold && shortAllowed && canTrade) {
-                inventory = -1;
-                lastEntry = currentClose;
+                s.inventory = -1;
+                s.lastEntry = currentClose;
                 return -1; // Enter short position
             }
         }
@@ -117,23 +149,61 @@ public class ZScoreStrategy extends BaseStrategy {
         return 0; // No signal
     }
 
+    // Back beyond the exit threshold on the other side of the mean, every position of the inventory exits
     @Override
-    protected double calculateATR(List<Quote> quotes, int index, int period) {
-        if (index < period) return 0;
+    public boolean shouldExit(List<Quote> quotes, int index, StrategyState state) {
+        ZScoreState s = (ZScoreState) state;
+        if (s.inventory == 0 || index < getWarmUp() || !canTrade(quotes, index)) return false;
 
-        double sum = 0;
-        for (int i = index - period + 1; i <= index; i++) {
-            Quote current = quotes.get(i);
-            Quote previous = quotes.get(i - 1);
+        double zScore = zScore(quotes, index, s);
+        if (s.stdDev == 0) return false;
+
+        if (zScore > exitThreshold && s.inventory > 0 || zScore < -exitThreshold && s.inventory < 0) {
+            s.inventory = 0;
+            return true;
+        }
+        return false;
+    }
 
-            double highLow = current.getHigh() - current.getLow();
-            double highClosePrev = Math.abs(current.getHigh() - previous.getClose());
-            double lowClosePrev = Math.abs(current.getLow() - previous.getClose());
+    // Z-score of the bar's close, leaving the standard deviation it is measured in in the state
+    private double zScore(List<Quote> quotes, int index, ZScoreState s) {
+        if (useRobustZScore) {
+            if (s.robustQuotes != quotes) {
+                s.robustZScores = RobustZScore.series(quotes, maLength);
+                s.robustStdDevs = RobustZScore.standardDeviation(quotes, maLength);
+                s.robustQuotes = quotes;
+            }
 
-            sum += Math.max(highLow, Math.max(highClosePrev, lowClosePrev));
+            s.stdDev = s.robustStdDevs.get(index);
+            return s.robustZScores.get(index);
         }
 
-        return sum / period;
+        // Calculate SMA
+        double sum = 0;
+        for (int i = index - maLength + 1; i <= index; i++) {
+            sum += quotes.get(i).getClose();
+        }
+        double sma = sum / maLength;
+
+        // Calculate Standard Deviation
+        s.stdDev = (stdDevPercent * sma / 100);
+
+        // Calculate Z-Score
+        return (quotes.get(index).getClose() - sma) / s.stdDev;
+    }
+
+    private boolean canTrade(List<Quote> quotes, int index) {
+        return !useTimeFilter || isWithinSession(quotes.get(index).getTimestamp().toLocalDateTime());
+    }
+
+    private boolean isMeanReverting(ZScoreState s, List<Quote> quotes, int index) {
+        if (!useHurstFilter) return true;
+
+        if (s.hurstQuotes != quotes) {
+            s.hurstSeries = HurstExponent.series(quotes, hurstLength);
+            s.hurstQuotes = quotes;
+        }
+        return index >= hurstLength && s.hurstSeries.get(index) < maxHurst;
     }
 
     private boolean isWithinSession(LocalDateTime timestamp) {
@@ -154,40 +224,24 @@ public class ZScoreStrategy extends BaseStrategy {
     }
 
     @Override
-    public void setParameters(Map<String, Object> parameters) {
-        super.setParameters(parameters);
+    public int getWarmUp() {
+        return maLength;
+    }
 
-        // Indicator settings
-        if (parameters.containsKey("maLength")) {
-            maLength = (int) parameters.get("maLength");
-        }
-        if (parameters.containsKey("atrPeriod")) {
-            atrPeriod = (int) parameters.get("atrPeriod");
-        }
-        if (parameters.containsKey("stdDevPercent")) {
-            stdDevPercent = (double) parameters.get("stdDevPercent");
-        }
+    // Every re-entry is a position of its own
+    @Override
+    public int getMaxOpenPositions() {
+        return Math.max(1, maxInventory);
+    }
 
-        // Entry settings
-        if (parameters.containsKey("entryThreshold")) {
-            entryThreshold = (double) parameters.get("entryThreshold");
-        }
-        if (parameters.containsKey("exitThreshold")) {
-            exitThreshold = (double) parameters.get("exitThreshold");
-        }
-        if (parameters.containsKey("reentryThreshold")) {
-            reentryThreshold = (double) parameters.get("reentryThreshold");
-        }
-        if (parameters.containsKey("maxInventory")) {
-            maxInventory = (int) parameters.get("maxInventory");
-        }
-        if (parameters.containsKey("shortAllowed")) {
-            shortAllowed = (boolean) parameters.get("shortAllowed");
-        }
+    // The inventory is the run's, positions closing at their stop or target included
+    @Override
+    public void syncOpenPositions(int openPositions, StrategyState state) {
+        ((ZScoreState) state).inventory = openPositions;
+    }
 
-        // Session settings
-        if (parameters.containsKey("useTimeFilter")) {
-            useTimeFilter = (boolean) parameters.get("useTimeFilter");
-        }
+    @Override
+    public ParameterSchema<?> getParameterSchema() {
+        return PARAMETERS;
     }
 }
\ No newline at end of file
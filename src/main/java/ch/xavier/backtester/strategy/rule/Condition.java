@@ -0,0 +1,47 @@
+package ch.xavier.backtester.strategy.rule;
+
+/**
+ * Boolean expression of a bar, comparisons of {@link Value}s combined with the usual operators.
+ * Comparisons follow Java's semantics, any comparison with NaN is false.
+ */
+public sealed interface Condition {
+
+    static Condition always() {
+        return new Literal(true);
+    }
+
+    static Condition never() {
+        return new Literal(false);
+    }
+
+    default Condition and(Condition other) {
+        return new And(this, other);
+    }
+
+    default Condition or(Condition other) {
+        return new Or(this, other);
+    }
+
+    default Condition not() {
+        return new Not(this);
+    }
+
+    enum Comparator {
+        GREATER, GREATER_OR_EQUAL, LESS, LESS_OR_EQUAL
+    }
+
+    record Comparison(Comparator comparator, Value left, Value right) implements Condition {
+    }
+
+    record And(Condition left, Condition right) implements Condition {
+    }
+
+    record Or(Condition left, Condition right) implements Condition {
+    }
+
+    record Not(Condition operand) implements Condition {
+    }
+
+    record Literal(boolean value) implements Condition {
+    }
+}
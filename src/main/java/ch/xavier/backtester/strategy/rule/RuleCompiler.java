@@ -0,0 +1,281 @@
+package ch.xavier.backtester.strategy.rule;
+
+import org.springframework.asm.ClassWriter;
+import org.springframework.asm.Label;
+import org.springframework.asm.MethodVisitor;
+import org.springframework.asm.Opcodes;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.lang.invoke.MethodType;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Generates a hidden class implementing {@link RuleKernel} for a rule set, with the column slots, the bar offsets and
+ * the parameters inlined as constants. Each class only ever sees one rule set, so the JIT compiles its loop
+ * without any virtual call left in it.
+ * <p>
+ * Kernels are cached per rule set: every combination of a grid sharing the same entry parameters reuses the same
+ * class and the code the JIT already compiled for it. The cache only holds them weakly, as long as a run still uses
+ * them, so the hidden classes of past runs can be unloaded instead of piling up with every parameter ever tried.
+ */
+final class RuleCompiler {
+    private static final String KERNEL_NAME = "ch/xavier/backtester/strategy/rule/CompiledRuleKernel";
+    private static final String KERNEL_INTERFACE = "ch/xavier/backtester/strategy/rule/RuleKernel";
+    private static final String SIGNAL_DESCRIPTOR = "([[DI)I";
+    private static final String EVALUATE_DESCRIPTOR = "([[DII[B)V";
+
+    // Locals of the generated signal method
+    private static final int COLUMNS = 1;
+    private static final int INDEX = 2;
+
+    private static final Map<RuleSet, KernelReference> KERNELS = new ConcurrentHashMap<>();
+    private static final ReferenceQueue<RuleKernel> COLLECTED = new ReferenceQueue<>();
+
+    private RuleCompiler() {
+    }
+
+    static RuleKernel compile(RuleSet rules) {
+        expungeCollected();
+
+        while (true) {
+            KernelReference reference = KERNELS.computeIfAbsent(rules, r -> new KernelReference(r, define(r)));
+            RuleKernel kernel = reference.get();
+            if (kernel != null) return kernel;
+
+            // Collected before anyone picked it up again, compile it anew
+            KERNELS.remove(rules, reference);
+        }
+    }
+
+    private static void expungeCollected() {
+        Reference<? extends RuleKernel> collected;
+        while ((collected = COLLECTED.poll()) != null) {
+            KernelReference reference = (KernelReference) collected;
+            KERNELS.remove(reference.rules, reference);
+        }
+    }
+
+    private static RuleKernel define(RuleSet rules) {
+        byte[] bytes = generate(rules);
+        try {
+            MethodHandles.Lookup kernelLookup = MethodHandles.lookup().defineHiddenClass(bytes, true);
+            return (RuleKernel) kernelLookup.findConstructor(kernelLookup.lookupClass(), MethodType.methodType(void.class))
+                    .invoke();
+        } catch (Throwable e) {
+            throw new IllegalStateException("Could not compile the rules " + rules, e);
+        }
+    }
+
+    private static byte[] generate(RuleSet rules) {
+        List<String> columns = rules.columns();
+
+        ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS);
+        writer.visit(Opcodes.V17, Opcodes.ACC_FINAL | Opcodes.ACC_SUPER, KERNEL_NAME, null, "java/lang/Object",
+                new String[]{KERNEL_INTERFACE});
+
+        MethodVisitor constructor = writer.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+        constructor.visitCode();
+        constructor.visitVarInsn(Opcodes.ALOAD, 0);
+        constructor.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+        constructor.visitInsn(Opcodes.RETURN);
+        constructor.visitMaxs(0, 0);
+        constructor.visitEnd();
+
+        // if (long) return 1; if (short) return -1; return 0;
+        MethodVisitor signal = writer.visitMethod(Opcodes.ACC_PUBLIC, "signal", SIGNAL_DESCRIPTOR, null, null);
+        signal.visitCode();
+        Label notLong = new Label();
+        jumpUnless(signal, rules.longEntry(), notLong, columns);
+        signal.visitInsn(Opcodes.ICONST_1);
+        signal.visitInsn(Opcodes.IRETURN);
+        signal.visitLabel(notLong);
+        Label notShort = new Label();
+        jumpUnless(signal, rules.shortEntry(), notShort, columns);
+        signal.visitInsn(Opcodes.ICONST_M1);
+        signal.visitInsn(Opcodes.IRETURN);
+        signal.visitLabel(notShort);
+        signal.visitInsn(Opcodes.ICONST_0);
+        signal.visitInsn(Opcodes.IRETURN);
+        signal.visitMaxs(0, 0);
+        signal.visitEnd();
+
+        // for (int i = from; i < to; i++) signals[i] = (byte) signal(columns, i);
+        MethodVisitor evaluate = writer.visitMethod(Opcodes.ACC_PUBLIC, "evaluate", EVALUATE_DESCRIPTOR, null, null);
+        evaluate.visitCode();
+        Label loop = new Label();
+        Label end = new Label();
+        evaluate.visitLabel(loop);
+        evaluate.visitVarInsn(Opcodes.ILOAD, 2);
+        evaluate.visitVarInsn(Opcodes.ILOAD, 3);
+        evaluate.visitJumpInsn(Opcodes.IF_ICMPGE, end);
+        evaluate.visitVarInsn(Opcodes.ALOAD, 4);
+        evaluate.visitVarInsn(Opcodes.ILOAD, 2);
+        evaluate.visitVarInsn(Opcodes.ALOAD, 0);
+        evaluate.visitVarInsn(Opcodes.ALOAD, 1);
+        evaluate.visitVarInsn(Opcodes.ILOAD, 2);
+        evaluate.visitMethodInsn(Opcodes.INVOKEVIRTUAL, KERNEL_NAME, "signal", SIGNAL_DESCRIPTOR, false);
+        evaluate.visitInsn(Opcodes.I2B);
+        evaluate.visitInsn(Opcodes.BASTORE);
+        evaluate.visitIincInsn(2, 1);
+        evaluate.visitJumpInsn(Opcodes.GOTO, loop);
+        evaluate.visitLabel(end);
+        evaluate.visitInsn(Opcodes.RETURN);
+        evaluate.visitMaxs(0, 0);
+        evaluate.visitEnd();
+
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    private static void jumpUnless(MethodVisitor method, Condition condition, Label target, List<String> columns) {
+        switch (condition) {
+            case Condition.Comparison c -> {
+                compare(method, c, columns);
+                // dcmpl gives -1 and dcmpg 1 on NaN, so a comparison with NaN always jumps like in Java
+                method.visitJumpInsn(switch (c.comparator()) {
+                    case GREATER -> Opcodes.IFLE;
+                    case GREATER_OR_EQUAL -> Opcodes.IFLT;
+                    case LESS -> Opcodes.IFGE;
+                    case LESS_OR_EQUAL -> Opcodes.IFGT;
+                }, target);
+            }
+            case Condition.And c -> {
+                jumpUnless(method, c.left(), target, columns);
+                jumpUnless(method, c.right(), target, columns);
+            }
+            case Condition.Or c -> {
+                Label holds = new Label();
+                jumpIf(method, c.left(), holds, columns);
+                jumpUnless(method, c.right(), target, columns);
+                method.visitLabel(holds);
+            }
+            case Condition.Not c -> jumpIf(method, c.operand(), target, columns);
+            case Condition.Literal c -> {
+                if (!c.value()) {
+                    method.visitJumpInsn(Opcodes.GOTO, target);
+                }
+            }
+        }
+    }
+
+    private static void jumpIf(MethodVisitor method, Condition condition, Label target, List<String> columns) {
+        switch (condition) {
+            case Condition.Comparison c -> {
+                compare(method, c, columns);
+                method.visitJumpInsn(switch (c.comparator()) {
+                    case GREATER -> Opcodes.IFGT;
+                    case GREATER_OR_EQUAL -> Opcodes.IFGE;
+                    case LESS -> Opcodes.IFLT;
+                    case LESS_OR_EQUAL -> Opcodes.IFLE;
+                }, target);
+            }
+            case Condition.And c -> {
+                Label fails = new Label();
+                jumpUnless(method, c.left(), fails, columns);
+                jumpIf(method, c.right(), target, columns);
+                method.visitLabel(fails);
+            }
+            case Condition.Or c -> {
+                jumpIf(method, c.left(), target, columns);
+                jumpIf(method, c.right(), target, columns);
+            }
+            case Condition.Not c -> jumpUnless(method, c.operand(), target, columns);
+            case Condition.Literal c -> {
+                if (c.value()) {
+                    method.visitJumpInsn(Opcodes.GOTO, target);
+                }
+            }
+        }
+    }
+
+    private static void compare(MethodVisitor method, Condition.Comparison comparison, List<String> columns) {
+        load(method, comparison.left(), columns);
+        load(method, comparison.right(), columns);
+        boolean greater = comparison.comparator() == Condition.Comparator.GREATER
+                || comparison.comparator() == Condition.Comparator.GREATER_OR_EQUAL;
+        method.visitInsn(greater ? Opcodes.DCMPL : Opcodes.DCMPG);
+    }
+
+    private static void load(MethodVisitor method, Value value, List<String> columns) {
+        Double folded = fold(value);
+        if (folded != null) {
+            method.visitLdcInsn(folded);
+            return;
+        }
+
+        switch (value) {
+            case Value.Column c -> {
+                // columns[slot][index - offset]
+                method.visitVarInsn(Opcodes.ALOAD, COLUMNS);
+                pushInt(method, columns.indexOf(c.name()));
+                method.visitInsn(Opcodes.AALOAD);
+                method.visitVarInsn(Opcodes.ILOAD, INDEX);
+                if (c.offset() > 0) {
+                    pushInt(method, c.offset());
+                    method.visitInsn(Opcodes.ISUB);
+                }
+                method.visitInsn(Opcodes.DALOAD);
+            }
+            case Value.Arithmetic a -> {
+                load(method, a.left(), columns);
+                load(method, a.right(), columns);
+                method.visitInsn(switch (a.operator()) {
+                    case ADD -> Opcodes.DADD;
+                    case SUBTRACT -> Opcodes.DSUB;
+                    case MULTIPLY -> Opcodes.DMUL;
+                    case DIVIDE -> Opcodes.DDIV;
+                });
+            }
+            case Value.Abs a -> {
+                load(method, a.operand(), columns);
+                method.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/Math", "abs", "(D)D", false);
+            }
+            case Value.Constant c -> method.visitLdcInsn(c.value());
+        }
+    }
+
+    // Value of an expression without any column, computed once here instead of at every bar
+    private static Double fold(Value value) {
+        return switch (value) {
+            case Value.Constant c -> c.value();
+            case Value.Column _ -> null;
+            case Value.Abs a -> {
+                Double operand = fold(a.operand());
+                yield operand == null ? null : Math.abs(operand);
+            }
+            case Value.Arithmetic a -> {
+                Double left = fold(a.left());
+                Double right = fold(a.right());
+                if (left == null || right == null) yield null;
+                yield switch (a.operator()) {
+                    case ADD -> left + right;
+                    case SUBTRACT -> left - right;
+                    case MULTIPLY -> left * right;
+                    case DIVIDE -> left / right;
+                };
+            }
+        };
+    }
+
+    private static void pushInt(MethodVisitor method, int value) {
+        if (value <= Short.MAX_VALUE) {
+            method.visitIntInsn(value <= Byte.MAX_VALUE ? Opcodes.BIPUSH : Opcodes.SIPUSH, value);
+        } else {
+            method.visitLdcInsn(value);
+        }
+    }
+
+    private static final class KernelReference extends WeakReference<RuleKernel> {
+        private final RuleSet rules;
+
+        private KernelReference(RuleSet rules, RuleKernel kernel) {
+            super(kernel, COLLECTED);
+            this.rules = rules;
+        }
+    }
+}
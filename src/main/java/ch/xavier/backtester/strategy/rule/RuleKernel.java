@@ -0,0 +1,17 @@
+package ch.xavier.backtester.strategy.rule;
+
+/**
+ * Entry rules of a {@link RuleSet} compiled for one set of parameters. Columns are passed in the order of
+ * {@link RuleSet#columns()}, and bars before {@link RuleSet#lookback()} must not be evaluated.
+ */
+public interface RuleKernel {
+    /**
+     * @return 1 when the long rule holds at the bar, otherwise -1 when the short rule does, 0 for neither
+     */
+    int signal(double[][] columns, int index);
+
+    /**
+     * Write the signal of every bar from the first index included to the last one excluded
+     */
+    void evaluate(double[][] columns, int from, int to, byte[] signals);
+}
@@ -0,0 +1,93 @@
+package ch.xavier.backtester.strategy.rule;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Long and short entry rules of a strategy, declared over named columns with its parameters as constants.
+ * Compiling them generates a class evaluating exactly these rules, so every parameter combination runs its own
+ * specialised code instead of dispatching through indicators and parameter lookups at every bar.
+ */
+public record RuleSet(Condition longEntry, Condition shortEntry) {
+
+    public static RuleSet of(Condition longEntry, Condition shortEntry) {
+        return new RuleSet(longEntry, shortEntry);
+    }
+
+    /**
+     * Names of the columns read by the rules, in the order the compiled kernel expects them
+     */
+    public List<String> columns() {
+        Set<String> names = new LinkedHashSet<>();
+        collectColumns(longEntry, names);
+        collectColumns(shortEntry, names);
+        return List.copyOf(names);
+    }
+
+    /**
+     * Number of bars before the evaluated one the rules read, the first bar that can be evaluated
+     */
+    public int lookback() {
+        return Math.max(lookback(longEntry), lookback(shortEntry));
+    }
+
+    /**
+     * Compiled kernel of these rules, shared by every rule set equal to this one
+     */
+    public RuleKernel compile() {
+        return RuleCompiler.compile(this);
+    }
+
+    private static void collectColumns(Condition condition, Set<String> names) {
+        switch (condition) {
+            case Condition.Comparison c -> {
+                collectColumns(c.left(), names);
+                collectColumns(c.right(), names);
+            }
+            case Condition.And c -> {
+                collectColumns(c.left(), names);
+                collectColumns(c.right(), names);
+            }
+            case Condition.Or c -> {
+                collectColumns(c.left(), names);
+                collectColumns(c.right(), names);
+            }
+            case Condition.Not c -> collectColumns(c.operand(), names);
+            case Condition.Literal _ -> {
+            }
+        }
+    }
+
+    private static void collectColumns(Value value, Set<String> names) {
+        switch (value) {
+            case Value.Column c -> names.add(c.name());
+            case Value.Constant _ -> {
+            }
+            case Value.Arithmetic a -> {
+                collectColumns(a.left(), names);
+                collectColumns(a.right(), names);
+            }
+            case Value.Abs a -> collectColumns(a.operand(), names);
+        }
+    }
+
+    private static int lookback(Condition condition) {
+        return switch (condition) {
+            case Condition.Comparison c -> Math.max(lookback(c.left()), lookback(c.right()));
+            case Condition.And c -> Math.max(lookback(c.left()), lookback(c.right()));
+            case Condition.Or c -> Math.max(lookback(c.left()), lookback(c.right()));
+            case Condition.Not c -> lookback(c.operand());
+            case Condition.Literal _ -> 0;
+        };
+    }
+
+    private static int lookback(Value value) {
+        return switch (value) {
+            case Value.Column c -> c.offset();
+            case Value.Constant _ -> 0;
+            case Value.Arithmetic a -> Math.max(lookback(a.left()), lookback(a.right()));
+            case Value.Abs a -> lookback(a.operand());
+        };
+    }
+}
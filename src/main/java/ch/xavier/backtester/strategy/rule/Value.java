@@ -0,0 +1,106 @@
+package ch.xavier.backtester.strategy.rule;
+
+/**
+ * Numeric expression of a bar, read from the columns a {@link RuleSet} is evaluated on.
+ * Expressions are immutable values, two expressions built the same way are equal.
+ */
+public sealed interface Value {
+
+    /**
+     * Value of the named column at the evaluated bar
+     */
+    static Value column(String name) {
+        return new Column(name, 0);
+    }
+
+    static Value constant(double value) {
+        return new Constant(value);
+    }
+
+    /**
+     * Same expression evaluated the given number of bars before
+     */
+    Value previous(int bars);
+
+    default Value plus(Value other) {
+        return new Arithmetic(Operator.ADD, this, other);
+    }
+
+    default Value minus(Value other) {
+        return new Arithmetic(Operator.SUBTRACT, this, other);
+    }
+
+    default Value times(Value other) {
+        return new Arithmetic(Operator.MULTIPLY, this, other);
+    }
+
+    default Value dividedBy(Value other) {
+        return new Arithmetic(Operator.DIVIDE, this, other);
+    }
+
+    default Value abs() {
+        return new Abs(this);
+    }
+
+    default Condition greaterThan(Value other) {
+        return new Condition.Comparison(Condition.Comparator.GREATER, this, other);
+    }
+
+    default Condition greaterThan(double other) {
+        return greaterThan(constant(other));
+    }
+
+    default Condition greaterOrEqual(Value other) {
+        return new Condition.Comparison(Condition.Comparator.GREATER_OR_EQUAL, this, other);
+    }
+
+    default Condition lessThan(Value other) {
+        return new Condition.Comparison(Condition.Comparator.LESS, this, other);
+    }
+
+    default Condition lessThan(double other) {
+        return lessThan(constant(other));
+    }
+
+    default Condition lessOrEqual(Value other) {
+        return new Condition.Comparison(Condition.Comparator.LESS_OR_EQUAL, this, other);
+    }
+
+    enum Operator {
+        ADD, SUBTRACT, MULTIPLY, DIVIDE
+    }
+
+    record Column(String name, int offset) implements Value {
+        public Column {
+            if (offset < 0) {
+                throw new IllegalArgumentException("Rules can't read ahead of the bar: " + name + " " + offset);
+            }
+        }
+
+        @Override
+        public Value previous(int bars) {
+            return new Column(name, offset + bars);
+        }
+    }
+
+    record Constant(double value) implements Value {
+        @Override
+        public Value previous(int bars) {
+            return this;
+        }
+    }
+
+    record Arithmetic(Operator operator, Value left, Value right) implements Value {
+        @Override
+        public Value previous(int bars) {
+            return new Arithmetic(operator, left.previous(bars), right.previous(bars));
+        }
+    }
+
+    record Abs(Value operand) implements Value {
+        @Override
+        public Value previous(int bars) {
+            return new Abs(operand.previous(bars));
+        }
+    }
+}
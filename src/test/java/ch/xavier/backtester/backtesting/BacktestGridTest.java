@@ -0,0 +1,72 @@
+package ch.xavier.backtester.backtesting;
+
+import ch.xavier.backtester.backtesting.model.BacktestResult;
+import ch.xavier.backtester.marketphase.MarketPhaseClassifier;
+import ch.xavier.backtester.quote.Quote;
+import ch.xavier.backtester.quote.RandomQuotes;
+import ch.xavier.backtester.strategy.ParameterGrid;
+import ch.xavier.backtester.strategy.StrategiesFactory;
+import ch.xavier.backtester.strategy.TradingStrategy;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BacktestGridTest {
+    private static final List<Quote> QUOTES = RandomQuotes.walk(20_000, 1);
+
+    private final BacktesterService backtesterService = new BacktesterService();
+
+    @Test
+    void combinationsSharingTheirEntriesMatchTheirOwnRuns() {
+        assertGridMatchesOwnRuns("SMACrossover", Map.of(
+                "fastPeriod", List.of(5, 10),
+                "slowPeriod", List.of(30),
+                "riskRewardRatio", List.of(1.5, 2.0, 3.0),
+                "useTrailingSL", List.of(false, true),
+                "atrLength", List.of(7, 14)));
+        assertGridMatchesOwnRuns("DivergenceStrategy", Map.of(
+                "lookbackPeriod", List.of(20, 40),
+                "tradeLongOnly", List.of(false),
+                "riskRewardRatio", List.of(1.5, 2.5),
+                "useTrailingSL", List.of(false, true)));
+    }
+
+    private void assertGridMatchesOwnRuns(String strategyName, Map<String, List<Object>> parameters) {
+        ParameterGrid<?> grid = StrategiesFactory.compileParametersGrid(strategyName, parameters);
+        assertTrue(grid.exitSize() > 1, strategyName + " shares no entries");
+
+        for (boolean tradeHopping : new boolean[]{false, true}) {
+            TradingParameters params = TradingParameters.builder().tradeHopping(tradeHopping).build();
+            List<BacktesterService.CombinationResult> runs = backtesterService.backtestGrid(grid,
+                    combination -> StrategiesFactory.getStrategy(strategyName, params, grid,
+                            grid.indices(combination)), strategy -> QUOTES, strategy -> 0, params, true, null)
+                    .collectList().block();
+
+            assertNotNull(runs);
+            assertEquals(grid.size(), runs.size());
+            int trades = 0;
+            for (BacktesterService.CombinationResult run : runs) {
+                TradingStrategy strategy = StrategiesFactory.getStrategy(strategyName, params,
+                        grid.parameters(run.combination()));
+                BacktestResult own = backtesterService.backtest(QUOTES, strategy,
+                        MarketPhaseClassifier.MarketPhase.UNKNOWN, params, true).block();
+
+                String combination = strategyName + " " + grid.parameters(run.combination()) + ", hopping "
+                        + tradeHopping;
+                assertNotNull(own);
+                assertEquals(own.getTrades(), run.result().getTrades(), combination);
+                assertEquals(own.getFinalFunds(), run.result().getFinalFunds(), combination);
+                assertEquals(own.getSharpeRatio(), run.result().getSharpeRatio(), combination);
+                assertEquals(own.getSortinoRatio(), run.result().getSortinoRatio(), combination);
+                assertEquals(own.getMaxDrawdown(), run.result().getMaxDrawdown(), combination);
+                trades += own.getTotalTrades();
+            }
+            assertTrue(trades > 0, strategyName + " never trades");
+        }
+    }
+}
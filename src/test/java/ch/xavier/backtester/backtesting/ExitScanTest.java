@@ -0,0 +1,132 @@
+package ch.xavier.backtester.backtesting;
+
+import ch.xavier.backtester.quote.Quote;
+import ch.xavier.backtester.quote.RandomQuotes;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ExitScanTest {
+    private static final List<Quote> QUOTES = RandomQuotes.walk(3_000, 1);
+    private static final double[] RISK_REWARD_RATIOS = {0.5, 1, 1.5, 2, 3, 5, 20};
+
+    @Test
+    void exitsMatchABarByBarScanForEveryTakeProfit() {
+        Random random = new Random(2);
+        int[] exits = new int[3]; // Take profits, stops, neither
+
+        for (int e = 0; e < 500; e++) {
+            int entryIndex = random.nextInt(QUOTES.size() - 1);
+            boolean isLong = random.nextBoolean();
+            double entryPrice = QUOTES.get(entryIndex).getClose();
+            double risk = entryPrice * 0.002 * (1 + random.nextInt(5));
+            double stopLossPrice = isLong ? entryPrice - risk : entryPrice + risk;
+            ExitScan scan = ExitScan.of(QUOTES, entryIndex, isLong, stopLossPrice);
+
+            for (double riskRewardRatio : RISK_REWARD_RATIOS) {
+                double takeProfitPrice = isLong ? entryPrice + risk * riskRewardRatio :
+                        entryPrice - risk * riskRewardRatio;
+                int[] expected = scanBarByBar(entryIndex, isLong, stopLossPrice, takeProfitPrice);
+                assertArrayEquals(expected, exitOf(scan, takeProfitPrice),
+                        "entry at " + entryIndex + (isLong ? " long" : " short") + " for " + riskRewardRatio);
+                exits[expected[1]]++;
+            }
+        }
+        assertTrue(exits[0] > 0 && exits[1] > 0 && exits[2] > 0, "take profits, stops and open positions");
+    }
+
+    // Exits exactly on the price of a later bar's extreme, so the take profit or the stop is only just reached
+    @Test
+    void pricesReachedExactlyAreExitsAndTakeProfitsWinTies() {
+        Random random = new Random(3);
+
+        for (int e = 0; e < 500; e++) {
+            int entryIndex = random.nextInt(QUOTES.size() - 100);
+            boolean isLong = random.nextBoolean();
+            Quote stopBar = QUOTES.get(entryIndex + 1 + random.nextInt(50));
+            Quote targetBar = random.nextInt(4) == 0 ? stopBar : QUOTES.get(entryIndex + 1 + random.nextInt(50));
+            double stopLossPrice = isLong ? stopBar.getLow() : stopBar.getHigh();
+            double takeProfitPrice = isLong ? targetBar.getHigh() : targetBar.getLow();
+            ExitScan scan = ExitScan.of(QUOTES, entryIndex, isLong, stopLossPrice);
+
+            int[] expected = scanBarByBar(entryIndex, isLong, stopLossPrice, takeProfitPrice);
+            assertArrayEquals(expected, exitOf(scan, takeProfitPrice),
+                    "entry at " + entryIndex + (isLong ? " long" : " short"));
+        }
+    }
+
+    @Test
+    void nanPricesAreNeverReached() {
+        for (int entryIndex : new int[]{0, 100, 2_500, QUOTES.size() - 1}) {
+            for (boolean isLong : new boolean[]{true, false}) {
+                double entryPrice = QUOTES.get(entryIndex).getClose();
+                ExitScan noStop = ExitScan.of(QUOTES, entryIndex, isLong, Double.NaN);
+                assertEquals(-1, noStop.getStopLossIndex());
+                assertEquals(-1, noStop.takeProfitIndex(Double.NaN));
+
+                for (double riskRewardRatio : RISK_REWARD_RATIOS) {
+                    double takeProfitPrice = entryPrice * (isLong ? 1 + 0.002 * riskRewardRatio :
+                            1 - 0.002 * riskRewardRatio);
+                    assertArrayEquals(scanBarByBar(entryIndex, isLong, Double.NaN, takeProfitPrice),
+                            exitOf(noStop, takeProfitPrice), "entry at " + entryIndex + " for " + riskRewardRatio);
+                }
+
+                double stopLossPrice = entryPrice * (isLong ? 0.99 : 1.01);
+                assertArrayEquals(scanBarByBar(entryIndex, isLong, stopLossPrice, Double.NaN),
+                        exitOf(ExitScan.of(QUOTES, entryIndex, isLong, stopLossPrice), Double.NaN));
+            }
+        }
+    }
+
+    @Test
+    void cachedScansAreSharedByEqualEntriesOnly() {
+        ExitScan.Cache cache = new ExitScan.Cache(QUOTES);
+        double stopLossPrice = QUOTES.get(100).getClose() * 0.995;
+
+        ExitScan scan = cache.get(100, true, stopLossPrice);
+        assertSame(scan, cache.get(100, true, stopLossPrice));
+        assertNotSame(scan, cache.get(101, true, stopLossPrice));
+        assertNotSame(scan, cache.get(100, false, stopLossPrice));
+        assertNotSame(scan, cache.get(100, true, stopLossPrice * 0.999));
+
+        ExitScan fresh = ExitScan.of(QUOTES, 100, true, stopLossPrice);
+        for (double riskRewardRatio : RISK_REWARD_RATIOS) {
+            double takeProfitPrice = QUOTES.get(100).getClose() + (QUOTES.get(100).getClose() - stopLossPrice)
+                    * riskRewardRatio;
+            assertArrayEquals(exitOf(fresh, takeProfitPrice), exitOf(scan, takeProfitPrice));
+        }
+    }
+
+    /**
+     * Exit bar and kind of a position checking its exits bar by bar like the engine, the take profit first
+     *
+     * @return the exit bar, -1 when still open at the end, and 0 for a take profit, 1 for a stop, 2 for neither
+     */
+    private static int[] scanBarByBar(int entryIndex, boolean isLong, double stopLossPrice,
+                                      double takeProfitPrice) {
+        for (int i = entryIndex + 1; i < QUOTES.size(); i++) {
+            Quote quote = QUOTES.get(i);
+            if (isLong ? quote.getHigh() >= takeProfitPrice : quote.getLow() <= takeProfitPrice) {
+                return new int[]{i, 0};
+            }
+            if (isLong ? quote.getLow() <= stopLossPrice : quote.getHigh() >= stopLossPrice) {
+                return new int[]{i, 1};
+            }
+        }
+        return new int[]{-1, 2};
+    }
+
+    private static int[] exitOf(ExitScan scan, double takeProfitPrice) {
+        int takeProfitIndex = scan.takeProfitIndex(takeProfitPrice);
+        if (takeProfitIndex >= 0) return new int[]{takeProfitIndex, 0};
+        if (scan.getStopLossIndex() >= 0) return new int[]{scan.getStopLossIndex(), 1};
+        return new int[]{-1, 2};
+    }
+}
@@ -0,0 +1,99 @@
+package ch.xavier.backtester.backtesting;
+
+import ch.xavier.backtester.backtesting.model.BacktestResult;
+import ch.xavier.backtester.quote.Quote;
+import ch.xavier.backtester.quote.RandomQuotes;
+import ch.xavier.backtester.strategy.ParameterGrid;
+import ch.xavier.backtester.strategy.StrategiesFactory;
+import org.junit.jupiter.api.Test;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.ToDoubleFunction;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GridPruningTest {
+    private static final List<Quote> QUOTES = RandomQuotes.walk(20_000, 1);
+    private static final ParameterGrid<?> GRID = StrategiesFactory.compileParametersGrid("SMACrossover", Map.of(
+            "fastPeriod", List.of(5, 10, 20),
+            "slowPeriod", List.of(30, 50, 100),
+            "riskRewardRatio", List.of(1.0, 1.5, 2.0, 3.0),
+            "useTrailingSL", List.of(false, true)));
+
+    private static final int TOP_K = 10;
+    private static final ToDoubleFunction<BacktestResult> SCORE = result -> -result.getMaxDrawdown();
+    private static final DoubleUnaryOperator BEST_SCORE = drawdown -> -drawdown;
+
+    private final BacktesterService backtesterService = new BacktesterService();
+
+    @Test
+    void prunedGridsKeepTheTopOfTheRunsSatisfyingTheConstraints() {
+        for (boolean tradeHopping : new boolean[]{false, true}) {
+            // 257 trades is the exact count of some runs, which need more to be kept
+            TradingParameters params = TradingParameters.builder().tradeHopping(tradeHopping).maxDrawdown(2.5)
+                    .minNumberOfTrades(257).pruneGridCombinations(true).build();
+
+            List<BacktesterService.CombinationResult> all = runs(params, null);
+            assertEquals(GRID.size(), all.size());
+            assertTrue(all.stream().anyMatch(run -> run.result().getTotalTrades() == 257));
+            List<BacktesterService.CombinationResult> expected = top(all.stream()
+                    .filter(run -> run.result().getTotalTrades() > params.getMinNumberOfTrades())
+                    .filter(run -> run.result().getMaxDrawdown() * 100 < params.getMaxDrawdown())
+                    .toList());
+
+            GridPruning pruning = GridPruning.of(params, SCORE, BEST_SCORE, TOP_K);
+            List<BacktesterService.CombinationResult> pruned = runs(params, pruning);
+            assertEquals(GRID.size(), pruned.size() + pruning.getPruned());
+            for (GridPruning.Reason reason : GridPruning.Reason.values()) {
+                assertTrue(pruning.getPruned(reason) > 0, "nothing pruned on " + reason);
+            }
+
+            List<BacktesterService.CombinationResult> kept = top(pruned);
+            assertEquals(expected.stream().map(BacktesterService.CombinationResult::combination).toList(),
+                    kept.stream().map(BacktesterService.CombinationResult::combination).toList(),
+                    "hopping " + tradeHopping);
+            for (int i = 0; i < TOP_K; i++) {
+                assertEquals(expected.get(i).result().getFinalFunds(), kept.get(i).result().getFinalFunds());
+                assertEquals(expected.get(i).result().getSharpeRatio(), kept.get(i).result().getSharpeRatio());
+            }
+        }
+    }
+
+    // Without top K only the constraints prune, so every run satisfying them is kept
+    @Test
+    void runsSatisfyingTheConstraintsAreAllKept() {
+        TradingParameters params = TradingParameters.builder().maxDrawdown(2.5).minNumberOfTrades(257)
+                .pruneGridCombinations(true).build();
+        GridPruning pruning = GridPruning.of(params);
+
+        List<Integer> expected = runs(params, null).stream()
+                .filter(run -> run.result().getTotalTrades() > params.getMinNumberOfTrades())
+                .filter(run -> run.result().getMaxDrawdown() * 100 < params.getMaxDrawdown())
+                .map(BacktesterService.CombinationResult::combination).sorted().toList();
+        List<Integer> kept = runs(params, pruning).stream()
+                .map(BacktesterService.CombinationResult::combination).sorted().toList();
+
+        assertEquals(expected, kept);
+        assertEquals(0, pruning.getPruned(GridPruning.Reason.SCORE));
+        assertEquals(GRID.size() - kept.size(), pruning.getPruned());
+    }
+
+    private static List<BacktesterService.CombinationResult> top(List<BacktesterService.CombinationResult> runs) {
+        List<BacktesterService.CombinationResult> top = runs.stream()
+                .sorted(Comparator.comparingDouble(
+                        (BacktesterService.CombinationResult run) -> SCORE.applyAsDouble(run.result())).reversed())
+                .limit(TOP_K).toList();
+        assertEquals(TOP_K, top.size(), "fewer runs than kept");
+        return top;
+    }
+
+    private List<BacktesterService.CombinationResult> runs(TradingParameters params, GridPruning pruning) {
+        return backtesterService.backtestGrid(GRID,
+                combination -> StrategiesFactory.getStrategy("SMACrossover", params, GRID, GRID.indices(combination)),
+                strategy -> QUOTES, strategy -> 0, params, false, pruning).collectList().block();
+    }
+}
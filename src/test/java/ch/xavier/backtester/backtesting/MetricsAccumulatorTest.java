@@ -0,0 +1,211 @@
+package ch.xavier.backtester.backtesting;
+
+import ch.xavier.backtester.backtesting.model.BacktestResult;
+import ch.xavier.backtester.backtesting.model.TradeLog;
+import ch.xavier.backtester.quote.RandomQuotes;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MetricsAccumulatorTest {
+    private static final long DAY = 1000 * 60 * 60 * 24;
+    private static final double INITIAL_CAPITAL = 10_000;
+
+    @Test
+    void metricsMatchTheBatchComputationOverTheWholeRun() {
+        Random random = new Random(1);
+
+        for (int run = 0; run < 200; run++) {
+            double[][] trades = trades(random, random.nextInt(100), random.nextInt(3) == 0 ? 0 : 0.4);
+            double[] dailyReturns = dailyReturns(random, random.nextInt(300));
+
+            MetricsAccumulator accumulator = accumulate(trades, dailyReturns);
+            double finalFunds = accumulator.getEquity();
+            BacktestResult expected = batchResults(trades, finalFunds);
+            double[] sharpeSortino = batchSharpeAndSortino(dailyReturns);
+            BacktestResult result = accumulator.toResult(finalFunds);
+
+            String at = "run " + run;
+            assertEquals(expected.getTotalTrades(), result.getTotalTrades(), at);
+            assertEquals(expected.getWinningTrades(), result.getWinningTrades(), at);
+            assertEquals(expected.getLosingTrades(), result.getLosingTrades(), at);
+            assertEquals(expected.getWinRate(), result.getWinRate(), 1e-12, at);
+            assertEquals(expected.getProfitFactor(), result.getProfitFactor(), 1e-9, at);
+            assertEquals(expected.getMaxDrawdown(), result.getMaxDrawdown(), 1e-12, at);
+            assertEquals(expected.getAvgWinAmount(), result.getAvgWinAmount(), 1e-9, at);
+            assertEquals(expected.getAvgLossAmount(), result.getAvgLossAmount(), 1e-9, at);
+            assertEquals(expected.getAvgTradeAmount(), result.getAvgTradeAmount(), 1e-9, at);
+            assertEquals(expected.getAvgTradeLength(), result.getAvgTradeLength(), 1e-12, at);
+            assertEquals(expected.getTotalReturn(), result.getTotalReturn(), 1e-12, at);
+            assertEquals(expected.getAnnualizedReturn(), result.getAnnualizedReturn(), 1e-9, at);
+            assertEquals(sharpeSortino[0], result.getSharpeRatio(), 1e-9 * Math.max(1, Math.abs(sharpeSortino[0])), at);
+            assertEquals(sharpeSortino[1], result.getSortinoRatio(), 1e-9 * Math.max(1, Math.abs(sharpeSortino[1])),
+                    at);
+        }
+    }
+
+    @Test
+    void profitFactorWithoutLossesIsTen() {
+        Random random = new Random(2);
+        double[][] trades = new double[20][];
+        for (int i = 0; i < trades.length; i++) {
+            double profit = random.nextDouble() / 20;
+            trades[i] = new double[]{profit, profit * INITIAL_CAPITAL, RandomQuotes.START, RandomQuotes.START + DAY};
+        }
+        BacktestResult result = accumulate(trades, new double[0]).toResult(INITIAL_CAPITAL);
+
+        assertEquals(20, result.getWinningTrades());
+        assertEquals(0, result.getLosingTrades());
+        assertEquals(10, result.getProfitFactor());
+        assertEquals(0, result.getMaxDrawdown());
+    }
+
+    // The batch computation summed the finite returns only, but averaged them over every day
+    @Test
+    void nonFiniteReturnsOnlyCountAsDays() {
+        double[] dailyReturns = {0.01, Double.NaN, -0.02, 0.005, Double.POSITIVE_INFINITY, -0.001,
+                Double.NEGATIVE_INFINITY, 0.003};
+        double[] sharpeSortino = batchSharpeAndSortino(dailyReturns);
+        BacktestResult result = accumulate(new double[0][], dailyReturns).toResult(INITIAL_CAPITAL);
+
+        assertEquals(sharpeSortino[0], result.getSharpeRatio(), 1e-9);
+        assertEquals(sharpeSortino[1], result.getSortinoRatio(), 1e-9);
+
+        double[] finiteReturns = {0.01, -0.02, 0.005, -0.001, 0.003};
+        assertTrue(batchSharpeAndSortino(finiteReturns)[0] != result.getSharpeRatio(), "the days are all counted");
+    }
+
+    private static MetricsAccumulator accumulate(double[][] trades, double[] dailyReturns) {
+        MetricsAccumulator accumulator = new MetricsAccumulator(INITIAL_CAPITAL);
+        for (double[] trade : trades) {
+            accumulator.addTrade(trade[0], trade[1], (long) trade[2], (long) trade[3]);
+        }
+        for (double dailyReturn : dailyReturns) {
+            accumulator.addDailyReturn(dailyReturn);
+        }
+        return accumulator;
+    }
+
+    /**
+     * Random trades as profit, profit amount, entry & exit times, some of them losses
+     */
+    private static double[][] trades(Random random, int count, double lossShare) {
+        double[][] trades = new double[count][];
+        long time = RandomQuotes.START;
+        for (int i = 0; i < count; i++) {
+            double profit = random.nextDouble() < lossShare ? -random.nextDouble() / 20 : random.nextDouble() / 20;
+            double profitAmount = random.nextInt(30) == 0 ? Double.NaN : profit * INITIAL_CAPITAL - 2;
+            long entryTime = time + random.nextInt((int) DAY);
+            long exitTime = entryTime + random.nextLong(5 * DAY);
+            trades[i] = new double[]{profit, profitAmount,
+                    random.nextInt(20) == 0 ? TradeLog.NO_TIME : entryTime, exitTime};
+            time = exitTime;
+        }
+        return trades;
+    }
+
+    // Finite returns mostly, NaN and infinities now and then like a day starting without funds
+    private static double[] dailyReturns(Random random, int count) {
+        double[] dailyReturns = new double[count];
+        for (int i = 0; i < count; i++) {
+            int kind = random.nextInt(50);
+            dailyReturns[i] = kind == 0 ? Double.NaN : kind == 1 ? Double.POSITIVE_INFINITY :
+                    random.nextGaussian() / 100;
+        }
+        return dailyReturns;
+    }
+
+    // The Sharpe & Sortino ratios computed once over every daily return, like before the accumulator
+    private static double[] batchSharpeAndSortino(double[] dailyReturns) {
+        if (dailyReturns.length == 0) {
+            return new double[]{0.0, 0.0};
+        }
+
+        double sum = 0.0;
+        for (double ret : dailyReturns) {
+            if (Double.isFinite(ret)) sum += ret;
+        }
+        double mean = sum / dailyReturns.length;
+
+        double squaredSum = 0.0;
+        double downsideSquaredSum = 0.0;
+        int negativeReturnsCount = 0;
+        for (double ret : dailyReturns) {
+            if (!Double.isFinite(ret)) continue;
+            squaredSum += Math.pow(ret - mean, 2);
+            if (ret < 0) {
+                downsideSquaredSum += Math.pow(ret, 2);
+                negativeReturnsCount++;
+            }
+        }
+        double stdDev = Math.sqrt(squaredSum / dailyReturns.length);
+        double downsideDeviation = negativeReturnsCount > 0 ?
+                Math.sqrt(downsideSquaredSum / dailyReturns.length) : 0.00001;
+
+        double dailyRiskFree = 0.02 / 365;
+        double sharpeRatio = stdDev > 0 ? (mean - dailyRiskFree) / stdDev * Math.sqrt(252) : 0;
+        double sortinoRatio = downsideDeviation > 0 ? (mean - dailyRiskFree) / downsideDeviation * Math.sqrt(252) : 0;
+
+        return new double[]{Double.isFinite(sharpeRatio) ? sharpeRatio : 0, Double.isFinite(sortinoRatio) ?
+                sortinoRatio : 0};
+    }
+
+    // The trade metrics computed once over every trade, like before the accumulator
+    private static BacktestResult batchResults(double[][] trades, double finalEquity) {
+        if (trades.length == 0) {
+            return BacktestResult.builder().finalFunds(finalEquity).build();
+        }
+
+        int winningCount = 0;
+        int losingCount = 0;
+        double maxDrawdown = 0;
+        double peak = INITIAL_CAPITAL;
+        double equity = INITIAL_CAPITAL;
+        double sumWinAmount = 0;
+        double sumLossAmount = 0;
+        long totalDays = 0;
+
+        for (double[] trade : trades) {
+            if (Double.isNaN(trade[1])) continue;
+
+            equity += trade[1];
+            peak = Math.max(peak, equity);
+            maxDrawdown = Math.max(maxDrawdown, Math.min((peak - equity) / peak, 1.0));
+
+            if (trade[0] > 0) {
+                winningCount++;
+                sumWinAmount += trade[1];
+            } else {
+                losingCount++;
+                sumLossAmount -= trade[1];
+            }
+
+            if ((long) trade[2] != TradeLog.NO_TIME) {
+                totalDays += Math.max(0, ((long) trade[3] - (long) trade[2]) / DAY);
+            }
+        }
+
+        double totalReturn = (finalEquity - INITIAL_CAPITAL) / INITIAL_CAPITAL;
+        double annualized = totalDays > 0 && finalEquity > 0 ?
+                Math.pow(finalEquity / INITIAL_CAPITAL, 252.0 / totalDays) - 1.0 : 0;
+
+        return BacktestResult.builder()
+                .finalFunds(finalEquity)
+                .totalReturn(totalReturn)
+                .annualizedReturn(Double.isFinite(annualized) ? annualized : 0)
+                .profitFactor(sumLossAmount > 0.00001 ? sumWinAmount / sumLossAmount : (sumWinAmount > 0 ? 10 : 0))
+                .winRate((double) winningCount / trades.length)
+                .maxDrawdown(maxDrawdown)
+                .totalTrades(trades.length)
+                .winningTrades(winningCount)
+                .losingTrades(losingCount)
+                .avgWinAmount(winningCount > 0 ? sumWinAmount / winningCount : 0)
+                .avgLossAmount(losingCount > 0 ? sumLossAmount / losingCount : 0)
+                .avgTradeAmount((sumWinAmount - sumLossAmount) / trades.length)
+                .avgTradeLength((double) totalDays / trades.length)
+                .build();
+    }
+}
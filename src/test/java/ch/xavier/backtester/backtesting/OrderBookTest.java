@@ -0,0 +1,172 @@
+package ch.xavier.backtester.backtesting;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OrderBookTest {
+
+    @Test
+    void closedSlotsAreReusedAndTheLastOpenPositionTakesTheClosedOnesPlace() {
+        OrderBook book = new OrderBook(3);
+        int first = book.open(true, 100, 1, 90, 110, 1);
+        int second = book.open(true, 101, 2, 91, 111, 2);
+        int third = book.open(false, 102, 3, 112, 92, 3);
+        assertTrue(book.isFull());
+        assertEquals(3, book.size());
+
+        book.close(first);
+        assertFalse(book.isFull());
+        assertEquals(2, book.size());
+        assertEquals(third, book.slot(0));
+        assertEquals(second, book.slot(1));
+
+        int reopened = book.open(true, 103, 4, 93, 113, 4);
+        assertEquals(first, reopened);
+        assertEquals(reopened, book.slot(2));
+        assertEquals(103, book.getEntryPrice(reopened));
+        assertEquals(4, book.getSize(reopened));
+        assertEquals(93, book.getStopLossPrice(reopened));
+        assertEquals(113, book.getTakeProfitPrice(reopened));
+        assertEquals(4, book.getEntryIndex(reopened));
+        assertTrue(book.isLong(reopened));
+    }
+
+    @Test
+    void netSizeCountsLongsAgainstShorts() {
+        OrderBook book = new OrderBook(4);
+        int firstLong = book.open(true, 100, 1, 90, 110, 1);
+        book.open(true, 100, 1, 90, 110, 1);
+        assertEquals(2, book.netSize());
+
+        int firstShort = book.open(false, 100, 1, 110, 90, 2);
+        book.open(false, 100, 1, 110, 90, 2);
+        book.close(firstLong);
+        assertEquals(-1, book.netSize());
+
+        book.close(firstShort);
+        assertEquals(0, book.netSize());
+    }
+
+    @Test
+    void takeProfitsAreReachedFromTheClosestToTheFarthest() {
+        OrderBook book = new OrderBook(4);
+        int far = book.open(true, 100, 1, 90, 120, 1);
+        int close = book.open(true, 100, 1, 90, 105, 1);
+        int middle = book.open(true, 100, 1, 90, 110, 1);
+
+        assertEquals(-1, book.reachedTakeProfit(104, 100));
+
+        assertEquals(close, book.reachedTakeProfit(112, 100));
+        book.close(close);
+        assertEquals(middle, book.reachedTakeProfit(112, 100));
+        book.close(middle);
+        assertEquals(-1, book.reachedTakeProfit(112, 100));
+        assertEquals(far, book.reachedTakeProfit(120, 100));
+    }
+
+    @Test
+    void shortOrdersAreReachedOnTheOtherSideOfTheBar() {
+        OrderBook book = new OrderBook(4);
+        int low = book.open(false, 100, 1, 110, 80, 1);
+        int high = book.open(false, 100, 1, 105, 90, 1);
+
+        assertEquals(-1, book.reachedTakeProfit(100, 91));
+        assertEquals(high, book.reachedTakeProfit(100, 85));
+        book.close(high);
+        assertEquals(-1, book.reachedTakeProfit(100, 85));
+        assertEquals(low, book.reachedTakeProfit(100, 80));
+
+        assertEquals(-1, book.reachedStopLoss(109, 100));
+        assertEquals(low, book.reachedStopLoss(110, 100));
+    }
+
+    @Test
+    void stopLossesAreReachedFromTheClosestAndFollowTheirMoves() {
+        OrderBook book = new OrderBook(4);
+        int lower = book.open(true, 100, 1, 90, 110, 1);
+        int higher = book.open(true, 100, 1, 95, 110, 1);
+
+        assertEquals(-1, book.reachedStopLoss(100, 96));
+        assertEquals(higher, book.reachedStopLoss(100, 94));
+
+        // Trailing the lower stop above the other one puts it on top
+        book.moveStopLoss(lower, 98);
+        assertEquals(98, book.getStopLossPrice(lower));
+        assertEquals(lower, book.reachedStopLoss(100, 97));
+
+        book.close(lower);
+        assertEquals(-1, book.reachedStopLoss(100, 97));
+        assertEquals(higher, book.reachedStopLoss(100, 95));
+    }
+
+    @Test
+    void ordersAtNaNAreNeverReached() {
+        OrderBook book = new OrderBook(2);
+        int slot = book.open(true, 100, 1, Double.NaN, Double.NaN, 1);
+
+        assertEquals(-1, book.reachedTakeProfit(Double.MAX_VALUE, 0));
+        assertEquals(-1, book.reachedStopLoss(Double.MAX_VALUE, 0));
+
+        book.moveStopLoss(slot, 95);
+        assertEquals(slot, book.reachedStopLoss(100, 95));
+        book.close(slot);
+        assertEquals(0, book.size());
+    }
+
+    @Test
+    void heapsKeepTheirOrderAcrossGrowthAndRandomRemovals() {
+        OrderBook book = new OrderBook(100);
+        int[] slots = new int[40];
+        for (int i = 0; i < slots.length; i++) {
+            // Take profits shuffled around 100 + i
+            slots[i] = book.open(true, 50, 1, 10, 100 + (i * 17) % slots.length, i);
+        }
+        for (int i = 0; i < slots.length; i += 3) {
+            book.close(slots[i]);
+        }
+
+        double previous = Double.NEGATIVE_INFINITY;
+        int filled = 0;
+        for (int slot; (slot = book.reachedTakeProfit(Double.MAX_VALUE, 0)) >= 0; filled++) {
+            assertTrue(book.getTakeProfitPrice(slot) >= previous);
+            previous = book.getTakeProfitPrice(slot);
+            book.close(slot);
+        }
+        assertEquals(slots.length - (slots.length + 2) / 3, filled);
+        assertEquals(0, book.size());
+    }
+
+    @Test
+    void extremesAreTakenFromTheBarsSinceAnIndex() {
+        OrderBook book = new OrderBook(2);
+        assertTrue(Double.isNaN(book.lowestSince(0)));
+
+        book.open(true, 100, 1, 90, 110, 0);
+        book.addBar(1, 97, 103);
+        book.addBar(2, 95, 101);
+        book.addBar(3, 98, 104);
+        book.addBar(4, 99, 102);
+
+        assertEquals(95, book.lowestSince(1));
+        assertEquals(98, book.lowestSince(3));
+        assertEquals(104, book.highestSince(1));
+        assertEquals(102, book.highestSince(4));
+        assertTrue(Double.isNaN(book.highestSince(5)));
+    }
+
+    @Test
+    void extremesStartOverOnABarWithoutOpenPositions() {
+        OrderBook book = new OrderBook(2);
+        int slot = book.open(true, 100, 1, 90, 110, 0);
+        book.addBar(1, 80, 120);
+        book.close(slot);
+
+        book.addBar(2, 97, 103);
+
+        assertEquals(97, book.lowestSince(0));
+        assertEquals(103, book.highestSince(0));
+    }
+}
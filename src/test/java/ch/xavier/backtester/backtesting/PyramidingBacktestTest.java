@@ -0,0 +1,111 @@
+package ch.xavier.backtester.backtesting;
+
+import ch.xavier.backtester.backtesting.model.BacktestResult;
+import ch.xavier.backtester.backtesting.model.Trade;
+import ch.xavier.backtester.marketphase.MarketPhaseClassifier;
+import ch.xavier.backtester.quote.Quote;
+import ch.xavier.backtester.quote.RandomQuotes;
+import ch.xavier.backtester.strategy.StrategiesFactory;
+import ch.xavier.backtester.strategy.TradingStrategy;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PyramidingBacktestTest {
+    private static final int MAX_INVENTORY = 3;
+    private static final int MA_LENGTH = 50;
+    private static final double STD_DEV_PERCENT = 0.3; // Defaults of the strategy
+    private static final double EXIT_THRESHOLD = 1.0;
+
+    private final BacktesterService backtesterService = new BacktesterService();
+    private final TradingParameters parameters = TradingParameters.builder().build();
+
+    @Test
+    void zScoreAddsToItsPositionsUpToItsInventoryOnOneSideOnly() {
+        List<Quote> quotes = RandomQuotes.walk(20_000, 7);
+        BacktestResult result = backtest(quotes, MAX_INVENTORY);
+
+        int[] longs = new int[quotes.size() + 1];
+        int[] shorts = new int[quotes.size() + 1];
+        for (Trade trade : result.getTrades()) {
+            int[] open = trade.isLong() ? longs : shorts;
+            open[indexOf(quotes, trade.getEntryTime().getTime())]++;
+            open[indexOf(quotes, trade.getExitTime().getTime())]--;
+        }
+
+        // Positions are open from their entry bar to the bar they exit on, when the next ones can already enter
+        int openLongs = 0;
+        int openShorts = 0;
+        int mostOpen = 0;
+        for (int i = 0; i < quotes.size(); i++) {
+            openLongs += longs[i];
+            openShorts += shorts[i];
+            assertFalse(openLongs > 0 && openShorts > 0, "Longs and shorts open together at bar " + i);
+            mostOpen = Math.max(mostOpen, openLongs + openShorts);
+        }
+
+        assertEquals(MAX_INVENTORY, mostOpen);
+    }
+
+    // Back beyond the exit threshold on the other side of the mean, every position exits at the close
+    @Test
+    void zScorePositionsAllExitBackBeyondTheExitThreshold() {
+        List<Quote> quotes = RandomQuotes.walk(20_000, 7);
+
+        for (int maxInventory : new int[]{1, MAX_INVENTORY}) {
+            List<Trade> trades = backtest(quotes, maxInventory).getTrades();
+            int exitSignals = 0;
+
+            for (Trade trade : trades) {
+                int entryIndex = indexOf(quotes, trade.getEntryTime().getTime());
+                int exitIndex = indexOf(quotes, trade.getExitTime().getTime());
+                String at = "inventory of " + maxInventory + ", position entering at " + entryIndex;
+
+                for (int i = entryIndex + 1; i < exitIndex; i++) {
+                    assertFalse(isBeyondExit(quotes, i, trade.isLong()), at + " held through " + i);
+                }
+                // Unless its stop loss or take profit filled first on the bar
+                if (exitIndex < quotes.size() - 1 && isBeyondExit(quotes, exitIndex, trade.isLong()) &&
+                        trade.getExitPrice() == quotes.get(exitIndex).getClose()) {
+                    exitSignals++;
+                }
+            }
+            assertTrue(exitSignals > 0, "inventory of " + maxInventory + " never exits on its z-score");
+        }
+    }
+
+    private BacktestResult backtest(List<Quote> quotes, int maxInventory) {
+        Map<String, Object> strategyParameters = new HashMap<>();
+        strategyParameters.put("maLength", MA_LENGTH);
+        strategyParameters.put("reentryThreshold", 1.0);
+        strategyParameters.put("maxInventory", maxInventory);
+        strategyParameters.put("useTimeFilter", false);
+        TradingStrategy strategy = StrategiesFactory.getStrategy("ZScoreStrategy", parameters, strategyParameters);
+
+        return backtesterService.backtest(quotes, strategy, MarketPhaseClassifier.MarketPhase.UNKNOWN, parameters,
+                true).block();
+    }
+
+    private static boolean isBeyondExit(List<Quote> quotes, int index, boolean isLong) {
+        double sum = 0;
+        for (int i = index - MA_LENGTH + 1; i <= index; i++) {
+            sum += quotes.get(i).getClose();
+        }
+        double sma = sum / MA_LENGTH;
+        double zScore = (quotes.get(index).getClose() - sma) / (STD_DEV_PERCENT * sma / 100);
+        return isLong ? zScore > EXIT_THRESHOLD : zScore < -EXIT_THRESHOLD;
+    }
+
+    private static int indexOf(List<Quote> quotes, long time) {
+        int index = (int) TimeUnit.MILLISECONDS.toMinutes(time - quotes.getFirst().getTimestamp().getTime());
+        assertEquals(time, quotes.get(index).getTimestamp().getTime());
+        return index;
+    }
+}
@@ -0,0 +1,158 @@
+package ch.xavier.backtester.backtesting;
+
+import ch.xavier.backtester.backtesting.model.BacktestResult;
+import ch.xavier.backtester.backtesting.model.Trade;
+import ch.xavier.backtester.marketphase.MarketPhaseClassifier;
+import ch.xavier.backtester.quote.Quote;
+import ch.xavier.backtester.quote.RandomQuotes;
+import ch.xavier.backtester.strategy.BaseStrategy;
+import ch.xavier.backtester.strategy.StrategyState;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TradeHoppingTest {
+    private static final int NO_BAR = -1;
+
+    private final BacktesterService backtesterService = new BacktesterService();
+
+    @Test
+    void hopsEndLikeStepsThroughEveryBar() {
+        for (long seed = 1; seed <= 3; seed++) {
+            List<Quote> quotes = RandomQuotes.walk(5_000, seed);
+            int ties = 0;
+
+            for (boolean intrabarExcursions : new boolean[]{false, true}) {
+                for (boolean storeTradeDetails : new boolean[]{false, true}) {
+                    BacktestResult stepped = backtest(quotes, NO_BAR, false, intrabarExcursions, storeTradeDetails);
+                    BacktestResult hopped = backtest(quotes, NO_BAR, true, intrabarExcursions, storeTradeDetails);
+                    assertSameRun(stepped, hopped, "seed " + seed + ", intrabar " + intrabarExcursions);
+
+                    if (storeTradeDetails) {
+                        ties += (int) hopped.getTrades().stream().filter(trade -> reachesBoth(quotes, trade)).count();
+                    }
+                }
+            }
+            assertTrue(ties > 0, "the take profit and the stop are never reached on the same bar");
+        }
+    }
+
+    // Funds are checked on the bar after each entry, whether the position exits on it or later
+    @Test
+    void hopsStopWhenTheFundsAreDepletedLikeSteps() {
+        List<Quote> quotes = RandomQuotes.walk(5_000, 4);
+        List<Trade> trades = backtest(quotes, NO_BAR, false, false, true).getTrades();
+
+        boolean exitingOnTheNextBar = false;
+        boolean exitingLater = false;
+        for (Trade trade : trades.subList(trades.size() / 3, trades.size())) {
+            boolean nextBar = barOf(trade.getExitTime().getTime()) == barOf(trade.getEntryTime().getTime()) + 1;
+            if (nextBar ? exitingOnTheNextBar : exitingLater) continue;
+            exitingOnTheNextBar |= nextBar;
+            exitingLater |= !nextBar;
+
+            int depletingBar = barOf(trade.getEntryTime().getTime());
+            for (boolean storeTradeDetails : new boolean[]{false, true}) {
+                BacktestResult stepped = backtest(quotes, depletingBar, false, false, storeTradeDetails);
+                BacktestResult hopped = backtest(quotes, depletingBar, true, false, storeTradeDetails);
+
+                assertTrue(stepped.getFinalFunds() < TradingParameters.builder().build().getInitialCapital() * 0.01);
+                assertSameRun(stepped, hopped, "funds depleted at " + depletingBar);
+            }
+        }
+        assertTrue(exitingOnTheNextBar && exitingLater);
+    }
+
+    private BacktestResult backtest(List<Quote> quotes, int depletingBar, boolean tradeHopping,
+                                    boolean intrabarExcursions, boolean storeTradeDetails) {
+        TradingParameters parameters = TradingParameters.builder().tradeHopping(tradeHopping)
+                .intrabarExcursions(intrabarExcursions).build();
+        return backtesterService.backtest(quotes, new PeekingStrategy(parameters, depletingBar),
+                MarketPhaseClassifier.MarketPhase.UNKNOWN, parameters, storeTradeDetails).block();
+    }
+
+    private static void assertSameRun(BacktestResult stepped, BacktestResult hopped, String run) {
+        assertTrue(stepped.getTotalTrades() > 0, run);
+        assertEquals(stepped.getTrades(), hopped.getTrades(), run);
+        assertEquals(stepped.getTotalTrades(), hopped.getTotalTrades(), run);
+        assertEquals(stepped.getFinalFunds(), hopped.getFinalFunds(), run);
+        assertEquals(stepped.getSharpeRatio(), hopped.getSharpeRatio(), run);
+        assertEquals(stepped.getSortinoRatio(), hopped.getSortinoRatio(), run);
+        assertEquals(stepped.getMaxDrawdown(), hopped.getMaxDrawdown(), run);
+    }
+
+    private static boolean reachesBoth(List<Quote> quotes, Trade trade) {
+        int entryBar = barOf(trade.getEntryTime().getTime());
+        Quote exit = quotes.get(barOf(trade.getExitTime().getTime()));
+        double stopLossPrice = PeekingStrategy.stopLossPrice(trade.isLong(), quotes, entryBar);
+        double takeProfitPrice = PeekingStrategy.takeProfitPrice(trade.isLong(), quotes, entryBar);
+        return trade.isLong() ? exit.getHigh() >= takeProfitPrice && exit.getLow() <= stopLossPrice :
+                exit.getLow() <= takeProfitPrice && exit.getHigh() >= stopLossPrice;
+    }
+
+    private static int barOf(long time) {
+        return (int) TimeUnit.MILLISECONDS.toMinutes(time - RandomQuotes.START);
+    }
+
+    /**
+     * Enters on a schedule of the bars' times with exits on the extremes of later bars, so they are reached exactly,
+     * now and then both on the same bar. Its position on the depleting bar pays almost all the funds in fees.
+     */
+    private static class PeekingStrategy extends BaseStrategy {
+        private final TradingParameters parameters;
+        private final int depletingBar;
+
+        PeekingStrategy(TradingParameters parameters, int depletingBar) {
+            super(parameters);
+            this.parameters = parameters;
+            this.depletingBar = depletingBar;
+        }
+
+        @Override
+        public int generateSignal(List<Quote> quotes, int index, StrategyState state) {
+            int bar = barOf(quotes.get(index).getTimestamp().getTime());
+            return bar % 7 == 0 ? 1 : bar % 11 == 0 ? -1 : 0;
+        }
+
+        @Override
+        public double calculateStopLossPrice(boolean isLong, List<Quote> quotes, int index, StrategyState state) {
+            return stopLossPrice(isLong, quotes, index);
+        }
+
+        @Override
+        public double calculateTakeProfitPrice(boolean isLong, List<Quote> quotes, int index, StrategyState state) {
+            return takeProfitPrice(isLong, quotes, index);
+        }
+
+        @Override
+        public double calculatePositionSize(double availableFunds, Quote quote, double stopLossPrice) {
+            double fees = quote.getClose() * parameters.getTakerFee();
+            return barOf(quote.getTimestamp().getTime()) == depletingBar ? availableFunds * 0.995 / fees :
+                    availableFunds * 0.001 / fees;
+        }
+
+        @Override
+        public boolean hasPathIndependentSignals() {
+            return true;
+        }
+
+        static double stopLossPrice(boolean isLong, List<Quote> quotes, int index) {
+            Quote stopBar = quotes.get(stopBar(quotes, index));
+            return isLong ? stopBar.getLow() : stopBar.getHigh();
+        }
+
+        static double takeProfitPrice(boolean isLong, List<Quote> quotes, int index) {
+            int takeProfitBar = index % 4 == 0 ? stopBar(quotes, index) :
+                    Math.min(index + 1 + (index * 7) % 17, quotes.size() - 1);
+            return isLong ? quotes.get(takeProfitBar).getHigh() : quotes.get(takeProfitBar).getLow();
+        }
+
+        private static int stopBar(List<Quote> quotes, int index) {
+            return Math.min(index + 1 + (index * 31) % 13, quotes.size() - 1);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package ch.xavier.backtester.backtesting;
+
+import ch.xavier.backtester.backtesting.model.BacktestResult;
+import ch.xavier.backtester.backtesting.model.Position;
+import ch.xavier.backtester.backtesting.model.Trade;
+import ch.xavier.backtester.marketphase.MarketPhaseClassifier;
+import ch.xavier.backtester.quote.Quote;
+import ch.xavier.backtester.quote.RandomQuotes;
+import ch.xavier.backtester.strategy.StrategiesFactory;
+import ch.xavier.backtester.strategy.StrategyState;
+import ch.xavier.backtester.strategy.TradingStrategy;
+import ch.xavier.backtester.strategy.concrete.SMACrossoverStrategy;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TradeReportingTest {
+    private static final List<Quote> QUOTES = RandomQuotes.walk(20_000, 1);
+    private static final Map<String, Map<String, Object>> STRATEGIES = Map.of(
+            "SMACrossover", Map.of("fastPeriod", 10, "slowPeriod", 30),
+            "ZScoreStrategy", Map.of("maLength", 50, "reentryThreshold", 1.0, "maxInventory", 3,
+                    "useTimeFilter", false));
+
+    private final BacktesterService backtesterService = new BacktesterService();
+
+    @Test
+    void intrabarExcursionsComeFromTheHighsAndLows() {
+        for (boolean tradeHopping : new boolean[]{false, true}) {
+            TradingParameters parameters = TradingParameters.builder().tradeHopping(tradeHopping)
+                    .intrabarExcursions(true).build();
+
+            for (Map.Entry<String, Map<String, Object>> strategy : STRATEGIES.entrySet()) {
+                int widerThanCloses = 0;
+                for (Trade trade : backtest(strategy, parameters).getTrades()) {
+                    double[] intrabar = excursions(trade, true);
+                    String at = strategy.getKey() + " trade entering at " + trade.getEntryTime();
+                    assertEquals(intrabar[0], trade.getMaxAdverseExcursion(), 1e-12, at);
+                    assertEquals(intrabar[1], trade.getMaxFavorableExcursion(), 1e-12, at);
+
+                    double[] closes = excursions(trade, false);
+                    if (intrabar[0] < closes[0] && intrabar[1] > closes[1]) widerThanCloses++;
+                }
+                assertTrue(widerThanCloses > 0, strategy.getKey() + " excursions are the closes'");
+            }
+        }
+    }
+
+    @Test
+    void excursionsComeFromTheClosesByDefault() {
+        for (boolean tradeHopping : new boolean[]{false, true}) {
+            TradingParameters parameters = TradingParameters.builder().tradeHopping(tradeHopping).build();
+
+            for (Map.Entry<String, Map<String, Object>> strategy : STRATEGIES.entrySet()) {
+                for (Trade trade : backtest(strategy, parameters).getTrades()) {
+                    double[] closes = excursions(trade, false);
+                    String at = strategy.getKey() + " trade entering at " + trade.getEntryTime();
+                    assertEquals(closes[0], trade.getMaxAdverseExcursion(), 1e-12, at);
+                    assertEquals(closes[1], trade.getMaxFavorableExcursion(), 1e-12, at);
+                }
+            }
+        }
+    }
+
+    @Test
+    void tracedPriceHistoriesHoldTheClosesSinceTheEntry() {
+        for (boolean tracePriceHistory : new boolean[]{false, true}) {
+            TradingParameters parameters = TradingParameters.builder().tradeHopping(true)
+                    .tracePriceHistory(tracePriceHistory).build();
+            TracingStrategy strategy = new TracingStrategy(parameters);
+            backtesterService.backtest(QUOTES, strategy, MarketPhaseClassifier.MarketPhase.UNKNOWN, parameters, false)
+                    .block();
+
+            assertTrue(strategy.checkedBars > 1_000, "the stop is asked on every bar a position is held through");
+            assertEquals(tracePriceHistory, strategy.traced);
+        }
+    }
+
+    private BacktestResult backtest(Map.Entry<String, Map<String, Object>> strategy, TradingParameters parameters) {
+        TradingStrategy tradingStrategy = StrategiesFactory.getStrategy(strategy.getKey(), parameters,
+                strategy.getValue());
+        BacktestResult result = backtesterService.backtest(QUOTES, tradingStrategy,
+                MarketPhaseClassifier.MarketPhase.UNKNOWN, parameters, true).block();
+        assertTrue(result.getTrades().size() > 10, strategy.getKey() + " barely trades");
+        return result;
+    }
+
+    /**
+     * Adverse and favorable excursions of every bar after the entry up to the exit, included
+     */
+    private static double[] excursions(Trade trade, boolean intrabar) {
+        double entryPrice = trade.getEntryPrice();
+        double adverse = 0;
+        double favorable = 0;
+        for (int i = indexOf(trade.getEntryTime().getTime()) + 1; i <= indexOf(trade.getExitTime().getTime()); i++) {
+            Quote quote = QUOTES.get(i);
+            double adversePrice = !intrabar ? quote.getClose() : trade.isLong() ? quote.getLow() : quote.getHigh();
+            double favorablePrice = !intrabar ? quote.getClose() : trade.isLong() ? quote.getHigh() : quote.getLow();
+            int side = trade.isLong() ? 1 : -1;
+            adverse = Math.min(adverse, side * (adversePrice - entryPrice) / entryPrice);
+            favorable = Math.max(favorable, side * (favorablePrice - entryPrice) / entryPrice);
+        }
+        return new double[]{adverse, favorable};
+    }
+
+    private static int indexOf(long time) {
+        return (int) TimeUnit.MILLISECONDS.toMinutes(time - RandomQuotes.START);
+    }
+
+    /**
+     * Trails its stop, so it is asked for it on every bar, and checks the price history of the position each time
+     */
+    private static class TracingStrategy extends SMACrossoverStrategy {
+        private int checkedBars;
+        private boolean traced;
+
+        TracingStrategy(TradingParameters parameters) {
+            super(parameters);
+            setParameters(Map.of("fastPeriod", 10, "slowPeriod", 30, "useTrailingSL", true));
+        }
+
+        @Override
+        public double updateStopLoss(Position position, List<Quote> quotes, int index, StrategyState state) {
+            checkedBars++;
+            if (position.getPriceHistory() != null) {
+                List<Double> closes = new ArrayList<>();
+                for (int i = position.getEntryIndex() + 1; i <= index; i++) {
+                    closes.add(quotes.get(i).getClose());
+                }
+                assertEquals(closes, position.getPriceHistory(), "price history at " + index);
+                traced = true;
+            }
+            return super.updateStopLoss(position, quotes, index, state);
+        }
+    }
+}
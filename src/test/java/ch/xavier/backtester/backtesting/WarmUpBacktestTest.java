@@ -0,0 +1,108 @@
+package ch.xavier.backtester.backtesting;
+
+import ch.xavier.backtester.backtesting.model.BacktestResult;
+import ch.xavier.backtester.marketphase.MarketPhaseClassifier;
+import ch.xavier.backtester.quote.Quote;
+import ch.xavier.backtester.quote.QuoteWindow;
+import ch.xavier.backtester.quote.RandomQuotes;
+import ch.xavier.backtester.strategy.BaseStrategy;
+import ch.xavier.backtester.strategy.StrategyState;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WarmUpBacktestTest {
+    private static final long STEP = TimeUnit.HOURS.toMillis(1);
+    private static final List<Quote> QUOTES = RandomQuotes.walk(5_000, 1, STEP);
+
+    private final BacktesterService backtesterService = new BacktesterService();
+
+    // Runs preceded by a warm-up only count the days of their window, like runs on the window alone
+    @Test
+    void warmUpBarsAreNotDaysOfTheRun() {
+        for (boolean tradeHopping : new boolean[]{false, true}) {
+            TradingParameters parameters = TradingParameters.builder().tradeHopping(tradeHopping).build();
+
+            for (int[] window : new int[][]{{1_000, 3_000}, {2_013, 2_500}, {4_000, 5_000}}) {
+                for (int warmUp : new int[]{1, 30, 100, 500}) {
+                    BacktestResult alone = backtest(QuoteWindow.of(QUOTES, window[0], window[1]), 0,
+                            new ScheduledStrategy(parameters, 0), parameters);
+                    BacktestResult warmedUp = backtest(QuoteWindow.of(QUOTES, window[0] - warmUp, window[1]), warmUp,
+                            new ScheduledStrategy(parameters, warmUp), parameters);
+
+                    String run = "window " + window[0] + "-" + window[1] + " after " + warmUp + " bars, hopping "
+                            + tradeHopping;
+                    assertTrue(alone.getTotalTrades() > 0, run);
+                    assertEquals(alone.getTotalTrades(), warmedUp.getTotalTrades(), run);
+                    assertEquals(alone.getFinalFunds(), warmedUp.getFinalFunds(), run);
+                    assertEquals(alone.getSharpeRatio(), warmedUp.getSharpeRatio(), run);
+                    assertEquals(alone.getSortinoRatio(), warmedUp.getSortinoRatio(), run);
+                }
+            }
+        }
+    }
+
+    // Days between the start and the end of the warm-up still are days of the run, with a return of zero
+    @Test
+    void warmUpPastTheStartCountsTheDaysInBetween() {
+        TradingParameters parameters = TradingParameters.builder().build();
+        List<Quote> window = QuoteWindow.of(QUOTES, 1_000, 3_000);
+
+        BacktestResult fromStart = backtest(window, 0, new ScheduledStrategy(parameters, 200), parameters);
+        BacktestResult afterWarmUp = backtest(window, 200, new ScheduledStrategy(parameters, 200), parameters);
+
+        assertEquals(fromStart.getFinalFunds(), afterWarmUp.getFinalFunds());
+        assertTrue(fromStart.getSharpeRatio() != afterWarmUp.getSharpeRatio(), "the first days aren't counted");
+    }
+
+    private BacktestResult backtest(List<Quote> quotes, int start, ScheduledStrategy strategy,
+                                    TradingParameters parameters) {
+        return backtesterService.backtest(quotes, start, strategy, MarketPhaseClassifier.MarketPhase.UNKNOWN,
+                parameters, false).block();
+    }
+
+    /**
+     * Enters on a schedule of the bars' times with exits a fixed share of the entry price away, so its trades don't
+     * depend on the bars before the window it runs on
+     */
+    private static class ScheduledStrategy extends BaseStrategy {
+        private final int warmUp;
+
+        ScheduledStrategy(TradingParameters parameters, int warmUp) {
+            super(parameters);
+            this.warmUp = warmUp;
+        }
+
+        @Override
+        public int generateSignal(List<Quote> quotes, int index, StrategyState state) {
+            if (index < warmUp) return 0;
+
+            long bar = (quotes.get(index).getTimestamp().getTime() - RandomQuotes.START) / STEP;
+            return bar % 37 == 0 ? 1 : bar % 53 == 0 ? -1 : 0;
+        }
+
+        @Override
+        public double calculateStopLossPrice(boolean isLong, List<Quote> quotes, int index, StrategyState state) {
+            return quotes.get(index).getClose() * (isLong ? 0.99 : 1.01);
+        }
+
+        @Override
+        public double calculateTakeProfitPrice(boolean isLong, List<Quote> quotes, int index, StrategyState state) {
+            return quotes.get(index).getClose() * (isLong ? 1.015 : 0.985);
+        }
+
+        @Override
+        public int getWarmUp() {
+            return warmUp;
+        }
+
+        @Override
+        public boolean hasPathIndependentSignals() {
+            return true;
+        }
+    }
+}
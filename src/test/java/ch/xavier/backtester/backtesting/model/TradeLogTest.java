@@ -0,0 +1,113 @@
+package ch.xavier.backtester.backtesting.model;
+
+import ch.xavier.backtester.backtesting.BacktesterService;
+import ch.xavier.backtester.backtesting.TradingParameters;
+import ch.xavier.backtester.marketphase.MarketPhaseClassifier;
+import ch.xavier.backtester.quote.RandomQuotes;
+import ch.xavier.backtester.strategy.StrategiesFactory;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TradeLogTest {
+
+    @Test
+    void tradesComeBackAsTheyWereRecorded() {
+        Random random = new Random(1);
+        TradeLog log = new TradeLog();
+        List<Trade> trades = new ArrayList<>();
+
+        // Past the initial capacity, with and without times and phases
+        for (int i = 0; i < 100; i++) {
+            Trade trade = randomTrade(random);
+            trades.add(trade);
+            add(log, trade);
+        }
+
+        assertEquals(trades, log.asList());
+        for (int i = 0; i < trades.size(); i++) {
+            Trade trade = trades.get(i);
+            assertEquals(trade.getEntryTime() != null ? trade.getEntryTime().getTime() : TradeLog.NO_TIME,
+                    log.getEntryTime(i));
+            assertEquals(trade.getExitTime() != null ? trade.getExitTime().getTime() : TradeLog.NO_TIME,
+                    log.getExitTime(i));
+            assertEquals(trade.getProfit(), log.getProfit(i));
+            assertEquals(trade.getProfitAmount(), log.getProfitAmount(i));
+        }
+        assertThrows(IndexOutOfBoundsException.class, () -> log.asList().get(trades.size()));
+        assertThrows(IndexOutOfBoundsException.class, () -> log.asList().get(-1));
+    }
+
+    @Test
+    void clearedLogsOnlyHoldTheTradesRecordedSince() {
+        Random random = new Random(2);
+        TradeLog log = new TradeLog();
+        for (int i = 0; i < 40; i++) {
+            add(log, randomTrade(random));
+        }
+
+        log.clear();
+        assertEquals(0, log.size());
+        assertTrue(log.asList().isEmpty());
+
+        List<Trade> trades = List.of(randomTrade(random), randomTrade(random), randomTrade(random));
+        trades.forEach(trade -> add(log, trade));
+        assertEquals(trades, log.asList());
+    }
+
+    @Test
+    void tradesOfARunComeBackFromTheLogAsRecorded() {
+        TradingParameters parameters = TradingParameters.builder().build();
+        BacktestResult result = new BacktesterService().backtest(RandomQuotes.walk(20_000, 1),
+                StrategiesFactory.getStrategy("SMACrossover", parameters, Map.of("fastPeriod", 10, "slowPeriod", 30)),
+                MarketPhaseClassifier.MarketPhase.BULLISH, parameters, true).block();
+
+        List<Trade> trades = result.getTrades();
+        assertEquals(result.getTotalTrades(), trades.size());
+        assertTrue(trades.size() > 16, "the log never grows");
+
+        TradeLog log = new TradeLog();
+        for (int i = 0; i < trades.size(); i++) {
+            Trade trade = trades.get(i);
+            assertEquals(MarketPhaseClassifier.MarketPhase.BULLISH, trade.getMarketPhase());
+            assertTrue(trade.getEntryTime().getTime() <= trade.getExitTime().getTime());
+            if (i > 0) assertTrue(trades.get(i - 1).getExitTime().getTime() <= trade.getExitTime().getTime());
+            add(log, trade);
+        }
+        assertEquals(trades, log.asList());
+        assertEquals(new ArrayList<>(trades), trades);
+    }
+
+    private static void add(TradeLog log, Trade trade) {
+        log.add(trade.getEntryTime(), trade.getExitTime(), trade.getEntryPrice(), trade.getExitPrice(),
+                trade.getSize(), trade.getProfit(), trade.getProfitAmount(), trade.isLong(),
+                trade.getMaxAdverseExcursion(), trade.getMaxFavorableExcursion(), trade.getMarketPhase());
+    }
+
+    private static Trade randomTrade(Random random) {
+        MarketPhaseClassifier.MarketPhase[] phases = MarketPhaseClassifier.MarketPhase.values();
+        long entryTime = RandomQuotes.START + random.nextInt(1_000_000);
+        double entryPrice = 100 + random.nextDouble();
+        double exitPrice = 100 + random.nextDouble();
+        return new Trade(
+                random.nextInt(10) == 0 ? null : new Date(entryTime),
+                random.nextInt(10) == 0 ? null : new Date(entryTime + random.nextInt(1_000_000)),
+                entryPrice,
+                exitPrice,
+                random.nextDouble(),
+                (exitPrice - entryPrice) / entryPrice,
+                random.nextGaussian(),
+                random.nextBoolean(),
+                -random.nextDouble() / 100,
+                random.nextDouble() / 100,
+                random.nextInt(phases.length + 1) == phases.length ? null : phases[random.nextInt(phases.length)]);
+    }
+}
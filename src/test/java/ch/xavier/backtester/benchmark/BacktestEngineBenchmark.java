@@ -0,0 +1,100 @@
+package ch.xavier.backtester.benchmark;
+
+import ch.xavier.backtester.backtesting.BacktesterService;
+import ch.xavier.backtester.backtesting.TradingParameters;
+import ch.xavier.backtester.backtesting.model.BacktestResult;
+import ch.xavier.backtester.marketphase.MarketPhaseClassifier;
+import ch.xavier.backtester.quote.Quote;
+import ch.xavier.backtester.strategy.StrategiesFactory;
+import ch.xavier.backtester.strategy.TradingStrategy;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time and allocations of whole backtests on a random walk of one minute quotes, run from {@link #main} with the GC
+ * profiler. Comparing gc.alloc.rate.norm between bar counts shows how much a run allocates per bar, and comparing the
+ * runs with and without trade hopping how their time follows the bars or the trades. No figures are kept here, they
+ * only mean something on the machine they were measured on.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class BacktestEngineBenchmark {
+
+    @Param({"100000", "400000"})
+    public int bars;
+
+    @Param({"SMACrossover", "ZScoreStrategy"})
+    public String strategyName;
+
+    @Param({"false", "true"})
+    public boolean tradeHopping;
+
+    private final BacktesterService backtesterService = new BacktesterService();
+    private TradingParameters parameters;
+    private List<Quote> quotes;
+    private TradingStrategy strategy;
+
+    @Setup
+    public void setUp() {
+        quotes = randomWalk(bars, 42);
+        parameters = TradingParameters.builder().tradeHopping(tradeHopping).build();
+        // Periods have no usable default, the SMA crossover needs them set to run at all
+        Map<String, Object> strategyParameters = switch (strategyName) {
+            case "SMACrossover" -> Map.of("fastPeriod", 10, "slowPeriod", 30);
+            default -> Map.of();
+        };
+        strategy = StrategiesFactory.getStrategy(strategyName, parameters, strategyParameters);
+    }
+
+    @Benchmark
+    public BacktestResult backtest() {
+        return backtesterService.backtest(quotes, strategy, MarketPhaseClassifier.MarketPhase.UNKNOWN, parameters,
+                false).block();
+    }
+
+    // Prices stay low enough for the fixed fees not to deplete the funds on the first entries
+    static List<Quote> randomWalk(int size, long seed) {
+        Random random = new Random(seed);
+        List<Quote> walk = new ArrayList<>(size);
+        long start = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(size);
+        double price = 0.01;
+
+        for (int i = 0; i < size; i++) {
+            double open = price;
+            double close = open * (1 + random.nextGaussian() * 0.002);
+            walk.add(Quote.builder()
+                    .timestamp(new Timestamp(start + TimeUnit.MINUTES.toMillis(i)))
+                    .open(open)
+                    .high(Math.max(open, close) * (1 + Math.abs(random.nextGaussian()) * 0.001))
+                    .low(Math.min(open, close) * (1 - Math.abs(random.nextGaussian()) * 0.001))
+                    .close(close)
+                    .volume(1000 + random.nextInt(1000))
+                    .symbol("BENCH")
+                    .marketInterval("ONE_MINUTE")
+                    .build());
+            price = close;
+        }
+        return walk;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(BacktestEngineBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
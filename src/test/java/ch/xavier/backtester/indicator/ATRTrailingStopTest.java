@@ -0,0 +1,60 @@
+package ch.xavier.backtester.indicator;
+
+import ch.xavier.backtester.quote.Quote;
+import ch.xavier.backtester.quote.RandomQuotes;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ATRTrailingStopTest {
+
+    @Test
+    void stopsMatchTheTrueRangeSumsFromTheFirstBarsOn() {
+        List<Quote> quotes = RandomQuotes.walk(400, 4);
+        int length = 14;
+        double multiplier = 2.5;
+
+        for (boolean inLongPosition : new boolean[]{true, false}) {
+            ATRTrailingStop stop = new ATRTrailingStop(length, multiplier, "hl2", true);
+            double longStop = 0;
+            double shortStop = 0;
+
+            for (int i = 0; i < quotes.size(); i++) {
+                ATRTrailingStop.TrailingStopResult result = stop.calculate(i, quotes, inLongPosition);
+
+                if (i < length) {
+                    assertEquals(0, result.getLongStop());
+                    assertEquals(0, result.getShortStop());
+                    continue;
+                }
+
+                Quote quote = quotes.get(i);
+                double distance = partialSumAverage(quotes, i, length) * multiplier;
+                double source = (quote.getHigh() + quote.getLow()) / 2;
+                // Trailing from the stops of the bar before, which are both 0 on the first bar
+                longStop = inLongPosition ? Math.max(source - distance, longStop) : source - distance;
+                shortStop = inLongPosition ? source + distance : Math.min(source + distance, shortStop);
+
+                assertEquals(longStop, result.getLongStop(), Math.abs(longStop) * 1e-9, "long stop at " + i);
+                assertEquals(shortStop, result.getShortStop(), Math.abs(shortStop) * 1e-9, "short stop at " + i);
+                assertEquals(quote.getLow() <= result.getLongStop(), result.isLongStopHit());
+                assertEquals(quote.getHigh() >= result.getShortStop(), result.isShortStopHit());
+            }
+        }
+    }
+
+    // The trailing stop's own ATR before it read the shared series, summing from the second bar at the earliest
+    private static double partialSumAverage(List<Quote> quotes, int index, int length) {
+        double sum = 0;
+        for (int i = Math.max(1, index - length + 1); i <= index; i++) {
+            Quote current = quotes.get(i);
+            Quote previous = quotes.get(i - 1);
+            sum += Math.max(current.getHigh() - current.getLow(),
+                    Math.max(Math.abs(current.getHigh() - previous.getClose()),
+                            Math.abs(current.getLow() - previous.getClose())));
+        }
+        return sum / length;
+    }
+}
@@ -0,0 +1,135 @@
+package ch.xavier.backtester.indicator.misc;
+
+import ch.xavier.backtester.indicator.series.Column;
+import ch.xavier.backtester.quote.Quote;
+import ch.xavier.backtester.quote.RandomQuotes;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HurstExponentTest {
+    private static final double TOLERANCE = 1e-9;
+
+    @Test
+    void rollingValuesMatchARecomputationOfEachWindow() {
+        List<Quote> quotes = RandomQuotes.walk(20_000, 1);
+
+        for (int length : new int[]{8, 33, 64, 100}) {
+            assertMatchesRecomputation(quotes, length);
+        }
+    }
+
+    @Test
+    void steadyTrendsAtHighPricesKeepTheirPrecision() {
+        // Log returns of a thousandth with a billionth of noise, so their mean square dwarfs their variance
+        Random random = new Random(2);
+        List<Quote> quotes = new ArrayList<>();
+        double logClose = Math.log(100_000);
+        for (int i = 0; i < 50_000; i++) {
+            logClose += 1e-3 + random.nextGaussian() * 1e-9;
+            quotes.add(quote(Math.exp(logClose)));
+        }
+
+        assertMatchesRecomputation(quotes, 100);
+    }
+
+    @Test
+    void flatWindowsAreZeroEvenAfterMovingPrices() {
+        List<Quote> quotes = new ArrayList<>(RandomQuotes.walk(1_000, 3));
+        double lastClose = quotes.getLast().getClose();
+        for (int i = 0; i < 500; i++) {
+            quotes.add(quote(lastClose));
+        }
+
+        Column hurst = HurstExponent.series(quotes, 100);
+        for (int i = 1_100; i < quotes.size(); i++) {
+            assertEquals(0, hurst.get(i), "at " + i);
+        }
+        assertMatchesRecomputation(quotes, 100);
+    }
+
+    @Test
+    void randomWalksAreAroundOneHalf() {
+        List<Quote> quotes = RandomQuotes.walk(20_000, 4);
+        Column hurst = HurstExponent.series(quotes, 256);
+
+        double sum = 0;
+        for (int i = 255; i < quotes.size(); i++) {
+            sum += hurst.get(i);
+        }
+        double mean = sum / (quotes.size() - 255);
+        assertTrue(Math.abs(mean - 0.5) < 0.1, "mean Hurst exponent " + mean);
+    }
+
+    private static void assertMatchesRecomputation(List<Quote> quotes, int length) {
+        Column hurst = HurstExponent.series(quotes, length);
+        for (int i = 0; i < quotes.size(); i++) {
+            double expected = i < length - 1 ? 0 : recompute(quotes, i, length);
+            assertEquals(expected, hurst.get(i), TOLERANCE, "length " + length + " at " + i);
+        }
+    }
+
+    // Slope of the log standard deviation of the returns of each lag on the log lag, with two-pass variances
+    private static double recompute(List<Quote> quotes, int index, int length) {
+        List<Double> logLags = new ArrayList<>();
+        List<Double> logDispersions = new ArrayList<>();
+        for (int lag = 1; lag <= Math.max(1, length / 4); lag *= 2) {
+            logLags.add(Math.log(lag));
+        }
+        if (logLags.size() < 2) {
+            logLags.add(Math.log(2));
+        }
+        if (1 << (logLags.size() - 1) >= length) {
+            return 0;
+        }
+
+        for (int k = 0; k < logLags.size(); k++) {
+            int lag = 1 << k;
+            double[] returns = new double[length - lag];
+            for (int j = 0; j < returns.length; j++) {
+                int end = index - returns.length + 1 + j;
+                returns[j] = Math.log(quotes.get(end).getClose()) - Math.log(quotes.get(end - lag).getClose());
+            }
+
+            double mean = 0;
+            for (double value : returns) {
+                mean += value / returns.length;
+            }
+            double variance = 0;
+            for (double value : returns) {
+                variance += (value - mean) * (value - mean) / returns.length;
+            }
+            if (variance <= 0) {
+                return 0;
+            }
+            logDispersions.add(0.5 * Math.log(variance));
+        }
+
+        double meanLogLag = logLags.stream().mapToDouble(Double::doubleValue).average().orElseThrow();
+        double meanLogDispersion = logDispersions.stream().mapToDouble(Double::doubleValue).average().orElseThrow();
+        double covariance = 0;
+        double lagVariance = 0;
+        for (int k = 0; k < logLags.size(); k++) {
+            covariance += (logLags.get(k) - meanLogLag) * (logDispersions.get(k) - meanLogDispersion);
+            lagVariance += (logLags.get(k) - meanLogLag) * (logLags.get(k) - meanLogLag);
+        }
+        return covariance / lagVariance;
+    }
+
+    private static Quote quote(double close) {
+        return Quote.builder()
+                .open(close)
+                .high(close)
+                .low(close)
+                .close(close)
+                .volume(1)
+                .symbol("TEST")
+                .marketInterval("ONE_MINUTE")
+                .build();
+    }
+}
@@ -0,0 +1,65 @@
+package ch.xavier.backtester.indicator.misc;
+
+import ch.xavier.backtester.indicator.series.Column;
+import ch.xavier.backtester.quote.Quote;
+import ch.xavier.backtester.quote.RandomQuotes;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RobustZScoreTest {
+    private static final double TOLERANCE = 1e-9;
+
+    @Test
+    void zScoresMatchTheMedianAndDeviationOfEachSortedWindow() {
+        // Closes rounded to a hundredth of the starting price, so windows hold duplicates and short ones are flat
+        List<Quote> quotes = RandomQuotes.walk(3_000, 1).stream().map(RobustZScoreTest::rounded).toList();
+        double[] closes = quotes.stream().mapToDouble(Quote::getClose).toArray();
+
+        for (int length : new int[]{4, 5, 20, 21}) {
+            Column zScores = RobustZScore.series(quotes, length);
+            Column stdDevs = RobustZScore.standardDeviation(quotes, length);
+
+            for (int i = 0; i < closes.length; i++) {
+                String at = "length " + length + " at " + i;
+                if (i < length - 1) {
+                    assertEquals(0, zScores.get(i), at);
+                    assertEquals(0, stdDevs.get(i), at);
+                    continue;
+                }
+
+                double[] sorted = Arrays.copyOfRange(closes, i - length + 1, i + 1);
+                Arrays.sort(sorted);
+                double median = median(sorted);
+                double deviation = RobustZScore.MAD_TO_STD_DEV
+                        * median(Arrays.stream(sorted).map(close -> Math.abs(close - median)).sorted().toArray());
+                double zScore = deviation > 0 ? (closes[i] - median) / deviation : 0;
+
+                assertEquals(deviation, stdDevs.get(i), deviation * TOLERANCE, at);
+                assertEquals(zScore, zScores.get(i), Math.abs(zScore) * TOLERANCE, at);
+            }
+        }
+    }
+
+    private static double median(double[] sorted) {
+        int middle = sorted.length / 2;
+        return sorted.length % 2 == 1 ? sorted[middle] : (sorted[middle - 1] + sorted[middle]) / 2;
+    }
+
+    private static Quote rounded(Quote quote) {
+        double close = Math.round(quote.getClose() * 10_000) / 10_000.0;
+        return Quote.builder()
+                .timestamp(quote.getTimestamp())
+                .open(quote.getOpen())
+                .high(Math.max(quote.getHigh(), close))
+                .low(Math.min(quote.getLow(), close))
+                .close(close)
+                .volume(quote.getVolume())
+                .symbol(quote.getSymbol())
+                .marketInterval(quote.getMarketInterval())
+                .build();
+    }
+}
@@ -0,0 +1,95 @@
+package ch.xavier.backtester.indicator.misc;
+
+import ch.xavier.backtester.indicator.series.IndicatorCache;
+import ch.xavier.backtester.indicator.series.Precision;
+import ch.xavier.backtester.quote.Quote;
+import ch.xavier.backtester.quote.QuoteWindow;
+import ch.xavier.backtester.quote.RandomQuotes;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class StochasticTest {
+
+    @Test
+    void windowsAcrossChunksMatchTheWholeList() {
+        List<Quote> quotes = RandomQuotes.walk(10_000, 1);
+
+        for (int[] settings : new int[][]{{14, 3, 1, 0}, {14, 3, 3, 1}, {5, 5, 3, 0}}) {
+            Stochastic whole = stochastic(settings);
+            whole.calculate(quotes);
+
+            for (int[] range : new int[][]{{0, 10_000}, {4_000, 9_000}, {4_095, 4_097}, {8_000, 10_000}}) {
+                QuoteWindow window = QuoteWindow.of(quotes, range[0], range[1]);
+                Stochastic windowed = stochastic(settings);
+                windowed.calculate(window);
+
+                for (int i = 0; i < window.size(); i++) {
+                    assertEquals(whole.getK().get(range[0] + i), windowed.getK().get(i), "%K at " + (range[0] + i));
+                    assertEquals(whole.getD().get(range[0] + i), windowed.getD().get(i), "%D at " + (range[0] + i));
+                }
+            }
+        }
+    }
+
+    @Test
+    void floatColumnsOnlyNarrowTheDoubleValues() {
+        // Prices exactly representable as floats, so both precisions read the same prices
+        List<Quote> quotes = RandomQuotes.walk(5_000, 2).stream().map(StochasticTest::toFloats).toList();
+
+        Stochastic doubleStochastic = new Stochastic(14, 3, 3, true);
+        IndicatorCache.withPrecision(Precision.DOUBLE, () -> {
+            doubleStochastic.calculate(quotes);
+            return null;
+        });
+        Stochastic floatStochastic = new Stochastic(14, 3, 3, true);
+        IndicatorCache.withPrecision(Precision.FLOAT, () -> {
+            floatStochastic.calculate(quotes);
+            return null;
+        });
+
+        for (int i = 0; i < quotes.size(); i++) {
+            assertEquals((float) doubleStochastic.getK().get(i), floatStochastic.getK().get(i), "%K at " + i);
+            assertEquals((float) doubleStochastic.getD().get(i), floatStochastic.getD().get(i), "%D at " + i);
+        }
+    }
+
+    @Test
+    void floatRunsStayWithinTheirPriceRounding() {
+        List<Quote> quotes = RandomQuotes.walk(5_000, 3);
+
+        Stochastic doubleStochastic = new Stochastic(14, 3);
+        doubleStochastic.calculate(quotes);
+        Stochastic floatStochastic = new Stochastic(14, 3);
+        IndicatorCache.withPrecision(Precision.FLOAT, () -> {
+            floatStochastic.calculate(quotes);
+            return null;
+        });
+
+        // Rounding the prices to floats moves them by about 1e-7 of their value, the range of 14 bars is a few
+        // tenths of a percent of the price, so %K may move by up to a few hundredths of its 0-100 scale
+        for (int i = 0; i < quotes.size(); i++) {
+            assertEquals(doubleStochastic.getK().get(i), floatStochastic.getK().get(i), 0.05, "%K at " + i);
+            assertEquals(doubleStochastic.getD().get(i), floatStochastic.getD().get(i), 0.05, "%D at " + i);
+        }
+    }
+
+    private static Stochastic stochastic(int[] settings) {
+        return new Stochastic(settings[0], settings[1], settings[2], settings[3] == 1);
+    }
+
+    private static Quote toFloats(Quote quote) {
+        return Quote.builder()
+                .timestamp(quote.getTimestamp())
+                .open((float) quote.getOpen())
+                .high((float) quote.getHigh())
+                .low((float) quote.getLow())
+                .close((float) quote.getClose())
+                .volume(quote.getVolume())
+                .symbol(quote.getSymbol())
+                .marketInterval(quote.getMarketInterval())
+                .build();
+    }
+}
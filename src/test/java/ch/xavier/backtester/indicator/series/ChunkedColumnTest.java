@@ -0,0 +1,94 @@
+package ch.xavier.backtester.indicator.series;
+
+import ch.xavier.backtester.indicator.volatility.ATR;
+import ch.xavier.backtester.quote.Quote;
+import ch.xavier.backtester.quote.QuoteWindow;
+import ch.xavier.backtester.quote.RandomQuotes;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ChunkedColumnTest {
+    private static final int LENGTH = 50;
+
+    @Test
+    void windowsMatchTheEagerColumnAroundChunkBoundaries() {
+        for (int rootSize : new int[]{4_095, 4_096, 4_097, 8_193}) {
+            List<Quote> quotes = RandomQuotes.walk(rootSize, rootSize);
+            Column eager = IndicatorCache.column(new ArrayList<>(quotes), "sum", ChunkedColumnTest::closeSums);
+
+            for (int from : new int[]{0, 1, 4_094, 4_095, 4_096, 4_097}) {
+                for (int to : new int[]{4_095, 4_096, 4_097, rootSize}) {
+                    if (from >= to || to > rootSize) continue;
+
+                    Column windowed = IndicatorCache.column(QuoteWindow.of(quotes, from, to), "sum", LENGTH - 1,
+                            ChunkedColumnTest::closeSums);
+                    assertEquals(to - from, windowed.size());
+                    for (int i = 0; i < windowed.size(); i++) {
+                        assertEquals(eager.get(from + i), windowed.get(i),
+                                "root of " + rootSize + ", window " + from + "-" + to + " at " + (from + i));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void chunksAreComputedOnceForEveryWindow() {
+        List<Quote> quotes = RandomQuotes.walk(10_000, 1);
+        AtomicInteger loads = new AtomicInteger();
+        Function<List<Quote>, double[]> loader = q -> {
+            loads.incrementAndGet();
+            return closeSums(q);
+        };
+
+        for (int[] range : new int[][]{{0, 5_000}, {4_000, 9_000}, {100, 200}, {0, 10_000}}) {
+            Column windowed = IndicatorCache.column(QuoteWindow.of(quotes, range[0], range[1]), "sum", LENGTH - 1,
+                    loader);
+            for (int i = 0; i < windowed.size(); i++) {
+                windowed.get(i);
+            }
+        }
+
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    void recursiveIndicatorsAreComputedOnceOverTheWholeList() {
+        List<Quote> quotes = RandomQuotes.walk(10_000, 2);
+        Column eager = ATR.series(new ArrayList<>(quotes), 14, ATR.Smoothing.RMA);
+        AtomicInteger loads = new AtomicInteger();
+
+        for (int[] range : new int[][]{{0, 10_000}, {4_095, 4_097}, {5_000, 9_000}, {9_999, 10_000}}) {
+            QuoteWindow window = QuoteWindow.of(quotes, range[0], range[1]);
+            Column atr = ATR.series(window, 14, ATR.Smoothing.RMA);
+            Column counted = IndicatorCache.column(window, "counted", IndicatorCache.UNBOUNDED_WARM_UP, q -> {
+                loads.incrementAndGet();
+                return new double[q.size()];
+            });
+
+            for (int i = 0; i < window.size(); i++) {
+                assertEquals(eager.get(range[0] + i), atr.get(i), "window " + range[0] + "-" + range[1]);
+                counted.get(i);
+            }
+        }
+
+        assertEquals(1, loads.get());
+    }
+
+    // Sum of the closes of the last LENGTH bars, or of every bar so far before that
+    private static double[] closeSums(List<Quote> quotes) {
+        double[] sums = new double[quotes.size()];
+        for (int i = 0; i < sums.length; i++) {
+            for (int j = Math.max(0, i - LENGTH + 1); j <= i; j++) {
+                sums[i] += quotes.get(j).getClose();
+            }
+        }
+        return sums;
+    }
+}
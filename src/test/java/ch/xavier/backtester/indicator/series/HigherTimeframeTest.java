@@ -0,0 +1,144 @@
+package ch.xavier.backtester.indicator.series;
+
+import ch.xavier.backtester.indicator.misc.EMA;
+import ch.xavier.backtester.quote.Quote;
+import ch.xavier.backtester.quote.RandomQuotes;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HigherTimeframeTest {
+    private static final long MINUTE = TimeUnit.MINUTES.toMillis(1);
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+
+    @Test
+    void projectedValuesDontChangeWhenLaterBarsDo() {
+        List<Quote> quotes = RandomQuotes.walk(3_000, 1);
+        double[] projected = hourlyEma(quotes);
+
+        for (int i : new int[]{0, 58, 59, 60, 119, 1_000, 2_999}) {
+            List<Quote> altered = new ArrayList<>(quotes.subList(0, i + 1));
+            List<Quote> otherFuture = RandomQuotes.walk(quotes.size(), 2);
+            for (int j = i + 1; j < quotes.size(); j++) {
+                Quote other = otherFuture.get(j);
+                altered.add(Quote.builder()
+                        .timestamp(quotes.get(j).getTimestamp())
+                        .open(other.getOpen())
+                        .high(other.getHigh())
+                        .low(other.getLow())
+                        .close(other.getClose())
+                        .volume(other.getVolume())
+                        .marketInterval(other.getMarketInterval())
+                        .build());
+            }
+
+            double[] alteredProjection = hourlyEma(altered);
+            for (int j = 0; j <= i; j++) {
+                assertEquals(projected[j], alteredProjection[j], "bar " + j + " with bars after " + i + " altered");
+            }
+        }
+    }
+
+    @Test
+    void barsSeeTheLastHourClosedAtTheirOwnClose() {
+        // Two minute gaps for the first hundred bars, the hour still closes with the bar ending at its last minute
+        List<Quote> quotes = new ArrayList<>();
+        long time = RandomQuotes.START;
+        for (int i = 0; i < 400; i++) {
+            quotes.add(quote(time, "ONE_MINUTE"));
+            time += i < 100 ? 2 * MINUTE : MINUTE;
+        }
+
+        HigherTimeframe hourly = HigherTimeframe.of(quotes, "1h");
+        for (int i = 0; i < quotes.size(); i++) {
+            long close = quotes.get(i).getTimestamp().getTime() + MINUTE;
+            assertEquals(hoursClosedBy(quotes, close) - 1, hourly.higherIndex(i), "bar " + i);
+        }
+    }
+
+    @Test
+    void barsOfAnUnknownIntervalOnlySeeAnHourOnceTheNextOneOpened() {
+        List<Quote> quotes = new ArrayList<>();
+        for (int i = 0; i < 180; i++) {
+            quotes.add(quote(RandomQuotes.START + i * MINUTE, null));
+        }
+
+        HigherTimeframe hourly = HigherTimeframe.of(quotes, "1h");
+        assertEquals(-1, hourly.higherIndex(59));
+        assertEquals(0, hourly.higherIndex(60));
+        assertEquals(0, hourly.higherIndex(119));
+        assertEquals(1, hourly.higherIndex(120));
+    }
+
+    @Test
+    void barsWithoutTimestampSeeWhatTheBarBeforeSaw() {
+        List<Quote> quotes = new ArrayList<>();
+        quotes.add(quote(RandomQuotes.START + 59 * MINUTE, "ONE_MINUTE"));
+        quotes.add(Quote.builder().open(1).high(1).low(1).close(1).marketInterval("ONE_MINUTE").build());
+        quotes.add(quote(RandomQuotes.START + 60 * MINUTE, "ONE_MINUTE"));
+
+        HigherTimeframe hourly = HigherTimeframe.of(quotes, "1h");
+        assertEquals(0, hourly.higherIndex(0));
+        assertEquals(0, hourly.higherIndex(1));
+        assertEquals(0, hourly.higherIndex(2));
+        assertEquals(2, hourly.getQuotes().size());
+    }
+
+    @Test
+    void barsBeforeTheFirstClosedHourHaveNoValue() {
+        List<Quote> quotes = RandomQuotes.walk(120, 3);
+        double[] projected = HigherTimeframe.of(quotes, "1h").project(quotes.stream().map(q -> 1.0)
+                .mapToDouble(Double::doubleValue).toArray());
+
+        for (int i = 0; i < 59; i++) {
+            assertTrue(Double.isNaN(projected[i]), "bar " + i);
+        }
+        assertEquals(1.0, projected[59]);
+    }
+
+    @Test
+    void intervalsAreReadAsExchangeNamesOrTimeframes() {
+        assertEquals(MINUTE, HigherTimeframe.intervalMillis("ONE_MINUTE"));
+        assertEquals(4 * HOUR, HigherTimeframe.intervalMillis("FOUR_HOURLY"));
+        assertEquals(15 * MINUTE, HigherTimeframe.intervalMillis("15m"));
+        assertEquals(-1, HigherTimeframe.intervalMillis("MONTHLY"));
+        assertEquals(-1, HigherTimeframe.intervalMillis("1M"));
+        assertEquals(-1, HigherTimeframe.intervalMillis(null));
+    }
+
+    private static double[] hourlyEma(List<Quote> quotes) {
+        return HigherTimeframe.of(quotes, "1h").project(quotes, "ema:5", higherQuotes -> {
+            EMA ema = new EMA(5);
+            ema.calculate(higherQuotes);
+            return ema.getValues();
+        });
+    }
+
+    // Hours with a bar, ended by the time given
+    private static int hoursClosedBy(List<Quote> quotes, long time) {
+        return (int) quotes.stream()
+                .mapToLong(q -> Math.floorDiv(q.getTimestamp().getTime(), HOUR))
+                .distinct()
+                .filter(hour -> (hour + 1) * HOUR <= time)
+                .count();
+    }
+
+    private static Quote quote(long time, String marketInterval) {
+        return Quote.builder()
+                .timestamp(new Timestamp(time))
+                .open(1)
+                .high(1)
+                .low(1)
+                .close(1)
+                .volume(1)
+                .symbol("TEST")
+                .marketInterval(marketInterval)
+                .build();
+    }
+}
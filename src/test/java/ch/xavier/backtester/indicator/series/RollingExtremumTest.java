@@ -0,0 +1,68 @@
+package ch.xavier.backtester.indicator.series;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RollingExtremumTest {
+
+    @Test
+    void extremaMatchAScanOfTheIndicesAddedInTheWindow() {
+        Random random = new Random(1);
+        // Rounded values for ties, some indices skipped
+        double[] values = new double[5_000];
+        boolean[] added = new boolean[values.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = Math.round(random.nextGaussian() * 5);
+            added[i] = random.nextInt(4) != 0;
+        }
+
+        for (int length : new int[]{1, 2, 5, 50}) {
+            RollingExtremum max = RollingExtremum.max(length);
+            RollingExtremum min = RollingExtremum.min(length);
+
+            for (int i = 0; i < values.length; i++) {
+                if (!added[i]) continue;
+                max.add(i, values[i]);
+                min.add(i, values[i]);
+
+                int maxIndex = -1;
+                int minIndex = -1;
+                for (int j = Math.max(0, i - length + 1); j <= i; j++) {
+                    if (!added[j]) continue;
+                    if (maxIndex == -1 || values[j] >= values[maxIndex]) maxIndex = j;
+                    if (minIndex == -1 || values[j] <= values[minIndex]) minIndex = j;
+                }
+
+                String at = "length " + length + " at " + i;
+                assertEquals(values[maxIndex], max.get(), at);
+                assertEquals(maxIndex, max.getIndex(), at);
+                assertEquals(values[minIndex], min.get(), at);
+                assertEquals(minIndex, min.getIndex(), at);
+            }
+        }
+    }
+
+    @Test
+    void clearedExtremaStartOver() {
+        RollingExtremum max = RollingExtremum.max(3);
+        max.add(0, 10);
+        max.add(1, 5);
+        max.clear();
+        assertTrue(Double.isNaN(max.get()));
+        assertEquals(-1, max.getIndex());
+
+        max.add(2, 1);
+        assertEquals(1, max.get());
+        assertEquals(2, max.getIndex());
+    }
+
+    @Test
+    void lengthsMustBePositive() {
+        assertThrows(IllegalArgumentException.class, () -> RollingExtremum.min(0));
+    }
+}
@@ -0,0 +1,81 @@
+package ch.xavier.backtester.indicator.series;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RollingOrderStatisticsTest {
+
+    @Test
+    void slidingWindowsMatchTheirSortedValues() {
+        for (double[] series : new double[][]{series(2_000, 1, false), series(2_000, 2, true)}) {
+            for (int length : new int[]{1, 2, 7, 20, 51}) {
+                RollingOrderStatistics window = new RollingOrderStatistics(series);
+
+                for (int i = 0; i < series.length; i++) {
+                    window.add(i);
+                    if (i >= length) {
+                        window.remove(i - length);
+                    }
+                    if (i < length - 1) continue;
+
+                    double[] sorted = Arrays.copyOfRange(series, i - length + 1, i + 1);
+                    Arrays.sort(sorted);
+                    String at = "length " + length + " at " + i;
+
+                    assertEquals(length, window.size(), at);
+                    for (int k = 0; k < length; k++) {
+                        assertEquals(sorted[k], window.kth(k), at + ", k " + k);
+                    }
+                    for (double q : new double[]{0, 0.1, 0.25, 0.5, 0.9, 1}) {
+                        assertEquals(quantile(sorted, q), window.quantile(q), at + ", quantile " + q);
+                    }
+                    assertEquals(quantile(sorted, 0.5), window.median(), at);
+                    // Even windows average their two middle deviations, where the quantile interpolates them
+                    assertEquals(medianAbsoluteDeviation(sorted), window.medianAbsoluteDeviation(), 1e-12, at);
+                }
+            }
+        }
+    }
+
+    @Test
+    void windowsOfEqualValuesHaveNoDeviation() {
+        RollingOrderStatistics window = new RollingOrderStatistics(new double[]{3, 3, 3, 3});
+        assertEquals(0, window.medianAbsoluteDeviation());
+
+        for (int i = 0; i < 4; i++) {
+            window.add(i);
+        }
+        assertEquals(3, window.median());
+        assertEquals(0, window.medianAbsoluteDeviation());
+    }
+
+    // Gaussian values, rounded to a few distinct values when duplicated
+    static double[] series(int size, long seed, boolean duplicated) {
+        Random random = new Random(seed);
+        double[] series = new double[size];
+        for (int i = 0; i < size; i++) {
+            double value = random.nextGaussian() * 3;
+            series[i] = duplicated ? Math.round(value) : value;
+        }
+        return series;
+    }
+
+    static double quantile(double[] sorted, double q) {
+        double h = (sorted.length - 1) * q;
+        int lower = (int) Math.floor(h);
+        if (lower + 1 >= sorted.length) {
+            return sorted[lower];
+        }
+        return sorted[lower] + (h - lower) * (sorted[lower + 1] - sorted[lower]);
+    }
+
+    static double medianAbsoluteDeviation(double[] sorted) {
+        double median = quantile(sorted, 0.5);
+        double[] deviations = Arrays.stream(sorted).map(value -> Math.abs(value - median)).sorted().toArray();
+        return quantile(deviations, 0.5);
+    }
+}
@@ -0,0 +1,87 @@
+package ch.xavier.backtester.indicator.series;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SparseTableTest {
+
+    @Test
+    void rangeExtremaMatchAScanOfTheRange() {
+        Random random = new Random(1);
+
+        for (int size : new int[]{1, 2, 3, 7, 64, 1_000}) {
+            // Rounded values for ties
+            double[] values = values(random, size);
+            SparseTable max = SparseTable.max(values);
+            SparseTable min = SparseTable.min(values);
+
+            for (int q = 0; q < 2_000; q++) {
+                int from = random.nextInt(size);
+                int to = from + random.nextInt(size - from);
+
+                int maxIndex = from;
+                int minIndex = from;
+                for (int i = from + 1; i <= to; i++) {
+                    if (values[i] > values[maxIndex]) maxIndex = i;
+                    if (values[i] < values[minIndex]) minIndex = i;
+                }
+
+                String at = size + " values from " + from + " to " + to;
+                assertEquals(maxIndex, max.indexOf(from, to), at);
+                assertEquals(values[maxIndex], max.get(from, to), at);
+                assertEquals(minIndex, min.indexOf(from, to), at);
+                assertEquals(values[minIndex], min.get(from, to), at);
+            }
+        }
+    }
+
+    @Test
+    void firstReachingMatchesAScanFromTheIndex() {
+        Random random = new Random(2);
+
+        for (int size : new int[]{1, 2, 3, 7, 64, 1_000}) {
+            double[] values = values(random, size);
+            SparseTable max = SparseTable.max(values);
+            SparseTable min = SparseTable.min(values);
+
+            for (int q = 0; q < 2_000; q++) {
+                int from = random.nextInt(size + 1);
+                // Values of the series themselves, so thresholds are reached exactly, and some out of its range
+                double threshold = random.nextInt(4) == 0 ? random.nextGaussian() * 20 :
+                        values[random.nextInt(size)];
+
+                int maxIndex = -1;
+                int minIndex = -1;
+                for (int i = size - 1; i >= from; i--) {
+                    if (values[i] >= threshold) maxIndex = i;
+                    if (values[i] <= threshold) minIndex = i;
+                }
+
+                String at = size + " values from " + from + " reaching " + threshold;
+                assertEquals(maxIndex, max.firstReaching(from, threshold), at);
+                assertEquals(minIndex, min.firstReaching(from, threshold), at);
+            }
+        }
+    }
+
+    @Test
+    void nanThresholdsAndEmptySeriesAreNeverReached() {
+        double[] values = values(new Random(3), 100);
+
+        assertEquals(-1, SparseTable.max(values).firstReaching(0, Double.NaN));
+        assertEquals(-1, SparseTable.min(values).firstReaching(50, Double.NaN));
+        assertEquals(-1, SparseTable.max(new double[0]).firstReaching(0, 1));
+        assertEquals(-1, SparseTable.min(new double[0]).firstReaching(0, 1));
+    }
+
+    private static double[] values(Random random, int size) {
+        double[] values = new double[size];
+        for (int i = 0; i < size; i++) {
+            values[i] = Math.round(random.nextGaussian() * 5);
+        }
+        return values;
+    }
+}
@@ -0,0 +1,77 @@
+package ch.xavier.backtester.indicator.volatility;
+
+import ch.xavier.backtester.indicator.series.Column;
+import ch.xavier.backtester.quote.Quote;
+import ch.xavier.backtester.quote.RandomQuotes;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ATRTest {
+    private static final double TOLERANCE = 1e-9;
+
+    @Test
+    void simpleAverageMatchesTheSumOfTheTrueRangesOfEachWindow() {
+        List<Quote> quotes = RandomQuotes.walk(3_000, 1);
+
+        for (int length : new int[]{1, 7, 14, 100}) {
+            Column atr = ATR.series(quotes, length, ATR.Smoothing.SMA);
+            for (int i = 0; i < quotes.size(); i++) {
+                assertEquals(windowAverage(quotes, i, length), atr.get(i), relative(atr.get(i)),
+                        "length " + length + " at " + i);
+            }
+        }
+    }
+
+    @Test
+    void wilderSmoothingIsSeededWithTheFirstWindowAverage() {
+        List<Quote> quotes = RandomQuotes.walk(3_000, 2);
+        int length = 14;
+
+        Column atr = ATR.series(quotes, length, ATR.Smoothing.RMA);
+        double expected = 0;
+        for (int i = 0; i < quotes.size(); i++) {
+            if (i == length) {
+                expected = windowAverage(quotes, i, length);
+            } else if (i > length) {
+                expected = (expected * (length - 1) + trueRange(quotes, i)) / length;
+            }
+            assertEquals(expected, atr.get(i), relative(expected), "at " + i);
+        }
+    }
+
+    @Test
+    void seriesShorterThanTheLengthHaveNoValue() {
+        List<Quote> quotes = RandomQuotes.walk(10, 3);
+
+        Column atr = ATR.series(quotes, 10, ATR.Smoothing.RMA);
+        for (int i = 0; i < quotes.size(); i++) {
+            assertEquals(0, atr.get(i));
+        }
+    }
+
+    // ATR as every strategy computed it before the series were shared: 0 before the first full window
+    static double windowAverage(List<Quote> quotes, int index, int length) {
+        if (index < length) return 0;
+
+        double sum = 0;
+        for (int i = index - length + 1; i <= index; i++) {
+            sum += trueRange(quotes, i);
+        }
+        return sum / length;
+    }
+
+    private static double trueRange(List<Quote> quotes, int index) {
+        Quote current = quotes.get(index);
+        Quote previous = quotes.get(index - 1);
+        return Math.max(current.getHigh() - current.getLow(), Math.max(Math.abs(current.getHigh() - previous.getClose()),
+                Math.abs(current.getLow() - previous.getClose())));
+    }
+
+    // The rolling sum drifts from the sum of each window by a few ulps
+    private static double relative(double value) {
+        return Math.abs(value) * TOLERANCE;
+    }
+}
@@ -0,0 +1,104 @@
+package ch.xavier.backtester.marketphase;
+
+import ch.xavier.backtester.indicator.misc.HurstExponent;
+import ch.xavier.backtester.indicator.series.Column;
+import ch.xavier.backtester.marketphase.MarketPhaseClassifier.MarketPhase;
+import ch.xavier.backtester.quote.Quote;
+import ch.xavier.backtester.quote.RandomQuotes;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HurstClassifierTest {
+    private static final int PERIOD = 128;
+    private static final double THRESHOLD = 0.6;
+
+    @Test
+    void trendingWindowsFollowThePriceChangeAndOthersAreSideways() {
+        List<Quote> quotes = RandomQuotes.walk(5_000, 1);
+        HurstClassifier classifier = new HurstClassifier(PERIOD, THRESHOLD);
+        Column hurst = HurstExponent.series(quotes, PERIOD);
+
+        for (int i = 0; i < quotes.size(); i++) {
+            MarketPhase expected;
+            if (i < PERIOD) {
+                expected = MarketPhase.UNKNOWN;
+            } else if (hurst.get(i) < THRESHOLD) {
+                expected = MarketPhase.SIDEWAYS;
+            } else {
+                expected = quotes.get(i).getClose() >= quotes.get(i - PERIOD).getClose()
+                        ? MarketPhase.BULLISH : MarketPhase.BEARISH;
+            }
+            assertEquals(expected, classifier.classify(quotes, i), "at " + i);
+        }
+    }
+
+    @Test
+    void persistentRisesAreMostlyBullish() {
+        assertMostly(MarketPhase.BULLISH, persistentReturns(5_000, 2, 2e-3));
+    }
+
+    @Test
+    void persistentFallsAreMostlyBearish() {
+        assertMostly(MarketPhase.BEARISH, persistentReturns(5_000, 3, -2e-3));
+    }
+
+    @Test
+    void meanRevertingPricesAreMostlySideways() {
+        Random random = new Random(4);
+        double[] logCloses = new double[5_000];
+        for (int i = 1; i < logCloses.length; i++) {
+            logCloses[i] = 0.5 * logCloses[i - 1] + random.nextGaussian() * 0.002;
+        }
+        assertMostly(MarketPhase.SIDEWAYS, quotes(logCloses));
+    }
+
+    private static void assertMostly(MarketPhase phase, List<Quote> quotes) {
+        HurstClassifier classifier = new HurstClassifier(PERIOD, THRESHOLD);
+        int matching = 0;
+        for (int i = PERIOD; i < quotes.size(); i++) {
+            if (classifier.classify(quotes, i) == phase) {
+                matching++;
+            }
+        }
+        double share = (double) matching / (quotes.size() - PERIOD);
+        assertTrue(share > 0.9, phase + " for " + share + " of the bars");
+    }
+
+    // Returns following the previous ones, around a drift
+    private static List<Quote> persistentReturns(int size, long seed, double drift) {
+        Random random = new Random(seed);
+        double[] logCloses = new double[size];
+        double logReturn = 0;
+        for (int i = 1; i < size; i++) {
+            logReturn = 0.9 * logReturn + random.nextGaussian() * 0.001;
+            logCloses[i] = logCloses[i - 1] + drift + logReturn;
+        }
+        return quotes(logCloses);
+    }
+
+    private static List<Quote> quotes(double[] logCloses) {
+        List<Quote> quotes = new ArrayList<>(logCloses.length);
+        for (int i = 0; i < logCloses.length; i++) {
+            double close = 100 * Math.exp(logCloses[i]);
+            quotes.add(Quote.builder()
+                    .timestamp(new Timestamp(RandomQuotes.START + TimeUnit.MINUTES.toMillis(i)))
+                    .open(close)
+                    .high(close)
+                    .low(close)
+                    .close(close)
+                    .volume(1)
+                    .symbol("TEST")
+                    .marketInterval("ONE_MINUTE")
+                    .build());
+        }
+        return quotes;
+    }
+}
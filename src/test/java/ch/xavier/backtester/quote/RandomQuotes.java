@@ -0,0 +1,51 @@
+package ch.xavier.backtester.quote;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Random walks of quotes for tests, reproducible from their seed. Prices stay low enough for the fixed fees not to
+ * deplete the funds on the first entries.
+ */
+public final class RandomQuotes {
+    public static final long START = TimeUnit.DAYS.toMillis(19_000); // 2022-01-08, a Saturday
+
+    private RandomQuotes() {
+    }
+
+    /**
+     * One minute quotes
+     */
+    public static List<Quote> walk(int size, long seed) {
+        return walk(size, seed, TimeUnit.MINUTES.toMillis(1));
+    }
+
+    /**
+     * Quotes a step apart
+     */
+    public static List<Quote> walk(int size, long seed, long step) {
+        Random random = new Random(seed);
+        List<Quote> walk = new ArrayList<>(size);
+        double price = 0.01;
+
+        for (int i = 0; i < size; i++) {
+            double open = price;
+            double close = open * (1 + random.nextGaussian() * 0.002);
+            walk.add(Quote.builder()
+                    .timestamp(new Timestamp(START + step * i))
+                    .open(open)
+                    .high(Math.max(open, close) * (1 + Math.abs(random.nextGaussian()) * 0.001))
+                    .low(Math.min(open, close) * (1 - Math.abs(random.nextGaussian()) * 0.001))
+                    .close(close)
+                    .volume(1000 + random.nextInt(1000))
+                    .symbol("TEST")
+                    .marketInterval("ONE_MINUTE")
+                    .build());
+            price = close;
+        }
+        return walk;
+    }
+}
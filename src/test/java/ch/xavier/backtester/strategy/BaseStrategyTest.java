@@ -0,0 +1,42 @@
+package ch.xavier.backtester.strategy;
+
+import ch.xavier.backtester.backtesting.TradingParameters;
+import ch.xavier.backtester.indicator.series.Column;
+import ch.xavier.backtester.indicator.volatility.ATR;
+import ch.xavier.backtester.quote.Quote;
+import ch.xavier.backtester.quote.RandomQuotes;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class BaseStrategyTest {
+
+    @Test
+    void stopLossesUseTheAtrSmoothingOfTheTradingParameters() {
+        List<Quote> quotes = RandomQuotes.walk(1_000, 1);
+
+        for (ATR.Smoothing smoothing : ATR.Smoothing.values()) {
+            TradingParameters parameters = TradingParameters.builder().atrSmoothing(smoothing).build();
+            TradingStrategy strategy = StrategiesFactory.getStrategy("SMACrossover", parameters, Map.of());
+            StrategyState state = strategy.createState();
+            Column atr = ATR.series(quotes, parameters.getAtrLength(), smoothing);
+
+            for (int i = parameters.getAtrLength(); i < quotes.size(); i++) {
+                double close = quotes.get(i).getClose();
+                double expected = Math.max(close - atr.get(i) * parameters.getAtrMultiplier(),
+                        close * (1 - parameters.getMaxStopLoss()));
+                assertEquals(expected, strategy.calculateStopLossPrice(true, quotes, i, state), smoothing + " at " + i);
+            }
+        }
+    }
+
+    @Test
+    void atrSmoothingDefaultsToASimpleAverage() {
+        assertEquals(ATR.Smoothing.SMA, TradingParameters.builder().build().getAtrSmoothing());
+        assertEquals(ATR.Smoothing.RMA, TradingParameters.builder().build().toBuilder()
+                .atrSmoothing(ATR.Smoothing.RMA).build().getAtrSmoothing());
+    }
+}
@@ -0,0 +1,140 @@
+package ch.xavier.backtester.strategy;
+
+import ch.xavier.backtester.backtesting.TradingParameters;
+import ch.xavier.backtester.strategy.concrete.SMACrossoverStrategy;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ParameterGridTest {
+    private static final TradingParameters PARAMETERS = TradingParameters.builder().build();
+
+    private static final Map<String, List<Object>> GRID = Map.of(
+            "slowPeriod", List.of(20, 30, 40),
+            "riskRewardRatio", List.of(1.5, 2.0),
+            "fastPeriod", List.of(5, 10),
+            "useTrailingSL", List.of(false, true, false));
+
+    @Test
+    void combinationsDecodeInTheSchemaOrderWithTheLastParameterVaryingFastest() {
+        ParameterGrid<?> grid = ParameterGrid.compile(SMACrossoverStrategy.PARAMETERS, GRID);
+        assertEquals(3 * 2 * 2 * 3, grid.size());
+
+        // useTrailingSL, riskRewardRatio, fastPeriod, slowPeriod
+        assertArrayEquals(new int[]{0, 0, 0, 0}, grid.indices(0));
+        assertArrayEquals(new int[]{0, 0, 0, 1}, grid.indices(1));
+        assertArrayEquals(new int[]{0, 0, 1, 0}, grid.indices(3));
+        assertArrayEquals(new int[]{2, 1, 1, 2}, grid.indices(grid.size() - 1));
+
+        Set<List<Object>> combinations = new HashSet<>();
+        for (int combination = 0; combination < grid.size(); combination++) {
+            Map<String, Object> parameters = grid.parameters(combination);
+            assertEquals(List.of("useTrailingSL", "riskRewardRatio", "fastPeriod", "slowPeriod"),
+                    List.copyOf(parameters.keySet()));
+
+            int[] indices = grid.indices(combination);
+            assertEquals(GRID.get("slowPeriod").get(indices[3]), parameters.get("slowPeriod"));
+            combinations.add(List.of(indices[0], indices[1], indices[2], indices[3]));
+        }
+        assertEquals(grid.size(), combinations.size());
+    }
+
+    @Test
+    void gridsDontDependOnTheOrderOfTheirMap() {
+        Map<String, List<Object>> reversed = new LinkedHashMap<>();
+        List.of("useTrailingSL", "fastPeriod", "riskRewardRatio", "slowPeriod")
+                .forEach(name -> reversed.put(name, GRID.get(name)));
+
+        ParameterGrid<?> grid = ParameterGrid.compile(SMACrossoverStrategy.PARAMETERS, GRID);
+        ParameterGrid<?> reversedGrid = ParameterGrid.compile(SMACrossoverStrategy.PARAMETERS, reversed);
+        for (int combination = 0; combination < grid.size(); combination++) {
+            assertEquals(grid.parameters(combination), reversedGrid.parameters(combination));
+        }
+    }
+
+    @Test
+    void boundCombinationsMatchTheirParametersBoundByName() {
+        ParameterGrid<?> grid = ParameterGrid.compile(SMACrossoverStrategy.PARAMETERS, GRID);
+
+        for (int combination = 0; combination < grid.size(); combination++) {
+            SMACrossoverStrategy bound = (SMACrossoverStrategy) StrategiesFactory.getStrategy("SMACrossover",
+                    PARAMETERS, grid, grid.indices(combination));
+            SMACrossoverStrategy byName = (SMACrossoverStrategy) StrategiesFactory.getStrategy("SMACrossover",
+                    PARAMETERS, new HashMap<>(grid.parameters(combination)));
+
+            assertEquals(byName.getFastPeriod(), bound.getFastPeriod());
+            assertEquals(byName.getSlowPeriod(), bound.getSlowPeriod());
+            assertEquals(byName.riskRewardRatio, bound.riskRewardRatio);
+            assertEquals(byName.useTrailingSL, bound.useTrailingSL);
+        }
+    }
+
+    @Test
+    void combinationsSplitIntoTheirEntryAndExitParameters() {
+        ParameterGrid<?> grid = ParameterGrid.compile(SMACrossoverStrategy.PARAMETERS, GRID);
+        assertEquals(2 * 3, grid.entrySize());
+        assertEquals(3 * 2, grid.exitSize());
+
+        Set<Integer> combinations = new HashSet<>();
+        for (int entry = 0; entry < grid.entrySize(); entry++) {
+            Map<String, Object> firstOfEntry = grid.parameters(grid.combination(entry, 0));
+
+            for (int exit = 0; exit < grid.exitSize(); exit++) {
+                Map<String, Object> parameters = grid.parameters(grid.combination(entry, exit));
+                assertEquals(firstOfEntry.get("fastPeriod"), parameters.get("fastPeriod"));
+                assertEquals(firstOfEntry.get("slowPeriod"), parameters.get("slowPeriod"));
+                combinations.add(grid.combination(entry, exit));
+            }
+        }
+        assertEquals(grid.size(), combinations.size());
+
+        for (int exit = 0; exit < grid.exitSize(); exit++) {
+            Map<String, Object> firstOfExit = grid.parameters(grid.combination(0, exit));
+            for (int entry = 0; entry < grid.entrySize(); entry++) {
+                Map<String, Object> parameters = grid.parameters(grid.combination(entry, exit));
+                assertEquals(firstOfExit.get("useTrailingSL"), parameters.get("useTrailingSL"));
+                assertEquals(firstOfExit.get("riskRewardRatio"), parameters.get("riskRewardRatio"));
+            }
+        }
+    }
+
+    @Test
+    void invalidGridsFailWhenCompiled() {
+        assertThrows(IllegalArgumentException.class, () -> ParameterGrid.compile(SMACrossoverStrategy.PARAMETERS,
+                Map.of("fastPeriod", List.of())));
+        assertThrows(IllegalArgumentException.class, () -> ParameterGrid.compile(SMACrossoverStrategy.PARAMETERS,
+                Map.of("useTrailingSL", List.of(true, "false"))));
+        assertThrows(IllegalArgumentException.class, () -> ParameterGrid.compile(SMACrossoverStrategy.PARAMETERS,
+                Map.of("fastPeriod", List.of(5), "unknown", List.of(1))));
+
+        List<Object> manyValues = IntStream.range(0, 2_000).boxed().map(Object.class::cast).toList();
+        assertThrows(IllegalArgumentException.class, () -> ParameterGrid.compile(SMACrossoverStrategy.PARAMETERS,
+                Map.of("fastPeriod", manyValues, "slowPeriod", manyValues, "atrLength", manyValues)));
+    }
+
+    @Test
+    void everyFactoryGridCompilesAgainstItsSchema() {
+        for (String name : List.of("VwapStrategy", "MacdDivergenceStrategy", "PullbackStrategy",
+                "DivergenceStrategy", "DoubleTapStrategy", "VortexStrategy", "NnfxStrategy")) {
+            assertDoesNotThrow(() -> StrategiesFactory.compileParametersGrid(name,
+                    StrategiesFactory.getParametersGrid(name)), name);
+        }
+
+        Map<String, List<Object>> vortexGrid = StrategiesFactory.getParametersGrid("VortexStrategy");
+        for (String name : List.of("useRiskBasedPositionSizing", "useTrailingSL")) {
+            assertTrue(vortexGrid.get(name).stream().allMatch(Boolean.class::isInstance), name);
+        }
+    }
+}
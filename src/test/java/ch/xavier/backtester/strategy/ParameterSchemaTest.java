@@ -0,0 +1,88 @@
+package ch.xavier.backtester.strategy;
+
+import ch.xavier.backtester.backtesting.TradingParameters;
+import ch.xavier.backtester.strategy.concrete.DoubleTapStrategy;
+import ch.xavier.backtester.strategy.concrete.SMACrossoverStrategy;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ParameterSchemaTest {
+    private static final TradingParameters PARAMETERS = TradingParameters.builder().build();
+
+    @Test
+    void booleansAreBoundAsTheyAre() {
+        BaseStrategy trailing = strategy("SMACrossover", Map.of("useTrailingSL", true,
+                "useRiskBasedPositionSizing", true));
+        assertTrue(trailing.useTrailingSL);
+        assertTrue(trailing.useRiskBasedPositionSizing);
+        assertFalse(trailing.hasFixedExits());
+
+        BaseStrategy fixed = strategy("SMACrossover", Map.of("useTrailingSL", false,
+                "useRiskBasedPositionSizing", false));
+        assertFalse(fixed.useTrailingSL);
+        assertFalse(fixed.useRiskBasedPositionSizing);
+        assertTrue(fixed.hasFixedExits());
+    }
+
+    @Test
+    void valuesOfTheWrongTypeOrUnknownNamesAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> strategy("SMACrossover", Map.of("useTrailingSL", "true")));
+        assertThrows(IllegalArgumentException.class, () -> strategy("SMACrossover", Map.of("riskRewardRatio", 2)));
+        assertThrows(IllegalArgumentException.class, () -> strategy("SMACrossover", Map.of("fastPeriod", 10.0)));
+        assertThrows(IllegalArgumentException.class, () -> strategy("SMACrossover", Map.of("fastPeriods", 10)));
+
+        Map<String, Object> nullPeriod = new HashMap<>();
+        nullPeriod.put("fastPeriod", null);
+        assertThrows(IllegalArgumentException.class, () -> strategy("SMACrossover", nullPeriod));
+    }
+
+    @Test
+    void objectParametersAcceptNull() {
+        Map<String, Object> values = new HashMap<>();
+        values.put("startTime", null);
+        values.put("endTime", LocalTime.NOON);
+
+        DoubleTapStrategy doubleTap = (DoubleTapStrategy) strategy("DoubleTapStrategy", values);
+        assertNull(doubleTap.getStartTime());
+        assertEquals(LocalTime.NOON, doubleTap.getEndTime());
+    }
+
+    @Test
+    void doubleTapBindsTheBaseParameters() {
+        DoubleTapStrategy doubleTap = (DoubleTapStrategy) strategy("DoubleTapStrategy", Map.of(
+                "riskRewardRatio", 3.5, "useTrailingSL", true, "atrLength", 21, "pivotLength", 30));
+
+        assertEquals(3.5, ((BaseStrategy) doubleTap).riskRewardRatio);
+        assertTrue(((BaseStrategy) doubleTap).useTrailingSL);
+        assertEquals(30, doubleTap.getPivotLength());
+
+        // Its own ATR length hides the base one, only driving its trailing stops
+        assertEquals(21, doubleTap.getAtrLength());
+        assertEquals(PARAMETERS.getAtrLength(), ((BaseStrategy) doubleTap).atrLength);
+    }
+
+    @Test
+    void redeclaredParametersReplaceTheParentsOnes() {
+        assertTrue(BaseStrategy.PARAMETERS.isExitParameter("atrLength"));
+        assertTrue(SMACrossoverStrategy.PARAMETERS.isExitParameter("atrLength"));
+        assertFalse(DoubleTapStrategy.PARAMETERS.isExitParameter("atrLength"));
+        assertTrue(DoubleTapStrategy.PARAMETERS.isExitParameter("riskRewardRatio"));
+        assertEquals(List.of("useTrailingSL", "riskRewardRatio", "atrLength", "atrSmoothing",
+                        "useRiskBasedPositionSizing", "fastPeriod", "slowPeriod"),
+                List.copyOf(SMACrossoverStrategy.PARAMETERS.getNames()));
+    }
+
+    private static BaseStrategy strategy(String name, Map<String, Object> values) {
+        return (BaseStrategy) StrategiesFactory.getStrategy(name, PARAMETERS, values);
+    }
+}
@@ -0,0 +1,83 @@
+package ch.xavier.backtester.strategy;
+
+import ch.xavier.backtester.backtesting.TradingParameters;
+import ch.xavier.backtester.quote.Quote;
+import ch.xavier.backtester.quote.RandomQuotes;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SignalVectorTest {
+    private static final List<Quote> QUOTES = RandomQuotes.walk(20_000, 1);
+    private static final TradingParameters PARAMETERS = TradingParameters.builder().build();
+
+    private static final List<Map.Entry<String, Map<String, Object>>> STRATEGIES = List.of(
+            Map.entry("SMACrossover", Map.of("fastPeriod", 10, "slowPeriod", 30)),
+            Map.entry("SMACrossover", Map.of("fastPeriod", 5, "slowPeriod", 50, "riskRewardRatio", 3.0)),
+            Map.entry("VortexStrategy", Map.of()),
+            Map.entry("DivergenceStrategy", Map.of()),
+            Map.entry("DivergenceStrategy", Map.of("requireAllStochastics", true, "tradeLongOnly", true)),
+            Map.entry("PullbackStrategy", Map.of()),
+            Map.entry("MacdDivergenceStrategy", Map.of()),
+            Map.entry("VwapStrategy", Map.of()),
+            Map.entry("VwapStrategy", Map.of("lookbackPeriod", 10, "useTrailingSL", true)),
+            Map.entry("NnfxStrategy", Map.of()),
+            Map.entry("NnfxStrategy", Map.of("useTtmSqueeze", true, "useVortex", true, "requireCrossing", true)));
+
+    @Test
+    void vectorsMatchTheSignalsOfBarsAskedOneByOne() {
+        for (Map.Entry<String, Map<String, Object>> strategy : STRATEGIES) {
+            TradingStrategy vectorized = strategy(strategy);
+            assertTrue(vectorized.hasPathIndependentSignals(), strategy.getKey());
+            SignalVector vector = vectorized.generateSignals(QUOTES, vectorized.createState());
+
+            assertTrue(vector.signalIndices().length > 0, strategy + " never signals");
+            assertMatchesBarByBar(strategy, vector);
+        }
+    }
+
+    @Test
+    void replayedEntriesMatchTheSignalsOfBarsAskedOneByOne() {
+        for (Map.Entry<String, Map<String, Object>> strategy : STRATEGIES) {
+            TradingStrategy entries = strategy(strategy);
+            byte[] entrySignals = entries.generateSignals(QUOTES, entries.createState()).getSignals();
+
+            TradingStrategy replayed = strategy(strategy);
+            SignalVector vector = replayed.generateSignals(QUOTES, replayed.createState(), entrySignals);
+            assertMatchesBarByBar(strategy, vector);
+
+            SignalVector explicitReplay = SignalVector.replay(replayed, QUOTES, replayed.createState(), entrySignals);
+            assertMatchesBarByBar(strategy, explicitReplay);
+        }
+    }
+
+    // Asks a random half of the bars only, as the engine skips the bars where it holds its positions
+    private static void assertMatchesBarByBar(Map.Entry<String, Map<String, Object>> settings, SignalVector vector) {
+        TradingStrategy strategy = strategy(settings);
+        StrategyState state = strategy.createState();
+        Random random = new Random(settings.hashCode());
+
+        for (int i = Math.max(1, strategy.getWarmUp()); i < QUOTES.size(); i++) {
+            if (random.nextBoolean()) continue;
+
+            int signal = Integer.signum(strategy.generateSignal(QUOTES, i, state));
+            String at = settings + " at " + i;
+            assertEquals(signal, vector.getSignals()[i], at);
+            if (signal != 0) {
+                assertEquals(strategy.calculateStopLossPrice(signal > 0, QUOTES, i, state),
+                        vector.getStopLossPrices()[i], at);
+                assertEquals(strategy.calculateTakeProfitPrice(signal > 0, QUOTES, i, state),
+                        vector.getTakeProfitPrices()[i], at);
+            }
+        }
+    }
+
+    private static TradingStrategy strategy(Map.Entry<String, Map<String, Object>> settings) {
+        return StrategiesFactory.getStrategy(settings.getKey(), PARAMETERS, settings.getValue());
+    }
+}
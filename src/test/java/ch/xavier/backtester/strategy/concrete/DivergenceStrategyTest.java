@@ -0,0 +1,161 @@
+package ch.xavier.backtester.strategy.concrete;
+
+import ch.xavier.backtester.backtesting.TradingParameters;
+import ch.xavier.backtester.indicator.misc.Stochastic;
+import ch.xavier.backtester.indicator.series.Column;
+import ch.xavier.backtester.quote.Quote;
+import ch.xavier.backtester.quote.RandomQuotes;
+import ch.xavier.backtester.strategy.StrategiesFactory;
+import ch.xavier.backtester.strategy.StrategyState;
+import ch.xavier.backtester.strategy.TradingStrategy;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DivergenceStrategyTest {
+    private static final List<Quote> QUOTES = RandomQuotes.walk(20_000, 1);
+    private static final TradingParameters PARAMETERS = TradingParameters.builder().build();
+
+    @Test
+    void signalsMatchStagesFoundByRescanningTheLookback() {
+        int[] longs = new int[1];
+        int[] shorts = new int[1];
+        for (int lookbackPeriod : new int[]{5, 20, 80}) {
+            for (double[] thresholds : new double[][]{{20, 80}, {15, 85}, {30, 70}}) {
+                Map<String, Object> parameters = Map.of("lookbackPeriod", lookbackPeriod,
+                        "oversoldThreshold", thresholds[0], "overboughtThreshold", thresholds[1],
+                        "tradeLongOnly", false);
+                TradingStrategy strategy = StrategiesFactory.getStrategy("DivergenceStrategy", PARAMETERS,
+                        parameters);
+                StrategyState state = strategy.createState();
+                RescanningDivergence reference = new RescanningDivergence(lookbackPeriod, thresholds[0],
+                        thresholds[1]);
+
+                for (int i = 0; i < QUOTES.size(); i++) {
+                    int signal = strategy.generateSignal(QUOTES, i, state);
+                    String at = parameters + " at " + i;
+                    assertEquals(reference.generateSignal(i), signal, at);
+
+                    if (signal != 0) {
+                        assertEquals(reference.stopLoss, strategy.calculateStopLossPrice(signal > 0, QUOTES, i, state),
+                                at);
+                        assertEquals(reference.target, strategy.calculateTakeProfitPrice(signal > 0, QUOTES, i,
+                                state), at);
+                        (signal > 0 ? longs : shorts)[0]++;
+                    }
+                }
+            }
+        }
+        assertTrue(longs[0] > 0 && shorts[0] > 0, longs[0] + " longs and " + shorts[0] + " shorts");
+    }
+
+    /**
+     * Stages before the precomputed masks and extremes: every lookback rescanned on every bar asked
+     */
+    private static class RescanningDivergence {
+        private final int lookbackPeriod;
+        private final double oversoldThreshold;
+        private final double overboughtThreshold;
+        private final Column[] stochastics;
+        private final Column stochD;
+        private double stopLoss;
+        private double target;
+
+        RescanningDivergence(int lookbackPeriod, double oversoldThreshold, double overboughtThreshold) {
+            this.lookbackPeriod = lookbackPeriod;
+            this.oversoldThreshold = oversoldThreshold;
+            this.overboughtThreshold = overboughtThreshold;
+
+            Stochastic[] stochastics = {new Stochastic(9, 3), new Stochastic(14, 3), new Stochastic(40, 4),
+                    new Stochastic(60, 10, 1, true)};
+            this.stochastics = new Column[stochastics.length];
+            for (int i = 0; i < stochastics.length; i++) {
+                stochastics[i].calculate(QUOTES);
+                this.stochastics[i] = stochastics[i].getD();
+            }
+            this.stochD = this.stochastics[0];
+        }
+
+        int generateSignal(int index) {
+            if (index < 60 + lookbackPeriod) return 0;
+
+            int stageOne = lastBarBeyond(index, oversoldThreshold, false);
+            int stageTwo = stageOne == -1 ? -1 : lowerLowIndex(stageOne, index);
+            if (stageTwo != -1 && stochD.get(index) > stochD.get(index - 1)
+                    && stochD.get(index - 1) > stochD.get(index - 2) && stochD.get(index) > oversoldThreshold) {
+                Quote lowest = QUOTES.get(stageTwo);
+                stopLoss = lowest.getLow() - (lowest.getHigh() - lowest.getLow()) * 0.1;
+                target = QUOTES.get(index).getClose() + (QUOTES.get(index).getClose() - stopLoss)
+                        * PARAMETERS.getRiskRewardRatio();
+                return 1;
+            }
+
+            stageOne = lastBarBeyond(index, overboughtThreshold, true);
+            stageTwo = stageOne == -1 ? -1 : higherHighIndex(stageOne, index);
+            if (stageTwo != -1 && stochD.get(index) < stochD.get(index - 1)
+                    && stochD.get(index - 1) < stochD.get(index - 2) && stochD.get(index) < overboughtThreshold) {
+                Quote highest = QUOTES.get(stageTwo);
+                stopLoss = highest.getHigh() + (highest.getHigh() - highest.getLow()) * 0.1;
+                target = QUOTES.get(index).getClose() - (stopLoss - QUOTES.get(index).getClose())
+                        * PARAMETERS.getRiskRewardRatio();
+                return -1;
+            }
+            return 0;
+        }
+
+        private int lastBarBeyond(int index, double threshold, boolean above) {
+            for (int i = index - 1; i >= index - lookbackPeriod && i >= 0; i--) {
+                boolean all = true;
+                for (Column stochastic : stochastics) {
+                    all &= above ? stochastic.get(i) > threshold : stochastic.get(i) < threshold;
+                }
+                if (all) return i;
+            }
+            return -1;
+        }
+
+        private int lowerLowIndex(int stageOne, int index) {
+            int lowest = -1;
+            double lowestPrice = Double.MAX_VALUE;
+            for (int i = stageOne; i <= index; i++) {
+                if (QUOTES.get(i).getLow() < lowestPrice) {
+                    lowestPrice = QUOTES.get(i).getLow();
+                    lowest = i;
+                }
+            }
+            if (lowest <= 0) return -1;
+
+            double previousLow = Double.MAX_VALUE;
+            double previousStochLow = 100.0;
+            for (int i = Math.max(0, lowest - lookbackPeriod); i < lowest; i++) {
+                previousLow = Math.min(previousLow, QUOTES.get(i).getLow());
+                previousStochLow = Math.min(previousStochLow, stochD.get(i));
+            }
+            return lowestPrice < previousLow && stochD.get(lowest) > previousStochLow ? lowest : -1;
+        }
+
+        private int higherHighIndex(int stageOne, int index) {
+            int highest = -1;
+            double highestPrice = Double.MIN_VALUE;
+            for (int i = stageOne; i <= index; i++) {
+                if (QUOTES.get(i).getHigh() > highestPrice) {
+                    highestPrice = QUOTES.get(i).getHigh();
+                    highest = i;
+                }
+            }
+            if (highest <= 0) return -1;
+
+            double previousHigh = Double.MIN_VALUE;
+            double previousStochHigh = 0.0;
+            for (int i = Math.max(0, highest - lookbackPeriod); i < highest; i++) {
+                previousHigh = Math.max(previousHigh, QUOTES.get(i).getHigh());
+                previousStochHigh = Math.max(previousStochHigh, stochD.get(i));
+            }
+            return highestPrice > previousHigh && stochD.get(highest) < previousStochHigh ? highest : -1;
+        }
+    }
+}
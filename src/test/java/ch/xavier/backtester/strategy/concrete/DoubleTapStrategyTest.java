@@ -0,0 +1,134 @@
+package ch.xavier.backtester.strategy.concrete;
+
+import ch.xavier.backtester.backtesting.TradingParameters;
+import ch.xavier.backtester.quote.Quote;
+import ch.xavier.backtester.quote.RandomQuotes;
+import ch.xavier.backtester.strategy.StrategiesFactory;
+import ch.xavier.backtester.strategy.StrategyState;
+import ch.xavier.backtester.strategy.TradingStrategy;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DoubleTapStrategyTest {
+    private static final List<Quote> QUOTES = RandomQuotes.walk(20_000, 1);
+
+    @Test
+    void signalsMatchPivotsFoundByRescanningTheWindow() {
+        for (Map<String, Object> parameters : List.of(
+                Map.<String, Object>of("pivotLength", 5),
+                Map.<String, Object>of("pivotLength", 10, "pivotTolerance", 5.0),
+                Map.<String, Object>of("pivotLength", 20, "detectTops", false),
+                Map.<String, Object>of("pivotLength", 3, "detectBottoms", false, "pivotTolerance", 30.0))) {
+            for (double askedShare : new double[]{1, 0.3}) {
+                assertMatchesRescan(parameters, askedShare);
+            }
+        }
+    }
+
+    // Asks a share of the bars only, as the engine skips the bars where it holds a position
+    private static void assertMatchesRescan(Map<String, Object> parameters, double askedShare) {
+        DoubleTapStrategy defaults = new DoubleTapStrategy(TradingParameters.builder().build());
+        TradingStrategy strategy = StrategiesFactory.getStrategy("DoubleTapStrategy",
+                TradingParameters.builder().build(), parameters);
+        StrategyState state = strategy.createState();
+        RescanningDoubleTap reference = new RescanningDoubleTap(
+                (int) parameters.getOrDefault("pivotLength", defaults.getPivotLength()),
+                (double) parameters.getOrDefault("pivotTolerance", defaults.getPivotTolerance()),
+                (boolean) parameters.getOrDefault("detectBottoms", defaults.isDetectBottoms()),
+                (boolean) parameters.getOrDefault("detectTops", defaults.isDetectTops()));
+        Random random = new Random(7);
+
+        int signals = 0;
+        for (int i = 0; i < QUOTES.size(); i++) {
+            if (random.nextDouble() >= askedShare) continue;
+
+            int signal = strategy.generateSignal(QUOTES, i, state);
+            assertEquals(reference.generateSignal(QUOTES, i), signal, parameters + " asking " + askedShare + " at " + i);
+            if (signal != 0) signals++;
+        }
+        assertTrue(signals > 0, parameters + " never signals");
+    }
+
+    /**
+     * Pivot detection before the rolling extrema: rescans the pivot window on every bar asked and keeps the last
+     * five pivots in lists
+     */
+    private static class RescanningDoubleTap {
+        private final int pivotLength;
+        private final double pivotTolerance;
+        private final boolean detectBottoms;
+        private final boolean detectTops;
+        private final List<double[]> topPivots = new ArrayList<>(); // index, value
+        private final List<double[]> bottomPivots = new ArrayList<>();
+
+        RescanningDoubleTap(int pivotLength, double pivotTolerance, boolean detectBottoms, boolean detectTops) {
+            this.pivotLength = pivotLength;
+            this.pivotTolerance = pivotTolerance;
+            this.detectBottoms = detectBottoms;
+            this.detectTops = detectTops;
+        }
+
+        int generateSignal(List<Quote> quotes, int index) {
+            if (index < pivotLength) return 0;
+
+            detectPivots(quotes, index);
+            if (detectBottoms && bottomPivots.size() >= 4 && topPivots.size() > 2) {
+                double[] firstLow = bottomPivots.get(bottomPivots.size() - 4);
+                double[] firstHigh = topPivots.get(topPivots.size() - 3);
+                double[] secondLow = bottomPivots.get(bottomPivots.size() - 2);
+                double[] currentHigh = topPivots.getLast();
+                if (secondLow[0] > firstHigh[0] && currentHigh[0] > secondLow[0]
+                        && withinTolerance(firstLow[1], firstHigh[1], secondLow[1])) {
+                    return 1;
+                }
+            }
+            if (detectTops && topPivots.size() >= 4 && bottomPivots.size() > 2) {
+                double[] firstHigh = topPivots.get(topPivots.size() - 4);
+                double[] firstLow = bottomPivots.get(bottomPivots.size() - 3);
+                double[] secondHigh = topPivots.get(topPivots.size() - 2);
+                double[] currentLow = bottomPivots.getLast();
+                if (secondHigh[0] > firstLow[0] && currentLow[0] > secondHigh[0]
+                        && withinTolerance(firstHigh[1], firstLow[1], secondHigh[1])) {
+                    return -1;
+                }
+            }
+            return 0;
+        }
+
+        private void detectPivots(List<Quote> quotes, int index) {
+            if (index < pivotLength + 1) return;
+
+            boolean isHighPivot = true;
+            boolean isLowPivot = true;
+            double high = quotes.get(index - 1).getHigh();
+            double low = quotes.get(index - 1).getLow();
+            for (int i = 2; i <= pivotLength; i++) {
+                isHighPivot &= quotes.get(index - i).getHigh() <= high;
+                isLowPivot &= quotes.get(index - i).getLow() >= low;
+            }
+
+            if (isHighPivot) add(topPivots, index - 1, high);
+            if (isLowPivot) add(bottomPivots, index - 1, low);
+        }
+
+        private static void add(List<double[]> pivots, int index, double value) {
+            pivots.add(new double[]{index, value});
+            if (pivots.size() > 5) {
+                pivots.removeFirst();
+            }
+        }
+
+        private boolean withinTolerance(double first, double opposite, double second) {
+            double height = Math.abs(opposite - first);
+            return second >= first - height * (pivotTolerance / 100.0)
+                    && second <= first + height * (pivotTolerance / 100.0);
+        }
+    }
+}
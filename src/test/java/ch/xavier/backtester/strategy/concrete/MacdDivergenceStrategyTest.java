@@ -0,0 +1,150 @@
+package ch.xavier.backtester.strategy.concrete;
+
+import ch.xavier.backtester.backtesting.TradingParameters;
+import ch.xavier.backtester.indicator.misc.MACD;
+import ch.xavier.backtester.quote.Quote;
+import ch.xavier.backtester.quote.RandomQuotes;
+import ch.xavier.backtester.strategy.StrategiesFactory;
+import ch.xavier.backtester.strategy.StrategyState;
+import ch.xavier.backtester.strategy.TradingStrategy;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MacdDivergenceStrategyTest {
+    private static final List<Quote> QUOTES = RandomQuotes.walk(20_000, 1);
+    private static final TradingParameters PARAMETERS = TradingParameters.builder().build();
+
+    private static final List<Map<String, Object>> SETTINGS = List.of(
+            Map.of(),
+            Map.of("pivotLookbackLeft", 2, "pivotLookbackRight", 8, "dontTouchZero", false),
+            Map.of("pivotLookbackLeft", 10, "pivotLookbackRight", 1, "rangeLower", 2, "rangeUpper", 200),
+            Map.of("fastLength", 5, "slowLength", 35, "signalLength", 5, "pivotLookbackLeft", 3,
+                    "pivotLookbackRight", 3, "rangeLower", 10, "rangeUpper", 30));
+
+    @Test
+    void signalsMatchPivotsFoundByRescanningTheLookbacks() {
+        for (Map<String, Object> settings : SETTINGS) {
+            for (double askedShare : new double[]{1, 0.3}) {
+                List<Integer> asked = new ArrayList<>();
+                Random random = new Random(7);
+                for (int i = 0; i < QUOTES.size(); i++) {
+                    if (random.nextDouble() < askedShare) asked.add(i);
+                }
+                assertMatchesRescan(settings, asked, "asking " + askedShare);
+            }
+        }
+    }
+
+    @Test
+    void barsAskedOutOfOrderMatchTheRescan() {
+        for (Map<String, Object> settings : SETTINGS) {
+            List<Integer> asked = new ArrayList<>();
+            for (int i = 0; i < QUOTES.size(); i += 3) {
+                asked.add(i);
+            }
+            Collections.shuffle(asked, new Random(11));
+            assertMatchesRescan(settings, asked, "shuffled");
+        }
+    }
+
+    private static void assertMatchesRescan(Map<String, Object> settings, List<Integer> asked, String order) {
+        TradingStrategy strategy = StrategiesFactory.getStrategy("MacdDivergenceStrategy", PARAMETERS, settings);
+        StrategyState state = strategy.createState();
+        RescanningMacdDivergence reference = new RescanningMacdDivergence(settings, strategy.getWarmUp());
+
+        int longs = 0;
+        int shorts = 0;
+        for (int i : asked) {
+            int signal = strategy.generateSignal(QUOTES, i, state);
+            assertEquals(reference.generateSignal(i), signal, settings + " " + order + " at " + i);
+            if (signal > 0) longs++;
+            if (signal < 0) shorts++;
+        }
+        assertTrue(longs > 0 && shorts > 0, settings + " " + order + ": " + longs + " longs and " + shorts + " shorts");
+    }
+
+    /**
+     * Divergences before the pivot cursors and sparse tables: both pivots rescanned backwards from the bar asked,
+     * and the zero line window scanned again on every signal candidate
+     */
+    private static class RescanningMacdDivergence {
+        private final int pivotLookbackLeft;
+        private final int pivotLookbackRight;
+        private final int rangeLower;
+        private final int rangeUpper;
+        private final boolean dontTouchZero;
+        private final int warmUp;
+        private final double[] histogram;
+
+        RescanningMacdDivergence(Map<String, Object> settings, int warmUp) {
+            this.pivotLookbackLeft = (int) settings.getOrDefault("pivotLookbackLeft", 5);
+            this.pivotLookbackRight = (int) settings.getOrDefault("pivotLookbackRight", 5);
+            this.rangeLower = (int) settings.getOrDefault("rangeLower", 5);
+            this.rangeUpper = (int) settings.getOrDefault("rangeUpper", 60);
+            this.dontTouchZero = (boolean) settings.getOrDefault("dontTouchZero", true);
+            this.warmUp = warmUp;
+
+            MACD macd = new MACD((int) settings.getOrDefault("fastLength", 12),
+                    (int) settings.getOrDefault("slowLength", 26), (int) settings.getOrDefault("signalLength", 9));
+            macd.calculate(QUOTES);
+            this.histogram = macd.getHistogram();
+        }
+
+        int generateSignal(int index) {
+            if (index < warmUp) return 0;
+            if (divergence(index, false)) return 1;
+            if (divergence(index, true)) return -1;
+            return 0;
+        }
+
+        private boolean divergence(int index, boolean bearish) {
+            Integer pivot = findPivot(index - pivotLookbackRight, bearish);
+            if (pivot == null) return false;
+            Integer previous = findPivot(pivot - 1, bearish);
+            if (previous == null) return false;
+
+            int barsSince = pivot - previous;
+            if (barsSince < rangeLower || barsSince > rangeUpper) return false;
+
+            boolean oscillator = bearish
+                    ? histogram[pivot] < histogram[previous] && histogram[pivot] > 0
+                    : histogram[pivot] > histogram[previous] && histogram[pivot] < 0;
+            boolean price = bearish
+                    ? QUOTES.get(pivot).getHigh() > QUOTES.get(previous).getHigh()
+                    : QUOTES.get(pivot).getLow() < QUOTES.get(previous).getLow();
+
+            boolean zeroLine = true;
+            if (dontTouchZero) {
+                double extreme = bearish ? Double.MAX_VALUE : -Double.MAX_VALUE;
+                for (int i = Math.max(0, pivot - (pivotLookbackLeft + pivotLookbackRight + 5));
+                     i <= pivot + pivotLookbackRight && i < histogram.length; i++) {
+                    extreme = bearish ? Math.min(extreme, histogram[i]) : Math.max(extreme, histogram[i]);
+                }
+                zeroLine = bearish ? extreme > 0 : extreme < 0;
+            }
+            return oscillator && price && zeroLine;
+        }
+
+        private Integer findPivot(int startIndex, boolean high) {
+            if (startIndex < pivotLookbackLeft || startIndex >= histogram.length - pivotLookbackRight) return null;
+
+            for (int i = startIndex; i >= pivotLookbackLeft; i--) {
+                boolean pivot = true;
+                for (int j = i - pivotLookbackLeft; j <= i + pivotLookbackRight && pivot; j++) {
+                    if (j < 0 || j >= histogram.length || j == i) continue;
+                    pivot = high ? !(histogram[j] > histogram[i]) : !(histogram[j] < histogram[i]);
+                }
+                if (pivot) return i;
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package ch.xavier.backtester.strategy.concrete;
+
+import ch.xavier.backtester.backtesting.TradingParameters;
+import ch.xavier.backtester.indicator.Indicator;
+import ch.xavier.backtester.indicator.baseline.McGinley;
+import ch.xavier.backtester.indicator.baseline.QuantumAdaptiveMA;
+import ch.xavier.backtester.indicator.baseline.T3Indicator;
+import ch.xavier.backtester.indicator.baseline.WhiteLine;
+import ch.xavier.backtester.indicator.confirmation.TTMSqueeze;
+import ch.xavier.backtester.indicator.confirmation.TetherLines;
+import ch.xavier.backtester.indicator.confirmation.WavePulseIndicator;
+import ch.xavier.backtester.indicator.volatility.VortexIndicator;
+import ch.xavier.backtester.quote.Quote;
+import ch.xavier.backtester.quote.RandomQuotes;
+import ch.xavier.backtester.strategy.StrategiesFactory;
+import ch.xavier.backtester.strategy.StrategyState;
+import ch.xavier.backtester.strategy.TradingStrategy;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NnfxStrategyTest {
+    // The reference recomputes the prefix of the recursive indicators on every bar, so it stays short
+    private static final List<Quote> QUOTES = RandomQuotes.walk(1_500, 1);
+    private static final TradingParameters PARAMETERS = TradingParameters.builder().build();
+
+    @Test
+    void everyBaselineMatchesItsIndicatorCalculatedBarByBar() {
+        for (NnfxStrategy.Baseline baseline : NnfxStrategy.Baseline.values()) {
+            assertMatchesReference(Map.of("baseline", baseline));
+            assertMatchesReference(Map.of("baseline", baseline, "requireCrossing", true));
+        }
+        assertMatchesReference(Map.of("baseline", NnfxStrategy.Baseline.MCGINLEY, "mcGinleyLength", 30));
+        assertMatchesReference(Map.of("baseline", NnfxStrategy.Baseline.T3, "t3Length", 9, "t3Factor", 0.5));
+        assertMatchesReference(Map.of("baseline", NnfxStrategy.Baseline.QUANTUM_ADAPTIVE_MA, "qamaAdxLength", 5,
+                "qamaWeightFactor", 4.0, "qamaMaLength", 10));
+    }
+
+    @Test
+    void everyConfirmationMatchesItsIndicatorCalculatedBarByBar() {
+        for (String confirmation : new String[]{"useTtmSqueeze", "useTetherLines", "useWavePulse", "useVortex"}) {
+            assertMatchesReference(Map.of(confirmation, true));
+            assertMatchesReference(Map.of(confirmation, true, "requireCrossing", true));
+        }
+        assertMatchesReference(Map.of("useTtmSqueeze", true, "ttmsUseGreenRedConfirmation", false,
+                "ttmsHighlightNoSqueeze", false, "ttmsInverseSignals", true));
+        assertMatchesReference(Map.of("useWavePulse", true, "wavePulseUseColorSignals", false,
+                "wavePulseInverseSignals", true, "baseline", NnfxStrategy.Baseline.WHITE_LINE));
+        assertMatchesReference(Map.of("useVortex", true, "vortexThreshold", 0.0, "vortexLength", 7));
+    }
+
+    @Test
+    void compositionsMatchTheirIndicatorsCalculatedBarByBar() {
+        assertMatchesReference(Map.of("useTetherLines", true, "useVortex", true));
+        assertMatchesReference(Map.of("useTtmSqueeze", true, "useWavePulse", true, "ttmsHighlightNoSqueeze", false,
+                "wavePulseUseColorSignals", false, "requireCrossing", true));
+        assertMatchesReference(Map.of("baseline", NnfxStrategy.Baseline.T3, "useTetherLines", true,
+                "useWavePulse", true, "wavePulseUseColorSignals", false, "useVortex", true, "vortexThreshold", 0.0));
+    }
+
+    private static void assertMatchesReference(Map<String, Object> settings) {
+        TradingStrategy strategy = StrategiesFactory.getStrategy("NnfxStrategy", PARAMETERS, settings);
+        StrategyState state = strategy.createState();
+        int[] expected = new BarByBarNnfx(settings).signals();
+
+        int signals = 0;
+        for (int i = 0; i < QUOTES.size(); i++) {
+            int signal = strategy.generateSignal(QUOTES, i, state);
+            assertEquals(expected[i], signal, settings + " at " + i);
+            if (signal != 0) signals++;
+        }
+        assertTrue(signals > 0, settings + " never signals");
+    }
+
+    /**
+     * Composition before the cached direction vectors: every indicator asked for each bar through calculate()
+     */
+    private static class BarByBarNnfx {
+        private final Map<String, Object> settings;
+        // Every component is neutral until its own warm-up, the composition until the longest one
+        private int warmUp = 1;
+
+        BarByBarNnfx(Map<String, Object> settings) {
+            this.settings = settings;
+        }
+
+        int[] signals() {
+            List<int[]> components = new ArrayList<>();
+            components.add(baseline());
+            if (is("useTtmSqueeze")) components.add(ttmSqueeze());
+            if (is("useTetherLines")) components.add(tetherLines());
+            if (is("useWavePulse")) components.add(wavePulse());
+            if (is("useVortex")) components.add(vortex());
+
+            int[] directions = new int[QUOTES.size()];
+            for (int i = 0; i < directions.length; i++) {
+                directions[i] = components.getFirst()[i];
+                for (int[] confirmation : components) {
+                    if (confirmation[i] != directions[i]) directions[i] = 0;
+                }
+            }
+
+            int[] signals = new int[QUOTES.size()];
+            for (int i = warmUp; i < signals.length; i++) {
+                if (!is("requireCrossing") || directions[i - 1] != directions[i]) {
+                    signals[i] = directions[i];
+                }
+            }
+            return signals;
+        }
+
+        private int[] baseline() {
+            NnfxStrategy.Baseline baseline = (NnfxStrategy.Baseline) settings.getOrDefault("baseline",
+                    NnfxStrategy.Baseline.MCGINLEY);
+            Indicator indicator;
+            int warmUp;
+            switch (baseline) {
+                case MCGINLEY -> {
+                    McGinley mcGinley = new McGinley();
+                    mcGinley.setLength(integer("mcGinleyLength", 14));
+                    indicator = mcGinley;
+                    warmUp = integer("mcGinleyLength", 14) - 1;
+                }
+                case WHITE_LINE -> {
+                    WhiteLine whiteLine = new WhiteLine();
+                    whiteLine.setLength(integer("whiteLineLength", 20));
+                    indicator = whiteLine;
+                    warmUp = integer("whiteLineLength", 20) - 1;
+                }
+                case T3 -> {
+                    T3Indicator t3 = new T3Indicator();
+                    t3.setFastLength(integer("t3Length", 5));
+                    t3.setFactor(real("t3Factor", 0.7));
+                    indicator = t3;
+                    warmUp = integer("t3Length", 5);
+                }
+                default -> {
+                    QuantumAdaptiveMA qama = new QuantumAdaptiveMA();
+                    qama.setAdxLength(integer("qamaAdxLength", 2));
+                    qama.setWeightFactor(real("qamaWeightFactor", 10.0));
+                    qama.setMaLength(integer("qamaMaLength", 6));
+                    indicator = qama;
+                    warmUp = integer("qamaMaLength", 6) - 1;
+                }
+            }
+
+            int[] directions = new int[QUOTES.size()];
+            for (int i = Math.max(0, warmUp); i < directions.length; i++) {
+                directions[i] = Double.compare(QUOTES.get(i).getClose(), indicator.calculate(i, QUOTES));
+            }
+            this.warmUp = Math.max(this.warmUp, warmUp);
+            return directions;
+        }
+
+        private int[] ttmSqueeze() {
+            TTMSqueeze squeeze = new TTMSqueeze();
+            squeeze.setLength(integer("ttmsLength", 20));
+            squeeze.setBbMult(real("ttmsBbMult", 2.0));
+            squeeze.setKcMult(real("ttmsKcMult", 2.0));
+            int warmUp = integer("ttmsLength", 20) + 1;
+
+            int[] directions = new int[QUOTES.size()];
+            for (int i = warmUp; i < directions.length; i++) {
+                TTMSqueeze.TTMSqueezeResult result = squeeze.calculateResult(i, QUOTES);
+                if (is("ttmsHighlightNoSqueeze", true) && !result.isNoSqueeze()) continue;
+
+                double current = result.getMomentum();
+                double previous = squeeze.calculateResult(i - 1, QUOTES).getMomentum();
+                boolean greenRed = is("ttmsUseGreenRedConfirmation", true);
+                int direction = current > 0 && (!greenRed || current > previous) ? 1
+                        : current < 0 && (!greenRed || current < previous) ? -1 : 0;
+                directions[i] = is("ttmsInverseSignals") ? -direction : direction;
+            }
+            this.warmUp = Math.max(this.warmUp, warmUp);
+            return directions;
+        }
+
+        private int[] tetherLines() {
+            TetherLines tetherLines = new TetherLines();
+            tetherLines.setFastLength(integer("tetherFastLength", 13));
+            tetherLines.setSlowLength(integer("tetherSlowLength", 55));
+            int warmUp = Math.max(integer("tetherFastLength", 13), integer("tetherSlowLength", 55)) - 1;
+
+            int[] directions = new int[QUOTES.size()];
+            for (int i = warmUp; i < directions.length; i++) {
+                directions[i] = (int) Math.signum(tetherLines.calculate(i, QUOTES));
+            }
+            this.warmUp = Math.max(this.warmUp, warmUp);
+            return directions;
+        }
+
+        private int[] wavePulse() {
+            WavePulseIndicator wavePulse = new WavePulseIndicator();
+            wavePulse.setSmoothingPeriod(integer("wavePulseSmoothingPeriod", 21));
+            wavePulse.setConstantFactor(real("wavePulseConstantFactor", 0.4));
+
+            int[] directions = new int[QUOTES.size()];
+            for (int i = 1; i < directions.length; i++) {
+                double value = wavePulse.calculate(i, QUOTES);
+                double close = QUOTES.get(i).getClose();
+                boolean rising = value > wavePulse.calculate(i - 1, QUOTES);
+                boolean colors = is("wavePulseUseColorSignals", true);
+                int direction = close > value && (!colors || rising) ? 1
+                        : close < value && (!colors || !rising) ? -1 : 0;
+                directions[i] = is("wavePulseInverseSignals") ? -direction : direction;
+            }
+            this.warmUp = Math.max(this.warmUp, 1);
+            return directions;
+        }
+
+        private int[] vortex() {
+            VortexIndicator vortex = new VortexIndicator();
+            vortex.setLength(integer("vortexLength", 14));
+            double threshold = real("vortexThreshold", 0.05);
+            int warmUp = integer("vortexLength", 14);
+
+            int[] directions = new int[QUOTES.size()];
+            for (int i = warmUp; i < directions.length; i++) {
+                double value = vortex.calculate(i, QUOTES);
+                directions[i] = value > threshold ? 1 : value < -threshold ? -1 : 0;
+            }
+            this.warmUp = Math.max(this.warmUp, warmUp);
+            return directions;
+        }
+
+        private boolean is(String name) {
+            return is(name, false);
+        }
+
+        private boolean is(String name, boolean defaultValue) {
+            return (boolean) settings.getOrDefault(name, defaultValue);
+        }
+
+        private int integer(String name, int defaultValue) {
+            return (int) settings.getOrDefault(name, defaultValue);
+        }
+
+        private double real(String name, double defaultValue) {
+            return (double) settings.getOrDefault(name, defaultValue);
+        }
+    }
+}
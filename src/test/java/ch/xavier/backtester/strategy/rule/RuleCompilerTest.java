@@ -0,0 +1,173 @@
+package ch.xavier.backtester.strategy.rule;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.ref.WeakReference;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RuleCompilerTest {
+    private static final String[] NAMES = {"close", "vwap", "atr"};
+    private static final int SIZE = 300;
+
+    @Test
+    void kernelsMatchTheRulesInterpretedOnEveryBar() {
+        Random random = new Random(1);
+        int[] signals = new int[3];
+
+        for (int r = 0; r < 300; r++) {
+            RuleSet rules = RuleSet.of(condition(random, 4), condition(random, 4));
+            double[][] columns = columns(rules, random);
+            RuleKernel kernel = rules.compile();
+
+            byte[] evaluated = new byte[SIZE];
+            kernel.evaluate(columns, rules.lookback(), SIZE, evaluated);
+            for (int i = rules.lookback(); i < SIZE; i++) {
+                int expected = signal(rules, columns, i);
+                assertEquals(expected, kernel.signal(columns, i), rules + " at " + i);
+                assertEquals(expected, evaluated[i], rules + " evaluated at " + i);
+                signals[expected + 1]++;
+            }
+        }
+        assertTrue(signals[0] > 0 && signals[1] > 0 && signals[2] > 0, "no variety in the signals");
+    }
+
+    @Test
+    void comparisonsWithNaNNeverHoldWhateverTheyAreNestedIn() {
+        Value close = Value.column("close");
+        Value nan = Value.constant(Double.NaN);
+        double[][] columns = {{1.0}};
+
+        for (Condition comparison : List.of(close.greaterThan(nan), close.greaterOrEqual(nan), close.lessThan(nan),
+                close.lessOrEqual(nan), nan.greaterThan(close), nan.greaterOrEqual(close), nan.lessThan(close),
+                nan.lessOrEqual(close))) {
+            assertEquals(0, RuleSet.of(comparison, comparison).compile().signal(columns, 0), comparison.toString());
+            assertEquals(1, RuleSet.of(comparison.not(), Condition.never()).compile().signal(columns, 0),
+                    comparison.toString());
+            assertEquals(-1, RuleSet.of(Condition.never(), comparison.or(comparison.not())).compile()
+                    .signal(columns, 0), comparison.toString());
+            assertEquals(0, RuleSet.of(comparison.and(Condition.always()), comparison.not().not()).compile()
+                    .signal(columns, 0), comparison.toString());
+            assertEquals(1, RuleSet.of(comparison.and(Condition.always()).not(), Condition.never()).compile()
+                    .signal(columns, 0), comparison.toString());
+        }
+    }
+
+    @Test
+    void equalRuleSetsShareTheirKernel() {
+        RuleSet rules = RuleSet.of(Value.column("close").greaterThan(1.5), Value.column("close").lessThan(0.5));
+        RuleSet equalRules = RuleSet.of(Value.column("close").greaterThan(1.5), Value.column("close").lessThan(0.5));
+
+        assertSame(rules.compile(), equalRules.compile());
+    }
+
+    @Test
+    void kernelsNoLongerUsedCanBeCollectedAndCompiledAgain() throws InterruptedException {
+        RuleSet rules = RuleSet.of(Value.column("close").greaterThan(2.25), Value.column("close").lessThan(-2.25));
+        WeakReference<RuleKernel> kernel = new WeakReference<>(rules.compile());
+
+        for (int i = 0; i < 50 && kernel.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull(kernel.get(), "the cache keeps the kernel alive");
+
+        RuleKernel recompiled = rules.compile();
+        assertEquals(1, recompiled.signal(new double[][]{{3.0}}, 0));
+        assertEquals(-1, recompiled.signal(new double[][]{{-3.0}}, 0));
+        assertSame(recompiled, rules.compile());
+    }
+
+    private static int signal(RuleSet rules, double[][] columns, int index) {
+        List<String> names = rules.columns();
+        if (holds(rules.longEntry(), names, columns, index)) return 1;
+        if (holds(rules.shortEntry(), names, columns, index)) return -1;
+        return 0;
+    }
+
+    // Rules interpreted with plain Java operators
+    private static boolean holds(Condition condition, List<String> names, double[][] columns, int index) {
+        return switch (condition) {
+            case Condition.Comparison c -> {
+                double left = value(c.left(), names, columns, index);
+                double right = value(c.right(), names, columns, index);
+                yield switch (c.comparator()) {
+                    case GREATER -> left > right;
+                    case GREATER_OR_EQUAL -> left >= right;
+                    case LESS -> left < right;
+                    case LESS_OR_EQUAL -> left <= right;
+                };
+            }
+            case Condition.And c -> holds(c.left(), names, columns, index) && holds(c.right(), names, columns, index);
+            case Condition.Or c -> holds(c.left(), names, columns, index) || holds(c.right(), names, columns, index);
+            case Condition.Not c -> !holds(c.operand(), names, columns, index);
+            case Condition.Literal c -> c.value();
+        };
+    }
+
+    private static double value(Value value, List<String> names, double[][] columns, int index) {
+        return switch (value) {
+            case Value.Column c -> columns[names.indexOf(c.name())][index - c.offset()];
+            case Value.Constant c -> c.value();
+            case Value.Abs a -> Math.abs(value(a.operand(), names, columns, index));
+            case Value.Arithmetic a -> {
+                double left = value(a.left(), names, columns, index);
+                double right = value(a.right(), names, columns, index);
+                yield switch (a.operator()) {
+                    case ADD -> left + right;
+                    case SUBTRACT -> left - right;
+                    case MULTIPLY -> left * right;
+                    case DIVIDE -> left / right;
+                };
+            }
+        };
+    }
+
+    private static Condition condition(Random random, int depth) {
+        int kind = depth == 0 ? 0 : random.nextInt(8);
+        return switch (kind) {
+            case 1, 2 -> condition(random, depth - 1).and(condition(random, depth - 1));
+            case 3, 4 -> condition(random, depth - 1).or(condition(random, depth - 1));
+            case 5 -> condition(random, depth - 1).not();
+            case 6 -> random.nextInt(4) == 0 ? Condition.never() : Condition.always();
+            default -> {
+                Value left = value(random, 2);
+                Value right = value(random, 2);
+                yield switch (random.nextInt(4)) {
+                    case 0 -> left.greaterThan(right);
+                    case 1 -> left.greaterOrEqual(right);
+                    case 2 -> left.lessThan(right);
+                    default -> left.lessOrEqual(right);
+                };
+            }
+        };
+    }
+
+    private static Value value(Random random, int depth) {
+        int kind = depth == 0 ? random.nextInt(2) : random.nextInt(6);
+        return switch (kind) {
+            case 0 -> Value.column(NAMES[random.nextInt(NAMES.length)]).previous(random.nextInt(3));
+            case 1 -> random.nextInt(10) == 0 ? Value.constant(Double.NaN) : Value.constant(random.nextInt(5) - 2);
+            case 2 -> value(random, depth - 1).plus(value(random, depth - 1));
+            case 3 -> value(random, depth - 1).minus(value(random, depth - 1));
+            case 4 -> value(random, depth - 1).times(value(random, depth - 1)).abs();
+            default -> value(random, depth - 1).dividedBy(value(random, depth - 1));
+        };
+    }
+
+    // Small integers so comparisons tie often, and NaN now and then like the warm-up of an indicator
+    private static double[][] columns(RuleSet rules, Random random) {
+        double[][] columns = new double[rules.columns().size()][SIZE];
+        for (double[] column : columns) {
+            for (int i = 0; i < SIZE; i++) {
+                column[i] = random.nextInt(20) == 0 ? Double.NaN : random.nextInt(5) - 2;
+            }
+        }
+        return columns;
+    }
+}